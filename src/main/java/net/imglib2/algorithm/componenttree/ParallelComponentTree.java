@@ -0,0 +1,275 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.componenttree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.FutureUtils;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Build the component tree of a {@link RealType} image in parallel. The image
+ * is split into tiles along the last dimension. For each tile concurrently,
+ * the pixels are sorted and linked into a union-find tree as in
+ * {@link UnionFindComponentTree}. The tile trees are then merged along the
+ * tile borders, following M.H.F. Wilkinson et al., "Concurrent Computation of
+ * Attribute Filters on Shared Memory Parallel Machines" (IEEE PAMI 2008): For
+ * each pair of adjacent border pixels, their ancestor chains are merged like
+ * two sorted lists. Pairs of adjacent groups of tiles are merged concurrently,
+ * doubling the group size in each round.
+ * 
+ * Finally, the tree is canonicalized and the same {@link PartialComponent}
+ * events as in {@link BuildComponentTree} are emitted, sequentially, to the
+ * {@link PartialComponent.Handler}. Therefore, the resulting component tree
+ * is the same as with {@link BuildComponentTree}, but components may be
+ * emitted in a different order.
+ */
+public final class ParallelComponentTree
+{
+	/**
+	 * Run the algorithm. Completed components are emitted to the
+	 * {@link PartialComponent.Handler} which is responsible for building up the
+	 * tree structure.
+	 * 
+	 * @param input
+	 *            input image.
+	 * @param componentGenerator
+	 *            provides new {@link PartialComponent} instances.
+	 * @param componentHandler
+	 *            receives completed {@link PartialComponent}s.
+	 * @param darkToBright
+	 *            determines ordering of threshold values. If it is true, then
+	 *            thresholds are applied from low to high values.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < T extends RealType< T >, C extends PartialComponent< T, C > > void buildComponentTree(
+			final RandomAccessibleInterval< T > input,
+			final PartialComponent.Generator< T, C > componentGenerator,
+			final PartialComponent.Handler< C > componentHandler,
+			final boolean darkToBright,
+			final ExecutorService service )
+	{
+		buildComponentTree( input, componentGenerator, componentHandler, darkToBright, Runtime.getRuntime().availableProcessors(), service );
+	}
+
+	/**
+	 * Run the algorithm. Completed components are emitted to the
+	 * {@link PartialComponent.Handler} which is responsible for building up the
+	 * tree structure.
+	 * 
+	 * @param input
+	 *            input image.
+	 * @param componentGenerator
+	 *            provides new {@link PartialComponent} instances.
+	 * @param componentHandler
+	 *            receives completed {@link PartialComponent}s.
+	 * @param darkToBright
+	 *            determines ordering of threshold values. If it is true, then
+	 *            thresholds are applied from low to high values.
+	 * @param numTiles
+	 *            the number of tiles to split the image into. At most one tile
+	 *            per hyperplane along the last dimension is used.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < T extends RealType< T >, C extends PartialComponent< T, C > > void buildComponentTree(
+			final RandomAccessibleInterval< T > input,
+			final PartialComponent.Generator< T, C > componentGenerator,
+			final PartialComponent.Handler< C > componentHandler,
+			final boolean darkToBright,
+			final int numTiles,
+			final ExecutorService service )
+	{
+		if ( numTiles < 1 )
+			throw new IllegalArgumentException( "The number of tiles must be positive." );
+		final int n = input.numDimensions();
+		final long[] dimensions = new long[ n ];
+		input.dimensions( dimensions );
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= dimensions[ d ];
+		if ( size >= Integer.MAX_VALUE )
+		{
+			BuildComponentTree.buildComponentTree( input, componentGenerator, componentHandler, darkToBright );
+			return;
+		}
+
+		final long[] keys = UnionFindComponentTree.getKeys( input, darkToBright );
+		final int[] parent = new int[ keys.length ];
+		final int[] zpar = new int[ keys.length ];
+
+		// tiles are slabs of whole hyperplanes along the last dimension
+		final long numPlanes = n == 0 ? 1 : dimensions[ n - 1 ];
+		final int planeSize = ( int ) ( keys.length / Math.max( 1, numPlanes ) );
+		final int numUsedTiles = ( int ) Math.max( 1, Math.min( numTiles, numPlanes ) );
+		final int[] tileStart = new int[ numUsedTiles + 1 ];
+		for ( int t = 0; t <= numUsedTiles; ++t )
+			tileStart[ t ] = ( int ) ( t * numPlanes / numUsedTiles ) * planeSize;
+
+		// sort and link each tile
+		final ArrayList< Future< int[] > > futures = new ArrayList< Future< int[] > >();
+		for ( int t = 0; t < numUsedTiles; ++t )
+		{
+			final int from = tileStart[ t ];
+			final int to = tileStart[ t + 1 ];
+			futures.add( service.submit( new Callable< int[] >()
+			{
+				@Override
+				public int[] call()
+				{
+					final int[] order = UnionFindComponentTree.radixSort( keys, from, to );
+					UnionFindComponentTree.linkPixels( order, dimensions, from, to, parent, zpar );
+					return order;
+				}
+			} ) );
+		}
+		List< int[] > orders = FutureUtils.getAllFutures( futures );
+
+		// merge groups of tiles along their borders
+		final ArrayList< Future< Void > > merges = new ArrayList< Future< Void > >();
+		for ( int step = 1; step < numUsedTiles; step *= 2 )
+		{
+			for ( int t = step; t < numUsedTiles; t += 2 * step )
+			{
+				final int border = tileStart[ t ];
+				merges.add( service.submit( new Callable< Void >()
+				{
+					@Override
+					public Void call()
+					{
+						for ( int i = 0; i < planeSize; ++i )
+							connect( border - planeSize + i, border + i, parent, keys );
+						return null;
+					}
+				} ) );
+			}
+			FutureUtils.getAllFutures( merges );
+		}
+
+		// merge the tile orders into the global threshold order
+		while ( orders.size() > 1 )
+		{
+			for ( int i = 0; i + 1 < orders.size(); i += 2 )
+			{
+				final int[] a = orders.get( i );
+				final int[] b = orders.get( i + 1 );
+				futures.add( service.submit( new Callable< int[] >()
+				{
+					@Override
+					public int[] call()
+					{
+						return mergeOrders( a, b, keys );
+					}
+				} ) );
+			}
+			final List< int[] > merged = FutureUtils.getAllFutures( futures );
+			if ( orders.size() % 2 != 0 )
+				merged.add( orders.get( orders.size() - 1 ) );
+			orders = merged;
+		}
+		final int[] order = orders.get( 0 );
+
+		final int[] levels = zpar;
+		UnionFindComponentTree.getLevels( order, keys, levels );
+		UnionFindComponentTree.emitComponents( input, order, levels, parent, new int[ order.length ], componentGenerator, componentHandler );
+	}
+
+	/**
+	 * Threshold order of pixels: by key (unsigned), then by index.
+	 */
+	private static boolean before( final int p, final int q, final long[] keys )
+	{
+		final long kp = keys[ p ] ^ Long.MIN_VALUE;
+		final long kq = keys[ q ] ^ Long.MIN_VALUE;
+		return kp < kq || ( kp == kq && p < q );
+	}
+
+	/**
+	 * Merge the trees of adjacent pixels {@code a} and {@code b}, by merging
+	 * their ancestor chains, which are sorted in threshold order.
+	 */
+	private static void connect( int a, int b, final int[] parent, final long[] keys )
+	{
+		while ( a != b )
+		{
+			if ( before( b, a, keys ) )
+			{
+				final int tmp = a;
+				a = b;
+				b = tmp;
+			}
+			final int pa = parent[ a ];
+			if ( pa == a )
+			{
+				parent[ a ] = b;
+				return;
+			}
+			if ( pa == b )
+				return;
+			if ( before( pa, b, keys ) )
+				a = pa;
+			else
+			{
+				// insert b between a and its parent
+				parent[ a ] = b;
+				a = b;
+				b = pa;
+			}
+		}
+	}
+
+	private static int[] mergeOrders( final int[] a, final int[] b, final long[] keys )
+	{
+		final int[] merged = new int[ a.length + b.length ];
+		int i = 0;
+		int j = 0;
+		for ( int k = 0; k < merged.length; ++k )
+		{
+			if ( j >= b.length || ( i < a.length && before( a[ i ], b[ j ], keys ) ) )
+				merged[ k ] = a[ i++ ];
+			else
+				merged[ k ] = b[ j++ ];
+		}
+		return merged;
+	}
+
+	private ParallelComponentTree()
+	{}
+}
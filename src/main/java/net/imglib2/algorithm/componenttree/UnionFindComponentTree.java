@@ -0,0 +1,485 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.componenttree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.componenttree.pixellist.PixelListComponentTree;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Build the component tree of an image by union-find. This is an
+ * implementation of the algorithm described by L. Najman and M. Couprie in
+ * "Building the Component Tree in Quasi-Linear Time" (IEEE TIP 2006), in the
+ * variant of C. Berger et al., "Effective Component Tree Computation with
+ * Application to Pattern Recognition in Astronomical Imaging" (ICIP 2007).
+ * 
+ * The pixels are sorted by value. For {@link RealType} images thresholded
+ * with {@link BuildComponentTree.DarkToBright} or
+ * {@link BuildComponentTree.BrightToDark}, this is a radix sort of primitive
+ * keys (a single counting sort pass for value ranges up to 2^16). Otherwise,
+ * a merge sort with the given comparator is used. The tree is then built in a
+ * primitive parent array, and the same {@link PartialComponent} events as in
+ * {@link BuildComponentTree} are generated from it: Components are created,
+ * pixels added, and components merged and emitted to the
+ * {@link PartialComponent.Handler}, children before parents. Therefore, the
+ * handlers of {@link PixelListComponentTree} and
+ * {@link net.imglib2.algorithm.componenttree.mser.MserTree} can be used
+ * unchanged. The emitted tree is the same as with {@link BuildComponentTree},
+ * but components may be emitted in a different order.
+ * 
+ * Pixels are connected to their 2n direct neighbors, as in
+ * {@link BuildComponentTree}. Images with more than
+ * {@link Integer#MAX_VALUE} pixels are passed on to
+ * {@link BuildComponentTree}.
+ */
+public final class UnionFindComponentTree
+{
+	/**
+	 * Run the algorithm. Completed components are emitted to the
+	 * {@link PartialComponent.Handler} which is responsible for building up the
+	 * tree structure.
+	 * 
+	 * @param input
+	 *            input image.
+	 * @param componentGenerator
+	 *            provides new {@link PartialComponent} instances.
+	 * @param componentHandler
+	 *            receives completed {@link PartialComponent}s.
+	 * @param comparator
+	 *            determines ordering of threshold values.
+	 */
+	public static < T extends Type< T >, C extends PartialComponent< T, C > > void buildComponentTree(
+			final RandomAccessibleInterval< T > input,
+			final PartialComponent.Generator< T, C > componentGenerator,
+			final PartialComponent.Handler< C > componentHandler,
+			final Comparator< T > comparator )
+	{
+		final int n = input.numDimensions();
+		final long[] dimensions = new long[ n ];
+		input.dimensions( dimensions );
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+			size *= dimensions[ d ];
+		if ( size >= Integer.MAX_VALUE )
+		{
+			BuildComponentTree.buildComponentTree( input, componentGenerator, componentHandler, comparator );
+			return;
+		}
+
+		final int[] levels = new int[ ( int ) size ];
+		final RandomAccess< T > access = input.randomAccess();
+		input.min( access );
+		final T type = access.get();
+		final boolean darkToBright = comparator instanceof BuildComponentTree.DarkToBright;
+		final int[] order;
+		if ( type instanceof RealType && ( darkToBright || comparator instanceof BuildComponentTree.BrightToDark ) )
+		{
+			final long[] keys = getKeys( input, darkToBright );
+			order = radixSort( keys, 0, keys.length );
+			getLevels( order, keys, levels );
+		}
+		else
+			order = sortByComparator( input, comparator, levels );
+
+		final int[] parent = new int[ order.length ];
+		final int[] zpar = new int[ order.length ];
+		linkPixels( order, dimensions, 0, order.length, parent, zpar );
+		emitComponents( input, order, levels, parent, zpar, componentGenerator, componentHandler );
+	}
+
+	/**
+	 * Run the algorithm. Completed components are emitted to the
+	 * {@link PartialComponent.Handler} which is responsible for building up the
+	 * tree structure.
+	 * 
+	 * @param input
+	 *            input image of a comparable value type.
+	 * @param componentGenerator
+	 *            provides new {@link PartialComponent} instances.
+	 * @param componentHandler
+	 *            receives completed {@link PartialComponent}s.
+	 * @param darkToBright
+	 *            determines ordering of threshold values. If it is true, then
+	 *            thresholds are applied from low to high values.
+	 */
+	public static < T extends Type< T > & Comparable< T >, C extends PartialComponent< T, C > > void buildComponentTree(
+			final RandomAccessibleInterval< T > input,
+			final PartialComponent.Generator< T, C > componentGenerator,
+			final PartialComponent.Handler< C > componentHandler,
+			final boolean darkToBright )
+	{
+		buildComponentTree( input, componentGenerator, componentHandler, darkToBright ? new BuildComponentTree.DarkToBright< T >() : new BuildComponentTree.BrightToDark< T >() );
+	}
+
+	/**
+	 * Link the pixels {@code from ... to-1}, given in threshold order, into a
+	 * tree: A pixel becomes the parent of the roots of all processed
+	 * neighbors in the same range, so every parent comes after its children
+	 * in threshold order.
+	 * 
+	 * @param order
+	 *            indices of the pixels {@code from ... to-1}, sorted by
+	 *            threshold value.
+	 * @param parent
+	 *            receives the parent of each pixel in the range.
+	 * @param zpar
+	 *            scratch union-find array.
+	 */
+	static void linkPixels( final int[] order, final long[] dimensions, final int from, final int to, final int[] parent, final int[] zpar )
+	{
+		final int n = dimensions.length;
+		final int[] strides = new int[ n ];
+		for ( int d = 0, stride = 1; d < n; stride *= ( int ) dimensions[ d ], ++d )
+			strides[ d ] = stride;
+		Arrays.fill( parent, from, to, -1 );
+		for ( final int p : order )
+		{
+			parent[ p ] = p;
+			zpar[ p ] = p;
+			int rest = p;
+			for ( int d = 0; d < n; ++d )
+			{
+				final long x = rest % dimensions[ d ];
+				rest /= dimensions[ d ];
+				if ( x > 0 && p - strides[ d ] >= from )
+					link( p, p - strides[ d ], parent, zpar );
+				if ( x < dimensions[ d ] - 1 && p + strides[ d ] < to )
+					link( p, p + strides[ d ], parent, zpar );
+			}
+		}
+	}
+
+	/**
+	 * Canonicalize the tree and emit its components, children before
+	 * parents.
+	 * 
+	 * @param order
+	 *            pixel indices sorted by threshold value.
+	 * @param levels
+	 *            rank of the value of each pixel among the distinct values.
+	 * @param parent
+	 *            parent array in which every parent comes after its children
+	 *            in {@code order}.
+	 * @param scratch
+	 *            an array of the same size, overwritten.
+	 */
+	static < T extends Type< T >, C extends PartialComponent< T, C > > void emitComponents(
+			final RandomAccessibleInterval< T > input,
+			final int[] order,
+			final int[] levels,
+			final int[] parent,
+			final int[] scratch,
+			final PartialComponent.Generator< T, C > componentGenerator,
+			final PartialComponent.Handler< C > componentHandler )
+	{
+		final int n = input.numDimensions();
+		final long[] dimensions = new long[ n ];
+		input.dimensions( dimensions );
+		final int size = order.length;
+
+		// canonicalize, i.e., let every pixel point to the topmost pixel of
+		// its level
+		for ( int i = size - 1; i >= 0; --i )
+		{
+			final int p = order[ i ];
+			final int q = parent[ p ];
+			if ( levels[ parent[ q ] ] == levels[ q ] )
+				parent[ p ] = parent[ q ];
+		}
+
+		// number the components by their canonical pixels
+		final int[] nodeIds = scratch;
+		int numNodes = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			final int p = order[ i ];
+			if ( isCanonical( p, parent, levels ) )
+				nodeIds[ p ] = numNodes++;
+		}
+
+		// Pixels of a component come after those of its children and its
+		// canonical pixel comes last. Children are emitted before their
+		// parent is started: The first child continues as the parent
+		// component, the other children are merged into it.
+		final ArrayList< C > partials = new ArrayList< C >( numNodes );
+		for ( int i = 0; i < numNodes; ++i )
+			partials.add( null );
+		final RandomAccess< T > access = input.randomAccess();
+		final long[] min = new long[ n ];
+		input.min( min );
+		for ( int i = 0; i < size; ++i )
+		{
+			final int p = order[ i ];
+			final int c = isCanonical( p, parent, levels ) ? p : parent[ p ];
+			final int node = nodeIds[ c ];
+			setPosition( access, p, dimensions, min );
+			C component = partials.get( node );
+			if ( component == null )
+			{
+				component = componentGenerator.createComponent( access.get() );
+				partials.set( node, component );
+			}
+			component.addPosition( access );
+			if ( p != c )
+				continue;
+
+			componentHandler.emit( component );
+			partials.set( node, null );
+			final int q = parent[ p ];
+			if ( q == p )
+				continue;
+			final int parentNode = nodeIds[ q ];
+			final C parentComponent = partials.get( parentNode );
+			if ( parentComponent == null )
+			{
+				setPosition( access, q, dimensions, min );
+				component.setValue( access.get() );
+				partials.set( parentNode, component );
+			}
+			else
+				parentComponent.merge( component );
+		}
+	}
+
+	static void link( final int p, final int q, final int[] parent, final int[] zpar )
+	{
+		if ( parent[ q ] < 0 )
+			return;
+		final int r = find( zpar, q );
+		if ( r != p )
+		{
+			parent[ r ] = p;
+			zpar[ r ] = p;
+		}
+	}
+
+	static int find( final int[] zpar, int i )
+	{
+		while ( zpar[ i ] != i )
+		{
+			zpar[ i ] = zpar[ zpar[ i ] ];
+			i = zpar[ i ];
+		}
+		return i;
+	}
+
+	private static boolean isCanonical( final int p, final int[] parent, final int[] levels )
+	{
+		final int q = parent[ p ];
+		return q == p || levels[ q ] != levels[ p ];
+	}
+
+	private static void setPosition( final RandomAccess< ? > access, final long index, final long[] dimensions, final long[] min )
+	{
+		long rest = index;
+		for ( int d = 0; d < dimensions.length; ++d )
+		{
+			access.setPosition( min[ d ] + rest % dimensions[ d ], d );
+			rest /= dimensions[ d ];
+		}
+	}
+
+	/**
+	 * Get primitive keys for the pixels of a {@link RealType} image, in flat
+	 * iteration order, that are increasing with the threshold order when
+	 * compared as unsigned values.
+	 */
+	static < T > long[] getKeys( final RandomAccessibleInterval< T > input, final boolean darkToBright )
+	{
+		final long[] keys = new long[ ( int ) Intervals.numElements( input ) ];
+		final Cursor< T > cursor = Views.flatIterable( input ).cursor();
+		if ( cursor.hasNext() && cursor.next() instanceof IntegerType )
+		{
+			cursor.reset();
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for ( int i = 0; i < keys.length; ++i )
+			{
+				final long v = ( ( IntegerType< ? > ) cursor.next() ).getIntegerLong();
+				keys[ i ] = v;
+				min = Math.min( min, v );
+				max = Math.max( max, v );
+			}
+			// unsigned offsets from the first value in threshold order
+			for ( int i = 0; i < keys.length; ++i )
+				keys[ i ] = darkToBright ? keys[ i ] - min : max - keys[ i ];
+		}
+		else
+		{
+			cursor.reset();
+			for ( int i = 0; i < keys.length; ++i )
+			{
+				// doubles as unsigned longs in the same order
+				final long bits = Double.doubleToLongBits( ( ( RealType< ? > ) cursor.next() ).getRealDouble() );
+				final long key = bits < 0 ? ~bits : bits | Long.MIN_VALUE;
+				keys[ i ] = darkToBright ? key : ~key;
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * @param order
+	 *            pixel indices sorted by key.
+	 * @param levels
+	 *            receives the rank of the key of each pixel among the
+	 *            distinct keys.
+	 */
+	static void getLevels( final int[] order, final long[] keys, final int[] levels )
+	{
+		int level = 0;
+		for ( int i = 0; i < order.length; ++i )
+		{
+			if ( i > 0 && keys[ order[ i ] ] != keys[ order[ i - 1 ] ] )
+				++level;
+			levels[ order[ i ] ] = level;
+		}
+	}
+
+	/**
+	 * Stable least-significant-digit radix sort of indices by unsigned keys,
+	 * with 16 bit digits. Only as many passes as the highest key bit requires
+	 * are made.
+	 * 
+	 * @return the indices {@code from ... to-1}, sorted by key.
+	 */
+	static int[] radixSort( final long[] keys, final int from, final int to )
+	{
+		final int size = to - from;
+		int[] order = new int[ size ];
+		int[] sorted = new int[ size ];
+		long bits = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			order[ i ] = from + i;
+			bits |= keys[ from + i ];
+		}
+		final int[] counts = new int[ ( 1 << 16 ) + 1 ];
+		int shift = 0;
+		do
+		{
+			Arrays.fill( counts, 0 );
+			for ( int i = from; i < to; ++i )
+				++counts[ ( int ) ( ( keys[ i ] >>> shift ) & 0xffff ) + 1 ];
+			for ( int b = 1; b < counts.length; ++b )
+				counts[ b ] += counts[ b - 1 ];
+			for ( int i = 0; i < size; ++i )
+			{
+				final int index = order[ i ];
+				sorted[ counts[ ( int ) ( ( keys[ index ] >>> shift ) & 0xffff ) ]++ ] = index;
+			}
+			final int[] tmp = order;
+			order = sorted;
+			sorted = tmp;
+			shift += 16;
+		}
+		while ( shift < 64 && ( bits >>> shift ) != 0 );
+		return order;
+	}
+
+	/**
+	 * Sort the pixels with a comparator, by a stable bottom-up merge sort.
+	 * 
+	 * @param levels
+	 *            receives the rank of the value of each pixel among the
+	 *            distinct values.
+	 * @return pixel indices sorted by threshold value, and by index for equal
+	 *         values.
+	 */
+	private static < T extends Type< T > > int[] sortByComparator( final RandomAccessibleInterval< T > input, final Comparator< T > comparator, final int[] levels )
+	{
+		final int n = input.numDimensions();
+		final long[] dimensions = new long[ n ];
+		final long[] min = new long[ n ];
+		input.dimensions( dimensions );
+		input.min( min );
+		final RandomAccess< T > a1 = input.randomAccess();
+		final RandomAccess< T > a2 = input.randomAccess();
+		final int size = levels.length;
+
+		int[] order = new int[ size ];
+		int[] sorted = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			order[ i ] = i;
+		for ( int width = 1; width < size; width *= 2 )
+		{
+			for ( int lo = 0; lo < size; lo += 2 * width )
+			{
+				final int mid = Math.min( lo + width, size );
+				final int hi = Math.min( lo + 2 * width, size );
+				int i = lo;
+				int j = mid;
+				for ( int k = lo; k < hi; ++k )
+				{
+					boolean takeLeft = i < mid;
+					if ( takeLeft && j < hi )
+					{
+						setPosition( a1, order[ i ], dimensions, min );
+						setPosition( a2, order[ j ], dimensions, min );
+						takeLeft = comparator.compare( a1.get(), a2.get() ) <= 0;
+					}
+					sorted[ k ] = takeLeft ? order[ i++ ] : order[ j++ ];
+				}
+			}
+			final int[] tmp = order;
+			order = sorted;
+			sorted = tmp;
+		}
+
+		final T previous = a1.get().createVariable();
+		int level = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			setPosition( a2, order[ i ], dimensions, min );
+			if ( i > 0 && comparator.compare( previous, a2.get() ) != 0 )
+				++level;
+			previous.set( a2.get() );
+			levels[ order[ i ] ] = level;
+		}
+		return order;
+	}
+
+	private UnionFindComponentTree()
+	{}
+}
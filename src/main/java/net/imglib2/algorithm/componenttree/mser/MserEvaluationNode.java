@@ -83,6 +83,11 @@ final class MserEvaluationNode< T extends Type< T > >
 	 */
 	final PixelList pixelList;
 
+	/**
+	 * Smallest flat index of a pixel in the connected component.
+	 */
+	final long minIndex;
+
 	/**
 	 * The child in the component tree from which we inherit the component size
 	 * history.
@@ -132,6 +137,7 @@ final class MserEvaluationNode< T extends Type< T > >
 		value = component.getValue().copy();
 		pixelList = new PixelList( component.pixelList );
 		size = pixelList.size();
+		minIndex = component.minIndex;
 
 		final ArrayList< MserEvaluationNode< T > > children = new ArrayList< MserEvaluationNode< T > >();
 		MserEvaluationNode< T > node = component.getEvaluationNode();
@@ -152,7 +158,8 @@ final class MserEvaluationNode< T extends Type< T > >
 			node = new MserEvaluationNode< T >( c.getEvaluationNode(), value, comparator, delta );
 			children.add( node );
 			node.setParent( this );
-			if ( c.size() > historySize )
+			// ties are broken by position, independent of the merge order
+			if ( c.size() > historySize || ( c.size() == historySize && c.minIndex < historyWinner.minIndex ) )
 			{
 				historyWinner = node;
 				historySize = c.size();
@@ -197,6 +204,7 @@ final class MserEvaluationNode< T extends Type< T > >
 		historyChild = child;
 		size = child.size;
 		pixelList = child.pixelList;
+		minIndex = child.minIndex;
 		this.value = value;
 		n = child.n;
 		mean = child.mean;
@@ -40,6 +40,7 @@ import net.imglib2.Localizable;
 import net.imglib2.algorithm.componenttree.PartialComponent;
 import net.imglib2.algorithm.componenttree.pixellist.PixelList;
 import net.imglib2.type.Type;
+import net.imglib2.util.IntervalIndexer;
 
 /**
  * Implementation of {@link PartialComponent} that stores a list of associated pixels
@@ -80,6 +81,13 @@ final class MserPartialComponent< T extends Type< T > > implements PartialCompon
 	 */
 	final double[] sumSquPos;
 
+	/**
+	 * smallest flat index of a pixel in the component.
+	 */
+	long minIndex;
+
+	private final long[] dimensions;
+
 	private final long[] tmp;
 
 	/**
@@ -108,6 +116,8 @@ final class MserPartialComponent< T extends Type< T > > implements PartialCompon
 	{
 		pixelList = new PixelList( generator.linkedList.randomAccess(), generator.dimensions );
 		n = generator.dimensions.length;
+		dimensions = generator.dimensions;
+		minIndex = Long.MAX_VALUE;
 		sumPos = new double[ n ];
 		sumSquPos = new double[ ( n * (n+1) ) / 2 ];
 		this.value = value.copy();
@@ -121,6 +131,7 @@ final class MserPartialComponent< T extends Type< T > > implements PartialCompon
 	{
 		pixelList.addPosition( position );
 		position.localize( tmp );
+		minIndex = Math.min( minIndex, IntervalIndexer.positionToIndex( tmp, dimensions ) );
 		int k = 0;
 		for ( int i = 0; i < n; ++i )
 		{
@@ -146,6 +157,7 @@ final class MserPartialComponent< T extends Type< T > > implements PartialCompon
 	public void merge( final MserPartialComponent< T > component )
 	{
 		pixelList.merge( component.pixelList );
+		minIndex = Math.min( minIndex, component.minIndex );
 		for ( int i = 0; i < sumPos.length; ++i )
 			sumPos[ i ] += component.sumPos[ i ];
 		for ( int i = 0; i < sumSquPos.length; ++i )
@@ -38,12 +38,15 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.componenttree.BuildComponentTree;
 import net.imglib2.algorithm.componenttree.ComponentForest;
+import net.imglib2.algorithm.componenttree.ParallelComponentTree;
 import net.imglib2.algorithm.componenttree.PartialComponent;
+import net.imglib2.algorithm.componenttree.UnionFindComponentTree;
 import net.imglib2.algorithm.componenttree.pixellist.PixelList;
 import net.imglib2.algorithm.componenttree.pixellist.PixelListComponent;
 import net.imglib2.img.ImgFactory;
@@ -216,6 +219,113 @@ public final class MserTree< T extends Type< T > > implements ComponentForest< M
 		return tree;
 	}
 
+	/**
+	 * Build a MSER tree from an input image in parallel, using
+	 * {@link ParallelComponentTree}. The underlying component tree is the same
+	 * as with
+	 * {@link #buildMserTree(RandomAccessibleInterval, RealType, long, long, double, double, boolean)}.
+	 * 
+	 * @param input
+	 *            the input image.
+	 * @param delta
+	 *            delta for computing instability score.
+	 * @param minSize
+	 *            minimum size (in pixels) of accepted MSER.
+	 * @param maxSize
+	 *            maximum size (in pixels) of accepted MSER.
+	 * @param maxVar
+	 *            maximum instability score of accepted MSER.
+	 * @param minDiversity
+	 *            minimal diversity of adjacent accepted MSER.
+	 * @param darkToBright
+	 *            whether to apply thresholds from dark to bright (true) or
+	 *            bright to dark (false)
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return MSER tree of the image.
+	 */
+	public static < T extends RealType< T > > MserTree< T > buildMserTreeUnionFind( final RandomAccessibleInterval< T > input, final T delta, final long minSize, final long maxSize, final double maxVar, final double minDiversity, final boolean darkToBright, final ExecutorService service )
+	{
+		return buildMserTreeUnionFind( input, delta, minSize, maxSize, maxVar, minDiversity, darkToBright, Runtime.getRuntime().availableProcessors(), service );
+	}
+
+	/**
+	 * Build a MSER tree from an input image in parallel, using
+	 * {@link ParallelComponentTree}. The underlying component tree is the same
+	 * as with
+	 * {@link #buildMserTree(RandomAccessibleInterval, RealType, long, long, double, double, boolean)}.
+	 * 
+	 * @param input
+	 *            the input image.
+	 * @param delta
+	 *            delta for computing instability score.
+	 * @param minSize
+	 *            minimum size (in pixels) of accepted MSER.
+	 * @param maxSize
+	 *            maximum size (in pixels) of accepted MSER.
+	 * @param maxVar
+	 *            maximum instability score of accepted MSER.
+	 * @param minDiversity
+	 *            minimal diversity of adjacent accepted MSER.
+	 * @param darkToBright
+	 *            whether to apply thresholds from dark to bright (true) or
+	 *            bright to dark (false)
+	 * @param numTiles
+	 *            the number of tiles to split the image into.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return MSER tree of the image.
+	 */
+	public static < T extends RealType< T > > MserTree< T > buildMserTreeUnionFind( final RandomAccessibleInterval< T > input, final T delta, final long minSize, final long maxSize, final double maxVar, final double minDiversity, final boolean darkToBright, final int numTiles, final ExecutorService service )
+	{
+		final ImgFactory< LongType > factory = Util.getArrayOrCellImgFactory( input, new LongType() );
+		final T max = delta.createVariable();
+		max.setReal( darkToBright ? delta.getMaxValue() : delta.getMinValue() );
+		final MserPartialComponentGenerator< T > generator = new MserPartialComponentGenerator< T >( max, input, factory );
+		final Comparator< T > comparator = darkToBright ? new BuildComponentTree.DarkToBright< T >() : new BuildComponentTree.BrightToDark< T >();
+		final ComputeDelta< T > computeDelta = darkToBright ? new ComputeDeltaDarkToBright< T >( delta ) : new ComputeDeltaBrightToDark< T >( delta );
+		final MserTree< T > tree = new MserTree< T >( comparator, computeDelta, minSize, maxSize, maxVar, minDiversity );
+		ParallelComponentTree.buildComponentTree( input, generator, tree, darkToBright, numTiles, service );
+		tree.pruneDuplicates();
+		return tree;
+	}
+
+	/**
+	 * Build a MSER tree from an input image, using
+	 * {@link UnionFindComponentTree} instead of {@link BuildComponentTree}.
+	 * The underlying component tree is the same.
+	 * 
+	 * @param input
+	 *            the input image.
+	 * @param delta
+	 *            delta for computing instability score.
+	 * @param minSize
+	 *            minimum size (in pixels) of accepted MSER.
+	 * @param maxSize
+	 *            maximum size (in pixels) of accepted MSER.
+	 * @param maxVar
+	 *            maximum instability score of accepted MSER.
+	 * @param minDiversity
+	 *            minimal diversity of adjacent accepted MSER.
+	 * @param darkToBright
+	 *            whether to apply thresholds from dark to bright (true) or
+	 *            bright to dark (false)
+	 * @return MSER tree of the image.
+	 */
+	public static < T extends RealType< T > > MserTree< T > buildMserTreeUnionFind( final RandomAccessibleInterval< T > input, final T delta, final long minSize, final long maxSize, final double maxVar, final double minDiversity, final boolean darkToBright )
+	{
+		final ImgFactory< LongType > factory = Util.getArrayOrCellImgFactory( input, new LongType() );
+		final T max = delta.createVariable();
+		max.setReal( darkToBright ? delta.getMaxValue() : delta.getMinValue() );
+		final MserPartialComponentGenerator< T > generator = new MserPartialComponentGenerator< T >( max, input, factory );
+		final Comparator< T > comparator = darkToBright ? new BuildComponentTree.DarkToBright< T >() : new BuildComponentTree.BrightToDark< T >();
+		final ComputeDelta< T > computeDelta = darkToBright ? new ComputeDeltaDarkToBright< T >( delta ) : new ComputeDeltaBrightToDark< T >( delta );
+		final MserTree< T > tree = new MserTree< T >( comparator, computeDelta, minSize, maxSize, maxVar, minDiversity );
+		UnionFindComponentTree.buildComponentTree( input, generator, tree, comparator );
+		tree.pruneDuplicates();
+		return tree;
+	}
+
 	/**
 	 * Build a MSER tree from an input image. Calls
 	 * {@link #buildMserTree(RandomAccessibleInterval, ComputeDelta, long, long, double, double, ImgFactory, Type, Comparator)}
@@ -401,7 +511,10 @@ public final class MserTree< T extends Type< T > > implements ComponentForest< M
 		{
 			final Mser< T > mser = new Mser< T >( node );
 			for ( final Mser< T > m : node.mserThisOrChildren )
+			{
 				mser.children.add( m );
+				m.parent = mser;
+			}
 			node.mserThisOrChildren.clear();
 			node.mserThisOrChildren.add( mser );
 
@@ -82,7 +82,10 @@ public final class PixelListComponent< T extends Type< T > > implements Componen
 		value = intermediate.getValue().copy();
 		pixelList = new PixelList( intermediate.pixelList );
 		if ( intermediate.emittedComponent != null )
+		{
 			children.add( intermediate.emittedComponent );
+			intermediate.emittedComponent.parent = this;
+		}
 		for ( final PixelListPartialComponent< T > c : intermediate.children )
 		{
 			children.add( c.emittedComponent );
@@ -39,11 +39,14 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.componenttree.BuildComponentTree;
 import net.imglib2.algorithm.componenttree.ComponentTree;
+import net.imglib2.algorithm.componenttree.ParallelComponentTree;
 import net.imglib2.algorithm.componenttree.PartialComponent;
+import net.imglib2.algorithm.componenttree.UnionFindComponentTree;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.cell.CellImgFactory;
@@ -114,6 +117,83 @@ public final class PixelListComponentTree< T extends Type< T > > implements Comp
 		return tree;
 	}
 
+	/**
+	 * Build a component tree from an input image, using
+	 * {@link UnionFindComponentTree} instead of {@link BuildComponentTree}.
+	 * The resulting tree is the same, but nodes may be in a different order.
+	 *
+	 * @param input
+	 *            the input image.
+	 * @param type
+	 *            a variable of the input image type.
+	 * @param darkToBright
+	 *            whether to apply thresholds from dark to bright (true) or
+	 *            bright to dark (false)
+	 * @return component tree of the image.
+	 */
+	public static < T extends RealType< T > > PixelListComponentTree< T > buildComponentTreeUnionFind( final RandomAccessibleInterval< T > input, final T type, final boolean darkToBright )
+	{
+		final ImgFactory< LongType > factory = Util.getArrayOrCellImgFactory( input, new LongType() );
+		final T max = type.createVariable();
+		max.setReal( darkToBright ? type.getMaxValue() : type.getMinValue() );
+		final PixelListPartialComponentGenerator< T > generator = new PixelListPartialComponentGenerator< T >( max, input, factory );
+		final PixelListComponentTree< T > tree = new PixelListComponentTree< T >();
+		UnionFindComponentTree.buildComponentTree( input, generator, tree, darkToBright );
+		return tree;
+	}
+
+	/**
+	 * Build a component tree from an input image in parallel, using
+	 * {@link ParallelComponentTree}. The resulting tree is the same as with
+	 * {@link #buildComponentTree(RandomAccessibleInterval, RealType, boolean)},
+	 * but nodes may be in a different order.
+	 *
+	 * @param input
+	 *            the input image.
+	 * @param type
+	 *            a variable of the input image type.
+	 * @param darkToBright
+	 *            whether to apply thresholds from dark to bright (true) or
+	 *            bright to dark (false)
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return component tree of the image.
+	 */
+	public static < T extends RealType< T > > PixelListComponentTree< T > buildComponentTreeUnionFind( final RandomAccessibleInterval< T > input, final T type, final boolean darkToBright, final ExecutorService service )
+	{
+		return buildComponentTreeUnionFind( input, type, darkToBright, Runtime.getRuntime().availableProcessors(), service );
+	}
+
+	/**
+	 * Build a component tree from an input image in parallel, using
+	 * {@link ParallelComponentTree}. The resulting tree is the same as with
+	 * {@link #buildComponentTree(RandomAccessibleInterval, RealType, boolean)},
+	 * but nodes may be in a different order.
+	 *
+	 * @param input
+	 *            the input image.
+	 * @param type
+	 *            a variable of the input image type.
+	 * @param darkToBright
+	 *            whether to apply thresholds from dark to bright (true) or
+	 *            bright to dark (false)
+	 * @param numTiles
+	 *            the number of tiles to split the image into.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return component tree of the image.
+	 */
+	public static < T extends RealType< T > > PixelListComponentTree< T > buildComponentTreeUnionFind( final RandomAccessibleInterval< T > input, final T type, final boolean darkToBright, final int numTiles, final ExecutorService service )
+	{
+		final ImgFactory< LongType > factory = Util.getArrayOrCellImgFactory( input, new LongType() );
+		final T max = type.createVariable();
+		max.setReal( darkToBright ? type.getMaxValue() : type.getMinValue() );
+		final PixelListPartialComponentGenerator< T > generator = new PixelListPartialComponentGenerator< T >( max, input, factory );
+		final PixelListComponentTree< T > tree = new PixelListComponentTree< T >();
+		ParallelComponentTree.buildComponentTree( input, generator, tree, darkToBright, numTiles, service );
+		return tree;
+	}
+
 	/**
 	 * Build a component tree from an input image. Calls
 	 * {@link #buildComponentTree(RandomAccessibleInterval, Type, Comparator, ImgFactory)}
@@ -158,6 +238,29 @@ public final class PixelListComponentTree< T extends Type< T > > implements Comp
 		return tree;
 	}
 
+	/**
+	 * Build a component tree from an input image, using
+	 * {@link UnionFindComponentTree} instead of {@link BuildComponentTree}.
+	 * The resulting tree is the same, but nodes may be in a different order.
+	 *
+	 * @param input
+	 *            the input image.
+	 * @param maxValue
+	 *            a value (e.g., grey-level) greater than any occurring in the
+	 *            input image.
+	 * @param comparator
+	 *            determines ordering of threshold values.
+	 * @return component tree of the image.
+	 */
+	public static < T extends Type< T > > PixelListComponentTree< T > buildComponentTreeUnionFind( final RandomAccessibleInterval< T > input, final T maxValue, final Comparator< T > comparator )
+	{
+		final ImgFactory< LongType > factory = Util.getArrayOrCellImgFactory( input, new LongType() );
+		final PixelListPartialComponentGenerator< T > generator = new PixelListPartialComponentGenerator< T >( maxValue, input, factory );
+		final PixelListComponentTree< T > tree = new PixelListComponentTree< T >();
+		UnionFindComponentTree.buildComponentTree( input, generator, tree, comparator );
+		return tree;
+	}
+
 	private PixelListComponent< T > root;
 
 	private final ArrayList< PixelListComponent< T > > nodes;
@@ -0,0 +1,268 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.algorithm.fill;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+import net.imglib2.view.Views;
+
+/**
+ * Flood fill with bounded memory and early termination. Visited pixels are
+ * tracked in a sparse bitset over the source interval, whose memory grows
+ * with the filled region rather than with the interval, so every pixel is
+ * queued at most once and the filter does not need to look at the target. The fill
+ * stops after a maximum number of pixels, or as soon as a
+ * {@link StopCondition} fires for a filled pixel, and reports the number of
+ * filled pixels and their bounding box.
+ */
+public final class BoundedFloodFill {
+
+    /**
+     * Why a fill ended.
+     */
+    public static enum Termination
+    {
+        /** The connected component was filled completely. */
+        COMPLETE,
+        /** The component has more pixels than the maximum count. */
+        MAX_COUNT,
+        /** The stop condition fired. */
+        STOP_CONDITION
+    }
+
+    /**
+     * Size and bounding box of the filled pixels.
+     */
+    public static final class Result {
+
+        private final long count;
+
+        private final long[] min;
+
+        private final long[] max;
+
+        private final Termination termination;
+
+        Result( final long count, final long[] min, final long[] max, final Termination termination )
+        {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.termination = termination;
+        }
+
+        /**
+         * @return the number of filled pixels.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return the bounding box of the filled pixels, or {@code null} if
+         *         no pixel was filled.
+         */
+        public Interval getBoundingBox()
+        {
+            return count == 0 ? null : new FinalInterval( min, max );
+        }
+
+        public Termination getTermination()
+        {
+            return termination;
+        }
+
+        /**
+         * @return whether the connected component was filled completely.
+         */
+        public boolean isComplete()
+        {
+            return termination == Termination.COMPLETE;
+        }
+    }
+
+    /**
+     * Iterative n-dimensional flood fill for arbitrary neighborhoods inside the interval of source: Starting at seed
+     * location, write fillLabel into target at current location and continue for each pixel in neighborhood defined by
+     * shape if filter accepts it and it has not been visited yet.
+     *
+     * At most maxCount pixels are filled. If the connected component is larger, the fill stops with
+     * {@link Termination#MAX_COUNT}. If stopCondition is not null and fires for a filled pixel, the fill stops with
+     * {@link Termination#STOP_CONDITION}.
+     *
+     * @param source input. Only locations inside source are filled.
+     * @param target {@link RandomAccessible} to be written into. May be the same as input.
+     * @param seed Start flood fill at this location.
+     * @param seedLabel Immutable. Reference value of input at seed location.
+     * @param fillLabel Immutable. Value to be written into valid flood fill locations.
+     * @param shape Defines neighborhood that is considered for connected components, e.g. {@link net.imglib2.algorithm.neighborhood.DiamondShape}
+     * @param filter Returns true if pixel is part of the same connected component. Visited pixels are excluded by the fill.
+     * @param writer Defines how fillLabel is written into target at current location.
+     * @param maxCount maximum number of pixels to fill.
+     * @param stopCondition Stop after filling a pixel for which this returns true. May be null.
+     * @return number of filled pixels, their bounding box, and why the fill ended.
+     * @throws IllegalArgumentException if source has {@code 2^63} or more pixels.
+     */
+    public static < T, U > Result fill(
+            final RandomAccessibleInterval< T > source,
+            final RandomAccessible< U > target,
+            final Localizable seed,
+            final T seedLabel,
+            final U fillLabel,
+            final Shape shape,
+            final Filter< Pair< T, U >, Pair< T, U > > filter,
+            final Writer< U > writer,
+            final long maxCount,
+            final StopCondition< Pair< T, U > > stopCondition )
+    {
+        final int n = source.numDimensions();
+        final long[] sourceMin = new long[ n ];
+        final long[] dimensions = new long[ n ];
+        source.min( sourceMin );
+        source.dimensions( dimensions );
+        long size = 1;
+        for ( int d = 0; d < n; ++d )
+        {
+            if ( size > Long.MAX_VALUE / dimensions[ d ] )
+                throw new IllegalArgumentException( "Intervals with 2^63 or more pixels are not supported." );
+            size *= dimensions[ d ];
+        }
+        final SparseBitSet visited = new SparseBitSet();
+
+        final long[] min = new long[ n ];
+        final long[] max = new long[ n ];
+        Arrays.fill( min, Long.MAX_VALUE );
+        Arrays.fill( max, Long.MIN_VALUE );
+
+        final long seedIndex = getIndex( seed, sourceMin, dimensions );
+        if ( seedIndex < 0 || maxCount <= 0 )
+            return new Result( 0, min, max, seedIndex < 0 ? Termination.COMPLETE : Termination.MAX_COUNT );
+
+        final ValuePair< T, U > reference = new ValuePair< T, U >( seedLabel, fillLabel );
+        final RandomAccessible< Pair< T, U > > paired = Views.pair( source, target );
+        final RandomAccess< Pair< T, U > > access = paired.randomAccess();
+        final RandomAccess< Neighborhood< Pair< T, U > > > neighborhoodAccess = shape.neighborhoodsRandomAccessible( paired ).randomAccess();
+        final Point center = new Point( n );
+        final Point neighbor = new Point( n );
+
+        final LongRingBuffer queue = new LongRingBuffer();
+        long count = 0;
+
+        access.setPosition( seed );
+        visited.add( seedIndex );
+        writer.write( fillLabel, access.get().getB() );
+        ++count;
+        include( seed, min, max );
+        if ( stopCondition != null && stopCondition.stop( access, access.get() ) )
+            return new Result( count, min, max, Termination.STOP_CONDITION );
+        queue.add( seedIndex );
+
+        while ( !queue.isEmpty() )
+        {
+            long index = queue.remove();
+            for ( int d = 0; d < n; ++d )
+            {
+                center.setPosition( sourceMin[ d ] + index % dimensions[ d ], d );
+                index /= dimensions[ d ];
+            }
+            neighborhoodAccess.setPosition( center );
+            final Cursor< Pair< T, U > > cursor = neighborhoodAccess.get().localizingCursor();
+            while ( cursor.hasNext() )
+            {
+                cursor.fwd();
+                neighbor.setPosition( cursor );
+                final long neighborIndex = getIndex( neighbor, sourceMin, dimensions );
+                if ( neighborIndex < 0 || visited.contains( neighborIndex ) )
+                    continue;
+                final Pair< T, U > p = cursor.get();
+                if ( !filter.accept( p, reference ) )
+                    continue;
+                if ( count == maxCount )
+                    return new Result( count, min, max, Termination.MAX_COUNT );
+                visited.add( neighborIndex );
+                writer.write( fillLabel, p.getB() );
+                ++count;
+                include( neighbor, min, max );
+                if ( stopCondition != null && stopCondition.stop( neighbor, p ) )
+                    return new Result( count, min, max, Termination.STOP_CONDITION );
+                queue.add( neighborIndex );
+            }
+        }
+        return new Result( count, min, max, Termination.COMPLETE );
+    }
+
+    /**
+     * @return flat index of position in the interval given by min and
+     *         dimensions, or -1 if outside.
+     */
+    private static long getIndex( final Localizable position, final long[] min, final long[] dimensions )
+    {
+        long index = 0;
+        for ( int d = dimensions.length - 1; d >= 0; --d )
+        {
+            final long p = position.getLongPosition( d ) - min[ d ];
+            if ( p < 0 || p >= dimensions[ d ] )
+                return -1;
+            index = index * dimensions[ d ] + p;
+        }
+        return index;
+    }
+
+    private static void include( final Localizable position, final long[] min, final long[] max )
+    {
+        for ( int d = 0; d < min.length; ++d )
+        {
+            min[ d ] = Math.min( min[ d ], position.getLongPosition( d ) );
+            max[ d ] = Math.max( max[ d ], position.getLongPosition( d ) );
+        }
+    }
+
+    private BoundedFloodFill()
+    {}
+
+}
@@ -40,7 +40,10 @@ import net.imglib2.Cursor;
 import net.imglib2.Localizable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.type.Type;
 import net.imglib2.util.Pair;
@@ -205,4 +208,245 @@ public class FloodFill {
 
     }
 
+
+    /**
+     * Scanline flood fill inside the interval of source: Same result as
+     * {@link FloodFill#fill(RandomAccessible, RandomAccessible, Localizable, Object, Object, Shape, Filter, Writer)}
+     * restricted to source, but whole runs along dimension 0 are filled at once and only the first pixel of each run
+     * on a neighboring line is queued, as a packed index into the interval.
+     *
+     * This fast path is used for {@link DiamondShape} with radius 1 (face connectivity) and {@link RectangleShape}
+     * with span 1 (full connectivity). For any other shape, this falls back to
+     * {@link BoundedFloodFill#fill(RandomAccessibleInterval, RandomAccessible, Localizable, Object, Object, Shape, Filter, Writer, long, StopCondition)},
+     * which is restricted to source as well and never reads or writes outside of it.
+     *
+     * @param source input. Only locations inside source are filled.
+     * @param target {@link RandomAccessible} to be written into. May be the same as input.
+     * @param seed Start flood fill at this location.
+     * @param seedLabel Immutable. Reference value of input at seed location.
+     * @param fillLabel Immutable. Value to be written into valid flood fill locations.
+     * @param shape Defines neighborhood that is considered for connected components.
+     * @param filter Returns true if pixel has not been visited yet and should be written into. Returns false if target pixel has been visited
+     *                   or source pixel is not part of the same connected component.
+     * @param writer Defines how fillLabel is written into target at current location.
+     * @param <T> No restrictions on T. Appropriate comparator is the only requirement.
+     * @param <U> No restrictions on U. Appropriate comparator and writer is the only requirement.
+     */
+    public static < T, U > void scanlineFill(
+            final RandomAccessibleInterval< T > source,
+            final RandomAccessible< U > target,
+            final Localizable seed,
+            final T seedLabel,
+            final U fillLabel,
+            final Shape shape,
+            final Filter< Pair< T, U >, Pair< T, U > > filter,
+            final Writer< U > writer )
+    {
+        final boolean diagonals;
+        if ( shape instanceof DiamondShape && ( ( DiamondShape ) shape ).getRadius() == 1 )
+            diagonals = false;
+        else if ( shape instanceof RectangleShape && ( ( RectangleShape ) shape ).getSpan() == 1 )
+            diagonals = true;
+        else
+        {
+            BoundedFloodFill.fill( source, target, seed, seedLabel, fillLabel, shape, filter, writer, Long.MAX_VALUE, null );
+            return;
+        }
+
+        final int n = source.numDimensions();
+        final long[] min = new long[ n ];
+        final long[] max = new long[ n ];
+        source.min( min );
+        source.max( max );
+        final long[] position = new long[ n ];
+        seed.localize( position );
+        for ( int d = 0; d < n; ++d )
+            if ( position[ d ] < min[ d ] || position[ d ] > max[ d ] )
+                return;
+
+        final ScanlineFill< T, U > scanline = new ScanlineFill< T, U >( source, target, seedLabel, fillLabel, diagonals, filter, writer );
+        scanline.fillFrom( position );
+    }
+
+
+    private static final class ScanlineFill< T, U >
+    {
+        private final int n;
+
+        private final long[] min;
+
+        private final long[] max;
+
+        private final long[] dimensions;
+
+        private final RandomAccess< Pair< T, U > > access;
+
+        private final ValuePair< T, U > reference;
+
+        private final U fillLabel;
+
+        private final Filter< Pair< T, U >, Pair< T, U > > filter;
+
+        private final Writer< U > writer;
+
+        /**
+         * Offsets of the neighboring lines in dimensions 1 ... n-1.
+         */
+        private final long[][] lineOffsets;
+
+        /**
+         * How far runs on neighboring lines extend beyond a filled run.
+         */
+        private final long extension;
+
+        private final LongRingBuffer queue = new LongRingBuffer();
+
+        private final long[] line;
+
+        ScanlineFill(
+                final RandomAccessibleInterval< T > source,
+                final RandomAccessible< U > target,
+                final T seedLabel,
+                final U fillLabel,
+                final boolean diagonals,
+                final Filter< Pair< T, U >, Pair< T, U > > filter,
+                final Writer< U > writer )
+        {
+            n = source.numDimensions();
+            min = new long[ n ];
+            max = new long[ n ];
+            dimensions = new long[ n ];
+            source.min( min );
+            source.max( max );
+            source.dimensions( dimensions );
+            access = Views.pair( source, target ).randomAccess();
+            reference = new ValuePair< T, U >( seedLabel, fillLabel );
+            this.fillLabel = fillLabel;
+            this.filter = filter;
+            this.writer = writer;
+            lineOffsets = diagonals ? fullLineOffsets( n ) : faceLineOffsets( n );
+            extension = diagonals ? 1 : 0;
+            line = new long[ n ];
+        }
+
+        void fillFrom( final long[] seed )
+        {
+            access.setPosition( seed );
+            writer.write( fillLabel, access.get().getB() );
+            fillRun( seed );
+
+            final long[] position = new long[ n ];
+            while ( !queue.isEmpty() )
+            {
+                long index = queue.remove();
+                for ( int d = 0; d < n; ++d )
+                {
+                    position[ d ] = min[ d ] + index % dimensions[ d ];
+                    index /= dimensions[ d ];
+                }
+                access.setPosition( position );
+                final Pair< T, U > p = access.get();
+                if ( filter.accept( p, reference ) )
+                {
+                    writer.write( fillLabel, p.getB() );
+                    fillRun( position );
+                }
+            }
+        }
+
+        /**
+         * Extend the run through the filled pixel at position along dimension
+         * 0, and queue the runs on neighboring lines.
+         */
+        private void fillRun( final long[] position )
+        {
+            long x0 = position[ 0 ];
+            access.setPosition( position );
+            while ( x0 > min[ 0 ] )
+            {
+                access.bck( 0 );
+                final Pair< T, U > p = access.get();
+                if ( !filter.accept( p, reference ) )
+                    break;
+                writer.write( fillLabel, p.getB() );
+                --x0;
+            }
+            long x1 = position[ 0 ];
+            access.setPosition( position );
+            while ( x1 < max[ 0 ] )
+            {
+                access.fwd( 0 );
+                final Pair< T, U > p = access.get();
+                if ( !filter.accept( p, reference ) )
+                    break;
+                writer.write( fillLabel, p.getB() );
+                ++x1;
+            }
+
+            final long from = Math.max( min[ 0 ], x0 - extension );
+            final long to = Math.min( max[ 0 ], x1 + extension );
+            for ( final long[] offset : lineOffsets )
+            {
+                boolean inside = true;
+                for ( int d = 1; d < n && inside; ++d )
+                {
+                    line[ d ] = position[ d ] + offset[ d ];
+                    inside = line[ d ] >= min[ d ] && line[ d ] <= max[ d ];
+                }
+                if ( inside )
+                    queueRuns( from, to );
+            }
+        }
+
+        /**
+         * Queue the first pixel of each run of accepted pixels in
+         * {@code [from, to]} on the line given by {@link #line}.
+         */
+        private void queueRuns( final long from, final long to )
+        {
+            line[ 0 ] = from;
+            access.setPosition( line );
+            long lineIndex = 0;
+            for ( int d = n - 1; d > 0; --d )
+                lineIndex = ( lineIndex + line[ d ] - min[ d ] ) * dimensions[ d - 1 ];
+            boolean inRun = false;
+            for ( long x = from; x <= to; ++x, access.fwd( 0 ) )
+            {
+                final boolean accepted = filter.accept( access.get(), reference );
+                if ( accepted && !inRun )
+                    queue.add( lineIndex + x - min[ 0 ] );
+                inRun = accepted;
+            }
+        }
+
+        private static long[][] faceLineOffsets( final int n )
+        {
+            final long[][] offsets = new long[ 2 * ( n - 1 ) ][ n ];
+            for ( int d = 1; d < n; ++d )
+            {
+                offsets[ 2 * d - 2 ][ d ] = -1;
+                offsets[ 2 * d - 1 ][ d ] = 1;
+            }
+            return offsets;
+        }
+
+        private static long[][] fullLineOffsets( final int n )
+        {
+            int numLines = 1;
+            for ( int d = 1; d < n; ++d )
+                numLines *= 3;
+            final long[][] offsets = new long[ numLines - 1 ][ n ];
+            int k = 0;
+            for ( int i = 0; i < numLines; ++i )
+            {
+                if ( i == numLines / 2 )
+                    continue;
+                for ( int d = 1, j = i; d < n; ++d, j /= 3 )
+                    offsets[ k ][ d ] = j % 3 - 1;
+                ++k;
+            }
+            return offsets;
+        }
+    }
+
 }
@@ -0,0 +1,335 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.algorithm.fill;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.imglib2.Cursor;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.util.FutureUtils;
+import net.imglib2.type.Type;
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+import net.imglib2.view.Views;
+
+/**
+ * Flood fill from many seeds at once. The fronts of all seeds are expanded
+ * together, one breadth-first level at a time, and each level is split among
+ * the threads of an {@link ExecutorService}. Pixels are claimed lock-free by a
+ * compare-and-set on a primitive array of seed ids, so every pixel is filled
+ * by exactly one seed. A pixel that is reached by several seeds in the same
+ * level goes to the seed with the smallest index, so the result does not
+ * depend on the number of threads or their timing.
+ *
+ * Fill labels are written by the calling thread after all seeds have claimed
+ * the pixels of a level, so the target need not allow concurrent writes,
+ * e.g., it may be a {@link net.imglib2.type.logic.BitType} image. Only pixels
+ * inside the interval of the source are filled.
+ */
+public final class MultiSeedFloodFill {
+
+    /**
+     * Flood fill from each seed, writing the respective fill label. Seed
+     * labels are extracted from source at the seed locations, and fill labels
+     * are written by {@link TypeWriter}.
+     *
+     * Convenience call to {@link MultiSeedFloodFill#fill(RandomAccessibleInterval, RandomAccessible, List, List, List, Shape, Filter, Writer, ExecutorService)}.
+     *
+     * @param source input. Only locations inside source are filled.
+     * @param target {@link RandomAccessible} to be written into. May be the same as input.
+     * @param seeds Start flood fill at these locations.
+     * @param fillLabels Immutable. Value to be written for each seed.
+     * @param shape Defines neighborhood that is considered for connected components.
+     * @param filter Returns true if a pixel belongs to the same connected component as the seed (the reference).
+     * @param service service providing threads for multi-threading
+     * @return the number of pixels filled from each seed.
+     */
+    public static < T extends Type< T >, U extends Type< U > > long[] fill(
+            final RandomAccessibleInterval< T > source,
+            final RandomAccessible< U > target,
+            final List< ? extends Localizable > seeds,
+            final List< ? extends U > fillLabels,
+            final Shape shape,
+            final Filter< Pair< T, U >, Pair< T, U > > filter,
+            final ExecutorService service )
+    {
+        final RandomAccess< T > access = source.randomAccess();
+        final ArrayList< T > seedLabels = new ArrayList< T >( seeds.size() );
+        for ( final Localizable seed : seeds )
+        {
+            access.setPosition( seed );
+            seedLabels.add( access.get().copy() );
+        }
+        return fill( source, target, seeds, seedLabels, fillLabels, shape, filter, new TypeWriter< U >(), service );
+    }
+
+    /**
+     * Flood fill from each seed, writing the respective fill label: Starting
+     * at the seeds, write the fill label of a seed into target at each pixel
+     * in the neighborhood defined by shape of a pixel filled from that seed,
+     * if filter accepts the pixel with respect to the seed and no other seed
+     * has claimed the pixel. Of several seeds that reach a pixel in the same
+     * breadth-first level, the one with the smallest index in seeds fills it.
+     * The filter sees target as of the end of the previous level. Seed
+     * locations are filled unconditionally.
+     *
+     * @param source input. Only locations inside source are filled.
+     * @param target {@link RandomAccessible} to be written into. May be the same as input.
+     * @param seeds Start flood fill at these locations.
+     * @param seedLabels Immutable. Reference value of input at each seed location.
+     * @param fillLabels Immutable. Value to be written for each seed.
+     * @param shape Defines neighborhood that is considered for connected components.
+     * @param filter Returns true if a pixel belongs to the same connected component as the seed (the reference).
+     * @param writer Defines how fill labels are written into target at current location.
+     * @param service service providing threads for multi-threading
+     * @return the number of pixels filled from each seed.
+     */
+    public static < T, U > long[] fill(
+            final RandomAccessibleInterval< T > source,
+            final RandomAccessible< U > target,
+            final List< ? extends Localizable > seeds,
+            final List< ? extends T > seedLabels,
+            final List< ? extends U > fillLabels,
+            final Shape shape,
+            final Filter< Pair< T, U >, Pair< T, U > > filter,
+            final Writer< U > writer,
+            final ExecutorService service )
+    {
+        final int n = source.numDimensions();
+        final long[] min = new long[ n ];
+        final long[] dimensions = new long[ n ];
+        source.min( min );
+        source.dimensions( dimensions );
+        long size = 1;
+        for ( int d = 0; d < n; ++d )
+            size *= dimensions[ d ];
+        if ( size >= Integer.MAX_VALUE )
+            throw new IllegalArgumentException( "source has too many pixels: " + size );
+        if ( seedLabels.size() != seeds.size() || fillLabels.size() != seeds.size() )
+            throw new IllegalArgumentException( "need one seed label and one fill label per seed" );
+
+        final List< ValuePair< T, U > > references = new ArrayList< ValuePair< T, U > >( seeds.size() );
+        for ( int s = 0; s < seeds.size(); ++s )
+            references.add( new ValuePair< T, U >( seedLabels.get( s ), fillLabels.get( s ) ) );
+
+        // seed id + 1 of each filled pixel, 0 if not reached yet, or
+        // -( seed id + 1 ) of the smallest seed that reached the pixel in the
+        // current level
+        final AtomicIntegerArray claims = new AtomicIntegerArray( ( int ) size );
+        final long[][] offsets = getOffsets( source, shape );
+        final RandomAccess< Pair< T, U > > access = Views.pair( source, target ).randomAccess();
+        final long[] position = new long[ n ];
+        TLongArrayList frontier = new TLongArrayList();
+        for ( int s = 0; s < seeds.size(); ++s )
+        {
+            seeds.get( s ).localize( position );
+            final long index = getIndex( position, min, dimensions );
+            if ( index >= 0 && claims.compareAndSet( ( int ) index, 0, s + 1 ) )
+            {
+                access.setPosition( position );
+                writer.write( fillLabels.get( s ), access.get().getB() );
+                frontier.add( index );
+            }
+        }
+
+        final int numTasks = Runtime.getRuntime().availableProcessors() * 4;
+        final ArrayList< Future< TLongArrayList > > futures = new ArrayList< Future< TLongArrayList > >();
+        while ( !frontier.isEmpty() )
+        {
+            final long[] current = frontier.toArray();
+            final int nt = Math.max( 1, Math.min( numTasks, current.length / 1024 ) );
+            for ( int t = 0; t < nt; ++t )
+            {
+                final int from = ( int ) ( ( long ) t * current.length / nt );
+                final int to = ( int ) ( ( long ) ( t + 1 ) * current.length / nt );
+                futures.add( service.submit( new Callable< TLongArrayList >()
+                {
+                    @Override
+                    public TLongArrayList call()
+                    {
+                        final TLongArrayList next = new TLongArrayList();
+                        final RandomAccess< Pair< T, U > > pairAccess = Views.pair( source, target ).randomAccess();
+                        final long[] center = new long[ n ];
+                        final long[] neighbor = new long[ n ];
+                        for ( int i = from; i < to; ++i )
+                        {
+                            final int index = ( int ) current[ i ];
+                            final int claim = claims.get( index );
+                            final ValuePair< T, U > reference = references.get( claim - 1 );
+                            long idx = index;
+                            for ( int d = 0; d < n; ++d )
+                            {
+                                center[ d ] = min[ d ] + idx % dimensions[ d ];
+                                idx /= dimensions[ d ];
+                            }
+                            for ( final long[] offset : offsets )
+                            {
+                                for ( int d = 0; d < n; ++d )
+                                    neighbor[ d ] = center[ d ] + offset[ d ];
+                                final long neighborIndex = getIndex( neighbor, min, dimensions );
+                                if ( neighborIndex < 0 || !isClaimable( claims.get( ( int ) neighborIndex ), claim ) )
+                                    continue;
+                                pairAccess.setPosition( neighbor );
+                                if ( filter.accept( pairAccess.get(), reference ) && claim( claims, ( int ) neighborIndex, claim ) )
+                                    next.add( neighborIndex );
+                            }
+                        }
+                        return next;
+                    }
+                } ) );
+            }
+            frontier = new TLongArrayList();
+            for ( final TLongArrayList next : FutureUtils.getAllFutures( futures ) )
+                frontier.addAll( next );
+
+            // fill the pixels of the level now that all seeds competed for them
+            for ( int i = 0; i < frontier.size(); ++i )
+            {
+                final int index = ( int ) frontier.get( i );
+                final int claim = -claims.get( index );
+                claims.set( index, claim );
+                long idx = index;
+                for ( int d = 0; d < n; ++d )
+                {
+                    position[ d ] = min[ d ] + idx % dimensions[ d ];
+                    idx /= dimensions[ d ];
+                }
+                access.setPosition( position );
+                writer.write( fillLabels.get( claim - 1 ), access.get().getB() );
+            }
+        }
+
+        final long[] counts = new long[ seeds.size() ];
+        for ( int i = 0; i < size; ++i )
+        {
+            final int claim = claims.get( i );
+            if ( claim != 0 )
+                ++counts[ claim - 1 ];
+        }
+        return counts;
+    }
+
+    /**
+     * @return whether a seed with the given claim (seed id + 1) can claim a
+     *         pixel whose claims entry is current, i.e., the pixel is not
+     *         filled yet and no seed with a smaller id reached it in the
+     *         current level.
+     */
+    private static boolean isClaimable( final int current, final int claim )
+    {
+        return current == 0 || ( current < 0 && -current > claim );
+    }
+
+    /**
+     * Claim pixel index for the seed with the given claim (seed id + 1) in
+     * the current level, unless a seed with a smaller id did.
+     *
+     * @return whether no seed had reached the pixel before in the current
+     *         level, i.e., whether the caller must add it to the next front.
+     */
+    private static boolean claim( final AtomicIntegerArray claims, final int index, final int claim )
+    {
+        while ( true )
+        {
+            final int current = claims.get( index );
+            if ( !isClaimable( current, claim ) )
+                return false;
+            if ( claims.compareAndSet( index, current, -claim ) )
+                return current == 0;
+        }
+    }
+
+    /**
+     * @return flat index of position in the interval given by min and
+     *         dimensions, or -1 if outside.
+     */
+    private static long getIndex( final long[] position, final long[] min, final long[] dimensions )
+    {
+        long index = 0;
+        for ( int d = dimensions.length - 1; d >= 0; --d )
+        {
+            final long p = position[ d ] - min[ d ];
+            if ( p < 0 || p >= dimensions[ d ] )
+                return -1;
+            index = index * dimensions[ d ] + p;
+        }
+        return index;
+    }
+
+    /**
+     * @return the offsets from the center of a neighborhood of shape to its
+     *         pixels, excluding the center itself.
+     */
+    private static < T > long[][] getOffsets( final RandomAccessibleInterval< T > source, final Shape shape )
+    {
+        final int n = source.numDimensions();
+        final long[] center = new long[ n ];
+        source.min( center );
+        final RandomAccess< Neighborhood< T > > neighborhoodAccess = shape.neighborhoodsRandomAccessible( Views.extendBorder( source ) ).randomAccess();
+        neighborhoodAccess.setPosition( center );
+        final Cursor< T > cursor = neighborhoodAccess.get().localizingCursor();
+        final ArrayList< long[] > offsets = new ArrayList< long[] >();
+        while ( cursor.hasNext() )
+        {
+            cursor.fwd();
+            final long[] offset = new long[ n ];
+            boolean isCenter = true;
+            for ( int d = 0; d < n; ++d )
+            {
+                offset[ d ] = cursor.getLongPosition( d ) - center[ d ];
+                isCenter &= offset[ d ] == 0;
+            }
+            if ( !isCenter )
+                offsets.add( offset );
+        }
+        return offsets.toArray( new long[ offsets.size() ][] );
+    }
+
+    private MultiSeedFloodFill()
+    {}
+
+}
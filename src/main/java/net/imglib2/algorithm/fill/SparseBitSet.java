@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package net.imglib2.algorithm.fill;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Set of non-negative long indices, e.g., flat pixel indices. The bits are
+ * stored in pages of {@code 2^15} indices that are allocated when the first
+ * index in them is added, so memory is proportional to the number of touched
+ * pages rather than to the largest index.
+ */
+final class SparseBitSet {
+
+    private static final int PAGE_BITS = 15;
+
+    private static final long PAGE_MASK = ( 1l << PAGE_BITS ) - 1;
+
+    private final TLongObjectHashMap< long[] > pages = new TLongObjectHashMap< long[] >();
+
+    /**
+     * Most recently used page, flood fills mostly stay in the same page.
+     */
+    private long lastKey = -1;
+
+    private long[] lastPage = null;
+
+    /**
+     * Add {@code index} to the set.
+     *
+     * @return whether {@code index} was not in the set before.
+     */
+    boolean add( final long index )
+    {
+        final long key = index >>> PAGE_BITS;
+        long[] page = getPage( key );
+        if ( page == null )
+        {
+            page = new long[ 1 << ( PAGE_BITS - 6 ) ];
+            pages.put( key, page );
+            lastKey = key;
+            lastPage = page;
+        }
+        final int word = ( int ) ( ( index & PAGE_MASK ) >>> 6 );
+        final long bit = 1l << index;
+        if ( ( page[ word ] & bit ) != 0 )
+            return false;
+        page[ word ] |= bit;
+        return true;
+    }
+
+    boolean contains( final long index )
+    {
+        final long[] page = getPage( index >>> PAGE_BITS );
+        return page != null && ( page[ ( int ) ( ( index & PAGE_MASK ) >>> 6 ) ] & ( 1l << index ) ) != 0;
+    }
+
+    private long[] getPage( final long key )
+    {
+        if ( key != lastKey )
+        {
+            final long[] page = pages.get( key );
+            if ( page == null )
+                return null;
+            lastKey = key;
+            lastPage = page;
+        }
+        return lastPage;
+    }
+}
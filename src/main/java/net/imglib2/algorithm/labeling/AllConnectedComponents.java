@@ -34,14 +34,21 @@
 
 package net.imglib2.algorithm.labeling;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.FutureUtils;
 import net.imglib2.labeling.Labeling;
 import net.imglib2.labeling.LabelingOutOfBoundsRandomAccessFactory;
 import net.imglib2.labeling.LabelingType;
@@ -122,6 +129,9 @@ public class AllConnectedComponents
 	/**
 	 * Label all connected components in the given image using an arbitrary
 	 * structuring element.
+	 * <p>
+	 * Components are found by a parallel union-find over the pixels, see
+	 * {@link #labelAllConnectedComponents(Labeling, RandomAccessibleInterval, Iterator, long[][], ExecutorService)}.
 	 * 
 	 * @param <T>
 	 *            the type of the labels to apply
@@ -139,6 +149,164 @@ public class AllConnectedComponents
 	 *             if there are not enough names
 	 */
 	public static < T extends Comparable< T >> void labelAllConnectedComponents( final Labeling< T > labeling, final RandomAccessibleInterval< BitType > img, final Iterator< T > names, final long[][] structuringElement ) throws NoSuchElementException
+	{
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+		try
+		{
+			labelAllConnectedComponents( labeling, img, names, structuringElement, service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	/**
+	 * Label all connected components in the given image using an arbitrary
+	 * structuring element.
+	 * <p>
+	 * The foreground is read into a primitive mask, and the pixels are joined
+	 * with their neighbors in a {@link ConcurrentUnionFind}, in parallel over
+	 * chunks of the image. The labels are then written in one pass, with
+	 * names dispensed in the order in which the components are first
+	 * encountered in flat iteration order. Pixels that are already labeled
+	 * are left untouched and do not connect components. Connectivity is
+	 * symmetric, i.e., pixels are connected if either one is in the
+	 * structuring element of the other.
+	 * 
+	 * @param <T>
+	 *            the type of the labels to apply
+	 * @param labeling
+	 *            Assign labels to this labeling space
+	 * @param img
+	 *            a binary image where true indicates parts of components
+	 * @param names
+	 *            supplies names for the different components as needed
+	 * @param structuringElement
+	 *            an array of offsets to a pixel of the pixels which are
+	 *            considered connected. For instance, a 4-connected structuring
+	 *            element would be "new int [][] {{-1,0},{1,0},{0,-1},{0,1}}".
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @throws NoSuchElementException
+	 *             if there are not enough names
+	 */
+	public static < T extends Comparable< T >> void labelAllConnectedComponents( final Labeling< T > labeling, final RandomAccessibleInterval< BitType > img, final Iterator< T > names, final long[][] structuringElement, final ExecutorService service ) throws NoSuchElementException
+	{
+		final int n = labeling.numDimensions();
+		final long[] max = new long[ n ];
+		long size = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			max[ d ] = Math.min( labeling.dimension( d ), img.max( d ) + 1 ) - 1;
+			size *= Math.max( 0, max[ d ] + 1 );
+		}
+		if ( size <= 0 )
+			return;
+		if ( size >= Integer.MAX_VALUE )
+		{
+			labelByFilling( labeling, img, names, structuringElement );
+			return;
+		}
+		final FinalInterval region = new FinalInterval( new long[ n ], max );
+		final long[] dimensions = new long[ n ];
+		region.dimensions( dimensions );
+
+		// read the foreground, excluding pixels that are labeled already
+		final boolean[] mask = new boolean[ ( int ) size ];
+		final Cursor< BitType > c = Views.flatIterable( Views.interval( img, region ) ).cursor();
+		final Cursor< LabelingType< T > > lc = Views.flatIterable( Views.interval( labeling, region ) ).cursor();
+		for ( int i = 0; i < mask.length; ++i )
+			mask[ i ] = c.next().get() & lc.next().getLabeling().isEmpty();
+
+		// union-find element 0 is the background, pixel i is element i + 1
+		final ConcurrentUnionFind unionFind = new ConcurrentUnionFind( mask.length + 1 );
+		final long[][] backward = getBackwardOffsets( structuringElement, dimensions );
+		final int numTasks = Runtime.getRuntime().availableProcessors() * 4;
+		final int nt = Math.max( 1, Math.min( numTasks, mask.length ) );
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+		for ( int t = 0; t < nt; ++t )
+		{
+			final int from = ( int ) ( ( long ) t * mask.length / nt );
+			final int to = ( int ) ( ( long ) ( t + 1 ) * mask.length / nt );
+			futures.add( service.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final PixelNeighbors neighbors = new PixelNeighbors( dimensions, backward );
+					for ( int p = from; p < to; ++p )
+					{
+						if ( !mask[ p ] )
+						{
+							unionFind.setParent( p + 1, 0 );
+							continue;
+						}
+						neighbors.setCenter( p );
+						for ( int k = 0; k < neighbors.size(); ++k )
+						{
+							final int q = neighbors.get( k );
+							if ( q >= 0 && mask[ q ] )
+								unionFind.union( p + 1, q + 1 );
+						}
+					}
+					return null;
+				}
+			} ) );
+		}
+		FutureUtils.getAllFutures( futures );
+		final int[] ids = new int[ mask.length + 1 ];
+		final int numComponents = unionFind.flatten( ids, service, numTasks ) - 1;
+
+		// write the labels
+		final ArrayList< List< T > > labelings = new ArrayList< List< T > >( numComponents + 1 );
+		labelings.add( null );
+		final Cursor< LabelingType< T > > out = Views.flatIterable( Views.interval( labeling, region ) ).cursor();
+		for ( int i = 0; i < mask.length; ++i )
+		{
+			final LabelingType< T > label = out.next();
+			final int id = ids[ i + 1 ];
+			if ( id == 0 )
+				continue;
+			if ( id == labelings.size() )
+				labelings.add( label.intern( names.next() ) );
+			label.setLabeling( labelings.get( id ) );
+		}
+	}
+
+	/**
+	 * @return the offsets of the symmetric closure of
+	 *         {@code structuringElement} that point to pixels earlier in flat
+	 *         iteration order, without duplicates.
+	 */
+	private static long[][] getBackwardOffsets( final long[][] structuringElement, final long[] dimensions )
+	{
+		final ArrayList< long[] > backward = new ArrayList< long[] >();
+		for ( final long[] offset : structuringElement )
+		{
+			int sign = 0;
+			for ( int d = offset.length - 1; d >= 0 && sign == 0; --d )
+				sign = offset[ d ] < 0 ? -1 : offset[ d ] > 0 ? 1 : 0;
+			if ( sign == 0 )
+				continue;
+			final long[] b = new long[ dimensions.length ];
+			for ( int d = 0; d < offset.length; ++d )
+				b[ d ] = -sign * offset[ d ];
+			boolean duplicate = false;
+			for ( final long[] other : backward )
+				duplicate |= Arrays.equals( other, b );
+			if ( !duplicate )
+				backward.add( b );
+		}
+		return backward.toArray( new long[ backward.size() ][] );
+	}
+
+	/**
+	 * Stack-based fill, used for images with too many pixels to be indexed
+	 * by int.
+	 */
+	private static < T extends Comparable< T >> void labelByFilling( final Labeling< T > labeling, final RandomAccessibleInterval< BitType > img, final Iterator< T > names, final long[][] structuringElement ) throws NoSuchElementException
 	{
 		final Cursor< BitType > c = Views.iterable( img ).localizingCursor();
 		final RandomAccess< BitType > raSrc = img.randomAccess();
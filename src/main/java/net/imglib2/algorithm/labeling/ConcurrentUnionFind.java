@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.labeling;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.imglib2.algorithm.util.FutureUtils;
+
+/**
+ * A lock-free union-find (disjoint-set forest) over the integers
+ * {@code 0 ... size-1}, that can be used by many threads concurrently.
+ * <p>
+ * The parent pointers are kept in a primitive int array and are only ever
+ * changed by compare-and-set. A root is always linked below the smaller of
+ * two roots, so the root of each set is its smallest element, and every
+ * parent pointer points to a smaller (or the same) element. {@link #find(int)}
+ * compresses paths by halving, which is safe under concurrent updates because
+ * it only ever replaces a parent by one of its ancestors.
+ * <p>
+ * {@link #flatten(int[], ExecutorService, int)} assigns consecutive ids to
+ * the sets, in parallel, once all unions are done.
+ */
+public final class ConcurrentUnionFind
+{
+	private final AtomicIntegerArray parent;
+
+	/**
+	 * Creates a union-find of {@code size} singleton sets.
+	 */
+	public ConcurrentUnionFind( final int size )
+	{
+		parent = new AtomicIntegerArray( size );
+		for ( int i = 0; i < size; ++i )
+			parent.lazySet( i, i );
+	}
+
+	/**
+	 * @return the number of elements.
+	 */
+	public int size()
+	{
+		return parent.length();
+	}
+
+	/**
+	 * Sets the parent of {@code i}, e.g., to initialize the forest from
+	 * equivalences that were found before. Must not be called concurrently
+	 * with {@link #union(int, int)} involving {@code i}.
+	 *
+	 * @param p
+	 *            the new parent, must be {@code <= i}.
+	 */
+	public void setParent( final int i, final int p )
+	{
+		assert p <= i;
+		parent.lazySet( i, p );
+	}
+
+	/**
+	 * @return the root, i.e., the smallest element, of the set containing
+	 *         {@code i}.
+	 */
+	public int find( int i )
+	{
+		int p = parent.get( i );
+		while ( p != i )
+		{
+			final int gp = parent.get( p );
+			if ( gp != p )
+				parent.compareAndSet( i, p, gp );
+			i = gp;
+			p = parent.get( i );
+		}
+		return i;
+	}
+
+	/**
+	 * Merges the sets containing {@code a} and {@code b}.
+	 *
+	 * @return {@code true} if the sets were different.
+	 */
+	public boolean union( final int a, final int b )
+	{
+		int ra = a;
+		int rb = b;
+		while ( true )
+		{
+			ra = find( ra );
+			rb = find( rb );
+			if ( ra == rb )
+				return false;
+			// link the larger root below the smaller one
+			if ( ra < rb )
+			{
+				final int t = ra;
+				ra = rb;
+				rb = t;
+			}
+			if ( parent.compareAndSet( ra, ra, rb ) )
+				return true;
+		}
+	}
+
+	/**
+	 * Assigns consecutive ids {@code 0, 1, 2, ...} to the sets, in the order
+	 * of their roots, i.e., of their smallest elements. The set containing
+	 * element 0 gets id 0. Must be called after all unions are done.
+	 *
+	 * @param ids
+	 *            receives the id of the set containing each element. Must
+	 *            have length {@link #size()}.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @param numTasks
+	 *            number of tasks to split the elements into.
+	 * @return the number of sets.
+	 */
+	public int flatten( final int[] ids, final ExecutorService service, final int numTasks )
+	{
+		final int size = size();
+		final int nt = Math.max( 1, Math.min( numTasks, size ) );
+		final int[] from = new int[ nt + 1 ];
+		for ( int t = 0; t <= nt; ++t )
+			from[ t ] = ( int ) ( ( long ) t * size / nt );
+
+		// count the roots of each chunk
+		final int[] numRoots = new int[ nt ];
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+		for ( int t = 0; t < nt; ++t )
+		{
+			final int task = t;
+			futures.add( service.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					int count = 0;
+					for ( int i = from[ task ]; i < from[ task + 1 ]; ++i )
+						if ( parent.get( i ) == i )
+							++count;
+					numRoots[ task ] = count;
+					return null;
+				}
+			} ) );
+		}
+		FutureUtils.getAllFutures( futures );
+
+		// number the roots
+		final int[] firstId = new int[ nt ];
+		int numSets = 0;
+		for ( int t = 0; t < nt; ++t )
+		{
+			firstId[ t ] = numSets;
+			numSets += numRoots[ t ];
+		}
+		for ( int t = 0; t < nt; ++t )
+		{
+			final int task = t;
+			futures.add( service.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					int id = firstId[ task ];
+					for ( int i = from[ task ]; i < from[ task + 1 ]; ++i )
+						if ( parent.get( i ) == i )
+							ids[ i ] = id++;
+					return null;
+				}
+			} ) );
+		}
+		FutureUtils.getAllFutures( futures );
+
+		// propagate the ids of the roots to all elements
+		for ( int t = 0; t < nt; ++t )
+		{
+			final int task = t;
+			futures.add( service.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					for ( int i = from[ task ]; i < from[ task + 1 ]; ++i )
+					{
+						final int root = find( i );
+						if ( root != i )
+							ids[ i ] = ids[ root ];
+					}
+					return null;
+				}
+			} ) );
+		}
+		FutureUtils.getAllFutures( futures );
+
+		return numSets;
+	}
+}
@@ -55,6 +55,7 @@ import net.imglib2.iterator.IntervalIterator;
 import net.imglib2.roi.labeling.ImgLabeling;
 import net.imglib2.roi.labeling.LabelingMapping;
 import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.view.Views;
 
 /**
@@ -66,20 +67,37 @@ public final class ConnectedComponents
 {
 	public static enum StructuringElement
 	{
-		FOUR_CONNECTED( Collect4NeighborLabels.factory ),
-		EIGHT_CONNECTED( Collect8NeighborLabels.factory );
+		FOUR_CONNECTED( Collect4NeighborLabels.factory, false ),
+		EIGHT_CONNECTED( Collect8NeighborLabels.factory, false ),
+
+		/**
+		 * The same connectivity as {@link #EIGHT_CONNECTED}, labeled by a
+		 * faster block-based algorithm for 2D and 3D images (see
+		 * {@link BlockConnectedComponents}). Components may be numbered in a
+		 * different order than with {@link #EIGHT_CONNECTED}. Falls back to
+		 * {@link #EIGHT_CONNECTED} for other dimensionalities.
+		 */
+		EIGHT_CONNECTED_BLOCKS( Collect8NeighborLabels.factory, true );
 
 		private final CollectNeighborLabelsFactory factory;
 
-		private StructuringElement( final CollectNeighborLabelsFactory factory )
+		private final boolean blockBased;
+
+		private StructuringElement( final CollectNeighborLabelsFactory factory, final boolean blockBased )
 		{
 			this.factory = factory;
+			this.blockBased = blockBased;
 		}
 
 		public CollectNeighborLabelsFactory getFactory()
 		{
 			return factory;
 		}
+
+		public boolean isBlockBased()
+		{
+			return blockBased;
+		}
 	}
 
 	/**
@@ -219,6 +237,99 @@ public final class ConnectedComponents
 			final StructuringElement se,
 			final ExecutorService service )
 	{
+		return label( input, output, null, se, service, null );
+	}
+
+	/**
+	 * "Label" all connected components in the given input image and compute
+	 * area, bounding box, centroid and intensity sum of each component while
+	 * labeling. In the output image, all background pixels will be set to 0
+	 * and foreground components set to 1, 2, 3, etc.
+	 *
+	 * <p>
+	 * <em>Note, that the {@code output} image must be cleared to 0!<em>
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            output image, must be filled with 0.
+	 * @param intensity
+	 *            image whose values are summed over each component. May be
+	 *            {@code null}, in which case intensity sums are 0.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @return statistics of the connected components. The number of
+	 *         components is {@link RegionStatistics#size()}.
+	 */
+	public static < T extends IntegerType< T >, L extends IntegerType< L > > RegionStatistics labelAllConnectedComponentsWithStatistics(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final RandomAccessible< ? extends RealType< ? > > intensity,
+			final StructuringElement se )
+	{
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+		final RegionStatistics result = labelAllConnectedComponentsWithStatistics( input, output, intensity, se, service );
+		service.shutdown();
+		return result;
+	}
+
+	/**
+	 * "Label" all connected components in the given input image and compute
+	 * area, bounding box, centroid and intensity sum of each component while
+	 * labeling. In the output image, all background pixels will be set to 0
+	 * and foreground components set to 1, 2, 3, etc.
+	 *
+	 * <p>
+	 * <em>Note, that the {@code output} image must be cleared to 0!<em>
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            output image, must be filled with 0.
+	 * @param intensity
+	 *            image whose values are summed over each component. May be
+	 *            {@code null}, in which case intensity sums are 0.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return statistics of the connected components. The number of
+	 *         components is {@link RegionStatistics#size()}.
+	 */
+	public static < T extends IntegerType< T >, L extends IntegerType< L > > RegionStatistics labelAllConnectedComponentsWithStatistics(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final RandomAccessible< ? extends RealType< ? > > intensity,
+			final StructuringElement se,
+			final ExecutorService service )
+	{
+		final RegionStatistics.Accumulator statistics = new RegionStatistics.Accumulator( output.numDimensions(), 1 );
+		final int numComponents = label( input, output, intensity, se, service, statistics );
+		return new RegionStatistics( statistics, numComponents );
+	}
+
+	/**
+	 * @param intensity
+	 *            summed into {@code statistics}, may be {@code null}.
+	 * @param statistics
+	 *            accumulates statistics by final label, {@code null} if no
+	 *            statistics should be computed.
+	 * @return the number of connected components.
+	 */
+	private static < T extends IntegerType< T >, L extends IntegerType< L > > int label(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final RandomAccessible< ? extends RealType< ? > > intensity,
+			final StructuringElement se,
+			final ExecutorService service,
+			final RegionStatistics.Accumulator statistics )
+	{
+		if ( se.isBlockBased() && BlockConnectedComponents.isApplicable( output ) )
+			return BlockConnectedComponents.label( input, output, intensity, service, statistics );
+
 		final int n = output.numDimensions();
 		final int splitDim = n - 1;
 		final long[] min = new long[ n ];
@@ -238,7 +349,7 @@ public final class ConnectedComponents
 		for ( int i = 0; i < numTasks; ++i )
 		{
 			max[ splitDim ] = ( i == numTasks - 1 ) ? splitDimMax : min[ splitDim ] + taskSize - 1;
-			fragments[ i ] = new Fragment< T, L >( input, Views.interval( output, min, max ), collectNeighborLabels );
+			fragments[ i ] = new Fragment< T, L >( input, Views.interval( output, min, max ), collectNeighborLabels, intensity, statistics != null );
 			min[ splitDim ] += taskSize;
 		}
 
@@ -256,10 +367,44 @@ public final class ConnectedComponents
 		}
 		getAllFutures( futures );
 
-		final TIntArrayList merged = mergeCanonicalLists( fragments );
+		// global label index of local label l of a fragment is (offset + l)
+		int size = 1; // background
+		for ( final Fragment< T, L > fragment : fragments )
+		{
+			fragment.offset = size - 1;
+			size += fragment.canonicalLabels.size() - 1; // -1 is for background
+		}
+		final ConcurrentUnionFind unionFind = new ConcurrentUnionFind( size );
+		for ( final Fragment< T, L > fragment : fragments )
+		{
+			futures.add( service.submit( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					fragment.initUnionFind( unionFind );
+				}
+			} ) );
+		}
+		getAllFutures( futures );
+
 		for ( int i = 1; i < numTasks; ++i )
-			fragments[ i ].linkToPreviousFragment( fragments[ i - 1 ], merged );
-		final int numComponents = splitCanonicalLists( fragments, merged );
+		{
+			final Fragment< T, L > fragment = fragments[ i ];
+			final Fragment< T, L > previous = fragments[ i - 1 ];
+			futures.add( service.submit( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					fragment.linkToPreviousFragment( previous, unionFind );
+				}
+			} ) );
+		}
+		getAllFutures( futures );
+
+		final int[] ids = new int[ size ];
+		final int numComponents = unionFind.flatten( ids, service, numTasks ) - 1; // -1 is for background
 
 		for ( final Fragment< T, L > fragment : fragments )
 		{
@@ -268,12 +413,19 @@ public final class ConnectedComponents
 				@Override
 				public void run()
 				{
-					fragment.relabel();
+					fragment.relabel( ids );
 				}
 			} ) );
 		}
 		getAllFutures( futures );
 
+		if ( statistics != null )
+		{
+			statistics.ensureCapacity( numComponents + 1 );
+			for ( final Fragment< T, L > fragment : fragments )
+				fragment.addStatisticsTo( statistics );
+		}
+
 		return numComponents;
 	}
 
@@ -289,17 +441,29 @@ public final class ConnectedComponents
 
 		private final CollectNeighborLabels< L > collectNeighborLabels;
 
+		private final RandomAccessible< ? extends RealType< ? > > intensity;
+
+		/**
+		 * statistics by local label, {@code null} if no statistics should be
+		 * computed.
+		 */
+		private final RegionStatistics.Accumulator statistics;
+
 		private int offset;
 
 		public Fragment(
 				final RandomAccessible< T > input,
 				final RandomAccessibleInterval< L > output,
-				final CollectNeighborLabels< L > collectNeighborLabels )
+				final CollectNeighborLabels< L > collectNeighborLabels,
+				final RandomAccessible< ? extends RealType< ? > > intensity,
+				final boolean computeStatistics )
 		{
 			n = output.numDimensions();
 			this.input = input;
 			this.output = output;
 			this.collectNeighborLabels = collectNeighborLabels;
+			this.intensity = intensity;
+			statistics = computeStatistics ? new RegionStatistics.Accumulator( n, 1000 ) : null;
 			canonicalLabels = new TIntArrayList( 1000 );
 			canonicalLabels.add( 0 );
 		}
@@ -319,9 +483,16 @@ public final class ConnectedComponents
 			final Cursor< T > in = Views.flatIterable( Views.interval( input, output ) ).localizingCursor();
 			final RandomAccess< L > la = output.randomAccess();
 
+			// intensities in the same order as the input, if statistics are computed
+			final Cursor< ? extends RealType< ? > > iv = ( statistics != null && intensity != null ) ? Views.flatIterable( Views.interval( intensity, output ) ).cursor() : null;
+			final long[] position = new long[ n ];
+
 			while ( in.hasNext() )
 			{
-				if ( in.next().getInteger() > 0 )
+				final boolean foreground = in.next().getInteger() > 0;
+				if ( iv != null )
+					iv.fwd();
+				if ( foreground )
 				{
 					la.setPosition( in );
 					collectNeighborLabels.collect( la, neighborLabels, min, max );
@@ -332,6 +503,8 @@ public final class ConnectedComponents
 						final int label = canonicalLabels.size();
 						canonicalLabels.add( label );
 						la.get().setInteger( label );
+						if ( statistics != null )
+							statistics.ensureCapacity( label + 1 );
 					}
 					else if ( numLabeledNeighbors == 1 )
 					{
@@ -371,11 +544,42 @@ public final class ConnectedComponents
 						}
 						la.get().setInteger( canonical );
 					}
+					if ( statistics != null )
+					{
+						in.localize( position );
+						statistics.add( la.get().getInteger(), position, iv == null ? 0 : iv.get().getRealDouble() );
+					}
 				}
 			}
 		}
 
-		public void linkToPreviousFragment( final Fragment< T, L > previous, final TIntArrayList merged )
+		/**
+		 * Add the statistics of the local labels to the final labels they
+		 * were resolved to by {@link #relabel(int[])}.
+		 */
+		public void addStatisticsTo( final RegionStatistics.Accumulator target )
+		{
+			for ( int i = 1; i < canonicalLabels.size(); ++i )
+				statistics.addTo( target, i, canonicalLabels.get( i ) );
+		}
+
+		/**
+		 * Enter the equivalences found by {@link #mark()} into the global
+		 * union-find.
+		 */
+		public void initUnionFind( final ConcurrentUnionFind unionFind )
+		{
+			for ( int i = 1; i < canonicalLabels.size(); ++i )
+				unionFind.setParent( i + offset, canonicalLabels.get( i ) + offset );
+		}
+
+		/**
+		 * Merge the labels in the first hyperslice of this fragment with
+		 * neighboring labels in the last hyperslice of the previous fragment.
+		 * Fragments can be linked concurrently, because they only read the
+		 * (not yet relabeled) output and only modify the union-find.
+		 */
+		public void linkToPreviousFragment( final Fragment< T, L > previous, final ConcurrentUnionFind unionFind )
 		{
 			final int previousOffset = previous.offset;
 			final int splitDim = n - 1;
@@ -388,107 +592,38 @@ public final class ConnectedComponents
 			// a list to collect labels of labeled neighbors of a pixel
 			final TIntArrayList neighborLabels = new TIntArrayList( n );
 
-			final TIntArrayList updateLabels = new TIntArrayList( 10 );
-
 			final Cursor< L > in = Views.iterable( Views.interval( output, min, max ) ).localizingCursor();
 			min[ splitDim ] -= 1;
 			final RandomAccess< L > la = output.randomAccess( new FinalInterval( min, max ) );
 
 			while ( in.hasNext() )
 			{
-				int label = in.next().getInteger();
+				final int label = in.next().getInteger();
 				if ( label != 0 )
 				{
-					label += offset;
 					la.setPosition( in );
 					collectNeighborLabels.collectAtPreviousFragmentBorder( la, neighborLabels, min, max );
-					final int numLabeledNeighbors = neighborLabels.size();
-					if ( numLabeledNeighbors != 0 )
-					{
-						for ( int i = 0; i < numLabeledNeighbors; ++i )
-							neighborLabels.set( i, neighborLabels.get( i ) + previousOffset );
-						int canonical = merged.get( label );
-						boolean makeCanonical = false;
-						for ( int i = 0; i < neighborLabels.size(); ++i )
-						{
-							if ( merged.get( neighborLabels.get( i ) ) != canonical )
-							{
-								neighborLabels.add( label );
-								makeCanonical = true;
-								break;
-							}
-						}
-						if ( makeCanonical )
-						{
-							updateLabels.clear();
-							canonical = Integer.MAX_VALUE;
-							for ( int i = 0; i < neighborLabels.size(); ++i )
-							{
-								label = neighborLabels.get( i );
-								while ( merged.get( label ) != label )
-								{
-									updateLabels.add( label );
-									canonical = Math.min( canonical, label );
-									label = merged.get( label );
-								}
-								updateLabels.add( label );
-								canonical = Math.min( canonical, label );
-							}
-							for ( int i = 0; i < updateLabels.size(); ++i )
-								merged.set( updateLabels.get( i ), canonical );
-						}
-					}
+					for ( int i = 0; i < neighborLabels.size(); ++i )
+						unionFind.union( label + offset, neighborLabels.get( i ) + previousOffset );
 				}
 			}
 		}
 
-		public void relabel()
+		/**
+		 * Replace local labels by final component ids.
+		 *
+		 * @param ids
+		 *            final component id for every global label index.
+		 */
+		public void relabel( final int[] ids )
 		{
+			for ( int i = 1; i < canonicalLabels.size(); ++i )
+				canonicalLabels.set( i, ids[ i + offset ] );
 			for ( final L label : Views.iterable( output ) )
 				label.setInteger( canonicalLabels.get( label.getInteger() ) );
 		}
 	}
 
-	private static < T extends IntegerType< T >, L extends IntegerType< L > > TIntArrayList mergeCanonicalLists( final Fragment< T, L >[] fragments )
-	{
-		int size = 0;
-		for ( final Fragment< T, L > fragment : fragments )
-		{
-			fragment.offset = size;
-			size += fragment.canonicalLabels.size() - 1; // -1 is for background
-		}
-		final TIntArrayList merged = new TIntArrayList( size + 1 );
-		merged.add( 0 ); // background
-		for ( final Fragment< T, L > fragment : fragments )
-		{
-			final TIntArrayList fl = fragment.canonicalLabels;
-			final int o = fragment.offset;
-			for ( int i = 1; i < fl.size(); ++i )
-				merged.add( fl.get( i ) + o );
-		}
-		return merged;
-	}
-
-	private static < T extends IntegerType< T >, L extends IntegerType< L > > int splitCanonicalLists( final Fragment< T, L >[] fragments, final TIntArrayList merged )
-	{
-		int nextLabel = 1;
-		for ( int i = 1; i < merged.size(); ++i )
-			if ( merged.get( i ) == i )
-				merged.set( i, nextLabel++ );
-			else
-				merged.set( i, merged.get( merged.get( i ) ) );
-
-		for ( final Fragment< T, L > fragment : fragments )
-		{
-			final TIntArrayList fl = fragment.canonicalLabels;
-			final int o = fragment.offset;
-			for ( int i = 1; i < fl.size(); ++i )
-				fl.set( i, merged.get( i + o ) );
-		}
-
-		return nextLabel - 1;
-	}
-
 	private static void getAllFutures( final List< Future< ? > > futures )
 	{
 		for ( final Future< ? > future : futures )
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.labeling;
+
+/**
+ * Linear indices of the neighbors of a pixel, given by a structuring
+ * element. Bounds are checked only for pixels near the image border.
+ */
+final class PixelNeighbors
+{
+	private final long[] dimensions;
+
+	private final long[][] structuringElement;
+
+	private final int[] offsets;
+
+	private final int[] radius;
+
+	private final long[] position;
+
+	private int center;
+
+	private boolean interior;
+
+	PixelNeighbors( final long[] dimensions, final long[][] structuringElement )
+	{
+		this.dimensions = dimensions;
+		this.structuringElement = structuringElement;
+		final int n = dimensions.length;
+		offsets = new int[ structuringElement.length ];
+		radius = new int[ n ];
+		for ( int k = 0; k < structuringElement.length; ++k )
+		{
+			long offset = 0;
+			for ( int d = n - 1; d >= 0; --d )
+			{
+				offset = offset * dimensions[ d ] + structuringElement[ k ][ d ];
+				radius[ d ] = ( int ) Math.max( radius[ d ], Math.abs( structuringElement[ k ][ d ] ) );
+			}
+			offsets[ k ] = ( int ) offset;
+		}
+		position = new long[ n ];
+	}
+
+	/**
+	 * @return the number of neighbors.
+	 */
+	int size()
+	{
+		return offsets.length;
+	}
+
+	/**
+	 * @return the maximum absolute offset in dimension {@code d}.
+	 */
+	int getRadius( final int d )
+	{
+		return radius[ d ];
+	}
+
+	void setCenter( final int index )
+	{
+		center = index;
+		interior = true;
+		long idx = index;
+		for ( int d = 0; d < position.length; ++d )
+		{
+			position[ d ] = idx % dimensions[ d ];
+			idx /= dimensions[ d ];
+			interior &= position[ d ] >= radius[ d ] && position[ d ] < dimensions[ d ] - radius[ d ];
+		}
+	}
+
+	/**
+	 * @return the index of the {@code k}th neighbor of the center pixel,
+	 *         or -1 if it is outside the image.
+	 */
+	int get( final int k )
+	{
+		if ( !interior )
+		{
+			final long[] offset = structuringElement[ k ];
+			for ( int d = 0; d < position.length; ++d )
+			{
+				final long p = position[ d ] + offset[ d ];
+				if ( p < 0 || p >= dimensions[ d ] )
+					return -1;
+			}
+		}
+		return center + offsets[ k ];
+	}
+}
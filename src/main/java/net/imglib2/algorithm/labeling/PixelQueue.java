@@ -0,0 +1,331 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.labeling;
+
+import java.util.Arrays;
+
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A priority queue of pixels, stored in primitive arrays, as used by
+ * {@link Watershed}. A pixel is a packed (linear) pixel index and an integer
+ * label id. Pixels are removed in the order of increasing intensity, and
+ * pixels of equal intensity in the order in which they were added.
+ */
+abstract class PixelQueue
+{
+	/**
+	 * Create a queue suitable for intensities of the given type. A bucket
+	 * queue is used for integer types with at most 2^16 values, and a binary
+	 * heap otherwise.
+	 */
+	static PixelQueue create( final RealType< ? > type )
+	{
+		if ( type instanceof IntegerType )
+		{
+			final double min = type.getMinValue();
+			final double max = type.getMaxValue();
+			if ( max - min < MAX_BUCKETS )
+				return new Buckets( ( long ) min, ( int ) ( max - min ) + 1 );
+		}
+		return new Heap();
+	}
+
+	private static final int MAX_BUCKETS = 1 << 16;
+
+	/**
+	 * Add a pixel.
+	 */
+	abstract void add( double intensity, long index, int label );
+
+	abstract boolean isEmpty();
+
+	/**
+	 * Remove the pixel with the smallest intensity (and the smallest age
+	 * among pixels with that intensity).
+	 *
+	 * @return the pixel index. The label id of the pixel is available from
+	 *         {@link #getLabel()} until the next removal.
+	 */
+	abstract long remove();
+
+	/**
+	 * @return the label id of the last removed pixel.
+	 */
+	abstract int getLabel();
+
+	/**
+	 * One FIFO queue per integer intensity.
+	 */
+	static final class Buckets extends PixelQueue
+	{
+		private final long min;
+
+		private final long[][] indices;
+
+		private final int[][] labels;
+
+		private final int[] heads;
+
+		private final int[] sizes;
+
+		/**
+		 * no bucket below this one is non-empty.
+		 */
+		private int current;
+
+		private long size;
+
+		private int label;
+
+		Buckets( final long min, final int numBuckets )
+		{
+			this.min = min;
+			indices = new long[ numBuckets ][];
+			labels = new int[ numBuckets ][];
+			heads = new int[ numBuckets ];
+			sizes = new int[ numBuckets ];
+			current = numBuckets;
+			size = 0;
+		}
+
+		@Override
+		void add( final double intensity, final long index, final int label )
+		{
+			final int b = ( int ) ( ( long ) intensity - min );
+			int s = sizes[ b ];
+			if ( indices[ b ] == null )
+			{
+				indices[ b ] = new long[ 16 ];
+				labels[ b ] = new int[ 16 ];
+			}
+			else if ( s == indices[ b ].length )
+			{
+				indices[ b ] = Arrays.copyOf( indices[ b ], 2 * s );
+				labels[ b ] = Arrays.copyOf( labels[ b ], 2 * s );
+			}
+			indices[ b ][ s ] = index;
+			labels[ b ][ s ] = label;
+			sizes[ b ] = ++s;
+			if ( b < current )
+				current = b;
+			++size;
+		}
+
+		@Override
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		@Override
+		long remove()
+		{
+			while ( heads[ current ] == sizes[ current ] )
+				++current;
+			final int b = current;
+			final int h = heads[ b ]++;
+			final long index = indices[ b ][ h ];
+			label = labels[ b ][ h ];
+			if ( heads[ b ] == sizes[ b ] )
+			{
+				// bucket is empty, reuse its arrays from the start
+				heads[ b ] = 0;
+				sizes[ b ] = 0;
+			}
+			--size;
+			return index;
+		}
+
+		@Override
+		int getLabel()
+		{
+			return label;
+		}
+	}
+
+	/**
+	 * A binary min-heap ordered by intensity and age.
+	 */
+	static final class Heap extends PixelQueue
+	{
+		private double[] intensities;
+
+		private long[] ages;
+
+		private long[] indices;
+
+		private int[] labels;
+
+		private int size;
+
+		private long age;
+
+		private int label;
+
+		private double removedIntensity;
+
+		private long removedOrder;
+
+		Heap()
+		{
+			final int capacity = 1024;
+			intensities = new double[ capacity ];
+			ages = new long[ capacity ];
+			indices = new long[ capacity ];
+			labels = new int[ capacity ];
+			size = 0;
+			age = 0;
+		}
+
+		@Override
+		void add( final double intensity, final long index, final int label )
+		{
+			add( intensity, age++, index, label );
+		}
+
+		/**
+		 * Add a pixel with an explicit secondary key {@code order} instead of
+		 * its age. Pixels of equal intensity are removed in the order of
+		 * increasing {@code order}.
+		 */
+		void add( final double intensity, final long order, final long index, final int label )
+		{
+			if ( size == indices.length )
+			{
+				final int capacity = 2 * size;
+				intensities = Arrays.copyOf( intensities, capacity );
+				ages = Arrays.copyOf( ages, capacity );
+				indices = Arrays.copyOf( indices, capacity );
+				labels = Arrays.copyOf( labels, capacity );
+			}
+			final long a = order;
+			int i = size++;
+			while ( i > 0 )
+			{
+				final int parent = ( i - 1 ) >> 1;
+				if ( !less( intensity, a, intensities[ parent ], ages[ parent ] ) )
+					break;
+				set( i, parent );
+				i = parent;
+			}
+			intensities[ i ] = intensity;
+			ages[ i ] = a;
+			indices[ i ] = index;
+			labels[ i ] = label;
+		}
+
+		@Override
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		@Override
+		long remove()
+		{
+			final long index = indices[ 0 ];
+			label = labels[ 0 ];
+			removedIntensity = intensities[ 0 ];
+			removedOrder = ages[ 0 ];
+			final int last = --size;
+			if ( last > 0 )
+			{
+				final double intensity = intensities[ last ];
+				final long a = ages[ last ];
+				final long lastIndex = indices[ last ];
+				final int lastLabel = labels[ last ];
+				int i = 0;
+				while ( true )
+				{
+					int child = 2 * i + 1;
+					if ( child >= last )
+						break;
+					if ( child + 1 < last && less( intensities[ child + 1 ], ages[ child + 1 ], intensities[ child ], ages[ child ] ) )
+						++child;
+					if ( !less( intensities[ child ], ages[ child ], intensity, a ) )
+						break;
+					set( i, child );
+					i = child;
+				}
+				intensities[ i ] = intensity;
+				ages[ i ] = a;
+				indices[ i ] = lastIndex;
+				labels[ i ] = lastLabel;
+			}
+			return index;
+		}
+
+		@Override
+		int getLabel()
+		{
+			return label;
+		}
+
+		/**
+		 * @return the intensity of the last removed pixel.
+		 */
+		double getIntensity()
+		{
+			return removedIntensity;
+		}
+
+		/**
+		 * @return the secondary key (age or explicit order) of the last
+		 *         removed pixel.
+		 */
+		long getOrder()
+		{
+			return removedOrder;
+		}
+
+		/**
+		 * Whether (intensity1, age1) is smaller than (intensity2, age2).
+		 */
+		private static boolean less( final double intensity1, final long age1, final double intensity2, final long age2 )
+		{
+			final int c = Double.compare( intensity1, intensity2 );
+			return c < 0 || ( c == 0 && age1 < age2 );
+		}
+
+		private void set( final int i, final int j )
+		{
+			intensities[ i ] = intensities[ j ];
+			ages[ i ] = ages[ j ];
+			indices[ i ] = indices[ j ];
+			labels[ i ] = labels[ j ];
+		}
+	}
+}
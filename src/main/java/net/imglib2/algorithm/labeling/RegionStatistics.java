@@ -0,0 +1,283 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.labeling;
+
+import java.util.Arrays;
+
+/**
+ * Per-component statistics (area, bounding box, centroid and intensity sum)
+ * of a labeling, stored as a table with one primitive array per column. Row
+ * {@code i} holds the statistics of the component labeled {@code i + 1}.
+ * <p>
+ * The statistics are accumulated while labeling, see
+ * {@link ConnectedComponents#labelAllConnectedComponentsWithStatistics}, so
+ * no separate pass over the labeled image is necessary.
+ * <p>
+ * The column arrays are returned as is, not copied.
+ */
+public final class RegionStatistics
+{
+	private final int n;
+
+	private final int size;
+
+	private final long[] area;
+
+	private final long[][] min;
+
+	private final long[][] max;
+
+	private final double[][] centroid;
+
+	private final double[] intensitySum;
+
+	RegionStatistics( final Accumulator accumulator, final int size )
+	{
+		n = accumulator.n;
+		this.size = size;
+		area = new long[ size ];
+		min = new long[ n ][ size ];
+		max = new long[ n ][ size ];
+		centroid = new double[ n ][ size ];
+		intensitySum = new double[ size ];
+		for ( int i = 0; i < size; ++i )
+		{
+			final int label = i + 1;
+			area[ i ] = accumulator.area[ label ];
+			intensitySum[ i ] = accumulator.intensitySum[ label ];
+			for ( int d = 0; d < n; ++d )
+			{
+				final int j = label * n + d;
+				min[ d ][ i ] = accumulator.min[ j ];
+				max[ d ][ i ] = accumulator.max[ j ];
+				centroid[ d ][ i ] = ( double ) accumulator.positionSum[ j ] / area[ i ];
+			}
+		}
+	}
+
+	/**
+	 * @return the number of components, i.e., rows of the table.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of pixels of component {@code label}.
+	 */
+	public long getArea( final int label )
+	{
+		return area[ label - 1 ];
+	}
+
+	/**
+	 * @return the minimum of the bounding box of component {@code label} in
+	 *         dimension {@code d}.
+	 */
+	public long getMin( final int label, final int d )
+	{
+		return min[ d ][ label - 1 ];
+	}
+
+	/**
+	 * @return the maximum of the bounding box of component {@code label} in
+	 *         dimension {@code d}.
+	 */
+	public long getMax( final int label, final int d )
+	{
+		return max[ d ][ label - 1 ];
+	}
+
+	/**
+	 * @return the mean pixel position of component {@code label} in dimension
+	 *         {@code d}.
+	 */
+	public double getCentroid( final int label, final int d )
+	{
+		return centroid[ d ][ label - 1 ];
+	}
+
+	/**
+	 * @return the sum of intensities over component {@code label}, 0 if no
+	 *         intensity image was given.
+	 */
+	public double getIntensitySum( final int label )
+	{
+		return intensitySum[ label - 1 ];
+	}
+
+	/**
+	 * @return the mean intensity of component {@code label}.
+	 */
+	public double getMeanIntensity( final int label )
+	{
+		return intensitySum[ label - 1 ] / area[ label - 1 ];
+	}
+
+	/**
+	 * @return the area column.
+	 */
+	public long[] getAreaColumn()
+	{
+		return area;
+	}
+
+	/**
+	 * @return the column of bounding box minima in dimension {@code d}.
+	 */
+	public long[] getMinColumn( final int d )
+	{
+		return min[ d ];
+	}
+
+	/**
+	 * @return the column of bounding box maxima in dimension {@code d}.
+	 */
+	public long[] getMaxColumn( final int d )
+	{
+		return max[ d ];
+	}
+
+	/**
+	 * @return the column of centroids in dimension {@code d}.
+	 */
+	public double[] getCentroidColumn( final int d )
+	{
+		return centroid[ d ];
+	}
+
+	/**
+	 * @return the intensity sum column.
+	 */
+	public double[] getIntensitySumColumn()
+	{
+		return intensitySum;
+	}
+
+	/**
+	 * Accumulates statistics in primitive arrays indexed by (provisional)
+	 * label. Per-dimension values of label {@code l} are stored at
+	 * {@code l * n + d}. Statistics of provisional labels are merged into
+	 * final labels by {@link #addTo(Accumulator, int, int)}.
+	 */
+	static final class Accumulator
+	{
+		private final int n;
+
+		private long[] area;
+
+		private long[] min;
+
+		private long[] max;
+
+		private long[] positionSum;
+
+		private double[] intensitySum;
+
+		Accumulator( final int n, final int capacity )
+		{
+			this.n = n;
+			area = new long[ 0 ];
+			min = new long[ 0 ];
+			max = new long[ 0 ];
+			positionSum = new long[ 0 ];
+			intensitySum = new double[ 0 ];
+			ensureCapacity( capacity );
+		}
+
+		/**
+		 * Make sure that labels {@code 0 ... capacity-1} can be accumulated.
+		 */
+		void ensureCapacity( final int capacity )
+		{
+			final int oldCapacity = area.length;
+			if ( capacity <= oldCapacity )
+				return;
+			final int newCapacity = Math.max( capacity, oldCapacity + ( oldCapacity >> 1 ) );
+			area = Arrays.copyOf( area, newCapacity );
+			intensitySum = Arrays.copyOf( intensitySum, newCapacity );
+			min = Arrays.copyOf( min, newCapacity * n );
+			max = Arrays.copyOf( max, newCapacity * n );
+			positionSum = Arrays.copyOf( positionSum, newCapacity * n );
+			Arrays.fill( min, oldCapacity * n, newCapacity * n, Long.MAX_VALUE );
+			Arrays.fill( max, oldCapacity * n, newCapacity * n, Long.MIN_VALUE );
+		}
+
+		/**
+		 * Add a pixel at {@code position} with the given {@code intensity}
+		 * to {@code label}.
+		 */
+		void add( final int label, final long[] position, final double intensity )
+		{
+			++area[ label ];
+			intensitySum[ label ] += intensity;
+			final int o = label * n;
+			for ( int d = 0; d < n; ++d )
+			{
+				final long p = position[ d ];
+				if ( p < min[ o + d ] )
+					min[ o + d ] = p;
+				if ( p > max[ o + d ] )
+					max[ o + d ] = p;
+				positionSum[ o + d ] += p;
+			}
+		}
+
+		/**
+		 * Add the statistics of label {@code from} of this accumulator to
+		 * label {@code to} of {@code target}.
+		 */
+		void addTo( final Accumulator target, final int from, final int to )
+		{
+			if ( area[ from ] == 0 )
+				return;
+			target.area[ to ] += area[ from ];
+			target.intensitySum[ to ] += intensitySum[ from ];
+			final int fo = from * n;
+			final int to0 = to * n;
+			for ( int d = 0; d < n; ++d )
+			{
+				target.min[ to0 + d ] = Math.min( target.min[ to0 + d ], min[ fo + d ] );
+				target.max[ to0 + d ] = Math.max( target.max[ to0 + d ], max[ fo + d ] );
+				target.positionSum[ to0 + d ] += positionSum[ fo + d ];
+			}
+		}
+	}
+}
@@ -0,0 +1,467 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.labeling;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+/**
+ * Connected component labeling of a volume that is streamed slice by slice
+ * along its last dimension, for volumes that do not fit into memory together
+ * with their labels.
+ * <p>
+ * Slices are {@link #push(RandomAccessibleInterval) pushed} in order. Only
+ * the provisional labels of the previous slice and a union-find of
+ * provisional labels are needed to label a slice. A labeled slice is handed
+ * to the {@link SliceListener} as soon as none of its components touches the
+ * most recent slice, because from then on these components can not be merged
+ * with others anymore. Slices are emitted in order, so slices are held back
+ * while a component is still open in the most recent slice (in the worst
+ * case, a component spanning the whole volume, until {@link #finish()}).
+ * <p>
+ * Final labels are {@code 1, 2, 3, ...} in the order of the first pixel of
+ * each component, as with
+ * {@link ConnectedComponents#labelAllConnectedComponents}.
+ *
+ * @param <T>
+ *            input pixel type, pixels > 0 belong to the foreground.
+ */
+public final class StreamingConnectedComponents< T extends IntegerType< T > >
+{
+	/**
+	 * Receives labeled slices when they are finished.
+	 */
+	public static interface SliceListener
+	{
+		/**
+		 * @param slice
+		 *            index of the slice along the last dimension (starting at
+		 *            0).
+		 * @param labels
+		 *            final labels of the slice, 0 for background.
+		 */
+		public void sliceFinished( long slice, Img< LongType > labels );
+	}
+
+	/**
+	 * Label all connected components of a volume given as a sequence of
+	 * slices.
+	 *
+	 * @param slices
+	 *            the slices of the volume along its last dimension.
+	 * @param sliceDimensions
+	 *            dimensions of each slice.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog) in the volume.
+	 * @param listener
+	 *            receives the labeled slices.
+	 * @return the number of connected components.
+	 */
+	public static < T extends IntegerType< T > > long label(
+			final Iterator< ? extends RandomAccessibleInterval< T > > slices,
+			final long[] sliceDimensions,
+			final StructuringElement se,
+			final SliceListener listener )
+	{
+		final StreamingConnectedComponents< T > ccl = new StreamingConnectedComponents< T >( sliceDimensions, se, listener );
+		while ( slices.hasNext() )
+			ccl.push( slices.next() );
+		ccl.finish();
+		return ccl.getNumComponents();
+	}
+
+	/**
+	 * Label all connected components of {@code input}, processing one slice
+	 * along the last dimension at a time, into a {@link LongType}
+	 * {@link net.imglib2.img.cell.CellImg}. The input may be lazily loaded.
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @param cellSize
+	 *            cell size of the output image.
+	 * @return labels, 0 for background and 1, 2, 3, etc. for the components.
+	 */
+	public static < T extends IntegerType< T > > Img< LongType > labelToCellImg(
+			final RandomAccessibleInterval< T > input,
+			final StructuringElement se,
+			final int cellSize )
+	{
+		final int n = input.numDimensions();
+		final long[] dimensions = new long[ n ];
+		input.dimensions( dimensions );
+		final Img< LongType > output = new CellImgFactory< LongType >( cellSize ).create( dimensions, new LongType() );
+		final long[] sliceDimensions = new long[ n - 1 ];
+		System.arraycopy( dimensions, 0, sliceDimensions, 0, n - 1 );
+
+		final StreamingConnectedComponents< T > ccl = new StreamingConnectedComponents< T >( sliceDimensions, se, new SliceListener()
+		{
+			@Override
+			public void sliceFinished( final long slice, final Img< LongType > labels )
+			{
+				final Cursor< LongType > in = labels.cursor();
+				final Cursor< LongType > out = Views.flatIterable( Views.hyperSlice( output, n - 1, slice ) ).cursor();
+				while ( in.hasNext() )
+					out.next().set( in.next() );
+			}
+		} );
+		final long min = input.min( n - 1 );
+		for ( long z = 0; z < dimensions[ n - 1 ]; ++z )
+			ccl.push( Views.hyperSlice( input, n - 1, min + z ) );
+		ccl.finish();
+		return output;
+	}
+
+	private static final class PendingSlice
+	{
+		final long index;
+
+		final int[] labels;
+
+		/**
+		 * the distinct provisional labels occurring in the slice.
+		 */
+		final TIntArrayList distinctLabels;
+
+		PendingSlice( final long index, final int[] labels, final TIntArrayList distinctLabels )
+		{
+			this.index = index;
+			this.labels = labels;
+			this.distinctLabels = distinctLabels;
+		}
+	}
+
+	private final int m;
+
+	private final long[] sliceDimensions;
+
+	private final int sliceSize;
+
+	private final SliceListener listener;
+
+	/**
+	 * linear offsets and position offsets of previously visited neighbors in
+	 * the current slice.
+	 */
+	private final int[] sliceOffsets;
+
+	private final int[][] slicePositions;
+
+	/**
+	 * linear offsets and position offsets of neighbors in the previous slice.
+	 */
+	private final int[] previousOffsets;
+
+	private final int[][] previousPositions;
+
+	/**
+	 * union-find of provisional labels. The root of each set is its smallest
+	 * label. Label 0 is the background.
+	 */
+	private final TIntArrayList parent;
+
+	/**
+	 * for each provisional label, the index of the last slice it was seen in.
+	 */
+	private final TIntArrayList lastSeen;
+
+	private final ArrayDeque< PendingSlice > pending;
+
+	/**
+	 * final labels of the roots of emitted components.
+	 */
+	private final TIntLongHashMap finalLabels;
+
+	private int[] previousLabels;
+
+	private long numSlices;
+
+	private long numComponents;
+
+	/**
+	 * @param sliceDimensions
+	 *            dimensions of each slice.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog) in the volume.
+	 * @param listener
+	 *            receives the labeled slices.
+	 */
+	public StreamingConnectedComponents( final long[] sliceDimensions, final StructuringElement se, final SliceListener listener )
+	{
+		m = sliceDimensions.length;
+		this.sliceDimensions = sliceDimensions.clone();
+		long size = 1;
+		for ( int d = 0; d < m; ++d )
+			size *= sliceDimensions[ d ];
+		if ( size > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "Slices must have less than 2^31 pixels." );
+		sliceSize = ( int ) size;
+		this.listener = listener;
+
+		// neighbor offsets in slice coordinates
+		final int numOffsets = ( int ) Math.pow( 3, m );
+		final int[][] candidates = new int[ numOffsets ][ m ];
+		for ( int i = 0; i < numOffsets; ++i )
+			for ( int d = 0, k = i; d < m; ++d, k /= 3 )
+				candidates[ i ][ d ] = k % 3 - 1;
+		final boolean fourConnected = se == StructuringElement.FOUR_CONNECTED;
+		final TIntArrayList inSlice = new TIntArrayList();
+		final TIntArrayList inPrevious = new TIntArrayList();
+		for ( int i = 0; i < numOffsets; ++i )
+		{
+			final int[] o = candidates[ i ];
+			int numNonZero = 0;
+			int highest = 0;
+			for ( int d = 0; d < m; ++d )
+				if ( o[ d ] != 0 )
+				{
+					++numNonZero;
+					highest = o[ d ];
+				}
+			if ( !fourConnected || numNonZero == 0 )
+				inPrevious.add( i );
+			if ( highest == -1 && ( !fourConnected || numNonZero == 1 ) )
+				inSlice.add( i );
+		}
+		sliceOffsets = new int[ inSlice.size() ];
+		slicePositions = new int[ inSlice.size() ][];
+		for ( int i = 0; i < inSlice.size(); ++i )
+		{
+			slicePositions[ i ] = candidates[ inSlice.get( i ) ];
+			sliceOffsets[ i ] = linearOffset( slicePositions[ i ] );
+		}
+		previousOffsets = new int[ inPrevious.size() ];
+		previousPositions = new int[ inPrevious.size() ][];
+		for ( int i = 0; i < inPrevious.size(); ++i )
+		{
+			previousPositions[ i ] = candidates[ inPrevious.get( i ) ];
+			previousOffsets[ i ] = linearOffset( previousPositions[ i ] );
+		}
+
+		parent = new TIntArrayList();
+		parent.add( 0 );
+		lastSeen = new TIntArrayList();
+		lastSeen.add( -1 );
+		pending = new ArrayDeque< PendingSlice >();
+		finalLabels = new TIntLongHashMap();
+		previousLabels = null;
+		numSlices = 0;
+		numComponents = 0;
+	}
+
+	/**
+	 * Label the next slice. Slices that are finished by this are passed to
+	 * the {@link SliceListener}.
+	 *
+	 * @param slice
+	 *            next slice, pixels > 0 belong to the foreground.
+	 */
+	public void push( final RandomAccessibleInterval< T > slice )
+	{
+		if ( slice.numDimensions() != m )
+			throw new IllegalArgumentException( "Expected slices with " + m + " dimensions." );
+		for ( int d = 0; d < m; ++d )
+			if ( slice.dimension( d ) != sliceDimensions[ d ] )
+				throw new IllegalArgumentException( "Slice dimensions do not match." );
+
+		final int sliceIndex = ( int ) numSlices;
+		final int[] labels = new int[ sliceSize ];
+		final TIntArrayList distinctLabels = new TIntArrayList();
+		final long[] pos = new long[ m ];
+		final Cursor< T > in = Views.flatIterable( slice ).cursor();
+		for ( int i = 0; i < sliceSize; ++i )
+		{
+			if ( in.next().getInteger() > 0 )
+			{
+				int label = 0;
+				for ( int k = 0; k < sliceOffsets.length; ++k )
+					if ( isInside( pos, slicePositions[ k ] ) )
+						label = merge( label, labels[ i + sliceOffsets[ k ] ] );
+				if ( previousLabels != null )
+					for ( int k = 0; k < previousOffsets.length; ++k )
+						if ( isInside( pos, previousPositions[ k ] ) )
+							label = merge( label, previousLabels[ i + previousOffsets[ k ] ] );
+				if ( label == 0 )
+				{
+					label = parent.size();
+					parent.add( label );
+					lastSeen.add( -1 );
+				}
+				labels[ i ] = label;
+				if ( lastSeen.get( label ) != sliceIndex )
+				{
+					lastSeen.set( label, sliceIndex );
+					distinctLabels.add( label );
+				}
+			}
+			for ( int d = 0; d < m; ++d )
+			{
+				if ( ++pos[ d ] < sliceDimensions[ d ] )
+					break;
+				pos[ d ] = 0;
+			}
+		}
+
+		pending.add( new PendingSlice( numSlices, labels, distinctLabels ) );
+		previousLabels = labels;
+		++numSlices;
+
+		// components that touch the current slice are still open
+		final TIntHashSet open = new TIntHashSet();
+		for ( int i = 0; i < distinctLabels.size(); ++i )
+			open.add( find( distinctLabels.get( i ) ) );
+		while ( !pending.isEmpty() && isClosed( pending.peek(), open ) )
+			emit( pending.poll() );
+	}
+
+	/**
+	 * Signal that there are no more slices. All remaining slices are passed
+	 * to the {@link SliceListener}.
+	 */
+	public void finish()
+	{
+		while ( !pending.isEmpty() )
+			emit( pending.poll() );
+		previousLabels = null;
+	}
+
+	/**
+	 * @return the number of components in the slices emitted so far.
+	 */
+	public long getNumComponents()
+	{
+		return numComponents;
+	}
+
+	private boolean isClosed( final PendingSlice slice, final TIntHashSet open )
+	{
+		final TIntArrayList labels = slice.distinctLabels;
+		for ( int i = 0; i < labels.size(); ++i )
+			if ( open.contains( find( labels.get( i ) ) ) )
+				return false;
+		return true;
+	}
+
+	private void emit( final PendingSlice slice )
+	{
+		final long[] out = new long[ sliceSize ];
+		final int[] labels = slice.labels;
+		for ( int i = 0; i < sliceSize; ++i )
+		{
+			final int label = labels[ i ];
+			if ( label != 0 )
+			{
+				final int root = find( label );
+				long finalLabel = finalLabels.get( root );
+				if ( finalLabel == finalLabels.getNoEntryValue() )
+				{
+					finalLabel = ++numComponents;
+					finalLabels.put( root, finalLabel );
+				}
+				out[ i ] = finalLabel;
+			}
+		}
+		listener.sliceFinished( slice.index, ArrayImgs.longs( out, sliceDimensions ) );
+	}
+
+	private int merge( final int label, final int neighbor )
+	{
+		if ( neighbor == 0 )
+			return label;
+		if ( label == 0 )
+			return neighbor;
+		union( label, neighbor );
+		return label;
+	}
+
+	private int find( int label )
+	{
+		int p = parent.get( label );
+		while ( p != label )
+		{
+			final int gp = parent.get( p );
+			parent.set( label, gp );
+			label = gp;
+			p = parent.get( label );
+		}
+		return label;
+	}
+
+	private void union( final int a, final int b )
+	{
+		final int ra = find( a );
+		final int rb = find( b );
+		if ( ra < rb )
+			parent.set( rb, ra );
+		else if ( rb < ra )
+			parent.set( ra, rb );
+	}
+
+	private boolean isInside( final long[] pos, final int[] offset )
+	{
+		for ( int d = 0; d < m; ++d )
+		{
+			final long p = pos[ d ] + offset[ d ];
+			if ( p < 0 || p >= sliceDimensions[ d ] )
+				return false;
+		}
+		return true;
+	}
+
+	private int linearOffset( final int[] offset )
+	{
+		int linear = 0;
+		for ( int d = m - 1; d >= 0; --d )
+			linear = linear * ( int ) sliceDimensions[ d ] + offset[ d ];
+		return linear;
+	}
+}
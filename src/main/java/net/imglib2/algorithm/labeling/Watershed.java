@@ -34,8 +34,9 @@
 
 package net.imglib2.algorithm.labeling;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.PriorityQueue;
 
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccessibleInterval;
@@ -223,16 +224,18 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		final OutOfBounds< T > imageAccess = oobImageFactory.create( image );
 
 		/*
-		 * Start by loading up a priority queue with the seeded pixels
+		 * Start by loading up a priority queue with the seeded pixels. The
+		 * queue holds pixel indices and ids of the interned labelings.
 		 */
-		final PriorityQueue< PixelIntensity< L >> pq = new PriorityQueue< PixelIntensity< L >>();
+		final PixelQueue pq = PixelQueue.create( maxVal );
+		final ArrayList< List< L > > labelings = new ArrayList< List< L > >();
+		final IdentityHashMap< List< L >, Integer > labelingIds = new IdentityHashMap< List< L >, Integer >();
 		final Cursor< LabelingType< L >> c = seeds.localizingCursor();
 
 		final long[] dimensions = new long[ image.numDimensions() ];
 		output.dimensions( dimensions );
 		final long[] position = new long[ image.numDimensions() ];
 		final long[] destPosition = new long[ image.numDimensions() ];
-		long age = 0;
 
 		while ( c.hasNext() )
 		{
@@ -252,7 +255,14 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 			l = tDest.intern( l );
 			tDest.setLabeling( l );
 			final double intensity = imageAccess.get().getRealDouble();
-			pq.add( new PixelIntensity< L >( position, dimensions, intensity, age++, l ) );
+			Integer id = labelingIds.get( l );
+			if ( id == null )
+			{
+				id = labelings.size();
+				labelings.add( l );
+				labelingIds.put( l, id );
+			}
+			pq.add( intensity, getIndex( position, dimensions ), id );
 		}
 		/*
 		 * Rework the structuring element into a series of consecutive offsets
@@ -278,9 +288,9 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		 */
 		while ( !pq.isEmpty() )
 		{
-			final PixelIntensity< L > currentPI = pq.remove();
-			final List< L > l = currentPI.getLabeling();
-			currentPI.getPosition( position, dimensions );
+			getPosition( pq.remove(), position, dimensions );
+			final int id = pq.getLabel();
+			final List< L > l = labelings.get( id );
 			outputAccess.setPosition( position );
 			imageAccess.setPosition( position );
 			for ( final long[] offset : strelMoves )
@@ -297,12 +307,34 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 				outputLabelingType.setLabeling( l );
 				final double intensity = imageAccess.get().getRealDouble();
 				outputAccess.localize( destPosition );
-				pq.add( new PixelIntensity< L >( destPosition, dimensions, intensity, age++, l ) );
+				pq.add( intensity, getIndex( destPosition, dimensions ), id );
 			}
 		}
 		return true;
 	}
 
+	private static long getIndex( final long[] position, final long[] dimensions )
+	{
+		long index = position[ 0 ];
+		long multiplier = dimensions[ 0 ];
+		for ( int i = 1; i < dimensions.length; i++ )
+		{
+			index += position[ i ] * multiplier;
+			multiplier *= dimensions[ i ];
+		}
+		return index;
+	}
+
+	private static void getPosition( final long index, final long[] position, final long[] dimensions )
+	{
+		long idx = index;
+		for ( int i = 0; i < dimensions.length; i++ )
+		{
+			position[ i ] = idx % dimensions[ i ];
+			idx /= dimensions[ i ];
+		}
+	}
+
 	@Override
 	public boolean checkInput()
 	{
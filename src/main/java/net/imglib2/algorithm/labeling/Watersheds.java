@@ -0,0 +1,1046 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.labeling;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.FutureUtils;
+import net.imglib2.roi.labeling.ImgLabeling;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Seeded watershed on images of integer label ids.
+ * <p>
+ * This computes the same result as {@link Watershed}, but instead of a
+ * {@link net.imglib2.labeling.Labeling} it reads seeds from and writes the
+ * result to an {@link IntegerType} image of label ids. The meaning of the
+ * ids (e.g., the label sets of an {@link ImgLabeling}) is kept by the caller.
+ * Intensities and ids are copied to primitive arrays, so that the flooding
+ * loop works on pixel indices only, without out-of-bounds wrappers.
+ */
+public final class Watersheds
+{
+	/**
+	 * Seeded watershed on the index image of an {@link ImgLabeling}. Pixels
+	 * with a non-empty label set are the seeds. All pixels reachable from
+	 * the seeds are labeled with the label set of the seed that flooded
+	 * them.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 *            Lower values will be labeled first.
+	 * @param labeling
+	 *            seeds on input, result on output.
+	 * @param structuringElement
+	 *            offsets of connected pixels, see
+	 *            {@link Watershed#setStructuringElement(long[][])}. If
+	 *            {@code null}, the 8-connected (or N-dimensional equivalent)
+	 *            structuring element is used.
+	 */
+	public static < T extends RealType< T >, L, I extends IntegerType< I > > void seededWatershed(
+			final RandomAccessibleInterval< T > image,
+			final ImgLabeling< L, I > labeling,
+			final long[][] structuringElement )
+	{
+		seededWatershed( image, labeling.getIndexImg(), structuringElement );
+	}
+
+	/**
+	 * Seeded watershed on an image of label ids. Pixels with id != 0 are the
+	 * seeds. All pixels reachable from the seeds are set to the id of the
+	 * seed that flooded them. Ties are broken by assigning a pixel to the id
+	 * that occupied an adjacent pixel first.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 *            Lower values will be labeled first.
+	 * @param labels
+	 *            seed ids on input, result on output. 0 means unlabeled.
+	 * @param structuringElement
+	 *            offsets of connected pixels, see
+	 *            {@link Watershed#setStructuringElement(long[][])}. If
+	 *            {@code null}, the 8-connected (or N-dimensional equivalent)
+	 *            structuring element is used.
+	 */
+	public static < T extends RealType< T >, I extends IntegerType< I > > void seededWatershed(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< I > labels,
+			final long[][] structuringElement )
+	{
+		final long[] dimensions = checkDimensions( image, labels );
+		final int n = dimensions.length;
+		final long[][] strel = structuringElement == null ? AllConnectedComponents.getStructuringElement( n ) : structuringElement;
+		final double[] intensities = getIntensities( image );
+		final int[] ids = getIds( labels );
+		final PixelQueue queue = PixelQueue.create( Views.iterable( image ).firstElement() );
+		for ( int i = 0; i < ids.length; ++i )
+			if ( ids[ i ] != 0 )
+				queue.add( intensities[ i ], i, ids[ i ] );
+		flood( intensities, ids, dimensions, strel, queue );
+		setIds( labels, ids );
+	}
+
+	/**
+	 * Seeded watershed on an image of label ids, with deterministic
+	 * tie-breaking on plateaus. Pixels with id != 0 are the seeds. All pixels
+	 * reachable from the seeds are set to the id of the seed that flooded
+	 * them.
+	 * <p>
+	 * Pixels are flooded in the order of their flooding level (the minimal
+	 * possible maximum intensity along a path from a seed), then of the
+	 * number of steps at that level, then of label id. So on plateaus, ties
+	 * are broken by distance and then by label id instead of by the queue
+	 * order of
+	 * {@link #seededWatershed(RandomAccessibleInterval, RandomAccessibleInterval, long[][])}.
+	 * If all intensities are distinct, both give the same result.
+	 * {@link #parallelSeededWatershed(RandomAccessibleInterval, RandomAccessibleInterval, long[][], int, ExecutorService)}
+	 * gives the same result as this method for any number of blocks.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 *            Lower values will be labeled first.
+	 * @param labels
+	 *            seed ids on input, result on output. 0 means unlabeled.
+	 * @param structuringElement
+	 *            offsets of connected pixels, see
+	 *            {@link Watershed#setStructuringElement(long[][])}. If
+	 *            {@code null}, the 8-connected (or N-dimensional equivalent)
+	 *            structuring element is used.
+	 */
+	public static < T extends RealType< T >, I extends IntegerType< I > > void orderedSeededWatershed(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< I > labels,
+			final long[][] structuringElement )
+	{
+		final long[] dimensions = checkDimensions( image, labels );
+		final int n = dimensions.length;
+		final long[][] strel = structuringElement == null ? AllConnectedComponents.getStructuringElement( n ) : structuringElement;
+		final ParallelFlooding flooding = new ParallelFlooding( getIntensities( image ), getIds( labels ), dimensions, strel, 1 );
+		flooding.run( null );
+		setIds( labels, flooding.labels );
+	}
+
+	/**
+	 * Parallel seeded watershed on an image of label ids, using one block per
+	 * available processor. See
+	 * {@link #parallelSeededWatershed(RandomAccessibleInterval, RandomAccessibleInterval, long[][], int, ExecutorService)}.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 *            Lower values will be labeled first.
+	 * @param labels
+	 *            seed ids on input, result on output. 0 means unlabeled.
+	 * @param structuringElement
+	 *            offsets of connected pixels, see
+	 *            {@link Watershed#setStructuringElement(long[][])}. If
+	 *            {@code null}, the 8-connected (or N-dimensional equivalent)
+	 *            structuring element is used.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < T extends RealType< T >, I extends IntegerType< I > > void parallelSeededWatershed(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< I > labels,
+			final long[][] structuringElement,
+			final ExecutorService service )
+	{
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		parallelSeededWatershed( image, labels, structuringElement, numThreads, service );
+	}
+
+	/**
+	 * Parallel seeded watershed on an image of label ids. The image is split
+	 * into blocks along the last dimension, which are flooded independently
+	 * from their seeds. Then the pixels that depend on changed labels of
+	 * pixels in neighboring blocks are re-flooded, until no block border
+	 * changes anymore.
+	 * <p>
+	 * Pixels are flooded in the same order as by
+	 * {@link #orderedSeededWatershed(RandomAccessibleInterval, RandomAccessibleInterval, long[][])}.
+	 * This order does not depend on the block decomposition, so the result is
+	 * identical to that of
+	 * {@link #orderedSeededWatershed(RandomAccessibleInterval, RandomAccessibleInterval, long[][])},
+	 * including on plateaus, and independent of {@code numBlocks} and the
+	 * number of threads.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 *            Lower values will be labeled first.
+	 * @param labels
+	 *            seed ids on input, result on output. 0 means unlabeled.
+	 * @param structuringElement
+	 *            offsets of connected pixels, see
+	 *            {@link Watershed#setStructuringElement(long[][])}. If
+	 *            {@code null}, the 8-connected (or N-dimensional equivalent)
+	 *            structuring element is used.
+	 * @param numBlocks
+	 *            the number of blocks to split the image into. At most one
+	 *            block per slice along the last dimension is used.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < T extends RealType< T >, I extends IntegerType< I > > void parallelSeededWatershed(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< I > labels,
+			final long[][] structuringElement,
+			final int numBlocks,
+			final ExecutorService service )
+	{
+		if ( numBlocks < 1 )
+			throw new IllegalArgumentException( "The number of blocks must be positive." );
+		final long[] dimensions = checkDimensions( image, labels );
+		final int n = dimensions.length;
+		final long[][] strel = structuringElement == null ? AllConnectedComponents.getStructuringElement( n ) : structuringElement;
+		final double[] intensities = getIntensities( image );
+		final int[] seeds = getIds( labels );
+
+		final int numUsedBlocks = ( int ) Math.max( 1, Math.min( numBlocks, dimensions[ n - 1 ] ) );
+		final ParallelFlooding flooding = new ParallelFlooding( intensities, seeds, dimensions, strel, numUsedBlocks );
+		flooding.run( service );
+		setIds( labels, flooding.labels );
+	}
+
+	/**
+	 * Watershed without seeds. Regional minima are found while flooding: The
+	 * pixels are processed in the order of increasing intensity, level by
+	 * level (Vincent &amp; Soille). Pixels of a level that are connected to
+	 * an existing basin are assigned to it by breadth-first propagation, so
+	 * that plateaus are split at equal distance. The remaining pixels of the
+	 * level are regional minima. They are joined into new basins by a
+	 * union-find over their connected components.
+	 * <p>
+	 * If {@code drawDams} is {@code true}, pixels that are reached from two
+	 * basins at once, or that touch a pixel of a different basin, become dam
+	 * pixels, and no two different basins are adjacent in the result.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 * @param labels
+	 *            output. Basins are set to 1, 2, 3, etc. in the order of their
+	 *            minima. Dam pixels are set to 0.
+	 * @param structuringElement
+	 *            offsets of connected pixels, see
+	 *            {@link Watershed#setStructuringElement(long[][])}. If
+	 *            {@code null}, the 8-connected (or N-dimensional equivalent)
+	 *            structuring element is used.
+	 * @param drawDams
+	 *            whether to separate basins by dam pixels.
+	 * @return the number of basins, i.e., of regional minima.
+	 */
+	public static < T extends RealType< T >, I extends IntegerType< I > > int watershed(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< I > labels,
+			final long[][] structuringElement,
+			final boolean drawDams )
+	{
+		final long[] dimensions = checkDimensions( image, labels );
+		final int n = dimensions.length;
+		final long[][] strel = structuringElement == null ? AllConnectedComponents.getStructuringElement( n ) : structuringElement;
+		final double[] intensities = getIntensities( image );
+		final int[] ids = new int[ intensities.length ];
+		final int numBasins = immersion( intensities, ids, dimensions, strel, drawDams );
+		for ( int i = 0; i < ids.length; ++i )
+			if ( ids[ i ] < 0 )
+				ids[ i ] = 0;
+		setIds( labels, ids );
+		return numBasins;
+	}
+
+	private static final int MASK = -2;
+
+	private static final int DAM = -1;
+
+	/**
+	 * Immersion watershed with on-the-fly minima detection, see
+	 * {@link #watershed(RandomAccessibleInterval, RandomAccessibleInterval, long[][], boolean)}.
+	 *
+	 * @param ids
+	 *            receives basin ids (> 0) and {@link #DAM} pixels.
+	 * @return the number of basins.
+	 */
+	private static int immersion( final double[] intensities, final int[] ids, final long[] dimensions, final long[][] structuringElement, final boolean drawDams )
+	{
+		final int size = intensities.length;
+		final int[] order = sortByIntensity( intensities );
+		final int[] dist = new int[ size ];
+		final int[] parent = new int[ size ];
+		final int[] fifo = new int[ size + 1 ];
+		final PixelNeighbors neighbors = new PixelNeighbors( dimensions, structuringElement );
+		final int FICTITIOUS = -1;
+		int numBasins = 0;
+
+		for ( int levelStart = 0; levelStart < size; )
+		{
+			final double level = intensities[ order[ levelStart ] ];
+			int levelEnd = levelStart + 1;
+			while ( levelEnd < size && intensities[ order[ levelEnd ] ] == level )
+				++levelEnd;
+
+			// start propagation from pixels of this level next to basins
+			int head = 0;
+			int tail = 0;
+			for ( int i = levelStart; i < levelEnd; ++i )
+			{
+				final int p = order[ i ];
+				ids[ p ] = MASK;
+				neighbors.setCenter( p );
+				for ( int k = 0; k < neighbors.size(); ++k )
+				{
+					final int q = neighbors.get( k );
+					if ( q >= 0 && ( ids[ q ] > 0 || ids[ q ] == DAM ) )
+					{
+						dist[ p ] = 1;
+						fifo[ tail ] = p;
+						tail = ( tail + 1 ) % fifo.length;
+						break;
+					}
+				}
+			}
+
+			// breadth-first propagation of basins into this level
+			int currentDist = 1;
+			fifo[ tail ] = FICTITIOUS;
+			tail = ( tail + 1 ) % fifo.length;
+			while ( true )
+			{
+				int p = fifo[ head ];
+				head = ( head + 1 ) % fifo.length;
+				if ( p == FICTITIOUS )
+				{
+					if ( head == tail )
+						break;
+					fifo[ tail ] = FICTITIOUS;
+					tail = ( tail + 1 ) % fifo.length;
+					++currentDist;
+					p = fifo[ head ];
+					head = ( head + 1 ) % fifo.length;
+				}
+
+				int label = 0;
+				boolean conflict = false;
+				neighbors.setCenter( p );
+				for ( int k = 0; k < neighbors.size(); ++k )
+				{
+					final int q = neighbors.get( k );
+					if ( q < 0 )
+						continue;
+					final int l = ids[ q ];
+					if ( l > 0 )
+					{
+						if ( dist[ q ] < currentDist && label == 0 )
+							label = l;
+					}
+					else if ( l == MASK && dist[ q ] == 0 )
+					{
+						dist[ q ] = currentDist + 1;
+						fifo[ tail ] = q;
+						tail = ( tail + 1 ) % fifo.length;
+					}
+				}
+				if ( drawDams && label != 0 )
+				{
+					// any labeled neighbor of another basin makes p a dam
+					for ( int k = 0; k < neighbors.size() && !conflict; ++k )
+					{
+						final int q = neighbors.get( k );
+						conflict = q >= 0 && ids[ q ] > 0 && ids[ q ] != label;
+					}
+				}
+				ids[ p ] = ( label == 0 || conflict ) ? DAM : label;
+			}
+
+			// remaining pixels of this level are regional minima
+			for ( int i = levelStart; i < levelEnd; ++i )
+			{
+				final int p = order[ i ];
+				dist[ p ] = 0;
+				if ( ids[ p ] == MASK )
+					parent[ p ] = p;
+			}
+			for ( int i = levelStart; i < levelEnd; ++i )
+			{
+				final int p = order[ i ];
+				if ( ids[ p ] != MASK )
+					continue;
+				neighbors.setCenter( p );
+				for ( int k = 0; k < neighbors.size(); ++k )
+				{
+					final int q = neighbors.get( k );
+					if ( q >= 0 && ids[ q ] == MASK )
+					{
+						final int rp = find( parent, p );
+						final int rq = find( parent, q );
+						if ( rp < rq )
+							parent[ rq ] = rp;
+						else if ( rq < rp )
+							parent[ rp ] = rq;
+					}
+				}
+			}
+			for ( int i = levelStart; i < levelEnd; ++i )
+			{
+				final int p = order[ i ];
+				if ( ids[ p ] != MASK && parent[ p ] != p )
+					continue;
+				final int root = find( parent, p );
+				if ( ids[ root ] == MASK )
+					ids[ root ] = ++numBasins;
+				ids[ p ] = ids[ root ];
+			}
+
+			levelStart = levelEnd;
+		}
+		return numBasins;
+	}
+
+	private static int find( final int[] parent, int i )
+	{
+		while ( parent[ i ] != i )
+		{
+			parent[ i ] = parent[ parent[ i ] ];
+			i = parent[ i ];
+		}
+		return i;
+	}
+
+	/**
+	 * @return pixel indices sorted by increasing intensity, and by index for
+	 *         equal intensities. Uses counting sort if all intensities are
+	 *         integers in a range of at most 2^16 values.
+	 */
+	static int[] sortByIntensity( final double[] intensities )
+	{
+		final int size = intensities.length;
+		final int[] order = new int[ size ];
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		boolean integral = true;
+		for ( int i = 0; i < size; ++i )
+		{
+			final double v = intensities[ i ];
+			min = Math.min( min, v );
+			max = Math.max( max, v );
+			integral &= v == Math.floor( v );
+		}
+		if ( size > 0 && integral && max - min < ( 1 << 16 ) )
+		{
+			final int[] counts = new int[ ( int ) ( max - min ) + 2 ];
+			for ( int i = 0; i < size; ++i )
+				++counts[ ( int ) ( intensities[ i ] - min ) + 1 ];
+			for ( int b = 1; b < counts.length; ++b )
+				counts[ b ] += counts[ b - 1 ];
+			for ( int i = 0; i < size; ++i )
+				order[ counts[ ( int ) ( intensities[ i ] - min ) ]++ ] = i;
+			return order;
+		}
+
+		// stable bottom-up merge sort
+		int[] a = order;
+		int[] b = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			a[ i ] = i;
+		for ( int width = 1; width < size; width *= 2 )
+		{
+			for ( int lo = 0; lo < size; lo += 2 * width )
+			{
+				final int mid = Math.min( lo + width, size );
+				final int hi = Math.min( lo + 2 * width, size );
+				int i = lo;
+				int j = mid;
+				for ( int k = lo; k < hi; ++k )
+				{
+					if ( i < mid && ( j >= hi || Double.compare( intensities[ a[ i ] ], intensities[ a[ j ] ] ) <= 0 ) )
+						b[ k ] = a[ i++ ];
+					else
+						b[ k ] = a[ j++ ];
+				}
+			}
+			final int[] t = a;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/**
+	 * Flood from the pixels in {@code queue}: Repeatedly remove the lowest
+	 * pixel, set all unlabeled neighbors to its id and add them to the queue.
+	 *
+	 * @param intensities
+	 *            pixel intensities in flat iteration order.
+	 * @param ids
+	 *            pixel ids in flat iteration order, 0 is unlabeled.
+	 * @param dimensions
+	 *            image dimensions.
+	 * @param structuringElement
+	 *            neighbor offsets.
+	 * @param queue
+	 *            initially contains the seed pixels.
+	 */
+	static void flood( final double[] intensities, final int[] ids, final long[] dimensions, final long[][] structuringElement, final PixelQueue queue )
+	{
+		final PixelNeighbors neighbors = new PixelNeighbors( dimensions, structuringElement );
+		while ( !queue.isEmpty() )
+		{
+			final int index = ( int ) queue.remove();
+			final int id = queue.getLabel();
+			neighbors.setCenter( index );
+			for ( int k = 0; k < neighbors.size(); ++k )
+			{
+				final int neighbor = neighbors.get( k );
+				if ( neighbor < 0 || ids[ neighbor ] != 0 )
+					continue;
+				ids[ neighbor ] = id;
+				queue.add( intensities[ neighbor ], neighbor, id );
+			}
+		}
+	}
+
+	/**
+	 * Flooding of blocks along the last dimension, iterated until the labels
+	 * at the block borders are stable. After the first round, each block
+	 * re-floods only the pixels that depend on changed pixels of neighboring
+	 * blocks, so a round costs time in the number of changed pixels rather
+	 * than the block size.
+	 */
+	private static final class ParallelFlooding
+	{
+		private final double[] intensities;
+
+		private final int[] seeds;
+
+		private final long[] dimensions;
+
+		private final long[][] structuringElement;
+
+		/**
+		 * offsets of the pixels that a pixel is flooded from.
+		 */
+		private final long[][] inverseStructuringElement;
+
+		/**
+		 * flooding level, steps at that level, and label of each pixel.
+		 */
+		private final double[] levels;
+
+		private final int[] steps;
+
+		final int[] labels;
+
+		private final Block[] blocks;
+
+		ParallelFlooding( final double[] intensities, final int[] seeds, final long[] dimensions, final long[][] structuringElement, final int numBlocks )
+		{
+			this.intensities = intensities;
+			this.seeds = seeds;
+			this.dimensions = dimensions;
+			this.structuringElement = structuringElement;
+			final int n = dimensions.length;
+			inverseStructuringElement = new long[ structuringElement.length ][ n ];
+			for ( int k = 0; k < structuringElement.length; ++k )
+				for ( int d = 0; d < n; ++d )
+					inverseStructuringElement[ k ][ d ] = -structuringElement[ k ][ d ];
+			final int radius = new PixelNeighbors( dimensions, structuringElement ).getRadius( n - 1 );
+			levels = new double[ intensities.length ];
+			steps = new int[ intensities.length ];
+			labels = new int[ intensities.length ];
+
+			final long numSlices = dimensions[ n - 1 ];
+			final int sliceSize = ( int ) ( intensities.length / numSlices );
+			blocks = new Block[ numBlocks ];
+			for ( int b = 0; b < numBlocks; ++b )
+			{
+				final long first = numSlices * b / numBlocks;
+				final long end = numSlices * ( b + 1 ) / numBlocks;
+				final long haloFirst = Math.max( 0, first - radius );
+				final long haloEnd = Math.min( numSlices, end + radius );
+				blocks[ b ] = new Block(
+						( int ) first * sliceSize, ( int ) end * sliceSize,
+						( int ) haloFirst * sliceSize, ( int ) haloEnd * sliceSize );
+			}
+		}
+
+		/**
+		 * Flood until the block borders are stable. A single block is
+		 * flooded once in the calling thread, {@code service} may be
+		 * {@code null} then.
+		 */
+		void run( final ExecutorService service )
+		{
+			if ( blocks.length == 1 )
+			{
+				blocks[ 0 ].flood();
+				return;
+			}
+			final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+			while ( true )
+			{
+				for ( final Block block : blocks )
+				{
+					futures.add( service.submit( new Callable< Void >()
+					{
+						@Override
+						public Void call()
+						{
+							block.gatherHalo();
+							return null;
+						}
+					} ) );
+				}
+				FutureUtils.getAllFutures( futures );
+
+				boolean changed = false;
+				for ( final Block block : blocks )
+				{
+					if ( !block.haloChanged )
+						continue;
+					changed = true;
+					futures.add( service.submit( new Callable< Void >()
+					{
+						@Override
+						public Void call()
+						{
+							block.flood();
+							return null;
+						}
+					} ) );
+				}
+				FutureUtils.getAllFutures( futures );
+				if ( !changed )
+					return;
+			}
+		}
+
+		private final class Block
+		{
+			/**
+			 * pixel index range of the block.
+			 */
+			private final int first;
+
+			private final int end;
+
+			/**
+			 * pixel index range of the block including neighboring pixels
+			 * in other blocks.
+			 */
+			private final int haloFirst;
+
+			private final int haloEnd;
+
+			/**
+			 * label, steps, and level of the pixels in neighboring blocks, as
+			 * of the last flooding.
+			 */
+			private final int[] haloLabels;
+
+			private final int[] haloSteps;
+
+			private final double[] haloLevels;
+
+			/**
+			 * pixels in neighboring blocks that changed since the last
+			 * flooding.
+			 */
+			private final TIntArrayList changedHalo = new TIntArrayList();
+
+			/**
+			 * pixels of the block that are re-flooded, and a flag for each
+			 * pixel of the block whether it is in {@link #dirtyPixels}.
+			 */
+			private final TIntArrayList dirtyPixels = new TIntArrayList();
+
+			private boolean[] dirty;
+
+			private boolean haloChanged;
+
+			private boolean flooded;
+
+			Block( final int first, final int end, final int haloFirst, final int haloEnd )
+			{
+				this.first = first;
+				this.end = end;
+				this.haloFirst = haloFirst;
+				this.haloEnd = haloEnd;
+				final int haloSize = first - haloFirst + haloEnd - end;
+				haloLabels = new int[ haloSize ];
+				haloSteps = new int[ haloSize ];
+				haloLevels = new double[ haloSize ];
+				flooded = false;
+			}
+
+			/**
+			 * Collect the pixels in neighboring blocks that changed since the
+			 * last flooding.
+			 */
+			void gatherHalo()
+			{
+				changedHalo.resetQuick();
+				for ( int i = haloFirst; i < haloEnd; ++i )
+				{
+					if ( i == first )
+						i = end;
+					if ( i >= haloEnd )
+						break;
+					final int h = haloOffset( i );
+					if ( labels[ i ] == haloLabels[ h ] && ( labels[ i ] == 0 || ( steps[ i ] == haloSteps[ h ] && levels[ i ] == haloLevels[ h ] ) ) )
+						continue;
+					haloLabels[ h ] = labels[ i ];
+					haloSteps[ h ] = steps[ i ];
+					haloLevels[ h ] = levels[ i ];
+					changedHalo.add( i );
+				}
+				haloChanged = !flooded || !changedHalo.isEmpty();
+			}
+
+			/**
+			 * Flood the block from its seeds and the labeled pixels in
+			 * neighboring blocks, in the order of (level, steps, label). After
+			 * the first flooding, only the pixels that depend on changed
+			 * pixels in neighboring blocks are re-flooded.
+			 */
+			void flood()
+			{
+				if ( flooded )
+				{
+					reflood();
+					return;
+				}
+				flooded = true;
+				final PixelQueue.Heap queue = new PixelQueue.Heap();
+				for ( int i = first; i < end; ++i )
+				{
+					final int seed = seeds[ i ];
+					labels[ i ] = seed;
+					steps[ i ] = 0;
+					if ( seed != 0 )
+					{
+						levels[ i ] = intensities[ i ];
+						queue.add( intensities[ i ], order( 0, seed ), i, seed );
+					}
+					else
+						levels[ i ] = Double.POSITIVE_INFINITY;
+				}
+				for ( int i = haloFirst; i < haloEnd; ++i )
+				{
+					if ( i == first )
+						i = end;
+					if ( i >= haloEnd )
+						break;
+					final int h = haloOffset( i );
+					if ( haloLabels[ h ] != 0 )
+						queue.add( haloLevels[ h ], order( haloSteps[ h ], haloLabels[ h ] ), i, haloLabels[ h ] );
+				}
+
+				final PixelNeighbors neighbors = new PixelNeighbors( dimensions, structuringElement );
+				while ( !queue.isEmpty() )
+				{
+					final int index = ( int ) queue.remove();
+					final int label = queue.getLabel();
+					final double level = queue.getIntensity();
+					final int step = ( int ) ( queue.getOrder() >>> 32 );
+					neighbors.setCenter( index );
+					for ( int k = 0; k < neighbors.size(); ++k )
+					{
+						final int neighbor = neighbors.get( k );
+						if ( neighbor < first || neighbor >= end || labels[ neighbor ] != 0 )
+							continue;
+						claim( neighbor, label, level, step, queue );
+					}
+				}
+			}
+
+			/**
+			 * Re-flood the pixels that depend on changed pixels in
+			 * neighboring blocks.
+			 * <p>
+			 * Each pixel that is not a seed is flooded from its smallest
+			 * labeled neighbor in the order of (level, steps, label). So only
+			 * the neighbors of changed halo pixels and the pixels flooded from
+			 * them (their descendants) need to be re-flooded. They are
+			 * re-flooded from their unchanged neighbors in the same order as
+			 * the whole block. When a re-flooded pixel becomes smaller than
+			 * the pixel that an unchanged neighbor was flooded from, that
+			 * neighbor and its descendants are re-flooded as well, and so are
+			 * unlabeled neighbors that a re-flooded pixel reaches.
+			 */
+			private void reflood()
+			{
+				if ( dirty == null )
+					dirty = new boolean[ end - first ];
+				final PixelNeighbors neighbors = new PixelNeighbors( dimensions, structuringElement );
+				final PixelNeighbors other = new PixelNeighbors( dimensions, structuringElement );
+				final PixelNeighbors sources = new PixelNeighbors( dimensions, inverseStructuringElement );
+				for ( int c = 0; c < changedHalo.size(); ++c )
+				{
+					neighbors.setCenter( changedHalo.get( c ) );
+					for ( int k = 0; k < neighbors.size(); ++k )
+					{
+						final int neighbor = neighbors.get( k );
+						if ( neighbor >= first && neighbor < end && seeds[ neighbor ] == 0 && !dirty[ neighbor - first ] )
+							markDirty( neighbor );
+					}
+				}
+				final PixelQueue.Heap queue = new PixelQueue.Heap();
+				invalidate( 0, queue, other, sources );
+
+				while ( !queue.isEmpty() )
+				{
+					final int index = ( int ) queue.remove();
+					final int label = queue.getLabel();
+					final double level = queue.getIntensity();
+					final long order = queue.getOrder();
+					// skip pixels that were re-flooded after they were added
+					if ( getLabel( index ) != label || getLevel( index ) != level || order( getSteps( index ), label ) != order )
+						continue;
+					final int step = ( int ) ( order >>> 32 );
+					final boolean reflooded = isDirty( index );
+					neighbors.setCenter( index );
+					for ( int k = 0; k < neighbors.size(); ++k )
+					{
+						final int neighbor = neighbors.get( k );
+						if ( neighbor < first || neighbor >= end )
+							continue;
+						if ( !dirty[ neighbor - first ] )
+						{
+							if ( !reflooded || seeds[ neighbor ] != 0 )
+								continue;
+							if ( labels[ neighbor ] == 0 )
+								markDirty( neighbor );
+							else if ( isFloodedBefore( level, order, neighbor, sources ) )
+							{
+								final int from = dirtyPixels.size();
+								markDirty( neighbor );
+								invalidate( from, queue, other, sources );
+							}
+							else
+								continue;
+						}
+						if ( labels[ neighbor ] == 0 )
+							claim( neighbor, label, level, step, queue );
+					}
+				}
+
+				for ( int d = 0; d < dirtyPixels.size(); ++d )
+					dirty[ dirtyPixels.get( d ) - first ] = false;
+				dirtyPixels.resetQuick();
+			}
+
+			/**
+			 * Label pixel {@code i} from a neighbor with the given label,
+			 * level, and steps, and add it to {@code queue}.
+			 */
+			private void claim( final int i, final int label, final double level, final int step, final PixelQueue.Heap queue )
+			{
+				labels[ i ] = label;
+				final double intensity = intensities[ i ];
+				if ( intensity > level )
+				{
+					levels[ i ] = intensity;
+					steps[ i ] = 0;
+				}
+				else
+				{
+					levels[ i ] = level;
+					steps[ i ] = step + 1;
+				}
+				queue.add( levels[ i ], order( steps[ i ], label ), i, label );
+			}
+
+			/**
+			 * Add the descendants of {@code dirtyPixels[from...]} to
+			 * {@link #dirtyPixels}, clear the labels of all of them, and add
+			 * the unchanged labeled pixels they can be flooded from to
+			 * {@code queue}.
+			 */
+			private void invalidate( final int from, final PixelQueue.Heap queue, final PixelNeighbors neighbors, final PixelNeighbors sources )
+			{
+				for ( int d = from; d < dirtyPixels.size(); ++d )
+				{
+					final int parent = dirtyPixels.get( d );
+					if ( labels[ parent ] == 0 )
+						continue;
+					neighbors.setCenter( parent );
+					for ( int k = 0; k < neighbors.size(); ++k )
+					{
+						final int child = neighbors.get( k );
+						if ( child < first || child >= end || seeds[ child ] != 0 || dirty[ child - first ] || labels[ child ] != labels[ parent ] )
+							continue;
+						final double intensity = intensities[ child ];
+						final boolean propagated = intensity > levels[ parent ]
+								? levels[ child ] == intensity && steps[ child ] == 0
+								: levels[ child ] == levels[ parent ] && steps[ child ] == steps[ parent ] + 1;
+						if ( propagated && isFloodedBefore( levels[ parent ], order( steps[ parent ], labels[ parent ] ), child, sources ) )
+							markDirty( child );
+					}
+				}
+				for ( int d = from; d < dirtyPixels.size(); ++d )
+				{
+					final int i = dirtyPixels.get( d );
+					labels[ i ] = 0;
+					steps[ i ] = 0;
+					levels[ i ] = Double.POSITIVE_INFINITY;
+				}
+				for ( int d = from; d < dirtyPixels.size(); ++d )
+				{
+					sources.setCenter( dirtyPixels.get( d ) );
+					for ( int k = 0; k < sources.size(); ++k )
+					{
+						final int source = sources.get( k );
+						if ( source < 0 || isDirty( source ) )
+							continue;
+						final int label = getLabel( source );
+						if ( label != 0 )
+							queue.add( getLevel( source ), order( getSteps( source ), label ), source, label );
+					}
+				}
+			}
+
+			/**
+			 * @return whether a pixel with the given level and order is
+			 *         flooded before all unchanged labeled pixels that pixel
+			 *         {@code i} can be flooded from, i.e., whether {@code i}
+			 *         must be re-flooded from it.
+			 */
+			private boolean isFloodedBefore( final double level, final long order, final int i, final PixelNeighbors sources )
+			{
+				sources.setCenter( i );
+				for ( int k = 0; k < sources.size(); ++k )
+				{
+					final int source = sources.get( k );
+					if ( source < 0 || isDirty( source ) || getLabel( source ) == 0 )
+						continue;
+					final int c = Double.compare( getLevel( source ), level );
+					if ( c < 0 || ( c == 0 && order( getSteps( source ), getLabel( source ) ) <= order ) )
+						return false;
+				}
+				return true;
+			}
+
+			private void markDirty( final int i )
+			{
+				dirty[ i - first ] = true;
+				dirtyPixels.add( i );
+			}
+
+			private boolean isDirty( final int i )
+			{
+				return i >= first && i < end && dirty[ i - first ];
+			}
+
+			/**
+			 * Label, steps, and level of pixel {@code i} of the block or its
+			 * neighboring blocks, where the latter are taken from the last
+			 * {@link #gatherHalo()}.
+			 */
+			private int getLabel( final int i )
+			{
+				return i >= first && i < end ? labels[ i ] : haloLabels[ haloOffset( i ) ];
+			}
+
+			private int getSteps( final int i )
+			{
+				return i >= first && i < end ? steps[ i ] : haloSteps[ haloOffset( i ) ];
+			}
+
+			private double getLevel( final int i )
+			{
+				return i >= first && i < end ? levels[ i ] : haloLevels[ haloOffset( i ) ];
+			}
+
+			private int haloOffset( final int i )
+			{
+				return i < first ? i - haloFirst : i - end + first - haloFirst;
+			}
+		}
+
+		private static long order( final int steps, final int label )
+		{
+			return ( ( long ) steps << 32 ) | ( label & 0xffffffffL );
+		}
+	}
+
+	private static long[] checkDimensions( final RandomAccessibleInterval< ? > image, final RandomAccessibleInterval< ? > labels )
+	{
+		final int n = image.numDimensions();
+		if ( labels.numDimensions() != n )
+			throw new IllegalArgumentException( "The dimensionality of the labels does not match that of the intensity image." );
+		final long[] dimensions = new long[ n ];
+		image.dimensions( dimensions );
+		for ( int d = 0; d < n; ++d )
+			if ( labels.dimension( d ) != dimensions[ d ] )
+				throw new IllegalArgumentException( "The dimensions of the labels do not match those of the intensity image." );
+		if ( Intervals.numElements( image ) > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "Images with 2^31 or more pixels are not supported." );
+		return dimensions;
+	}
+
+	static < T extends RealType< T > > double[] getIntensities( final RandomAccessibleInterval< T > image )
+	{
+		final double[] intensities = new double[ ( int ) Intervals.numElements( image ) ];
+		final Cursor< T > c = Views.flatIterable( image ).cursor();
+		for ( int i = 0; i < intensities.length; ++i )
+			intensities[ i ] = c.next().getRealDouble();
+		return intensities;
+	}
+
+	static < I extends IntegerType< I > > int[] getIds( final RandomAccessibleInterval< I > labels )
+	{
+		final int[] ids = new int[ ( int ) Intervals.numElements( labels ) ];
+		final Cursor< I > c = Views.flatIterable( labels ).cursor();
+		for ( int i = 0; i < ids.length; ++i )
+			ids[ i ] = c.next().getInteger();
+		return ids;
+	}
+
+	static < I extends IntegerType< I > > void setIds( final RandomAccessibleInterval< I > labels, final int[] ids )
+	{
+		final Cursor< I > c = Views.flatIterable( labels ).cursor();
+		for ( int i = 0; i < ids.length; ++i )
+			c.next().setInteger( ids[ i ] );
+	}
+
+	private Watersheds()
+	{}
+}
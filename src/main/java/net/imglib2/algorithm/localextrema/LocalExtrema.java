@@ -46,10 +46,18 @@ import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.Localizable;
 import net.imglib2.Point;
+import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Sampler;
+import net.imglib2.algorithm.neighborhood.InteriorBorderSplit;
+import net.imglib2.algorithm.neighborhood.InteriorBorderSplit.RegionVisitor;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodOffsets;
 import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
@@ -62,6 +70,11 @@ import net.imglib2.view.Views;
  */
 public class LocalExtrema
 {
+	/**
+	 * The minimum number of pixels per task when splitting a border slab.
+	 */
+	private static final long MIN_BORDER_TASK_SIZE = 16 * 1024;
+
 	/**
 	 * A local extremum check.
 	 * 
@@ -95,34 +108,127 @@ public class LocalExtrema
 	 * test for being an extremum can is specified as an implementation of the
 	 * {@link LocalNeighborhoodCheck} interface.
 	 * 
-	 * TODO: Make neighborhood shape configurable. This will require that Shape
-	 * can give a bounding box.
+	 * Only the interior pixels of {@code img} are tested, with a 3^n
+	 * neighborhood. See
+	 * {@link #findLocalExtrema(RandomAccessible, Interval, LocalNeighborhoodCheck, Shape, ExecutorService)}
+	 * for other neighborhood shapes.
 	 * 
 	 * @param img
+	 *            the image to search.
 	 * @param localNeighborhoodCheck
+	 *            the test for being an extremum, e.g., {@link MaximumCheck}.
 	 * @param service
-	 * @return
+	 *            service providing threads for multi-threading
+	 * @return the extrema, as returned by {@code localNeighborhoodCheck}, in
+	 *         no particular order.
 	 */
 	public static < P, T extends Comparable< T > > ArrayList< P > findLocalExtrema( final RandomAccessibleInterval< T > img, final LocalNeighborhoodCheck< P, T > localNeighborhoodCheck, final ExecutorService service )
 	{
 		final ArrayList< P > allExtrema = new ArrayList< P >();
+		final List< P > synchronizedAllExtrema = Collections.synchronizedList( allExtrema );
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
 
 		final Interval full = Intervals.expand( img, -1 );
-		final int n = img.numDimensions();
-		final int splitd = n - 1;
 		// FIXME is there a better way to determine number of threads
 		final int numThreads = Runtime.getRuntime().availableProcessors();
-		final int numTasks = Math.max( Math.min( ( int ) full.dimension( splitd ), numThreads * 20 ), 1 );
+		submit( img, full, new RectangleShape( 1, true ), localNeighborhoodCheck, numThreads * 20, synchronizedAllExtrema, futures, service );
+		waitFor( futures );
+
+		return allExtrema;
+	}
+
+	/**
+	 * Find pixels of {@code interval} that are extrema in their local
+	 * neighborhood, as given by {@code shape}. In contrast to
+	 * {@link #findLocalExtrema(RandomAccessibleInterval, LocalNeighborhoodCheck, ExecutorService)},
+	 * border pixels are tested as well, if the source is extended. The
+	 * interior, where all neighborhoods lie within the image, is tested on the
+	 * raw image underneath the extended source, and only the border on the
+	 * extended one (see {@link InteriorBorderSplit}).
+	 *
+	 * @param source
+	 *            the source, extended (e.g., by
+	 *            {@link Views#extendBorder(RandomAccessibleInterval)}) if
+	 *            neighborhoods of {@code interval} reach out of the image.
+	 * @param interval
+	 *            the pixels to test.
+	 * @param localNeighborhoodCheck
+	 *            the test for being an extremum, e.g., {@link MaximumCheck}.
+	 * @param shape
+	 *            the neighborhood shape. The neighborhoods must not contain
+	 *            the center pixel, e.g., {@code new RectangleShape( 1, true )}.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return the extrema, as returned by {@code localNeighborhoodCheck}, in
+	 *         no particular order.
+	 */
+	public static < P, T extends Comparable< T > > ArrayList< P > findLocalExtrema( final RandomAccessible< T > source, final Interval interval, final LocalNeighborhoodCheck< P, T > localNeighborhoodCheck, final Shape shape, final ExecutorService service )
+	{
+		final ArrayList< P > allExtrema = new ArrayList< P >();
+		final List< P > synchronizedAllExtrema = Collections.synchronizedList( allExtrema );
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		InteriorBorderSplit.process( source, interval, shape, new RegionVisitor< T >()
+		{
+			@Override
+			public void visit( final RandomAccessible< T > regionSource, final Interval region, final boolean interior )
+			{
+				// Border slabs are thin but may be large, so split them as
+				// well, as long as every task gets enough pixels.
+				final int maxNumTasks = interior ? numThreads * 20 : ( int ) Math.min( numThreads * 20, Intervals.numElements( region ) / MIN_BORDER_TASK_SIZE );
+				submit( regionSource, region, shape, localNeighborhoodCheck, maxNumTasks, synchronizedAllExtrema, futures, service );
+			}
+		} );
+		waitFor( futures );
+
+		return allExtrema;
+	}
+
+	/**
+	 * Split {@code full} into at most {@code maxNumTasks} slices along its
+	 * largest dimension, and submit a task testing each slice to
+	 * {@code service}.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static < P, T extends Comparable< T > > void submit( final RandomAccessible< T > img, final Interval full, final Shape shape, final LocalNeighborhoodCheck< P, T > localNeighborhoodCheck, final int maxNumTasks, final List< P > synchronizedAllExtrema, final List< Future< Void > > futures, final ExecutorService service )
+	{
+		final int n = full.numDimensions();
+		int splitd = n - 1;
+		for ( int d = n - 2; d >= 0; --d )
+			if ( full.dimension( d ) > full.dimension( splitd ) )
+				splitd = d;
+		final int numTasks = Math.max( Math.min( ( int ) full.dimension( splitd ), maxNumTasks ), 1 );
 		final long dsize = full.dimension( splitd ) / numTasks;
 		final long[] min = new long[ n ];
 		final long[] max = new long[ n ];
 		full.min( min );
 		full.max( max );
 
-		final RectangleShape shape = new RectangleShape( 1, true );
+		// For the built-in checks on an ArrayImg, read neighbors at
+		// precompiled index offsets instead of creating neighborhood cursors.
+		final int[] indexOffsets;
+		final int sign;
+		final T peakValue;
+		if ( localNeighborhoodCheck instanceof MaximumCheck )
+		{
+			indexOffsets = NeighborhoodOffsets.create( shape, n ).getIndexOffsets( img, full );
+			sign = 1;
+			peakValue = ( ( MaximumCheck< T > ) localNeighborhoodCheck ).minPeakValue;
+		}
+		else if ( localNeighborhoodCheck instanceof MinimumCheck )
+		{
+			indexOffsets = NeighborhoodOffsets.create( shape, n ).getIndexOffsets( img, full );
+			sign = -1;
+			peakValue = ( ( MinimumCheck< T > ) localNeighborhoodCheck ).maxPeakValue;
+		}
+		else
+		{
+			indexOffsets = null;
+			sign = 0;
+			peakValue = null;
+		}
 
-		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
-		final List< P > synchronizedAllExtrema = Collections.synchronizedList( allExtrema );
 		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
 		{
 			min[ splitd ] = full.min( splitd ) + taskNum * dsize;
@@ -134,6 +240,12 @@ public class LocalExtrema
 				@Override
 				public Void call()
 				{
+					if ( indexOffsets != null )
+					{
+						findIndexed( img, source, indexOffsets, peakValue, sign, extrema );
+						synchronizedAllExtrema.addAll( extrema );
+						return null;
+					}
 					final Cursor< T > center = Views.flatIterable( source ).cursor();
 					for ( final Neighborhood< T > neighborhood : shape.neighborhoods( source ) )
 					{
@@ -148,6 +260,46 @@ public class LocalExtrema
 			};
 			futures.add( service.submit( r ) );
 		}
+	}
+
+	/**
+	 * Find maxima ({@code sign > 0}) or minima ({@code sign < 0}) of
+	 * {@code region}, reading neighbors from the {@link ArrayImg} {@code img}
+	 * at the given linear index offsets.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static < P, T extends Comparable< T > > void findIndexed( final RandomAccessible< T > img, final RandomAccessibleInterval< T > region, final int[] indexOffsets, final T peakValue, final int sign, final List< P > extrema )
+	{
+		final ArrayImg< ?, ? > array = ( ArrayImg< ?, ? > ) img;
+		final long[] dimensions = new long[ array.numDimensions() ];
+		array.dimensions( dimensions );
+		final long[] position = new long[ dimensions.length ];
+
+		// a type linked to the storage of img, moved by updateIndex()
+		final NativeType< ? > access = ( NativeType< ? > ) array.randomAccess().get();
+		final T neighbor = ( T ) access;
+
+		final Cursor< T > center = Views.flatIterable( region ).localizingCursor();
+		while ( center.hasNext() )
+		{
+			final T c = center.next();
+			if ( sign * peakValue.compareTo( c ) > 0 )
+				continue;
+			center.localize( position );
+			final int index = ( int ) IntervalIndexer.positionToIndex( position, dimensions );
+			boolean isExtremum = true;
+			for ( int k = 0; k < indexOffsets.length && isExtremum; ++k )
+			{
+				access.updateIndex( index + indexOffsets[ k ] );
+				isExtremum = sign * neighbor.compareTo( c ) <= 0;
+			}
+			if ( isExtremum )
+				extrema.add( ( P ) new Point( center ) );
+		}
+	}
+
+	private static void waitFor( final List< Future< Void > > futures )
+	{
 		for ( final Future< Void > f : futures )
 		{
 			try
@@ -163,8 +315,6 @@ public class LocalExtrema
 				e.printStackTrace();
 			}
 		}
-
-		return allExtrema;
 	}
 
 	/**
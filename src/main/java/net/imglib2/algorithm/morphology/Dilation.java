@@ -42,7 +42,10 @@ import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.InteriorBorderSplit;
+import net.imglib2.algorithm.neighborhood.InteriorBorderSplit.RegionVisitor;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodOffsets;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
@@ -453,6 +456,33 @@ public class Dilation
 	{
 		numThreads = Math.max( 1, numThreads );
 
+		/*
+		 * If the source is an extended image, process the interior on the raw
+		 * image, and only the border slabs on the extended one.
+		 */
+
+		if ( target instanceof RandomAccessibleInterval && InteriorBorderSplit.getDomain( source ) != null )
+		{
+			@SuppressWarnings( "unchecked" )
+			final RandomAccessibleInterval< T > targetInterval = ( RandomAccessibleInterval< T > ) target;
+			final int nThreads = numThreads;
+			InteriorBorderSplit.process( source, target, strel, new RegionVisitor< T >()
+			{
+				@Override
+				public void visit( final RandomAccessible< T > regionSource, final Interval region, final boolean interior )
+				{
+					dilateRegion( regionSource, Views.interval( targetInterval, region ), strel, minVal, interior ? nThreads : 1 );
+				}
+			} );
+		}
+		else
+		{
+			dilateRegion( source, target, strel, minVal, numThreads );
+		}
+	}
+
+	private static < T extends Type< T > & Comparable< T > > void dilateRegion( final RandomAccessible< T > source, final IterableInterval< T > target, final Shape strel, final T minVal, final int numThreads )
+	{
 		/*
 		 * Prepare iteration.
 		 */
@@ -467,8 +497,29 @@ public class Dilation
 		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
 
 
+		final int[] indexOffsets = NeighborhoodOffsets.create( strel, target.numDimensions() ).getIndexOffsets( source, target );
 		final Object tmp = minVal;
-		if ( tmp instanceof BitType )
+		if ( indexOffsets != null )
+		{
+			/*
+			 * The source is an ArrayImg that contains all neighborhoods. Read
+			 * neighbors at precompiled index offsets.
+			 */
+
+			for ( int i = 0; i < threads.length; i++ )
+			{
+				final Chunk chunk = chunks.get( i );
+				threads[ i ] = new Thread( "Morphology dilate thread " + i )
+				{
+					@Override
+					public void run()
+					{
+						MorphologyUtils.extremumInChunk( source, target, indexOffsets, minVal, 1, chunk );
+					}
+				};
+			}
+		}
+		else if ( tmp instanceof BitType )
 		{
 			/*
 			 * Optimization for BitType
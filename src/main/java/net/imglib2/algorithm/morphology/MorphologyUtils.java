@@ -45,6 +45,7 @@ import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodOffsets;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
@@ -61,6 +62,7 @@ import net.imglib2.type.NativeType;
 import net.imglib2.type.Type;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.operators.Sub;
+import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 import net.imglib2.view.IntervalView;
@@ -719,4 +721,43 @@ public class MorphologyUtils
 		SimpleMultiThreading.startAndJoin( threads );
 	}
 
+	/**
+	 * Writes the maximum ({@code sign > 0}) or minimum ({@code sign < 0}) of
+	 * the neighborhood of every pixel of a {@link Chunk} of {@code target}.
+	 * Neighbors are read from the {@link ArrayImg} {@code source} at the given
+	 * linear index offsets (see
+	 * {@link NeighborhoodOffsets#getIndexOffsets(net.imglib2.RandomAccessible, Interval)}),
+	 * without creating a neighborhood cursor per pixel.
+	 */
+	static < T extends Type< T > & Comparable< T > > void extremumInChunk( final RandomAccessible< T > source, final IterableInterval< T > target, final int[] indexOffsets, final T initVal, final int sign, final Chunk chunk )
+	{
+		final ArrayImg< ?, ? > img = ( ArrayImg< ?, ? > ) source;
+		final long[] dimensions = new long[ img.numDimensions() ];
+		img.dimensions( dimensions );
+		final long[] position = new long[ dimensions.length ];
+
+		// a type linked to the storage of img, moved by updateIndex()
+		final NativeType< ? > access = ( NativeType< ? > ) img.randomAccess().get();
+		@SuppressWarnings( "unchecked" )
+		final T val = ( T ) access;
+
+		final Cursor< T > cursor = target.localizingCursor();
+		cursor.jumpFwd( chunk.getStartPosition() );
+		final T extremum = createVariable( source, target );
+		for ( long steps = 0; steps < chunk.getLoopSize(); steps++ )
+		{
+			cursor.fwd();
+			cursor.localize( position );
+			final int index = ( int ) IntervalIndexer.positionToIndex( position, dimensions );
+			extremum.set( initVal );
+			for ( final int offset : indexOffsets )
+			{
+				access.updateIndex( index + offset );
+				if ( sign * val.compareTo( extremum ) > 0 )
+					extremum.set( val );
+			}
+			cursor.get().set( extremum );
+		}
+	}
+
 }
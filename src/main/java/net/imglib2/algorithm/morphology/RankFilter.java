@@ -0,0 +1,488 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology;
+
+import java.util.Vector;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.NeighborhoodOffsets;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.multithreading.Chunk;
+import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
+
+/**
+ * Grayscale morphology and rank filters with arbitrary flat structuring
+ * elements, for integer images with at most 16 bits per pixel, such as
+ * {@link net.imglib2.type.numeric.integer.UnsignedByteType} and
+ * {@link net.imglib2.type.numeric.integer.UnsignedShortType}.
+ * <p>
+ * A histogram of the pixel values under the structuring element is slid
+ * along the rows (dimension 0) of the image. When moving by one pixel, only
+ * the pixels entering at the leading edge of the structuring element are
+ * added, and those leaving at the trailing edge are removed. The cost per
+ * pixel is therefore proportional to the surface rather than the volume of
+ * the structuring element, which pays off for large shapes like a
+ * {@link net.imglib2.algorithm.neighborhood.HyperSphereShape} of radius 15.
+ * <p>
+ * Every filter picks a value of given rank from the histogram: the maximum
+ * for {@link #dilate dilation}, the minimum for {@link #erode erosion}, the
+ * {@link #median} or any {@link #percentile}.
+ */
+public class RankFilter
+{
+	/**
+	 * Performs the dilation morphological operation using a {@link Shape} as
+	 * a flat structuring element. Pixels outside the source image are
+	 * considered to have the minimal value of the type.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param strel
+	 *            the structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends IntegerType< T > > Img< T > dilate( final Img< T > source, final Shape strel, final int numThreads )
+	{
+		final T minVal = source.firstElement().createVariable();
+		minVal.setReal( minVal.getMinValue() );
+		final Img< T > target = source.factory().create( source, minVal );
+		dilate( Views.extendValue( source, minVal ), target, strel, numThreads );
+		return target;
+	}
+
+	/**
+	 * Performs the dilation morphological operation using a {@link Shape} as
+	 * a flat structuring element, and writes the result to target.
+	 *
+	 * @param source
+	 *            the source image, must be defined in the target interval
+	 *            plus the extent of the structuring element.
+	 * @param target
+	 *            the target image.
+	 * @param strel
+	 *            the structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 */
+	public static < T extends IntegerType< T > > void dilate( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final Shape strel, final int numThreads )
+	{
+		filter( source, target, strel, 1, numThreads );
+	}
+
+	/**
+	 * Performs the erosion morphological operation using a {@link Shape} as a
+	 * flat structuring element. Pixels outside the source image are
+	 * considered to have the maximal value of the type.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param strel
+	 *            the structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends IntegerType< T > > Img< T > erode( final Img< T > source, final Shape strel, final int numThreads )
+	{
+		final T maxVal = source.firstElement().createVariable();
+		maxVal.setReal( maxVal.getMaxValue() );
+		final Img< T > target = source.factory().create( source, maxVal );
+		erode( Views.extendValue( source, maxVal ), target, strel, numThreads );
+		return target;
+	}
+
+	/**
+	 * Performs the erosion morphological operation using a {@link Shape} as a
+	 * flat structuring element, and writes the result to target.
+	 *
+	 * @param source
+	 *            the source image, must be defined in the target interval
+	 *            plus the extent of the structuring element.
+	 * @param target
+	 *            the target image.
+	 * @param strel
+	 *            the structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 */
+	public static < T extends IntegerType< T > > void erode( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final Shape strel, final int numThreads )
+	{
+		filter( source, target, strel, 0, numThreads );
+	}
+
+	/**
+	 * Median filter over a {@link Shape}. The source image is extended by
+	 * mirroring.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param strel
+	 *            the neighborhood to compute the median of.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends IntegerType< T > > Img< T > median( final Img< T > source, final Shape strel, final int numThreads )
+	{
+		return percentile( source, strel, 50, numThreads );
+	}
+
+	/**
+	 * Median filter over a {@link Shape}. For neighborhoods with an even
+	 * number of pixels, the upper of the two central values is taken.
+	 *
+	 * @param source
+	 *            the source image, must be defined in the target interval
+	 *            plus the extent of the neighborhood.
+	 * @param target
+	 *            the target image.
+	 * @param strel
+	 *            the neighborhood to compute the median of.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 */
+	public static < T extends IntegerType< T > > void median( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final Shape strel, final int numThreads )
+	{
+		percentile( source, target, strel, 50, numThreads );
+	}
+
+	/**
+	 * Percentile filter over a {@link Shape}. The source image is extended by
+	 * mirroring.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param strel
+	 *            the neighborhood to compute the percentile of.
+	 * @param percentile
+	 *            the percentile, in <code>[0, 100]</code>.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends IntegerType< T > > Img< T > percentile( final Img< T > source, final Shape strel, final double percentile, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().createVariable() );
+		percentile( Views.extendMirrorSingle( source ), target, strel, percentile, numThreads );
+		return target;
+	}
+
+	/**
+	 * Percentile filter over a {@link Shape}. The value of rank
+	 * <code>round( percentile / 100 * ( n - 1 ) )</code> among the
+	 * <code>n</code> sorted values of the neighborhood is taken.
+	 *
+	 * @param source
+	 *            the source image, must be defined in the target interval
+	 *            plus the extent of the neighborhood.
+	 * @param target
+	 *            the target image.
+	 * @param strel
+	 *            the neighborhood to compute the percentile of.
+	 * @param percentile
+	 *            the percentile, in <code>[0, 100]</code>.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 */
+	public static < T extends IntegerType< T > > void percentile( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final Shape strel, final double percentile, final int numThreads )
+	{
+		if ( percentile < 0 || percentile > 100 )
+			throw new IllegalArgumentException( "Percentile must be in [0, 100], got " + percentile );
+		filter( source, target, strel, percentile / 100, numThreads );
+	}
+
+	/**
+	 * Slides a histogram of the neighborhood along the rows of target, and
+	 * writes the value at the given fraction of the sorted neighborhood.
+	 */
+	private static < T extends IntegerType< T > > void filter( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final Shape strel, final double fraction, int numThreads )
+	{
+		numThreads = Math.max( 1, numThreads );
+		final int n = target.numDimensions();
+		final T type = MorphologyUtils.createVariable( source, target );
+		if ( type.getMinValue() < 0 || type.getMaxValue() > 0xffff )
+			throw new IllegalArgumentException( "Histogram based filters require unsigned integer types of at most 16 bits, got " + type.getClass().getSimpleName() );
+		final int numBins = ( int ) type.getMaxValue() + 1;
+
+		/*
+		 * Offsets of the structuring element, and its leading and trailing
+		 * edges along dimension 0.
+		 */
+
+		final long[][] offsets = NeighborhoodOffsets.create( strel, n ).getOffsets();
+		if ( offsets.length == 0 )
+			throw new IllegalArgumentException( "Rank filters require a non-empty structuring element." );
+		final long[][][] edges = getEdges( offsets );
+		final long[][] leading = edges[ 0 ];
+		final long[][] trailing = edges[ 1 ];
+		final int rank = ( int ) Math.round( fraction * ( offsets.length - 1 ) );
+
+		final long[] min = new long[ n ];
+		target.min( min );
+		final long width = target.dimension( 0 );
+		final long[] rowDimensions = new long[ n ];
+		target.dimensions( rowDimensions );
+		rowDimensions[ 0 ] = 1;
+		long numRows = 1;
+		for ( int d = 1; d < n; ++d )
+			numRows *= rowDimensions[ d ];
+
+		/*
+		 * Multithread over rows.
+		 */
+
+		final Vector< Chunk > chunks = SimpleMultiThreading.divideIntoChunks( numRows, numThreads );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		for ( int i = 0; i < threads.length; i++ )
+		{
+			final Chunk chunk = chunks.get( i );
+			threads[ i ] = new Thread( "Morphology rank filter thread " + i )
+			{
+				@Override
+				public void run()
+				{
+					final Histogram histogram = new Histogram( numBins );
+					final RandomAccess< T > in = source.randomAccess();
+					final RandomAccess< T > out = target.randomAccess();
+					@SuppressWarnings( "unchecked" )
+					final RandomAccess< T >[] leadingAccess = new RandomAccess[ leading.length ];
+					for ( int j = 0; j < leading.length; ++j )
+						leadingAccess[ j ] = source.randomAccess();
+					@SuppressWarnings( "unchecked" )
+					final RandomAccess< T >[] trailingAccess = new RandomAccess[ trailing.length ];
+					for ( int j = 0; j < trailing.length; ++j )
+						trailingAccess[ j ] = source.randomAccess();
+
+					final long[] position = new long[ n ];
+					final long[] neighbor = new long[ n ];
+					final long end = chunk.getStartPosition() + chunk.getLoopSize();
+					for ( long row = chunk.getStartPosition(); row < end; ++row )
+					{
+						IntervalIndexer.indexToPositionWithOffset( row, rowDimensions, min, position );
+
+						// Fill the histogram for the first pixel of the row.
+						for ( final long[] o : offsets )
+						{
+							add( position, o, neighbor );
+							in.setPosition( neighbor );
+							histogram.add( in.get().getInteger() );
+						}
+						// Trailing edge pixels are removed before moving on,
+						// leading edge pixels are added after moving on.
+						for ( int j = 0; j < trailing.length; ++j )
+						{
+							add( position, trailing[ j ], neighbor );
+							trailingAccess[ j ].setPosition( neighbor );
+						}
+						for ( int j = 0; j < leading.length; ++j )
+						{
+							add( position, leading[ j ], neighbor );
+							leadingAccess[ j ].setPosition( neighbor );
+							leadingAccess[ j ].fwd( 0 );
+						}
+
+						out.setPosition( position );
+						for ( long x = 0; x < width; ++x )
+						{
+							out.get().setInteger( histogram.get( rank ) );
+							if ( x == width - 1 )
+								break;
+							out.fwd( 0 );
+							for ( final RandomAccess< T > a : trailingAccess )
+							{
+								histogram.remove( a.get().getInteger() );
+								a.fwd( 0 );
+							}
+							for ( final RandomAccess< T > a : leadingAccess )
+							{
+								histogram.add( a.get().getInteger() );
+								a.fwd( 0 );
+							}
+						}
+						histogram.clear();
+					}
+				}
+			};
+		}
+
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+
+	private static void add( final long[] position, final long[] offset, final long[] result )
+	{
+		for ( int d = 0; d < position.length; ++d )
+			result[ d ] = position[ d ] + offset[ d ];
+	}
+
+	/**
+	 * Splits off the edges of a structuring element along dimension 0. The
+	 * leading edge are the offsets o such that o + 1 is not in the
+	 * structuring element, the trailing edge are those such that o - 1 is not.
+	 * Moving the structuring element by one pixel along dimension 0 removes
+	 * the trailing edge at the old position and adds the leading edge at the
+	 * new position.
+	 *
+	 * @return <code>{ leading, trailing }</code>.
+	 */
+	private static long[][][] getEdges( final long[][] offsets )
+	{
+		final int n = offsets[ 0 ].length;
+		final long[] omin = offsets[ 0 ].clone();
+		final long[] omax = offsets[ 0 ].clone();
+		for ( final long[] o : offsets )
+			for ( int d = 0; d < n; ++d )
+			{
+				omin[ d ] = Math.min( omin[ d ], o[ d ] );
+				omax[ d ] = Math.max( omax[ d ], o[ d ] );
+			}
+		// Pad by one along dimension 0, so that o +/- 1 is always inside.
+		omin[ 0 ] -= 1;
+		omax[ 0 ] += 1;
+		final long[] dimensions = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+			dimensions[ d ] = omax[ d ] - omin[ d ] + 1;
+
+		final boolean[] mask = new boolean[ ( int ) IntervalIndexer.positionWithOffsetToIndex( omax, dimensions, omin ) + 1 ];
+		for ( final long[] o : offsets )
+			mask[ ( int ) IntervalIndexer.positionWithOffsetToIndex( o, dimensions, omin ) ] = true;
+
+		int numLeading = 0;
+		int numTrailing = 0;
+		final boolean[] isLeading = new boolean[ offsets.length ];
+		final boolean[] isTrailing = new boolean[ offsets.length ];
+		for ( int i = 0; i < offsets.length; ++i )
+		{
+			final int index = ( int ) IntervalIndexer.positionWithOffsetToIndex( offsets[ i ], dimensions, omin );
+			isLeading[ i ] = !mask[ index + 1 ];
+			isTrailing[ i ] = !mask[ index - 1 ];
+			if ( isLeading[ i ] )
+				++numLeading;
+			if ( isTrailing[ i ] )
+				++numTrailing;
+		}
+
+		final long[][] leading = new long[ numLeading ][];
+		final long[][] trailing = new long[ numTrailing ][];
+		numLeading = 0;
+		numTrailing = 0;
+		for ( int i = 0; i < offsets.length; ++i )
+		{
+			if ( isLeading[ i ] )
+				leading[ numLeading++ ] = offsets[ i ];
+			if ( isTrailing[ i ] )
+				trailing[ numTrailing++ ] = offsets[ i ];
+		}
+		return new long[][][] { leading, trailing };
+	}
+
+	/**
+	 * Two-level histogram of integer values. Values of rank k are found by
+	 * scanning coarse bins of 2^shift values first, then the fine bins in the
+	 * coarse bin containing the value.
+	 */
+	private static final class Histogram
+	{
+		private final int[] fine;
+
+		private final int[] coarse;
+
+		private final int shift;
+
+		private int count;
+
+		public Histogram( final int numBins )
+		{
+			fine = new int[ numBins ];
+			shift = numBins > 256 ? 8 : 4;
+			coarse = new int[ ( ( numBins - 1 ) >> shift ) + 1 ];
+		}
+
+		public void add( final long value )
+		{
+			final int v = ( int ) value;
+			++fine[ v ];
+			++coarse[ v >> shift ];
+			++count;
+		}
+
+		public void remove( final long value )
+		{
+			final int v = ( int ) value;
+			--fine[ v ];
+			--coarse[ v >> shift ];
+			--count;
+		}
+
+		/**
+		 * Returns the value of rank k, that is, the value at index k when
+		 * sorting all values.
+		 */
+		public int get( final int k )
+		{
+			int remaining = k;
+			int c = 0;
+			while ( remaining >= coarse[ c ] )
+				remaining -= coarse[ c++ ];
+			int v = c << shift;
+			while ( remaining >= fine[ v ] )
+				remaining -= fine[ v++ ];
+			return v;
+		}
+
+		public void clear()
+		{
+			if ( count == 0 )
+				return;
+			for ( int c = 0; c < coarse.length; ++c )
+			{
+				if ( coarse[ c ] == 0 )
+					continue;
+				final int start = c << shift;
+				final int end = Math.min( start + ( 1 << shift ), fine.length );
+				for ( int v = start; v < end; ++v )
+					fine[ v ] = 0;
+				coarse[ c ] = 0;
+			}
+			count = 0;
+		}
+	}
+}
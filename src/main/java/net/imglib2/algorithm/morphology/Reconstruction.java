@@ -0,0 +1,670 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+
+import net.imglib2.Cursor;
+import net.imglib2.EuclideanSpace;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.NeighborhoodOffsets;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.type.Type;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Morphological reconstruction by dilation and by erosion, and the classical
+ * operators derived from it (hole filling, h-maxima, h-minima, regional
+ * maxima and regional minima).
+ * <p>
+ * The reconstruction by dilation of a mask image <code>I</code> from a marker
+ * image <code>J &le; I</code> is obtained by iterating the geodesic dilation
+ * <code>J &larr; min( dilate( J ), I )</code> until stability. Instead of
+ * iterating full dilations, this class implements the fast hybrid algorithm
+ * described in:
+ * <p>
+ * Luc Vincent, <i>Morphological grayscale reconstruction in image analysis:
+ * applications and efficient algorithms</i>, IEEE Transactions on Image
+ * Processing, 2(2) 176-201 (1993).
+ * <p>
+ * It performs one raster scan and one anti-raster scan of the image, in which
+ * each pixel only considers the neighbors already visited during the scan,
+ * followed by a propagation step driven by a FIFO queue of pixel indices. The
+ * queue only holds pixels that can still propagate their value, so its work is
+ * proportional to the part of the image that was not settled by the two scans.
+ * <p>
+ * The connectivity is specified with any {@link Shape} of the neighborhood
+ * package, <i>e.g.</i> a {@link net.imglib2.algorithm.neighborhood.DiamondShape}
+ * of radius 1 for 4-connectivity or a
+ * {@link net.imglib2.algorithm.neighborhood.RectangleShape} of span 1 for
+ * 8-connectivity. Neighbors falling outside of the marker interval are
+ * ignored.
+ */
+public class Reconstruction
+{
+
+	/**
+	 * Performs the morphological reconstruction by dilation of a mask image
+	 * from a marker image, and returns the result as a new {@link Img}.
+	 * <p>
+	 * The marker is first clipped by the mask, so it is not strictly required
+	 * that the marker is pointwise smaller than or equal to the mask.
+	 *
+	 * @param marker
+	 *            the marker image. Is not modified.
+	 * @param mask
+	 *            the mask image. Must be defined over the marker interval.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link Comparable} & {@link Type}</code>.
+	 * @return a new {@link Img}, of same dimensions than the marker.
+	 */
+	public static < T extends Type< T > & Comparable< T > > Img< T > reconstructByDilation( final Img< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		final Img< T > target = marker.copy();
+		reconstructByDilationInPlace( target, mask, shape );
+		return target;
+	}
+
+	/**
+	 * Performs the morphological reconstruction by dilation of a mask image
+	 * from a marker image, writing the result in the marker image.
+	 *
+	 * @param marker
+	 *            the marker image. Is overwritten with the reconstruction.
+	 * @param mask
+	 *            the mask image. Must be defined over the marker interval.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link Comparable} & {@link Type}</code>.
+	 */
+	public static < T extends Type< T > & Comparable< T > > void reconstructByDilationInPlace( final RandomAccessibleInterval< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		reconstruct( marker, mask, shape, 1 );
+	}
+
+	/**
+	 * Performs the morphological reconstruction by erosion of a mask image
+	 * from a marker image, and returns the result as a new {@link Img}.
+	 * <p>
+	 * The marker is first clipped by the mask, so it is not strictly required
+	 * that the marker is pointwise larger than or equal to the mask.
+	 *
+	 * @param marker
+	 *            the marker image. Is not modified.
+	 * @param mask
+	 *            the mask image. Must be defined over the marker interval.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link Comparable} & {@link Type}</code>.
+	 * @return a new {@link Img}, of same dimensions than the marker.
+	 */
+	public static < T extends Type< T > & Comparable< T > > Img< T > reconstructByErosion( final Img< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		final Img< T > target = marker.copy();
+		reconstructByErosionInPlace( target, mask, shape );
+		return target;
+	}
+
+	/**
+	 * Performs the morphological reconstruction by erosion of a mask image
+	 * from a marker image, writing the result in the marker image.
+	 *
+	 * @param marker
+	 *            the marker image. Is overwritten with the reconstruction.
+	 * @param mask
+	 *            the mask image. Must be defined over the marker interval.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link Comparable} & {@link Type}</code>.
+	 */
+	public static < T extends Type< T > & Comparable< T > > void reconstructByErosionInPlace( final RandomAccessibleInterval< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		reconstruct( marker, mask, shape, -1 );
+	}
+
+	/**
+	 * Fills the holes of an image, that is, the regional minima that are not
+	 * connected to the image border. Works on binary images (<i>e.g.</i>
+	 * {@link BitType}) as well as on grayscale images.
+	 * <p>
+	 * This is the reconstruction by erosion of the source, from a marker that
+	 * is equal to the source on the image border and to the maximal value of
+	 * the type everywhere else.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the shape that defines the connectivity of the background.
+	 * @param <T>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > fillHoles( final Img< T > source, final Shape shape )
+	{
+		final int n = source.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		source.min( min );
+		source.max( max );
+
+		final Img< T > marker = source.copy();
+		final Cursor< T > cursor = marker.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			final T t = cursor.next();
+			boolean border = false;
+			for ( int d = 0; d < n; ++d )
+			{
+				final long p = cursor.getLongPosition( d );
+				if ( p == min[ d ] || p == max[ d ] )
+				{
+					border = true;
+					break;
+				}
+			}
+			if ( !border )
+				t.setReal( t.getMaxValue() );
+		}
+
+		reconstructByErosionInPlace( marker, source, shape );
+		return marker;
+	}
+
+	/**
+	 * Computes the h-maxima transform of an image: all the regional maxima of
+	 * the source whose height (dynamic) is lower than or equal to
+	 * <code>h</code> are suppressed.
+	 * <p>
+	 * This is the reconstruction by dilation of the source from the source
+	 * minus <code>h</code>. Values are clamped to the range of the type.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param h
+	 *            the height threshold.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > hMaxima( final Img< T > source, final double h, final Shape shape )
+	{
+		final Img< T > marker = source.copy();
+		for ( final T t : marker )
+			t.setReal( Math.max( t.getMinValue(), t.getRealDouble() - h ) );
+
+		reconstructByDilationInPlace( marker, source, shape );
+		return marker;
+	}
+
+	/**
+	 * Computes the h-minima transform of an image: all the regional minima of
+	 * the source whose depth (dynamic) is lower than or equal to
+	 * <code>h</code> are suppressed.
+	 * <p>
+	 * This is the reconstruction by erosion of the source from the source plus
+	 * <code>h</code>. Values are clamped to the range of the type.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param h
+	 *            the depth threshold.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > hMinima( final Img< T > source, final double h, final Shape shape )
+	{
+		final Img< T > marker = source.copy();
+		for ( final T t : marker )
+			t.setReal( Math.min( t.getMaxValue(), t.getRealDouble() + h ) );
+
+		reconstructByErosionInPlace( marker, source, shape );
+		return marker;
+	}
+
+	/**
+	 * Computes the regional maxima of an image. A regional maximum is a
+	 * connected plateau of constant value whose neighbors all have a strictly
+	 * lower value.
+	 * <p>
+	 * The marker of the reconstruction is equal to the source on pixels that
+	 * have a strictly higher neighbor, and to the minimal value of the type
+	 * elsewhere. The reconstruction by dilation of the source from this marker
+	 * is strictly lower than the source exactly on the regional maxima. As a
+	 * consequence, a plateau at the minimal value of the type is never
+	 * reported, which can only happen for a constant image.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link BitType} {@link Img}, of same dimensions than the
+	 *         source, set to <code>true</code> on regional maxima.
+	 */
+	public static < T extends RealType< T > > Img< BitType > regionalMaxima( final Img< T > source, final Shape shape )
+	{
+		return regionalExtrema( source, shape, 1 );
+	}
+
+	/**
+	 * Computes the regional minima of an image. A regional minimum is a
+	 * connected plateau of constant value whose neighbors all have a strictly
+	 * higher value.
+	 * <p>
+	 * This is the dual of {@link #regionalMaxima(Img, Shape)}: a plateau at the
+	 * maximal value of the type is never reported, which can only happen for a
+	 * constant image.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the shape that defines the connectivity.
+	 * @param <T>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link BitType} {@link Img}, of same dimensions than the
+	 *         source, set to <code>true</code> on regional minima.
+	 */
+	public static < T extends RealType< T > > Img< BitType > regionalMinima( final Img< T > source, final Shape shape )
+	{
+		return regionalExtrema( source, shape, -1 );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Regional maxima (<code>sign = 1</code>) or minima (
+	 * <code>sign = -1</code>) through reconstruction.
+	 */
+	private static < T extends RealType< T > > Img< BitType > regionalExtrema( final Img< T > source, final Shape shape, final int sign )
+	{
+		final int n = source.numDimensions();
+		final long[][] offsets = getOffsets( shape, source );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		source.min( min );
+		source.max( max );
+
+		final Img< T > marker = source.copy();
+		final Cursor< T > cursor = marker.localizingCursor();
+		final RandomAccess< T > ra = source.randomAccess();
+		final long[] pos = new long[ n ];
+		final T extreme = source.firstElement().createVariable();
+		extreme.setReal( sign > 0 ? extreme.getMinValue() : extreme.getMaxValue() );
+		while ( cursor.hasNext() )
+		{
+			final T t = cursor.next();
+			cursor.localize( pos );
+			boolean dominated = false;
+			for ( final long[] o : offsets )
+			{
+				if ( !isInside( pos, o, min, max ) )
+					continue;
+				ra.setPosition( pos );
+				ra.move( o );
+				if ( sign * ra.get().compareTo( t ) > 0 )
+				{
+					dominated = true;
+					break;
+				}
+			}
+			if ( !dominated )
+				t.set( extreme );
+		}
+
+		reconstruct( marker, source, shape, sign );
+
+		final Img< BitType > target = MorphologyUtils.getSuitableFactory( source, new BitType() ).create( source, new BitType() );
+		final Cursor< BitType > tc = target.localizingCursor();
+		final RandomAccess< T > mra = marker.randomAccess();
+		final RandomAccess< T > sra = source.randomAccess();
+		while ( tc.hasNext() )
+		{
+			tc.fwd();
+			mra.setPosition( tc );
+			sra.setPosition( tc );
+			tc.get().set( sign * sra.get().compareTo( mra.get() ) > 0 );
+		}
+		return target;
+	}
+
+	/**
+	 * The hybrid reconstruction algorithm. <code>sign = 1</code> performs the
+	 * reconstruction by dilation, <code>sign = -1</code> the reconstruction by
+	 * erosion.
+	 */
+	private static < T extends Type< T > & Comparable< T > > void reconstruct( final RandomAccessibleInterval< T > marker, final RandomAccessible< T > mask, final Shape shape, final int sign )
+	{
+		final int n = marker.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final long[] dimensions = new long[ n ];
+		marker.min( min );
+		marker.max( max );
+		marker.dimensions( dimensions );
+		final long size = Intervals.numElements( marker );
+		if ( size == 0 )
+			return;
+
+		/*
+		 * Split the neighborhood in the offsets that precede the center in
+		 * raster order, and the ones that follow it. The pixels that depend
+		 * on a pixel p are located at p - o, for all offsets o.
+		 */
+		final long[][] offsets = getOffsets( shape, marker );
+		final ArrayList< long[] > precedingList = new ArrayList< long[] >();
+		final ArrayList< long[] > followingList = new ArrayList< long[] >();
+		for ( final long[] o : offsets )
+		{
+			if ( precedes( o ) )
+				precedingList.add( o );
+			else
+				followingList.add( o );
+		}
+		final long[][] preceding = precedingList.toArray( new long[ precedingList.size() ][] );
+		final long[][] following = followingList.toArray( new long[ followingList.size() ][] );
+		final long[][] dependents = new long[ offsets.length ][ n ];
+		for ( int i = 0; i < offsets.length; ++i )
+			for ( int d = 0; d < n; ++d )
+				dependents[ i ][ d ] = -offsets[ i ][ d ];
+		final long[][] precedingDependents = new long[ preceding.length ][ n ];
+		for ( int i = 0; i < preceding.length; ++i )
+			for ( int d = 0; d < n; ++d )
+				precedingDependents[ i ][ d ] = -preceding[ i ][ d ];
+
+		/*
+		 * Margins to the interval border under which a pixel needs to check
+		 * whether its neighbors are in bounds.
+		 */
+		final long[] lowMargin = new long[ n ];
+		final long[] highMargin = new long[ n ];
+		for ( final long[] o : offsets )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				lowMargin[ d ] = Math.max( lowMargin[ d ], Math.abs( o[ d ] ) );
+				highMargin[ d ] = lowMargin[ d ];
+			}
+		}
+
+		final RandomAccess< T > j = marker.randomAccess();
+		final RandomAccess< T > jn = marker.randomAccess();
+		final RandomAccess< T > i = mask.randomAccess( marker );
+		final RandomAccess< T > in = mask.randomAccess( marker );
+		final long[] pos = new long[ n ];
+		final long[] neighbor = new long[ n ];
+		j.setPosition( min );
+		final T value = j.get().createVariable();
+
+		/*
+		 * 1. Raster scan.
+		 */
+
+		System.arraycopy( min, 0, pos, 0, n );
+		for ( long index = 0; index < size; ++index )
+		{
+			j.setPosition( pos );
+			value.set( j.get() );
+			final boolean interior = isInterior( pos, min, max, lowMargin, highMargin );
+			for ( final long[] o : preceding )
+			{
+				if ( !interior && !isInside( pos, o, min, max ) )
+					continue;
+				jn.setPosition( pos );
+				jn.move( o );
+				final T t = jn.get();
+				if ( sign * t.compareTo( value ) > 0 )
+					value.set( t );
+			}
+			i.setPosition( pos );
+			final T m = i.get();
+			if ( sign * value.compareTo( m ) > 0 )
+				value.set( m );
+			j.get().set( value );
+			nextPosition( pos, min, max );
+		}
+
+		/*
+		 * 2. Anti-raster scan. Collect the pixels that can still propagate
+		 * their value to the pixels that depend on them.
+		 */
+
+		final LongFifo queue = new LongFifo();
+		System.arraycopy( max, 0, pos, 0, n );
+		for ( long index = size - 1; index >= 0; --index )
+		{
+			j.setPosition( pos );
+			value.set( j.get() );
+			final boolean interior = isInterior( pos, min, max, lowMargin, highMargin );
+			for ( final long[] o : following )
+			{
+				if ( !interior && !isInside( pos, o, min, max ) )
+					continue;
+				jn.setPosition( pos );
+				jn.move( o );
+				final T t = jn.get();
+				if ( sign * t.compareTo( value ) > 0 )
+					value.set( t );
+			}
+			i.setPosition( pos );
+			final T m = i.get();
+			if ( sign * value.compareTo( m ) > 0 )
+				value.set( m );
+			j.get().set( value );
+
+			for ( final long[] o : precedingDependents )
+			{
+				if ( !interior && !isInside( pos, o, min, max ) )
+					continue;
+				jn.setPosition( pos );
+				jn.move( o );
+				in.setPosition( jn );
+				final T t = jn.get();
+				if ( sign * value.compareTo( t ) > 0 && sign * in.get().compareTo( t ) > 0 )
+				{
+					queue.add( index );
+					break;
+				}
+			}
+			previousPosition( pos, min, max );
+		}
+
+		/*
+		 * 3. FIFO propagation.
+		 */
+
+		while ( !queue.isEmpty() )
+		{
+			IntervalIndexer.indexToPositionWithOffset( queue.remove(), dimensions, min, pos );
+			j.setPosition( pos );
+			final T current = j.get();
+			final boolean interior = isInterior( pos, min, max, lowMargin, highMargin );
+			for ( final long[] o : dependents )
+			{
+				if ( !interior && !isInside( pos, o, min, max ) )
+					continue;
+				jn.setPosition( pos );
+				jn.move( o );
+				final T t = jn.get();
+				if ( sign * current.compareTo( t ) <= 0 )
+					continue;
+				in.setPosition( jn );
+				final T m = in.get();
+				if ( m.compareTo( t ) == 0 )
+					continue;
+				if ( sign * current.compareTo( m ) > 0 )
+					t.set( m );
+				else
+					t.set( current );
+				jn.localize( neighbor );
+				queue.add( IntervalIndexer.positionWithOffsetToIndex( neighbor, dimensions, min ) );
+			}
+		}
+	}
+
+	/**
+	 * Returns the offsets of the neighborhood defined by the specified shape,
+	 * relative to its center, excluding the center itself.
+	 */
+	static final long[][] getOffsets( final Shape shape, final EuclideanSpace space )
+	{
+		return NeighborhoodOffsets.create( shape, space.numDimensions() ).withoutCenter().getOffsets();
+	}
+
+	/**
+	 * Returns <code>true</code> if a pixel at the specified offset is visited
+	 * before the center pixel in raster order.
+	 */
+	private static final boolean precedes( final long[] offset )
+	{
+		for ( int d = offset.length - 1; d >= 0; --d )
+		{
+			if ( offset[ d ] < 0 )
+				return true;
+			if ( offset[ d ] > 0 )
+				return false;
+		}
+		return false;
+	}
+
+	private static final boolean isInterior( final long[] pos, final long[] min, final long[] max, final long[] lowMargin, final long[] highMargin )
+	{
+		for ( int d = 0; d < pos.length; ++d )
+			if ( pos[ d ] - min[ d ] < lowMargin[ d ] || max[ d ] - pos[ d ] < highMargin[ d ] )
+				return false;
+		return true;
+	}
+
+	private static final boolean isInside( final long[] pos, final long[] offset, final long[] min, final long[] max )
+	{
+		for ( int d = 0; d < pos.length; ++d )
+		{
+			final long p = pos[ d ] + offset[ d ];
+			if ( p < min[ d ] || p > max[ d ] )
+				return false;
+		}
+		return true;
+	}
+
+	private static final void nextPosition( final long[] pos, final long[] min, final long[] max )
+	{
+		for ( int d = 0; d < pos.length; ++d )
+		{
+			if ( ++pos[ d ] <= max[ d ] )
+				return;
+			pos[ d ] = min[ d ];
+		}
+	}
+
+	private static final void previousPosition( final long[] pos, final long[] min, final long[] max )
+	{
+		for ( int d = 0; d < pos.length; ++d )
+		{
+			if ( --pos[ d ] >= min[ d ] )
+				return;
+			pos[ d ] = max[ d ];
+		}
+	}
+
+	/**
+	 * A growable FIFO queue of primitive <code>long</code> pixel indices,
+	 * backed by a circular array.
+	 */
+	private static final class LongFifo
+	{
+		private long[] data = new long[ 1024 ];
+
+		private int head = 0;
+
+		private int size = 0;
+
+		public void add( final long value )
+		{
+			if ( size == data.length )
+			{
+				final long[] newData = new long[ data.length * 2 ];
+				final int firstPart = data.length - head;
+				System.arraycopy( data, head, newData, 0, firstPart );
+				System.arraycopy( data, 0, newData, firstPart, head );
+				data = newData;
+				head = 0;
+			}
+			data[ ( head + size ) % data.length ] = value;
+			++size;
+		}
+
+		public long remove()
+		{
+			final long value = data[ head ];
+			head = ( head + 1 ) % data.length;
+			--size;
+			return value;
+		}
+
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+	}
+
+	private Reconstruction()
+	{}
+}
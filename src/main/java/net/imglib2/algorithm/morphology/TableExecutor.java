@@ -0,0 +1,265 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.algorithm.util.FutureUtils;
+import net.imglib2.img.Img;
+import net.imglib2.type.BooleanType;
+
+/**
+ * Multi-threaded driver shared by the 2D and 3D table operation executors
+ * {@link net.imglib2.algorithm.morphology.table2d.Table2dExecutor} and
+ * {@link net.imglib2.algorithm.morphology.table3d.Table3dExecutor}.
+ * <p>
+ * An image is treated as a sequence of slices along its last dimension, i.e.,
+ * rows of a 2D image or XY planes of a 3D image. Slices are split into stripes
+ * that are computed in parallel, and changed pixels are counted per slice.
+ * {@link #iterate(Img, int, int, int, Step)} applies a sequence of operations
+ * repeatedly and only recomputes slices next to a slice that changed.
+ */
+public class TableExecutor
+{
+	/**
+	 * Computes one stripe of slices.
+	 */
+	public interface Stripe
+	{
+		/**
+		 * Compute slices {@code fromSlice} (inclusive) to {@code toSlice}
+		 * (exclusive).
+		 *
+		 * @param fromSlice
+		 *            first slice of the stripe.
+		 * @param toSlice
+		 *            end of the stripe (exclusive).
+		 * @return the number of changed pixels in the stripe.
+		 */
+		public long calculate( int fromSlice, int toSlice );
+	}
+
+	/**
+	 * Applies one operation of an iterated sequence.
+	 */
+	public interface Step< T >
+	{
+		/**
+		 * Apply operation {@code operationIndex} to {@code source}.
+		 *
+		 * @param operationIndex
+		 *            index of the operation in the sequence.
+		 * @param source
+		 *            input of the step.
+		 * @param target
+		 *            receives the result.
+		 * @param active
+		 *            the slices to compute, or {@code null} to compute all.
+		 * @param sliceChanges
+		 *            receives the number of changed pixels in every computed
+		 *            slice.
+		 * @return the number of changed pixels.
+		 */
+		public long calculate( int operationIndex, Img< T > source, Img< T > target, BitSet active, long[] sliceChanges );
+	}
+
+	/**
+	 * Compute {@code numSlices} slices in stripes on the given
+	 * {@link ExecutorService}. Stripes start at a multiple of
+	 * {@code granularity} slices. Stripes without an active slice are skipped.
+	 *
+	 * @param stripe
+	 *            computes one stripe.
+	 * @param numSlices
+	 *            the number of slices.
+	 * @param granularity
+	 *            stripe boundaries are multiples of this.
+	 * @param active
+	 *            the slices to compute, or {@code null} to compute all.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return the number of changed pixels in all stripes.
+	 */
+	public static long calculate( final Stripe stripe, final int numSlices, final int granularity, final BitSet active, final ExecutorService service )
+	{
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final int numUnits = ( numSlices + granularity - 1 ) / granularity;
+		final int numTasks = Math.max( Math.min( numUnits, numThreads * 4 ), 1 );
+		final int unitsPerTask = numUnits / numTasks;
+
+		final ArrayList< Future< Long > > futures = new ArrayList< Future< Long > >();
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final int fromSlice = taskNum * unitsPerTask * granularity;
+			final int toSlice = ( taskNum == numTasks - 1 ) ? numSlices : fromSlice + unitsPerTask * granularity;
+			if ( active != null )
+			{
+				final int next = active.nextSetBit( fromSlice );
+				if ( next < 0 || next >= toSlice )
+					continue;
+			}
+			final Callable< Long > r = new Callable< Long >()
+			{
+				@Override
+				public Long call()
+				{
+					return stripe.calculate( fromSlice, toSlice );
+				}
+			};
+			futures.add( service.submit( r ) );
+		}
+
+		long changes = 0;
+		for ( final Long c : FutureUtils.getAllFutures( futures ) )
+			changes += c;
+		return changes;
+	}
+
+	/**
+	 * Apply a sequence of {@code numOperations} operations repeatedly, until
+	 * the image does not change anymore or a maximum number of iterations is
+	 * reached. One iteration applies every operation once, in order.
+	 *
+	 * @param source
+	 *            the image. It is not modified.
+	 * @param numOperations
+	 *            the number of operations in the sequence.
+	 * @param sliceDimension
+	 *            the dimension along which the image is split into slices.
+	 * @param maxIterations
+	 *            the maximum number of iterations.
+	 * @param step
+	 *            applies one operation.
+	 * @return the result of the last iteration.
+	 */
+	public static < T extends BooleanType< T > > Img< T > iterate( final Img< T > source, final int numOperations, final int sliceDimension, final int maxIterations, final Step< T > step )
+	{
+		final int m = numOperations;
+		final int numSlices = ( int ) source.dimension( sliceDimension );
+
+		// Even steps write to the first buffer, odd steps to the second. A
+		// slice that is skipped in a step already holds the input of the
+		// previous step, which is equal to the input of this step. That is
+		// why the second buffer starts as a copy of the source.
+		final List< Img< T > > buffers = new ArrayList< Img< T > >( 2 );
+		buffers.add( source.factory().create( source, source.firstElement().copy() ) );
+		buffers.add( source.copy() );
+
+		// sliceChanges[ k % m ] holds the number of changed pixels in every
+		// slice for step k.
+		final long[][] sliceChanges = new long[ m ][ numSlices ];
+		final long[] stepChanges = new long[ m ];
+		final long numSteps = ( long ) maxIterations * m;
+
+		Img< T > in = source;
+		Img< T > out = source;
+		for ( long s = 0; s < numSteps; ++s )
+		{
+			final int j = ( int ) ( s % m );
+			out = buffers.get( ( int ) ( s % 2 ) );
+
+			// An operation is applied to all slices the first time.
+			// Afterwards, a slice can only change if its neighborhood changed
+			// since the operation was applied the last time, i.e., in the last
+			// m steps.
+			final BitSet active;
+			if ( s < m )
+				active = null;
+			else
+			{
+				active = new BitSet( numSlices );
+				for ( int i = 0; i < m; ++i )
+				{
+					if ( stepChanges[ i ] == 0 )
+						continue;
+					final long[] changes = sliceChanges[ i ];
+					for ( int z = 0; z < numSlices; ++z )
+						if ( changes[ z ] != 0 )
+							active.set( Math.max( z - 1, 0 ), Math.min( z + 2, numSlices ) );
+				}
+			}
+
+			final long[] changes = sliceChanges[ j ];
+			if ( active == null )
+				stepChanges[ j ] = step.calculate( j, in, out, null, changes );
+			else
+			{
+				// Slices that are not active do not change in this step.
+				for ( int z = active.nextClearBit( 0 ); z < numSlices; z = active.nextClearBit( z + 1 ) )
+					changes[ z ] = 0;
+				stepChanges[ j ] = active.isEmpty() ? 0 : step.calculate( j, in, out, active, changes );
+			}
+			in = out;
+
+			if ( s + 1 >= m && isConverged( stepChanges ) )
+				break;
+		}
+		return out;
+	}
+
+	/**
+	 * Get the number of slices that a stripe of a bit-packed image must be a
+	 * multiple of, such that no two stripes write to the same {@code long} of
+	 * the storage.
+	 *
+	 * @param sliceSize
+	 *            the number of pixels in a slice.
+	 * @return the stripe granularity in slices.
+	 */
+	public static int getPackedGranularity( final long sliceSize )
+	{
+		return 64 / gcd( ( int ) ( sliceSize % 64 ), 64 );
+	}
+
+	private static int gcd( final int a, final int b )
+	{
+		return b == 0 ? a : gcd( b, a % b );
+	}
+
+	private static boolean isConverged( final long[] stepChanges )
+	{
+		for ( final long c : stepChanges )
+			if ( c != 0 )
+				return false;
+		return true;
+	}
+
+	private TableExecutor()
+	{}
+}
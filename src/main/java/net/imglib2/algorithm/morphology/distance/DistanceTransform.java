@@ -0,0 +1,548 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology.distance;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.Dimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.FutureUtils;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.BooleanType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Exact Euclidean distance transform.
+ * <p>
+ * The transform is separable: it is computed by one pass per dimension, and
+ * every pass computes the one-dimensional lower envelope of parabolas along
+ * all lines of that dimension (Felzenszwalb &amp; Huttenlocher, "Distance
+ * Transforms of Sampled Functions", 2012). The cost is linear in the number of
+ * pixels, independent of the distances involved. Lines are distributed over
+ * the threads of an {@link ExecutorService}.
+ * <p>
+ * Anisotropic sampling is supported by per-dimension weights (pixel spacing).
+ * Optionally, the flat index of the nearest feature pixel is written to an
+ * index image. Indices refer to the source interval, i.e. they can be
+ * converted to positions with
+ * {@link IntervalIndexer#indexToPositionWithOffset(long, long[], long[], long[])}
+ * using the source dimensions and min.
+ * <p>
+ * Large-radius binary dilations and erosions with a Euclidean ball are a
+ * threshold on the distance, see {@link #dilate} and {@link #erode}.
+ */
+public class DistanceTransform
+{
+	/**
+	 * Compute the Euclidean distance of every pixel in {@code source} to the
+	 * nearest {@code true} pixel. The transform is isotropic and
+	 * multi-threaded with as many threads as processors available.
+	 *
+	 * @param source
+	 *            binary image, {@code true} pixels are features.
+	 * @param target
+	 *            receives the distances. Must have the same dimensions as
+	 *            {@code source}.
+	 */
+	public static < B extends BooleanType< B >, T extends RealType< T > > void binaryTransform( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< T > target )
+	{
+		final ExecutorService service = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+		binaryTransform( source, target, null, isotropic( source.numDimensions() ), false, service );
+		service.shutdown();
+	}
+
+	/**
+	 * Compute the Euclidean distance of every pixel in {@code source} to the
+	 * nearest {@code true} pixel.
+	 *
+	 * @param source
+	 *            binary image, {@code true} pixels are features.
+	 * @param target
+	 *            receives the distances. Must have the same dimensions as
+	 *            {@code source}.
+	 * @param weights
+	 *            pixel spacing in every dimension.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < B extends BooleanType< B >, T extends RealType< T > > void binaryTransform( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< T > target, final double[] weights, final ExecutorService service )
+	{
+		binaryTransform( source, target, null, weights, false, service );
+	}
+
+	/**
+	 * Compute the Euclidean distance of every pixel in {@code source} to the
+	 * nearest {@code true} pixel, and optionally the index of that pixel.
+	 * Pixels are infinitely far away from features if {@code source} contains
+	 * no {@code true} pixels; their nearest feature index is -1.
+	 *
+	 * @param source
+	 *            binary image, {@code true} pixels are features.
+	 * @param target
+	 *            receives the distances. Must have the same dimensions as
+	 *            {@code source}. May be {@code null}, if only the nearest
+	 *            feature is of interest.
+	 * @param nearest
+	 *            receives the flat index (with respect to the source interval)
+	 *            of the nearest feature pixel. Must have the same dimensions
+	 *            as {@code source}. May be {@code null}.
+	 * @param weights
+	 *            pixel spacing in every dimension.
+	 * @param squared
+	 *            whether to write squared distances to {@code target}.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < B extends BooleanType< B >, T extends RealType< T > > void binaryTransform( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< T > target, final RandomAccessibleInterval< LongType > nearest, final double[] weights, final boolean squared, final ExecutorService service )
+	{
+		transform( source, new BinaryCost< B >(), target, nearest, weights, squared, service );
+	}
+
+	/**
+	 * Compute the generalized distance transform
+	 * {@code D(p) = min_q ( |p - q|^2 + f(q) )} of a sampled function
+	 * {@code f}, and optionally the index of the minimizing {@code q}. Samples
+	 * with value {@link Double#POSITIVE_INFINITY} do not contribute. With
+	 * {@code f} being 0 on features and infinity elsewhere this is the squared
+	 * Euclidean distance transform.
+	 *
+	 * @param source
+	 *            the sampled function {@code f}.
+	 * @param target
+	 *            receives {@code D}, or its square root if {@code squared} is
+	 *            {@code false}. Must have the same dimensions as
+	 *            {@code source}. May be {@code null}.
+	 * @param nearest
+	 *            receives the flat index (with respect to the source interval)
+	 *            of the minimizing sample. Must have the same dimensions as
+	 *            {@code source}. May be {@code null}.
+	 * @param weights
+	 *            pixel spacing in every dimension.
+	 * @param squared
+	 *            whether to write {@code D} (rather than its square root) to
+	 *            {@code target}.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < S extends RealType< S >, T extends RealType< T > > void transform( final RandomAccessibleInterval< S > source, final RandomAccessibleInterval< T > target, final RandomAccessibleInterval< LongType > nearest, final double[] weights, final boolean squared, final ExecutorService service )
+	{
+		transform( source, new RealCost< S >(), target, nearest, weights, squared, service );
+	}
+
+	/**
+	 * Dilate a binary image by a Euclidean ball of the given radius. Pixels
+	 * of {@code target} are set if they are at most {@code radius} away from a
+	 * {@code true} pixel of {@code source}.
+	 *
+	 * @param source
+	 *            binary image to dilate.
+	 * @param target
+	 *            receives the dilated image. Must have the same dimensions as
+	 *            {@code source}. May be the same as {@code source}.
+	 * @param radius
+	 *            radius of the ball, in units of {@code weights}.
+	 * @param weights
+	 *            pixel spacing in every dimension.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < B extends BooleanType< B > > void dilate( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< B > target, final double radius, final double[] weights, final ExecutorService service )
+	{
+		threshold( source, new BinaryCost< B >(), target, radius, weights, false, service );
+	}
+
+	/**
+	 * Erode a binary image by a Euclidean ball of the given radius. Pixels of
+	 * {@code target} are set if they are more than {@code radius} away from
+	 * any {@code false} pixel of {@code source}. As with
+	 * {@link net.imglib2.algorithm.morphology.Erosion}, pixels outside the
+	 * image do not erode.
+	 *
+	 * @param source
+	 *            binary image to erode.
+	 * @param target
+	 *            receives the eroded image. Must have the same dimensions as
+	 *            {@code source}. May be the same as {@code source}.
+	 * @param radius
+	 *            radius of the ball, in units of {@code weights}.
+	 * @param weights
+	 *            pixel spacing in every dimension.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 */
+	public static < B extends BooleanType< B > > void erode( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< B > target, final double radius, final double[] weights, final ExecutorService service )
+	{
+		threshold( source, new InvertedBinaryCost< B >(), target, radius, weights, true, service );
+	}
+
+	private static < B extends BooleanType< B > > void threshold( final RandomAccessibleInterval< B > source, final Cost< B > cost, final RandomAccessibleInterval< B > target, final double radius, final double[] weights, final boolean invert, final ExecutorService service )
+	{
+		final Img< DoubleType > distance = createImgFactory( source ).create( source, new DoubleType() );
+		transform( source, cost, distance, null, weights, true, service );
+		final double r2 = radius * radius;
+		// both in flat order, distance may be a CellImg
+		final Cursor< DoubleType > c = Views.flatIterable( distance ).cursor();
+		final Cursor< B > t = Views.flatIterable( target ).cursor();
+		while ( c.hasNext() )
+			t.next().set( ( c.next().get() <= r2 ) != invert );
+	}
+
+	private static < S, T extends RealType< T > > void transform( final RandomAccessibleInterval< S > source, final Cost< S > cost, final RandomAccessibleInterval< T > target, final RandomAccessibleInterval< LongType > nearest, final double[] weights, final boolean squared, final ExecutorService service )
+	{
+		final int n = source.numDimensions();
+		final long[] dimensions = new long[ n ];
+		final long[] min = new long[ n ];
+		source.dimensions( dimensions );
+		source.min( min );
+
+		if ( n == 1 )
+		{
+			pass( source, cost, min, target, squared, nearest, true, dimensions, 0, weights[ 0 ], service );
+			return;
+		}
+
+		// Intermediate squared distances are kept in double precision. If
+		// target is a DoubleType image, it serves as the temporary image.
+		final RandomAccessibleInterval< DoubleType > tmp = getTemporaryImage( source, target );
+		final long[] tmpMin = new long[ n ];
+		tmp.min( tmpMin );
+		final Cost< DoubleType > tmpCost = new RealCost< DoubleType >();
+		pass( source, cost, min, tmp, true, nearest, true, dimensions, 0, weights[ 0 ], service );
+		for ( int d = 1; d < n - 1; ++d )
+			pass( tmp, tmpCost, tmpMin, tmp, true, nearest, false, dimensions, d, weights[ d ], service );
+		if ( target == null )
+			DistanceTransform.< DoubleType, DoubleType >pass( tmp, tmpCost, tmpMin, null, true, nearest, false, dimensions, n - 1, weights[ n - 1 ], service );
+		else
+			pass( tmp, tmpCost, tmpMin, target, squared, nearest, false, dimensions, n - 1, weights[ n - 1 ], service );
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static < T extends RealType< T > > RandomAccessibleInterval< DoubleType > getTemporaryImage( final RandomAccessibleInterval< ? > source, final RandomAccessibleInterval< T > target )
+	{
+		if ( target != null )
+		{
+			// NB: Casting madness, see SeparableSymmetricConvolution.
+			final Object type = Util.getTypeFromInterval( target );
+			if ( type instanceof DoubleType )
+				return ( RandomAccessibleInterval ) target;
+		}
+		return createImgFactory( source ).create( source, new DoubleType() );
+	}
+
+	private static ImgFactory< DoubleType > createImgFactory( final Dimensions dimensions )
+	{
+		if ( Intervals.numElements( dimensions ) <= Integer.MAX_VALUE )
+			return new ArrayImgFactory< DoubleType >();
+		final int cellSize = ( int ) Math.pow( Integer.MAX_VALUE, 1.0 / dimensions.numDimensions() );
+		return new CellImgFactory< DoubleType >( cellSize );
+	}
+
+	private static double[] isotropic( final int n )
+	{
+		final double[] weights = new double[ n ];
+		for ( int d = 0; d < n; ++d )
+			weights[ d ] = 1;
+		return weights;
+	}
+
+	/**
+	 * One-dimensional transform of all lines along dimension {@code d}.
+	 *
+	 * @param source
+	 *            squared distances of the previous pass (or the initial cost).
+	 * @param sourceMin
+	 *            min of the source interval.
+	 * @param target
+	 *            receives squared distances, or distances if
+	 *            {@code squared == false}. May be {@code null}.
+	 * @param nearest
+	 *            nearest feature indices, read (unless {@code first}) and
+	 *            written in place. May be {@code null}.
+	 * @param first
+	 *            whether this is the first pass, i.e., nearest feature indices
+	 *            are initialized from sample positions.
+	 */
+	private static < S, T extends RealType< T > > void pass(
+			final RandomAccessibleInterval< S > source,
+			final Cost< S > cost,
+			final long[] sourceMin,
+			final RandomAccessibleInterval< T > target,
+			final boolean squared,
+			final RandomAccessibleInterval< LongType > nearest,
+			final boolean first,
+			final long[] dimensions,
+			final int d,
+			final double weight,
+			final ExecutorService service )
+	{
+		final int n = dimensions.length;
+		final int length = ( int ) dimensions[ d ];
+		final long[] lineDimensions = dimensions.clone();
+		lineDimensions[ d ] = 1;
+		final long numLines = Intervals.numElements( lineDimensions );
+		long stride = 1;
+		for ( int i = 0; i < d; ++i )
+			stride *= dimensions[ i ];
+		final long lineStride = stride;
+		final double w = weight * weight;
+
+		final long[] targetMin = new long[ n ];
+		if ( target != null )
+			target.min( targetMin );
+		final long[] nearestMin = new long[ n ];
+		if ( nearest != null )
+			nearest.min( nearestMin );
+
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final int numTasks = ( int ) Math.max( Math.min( numLines, numThreads > 1 ? numThreads * 4 : 1 ), 1 );
+		final long taskSize = numLines / numTasks;
+
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final long myStartIndex = taskNum * taskSize;
+			final long myEndIndex = ( taskNum == numTasks - 1 ) ? numLines : myStartIndex + taskSize;
+			final Callable< Void > r = new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final RandomAccess< S > in = source.randomAccess();
+					final RandomAccess< T > out = target == null ? null : target.randomAccess();
+					final RandomAccess< LongType > idx = nearest == null ? null : nearest.randomAccess();
+
+					final double[] f = new double[ length ];
+					final double[] g = new double[ length ];
+					final long[] fIdx = new long[ length ];
+					final long[] gIdx = new long[ length ];
+					final int[] v = new int[ length ];
+					final double[] z = new double[ length + 1 ];
+					final long[] pos = new long[ n ];
+
+					for ( long line = myStartIndex; line < myEndIndex; ++line )
+					{
+						IntervalIndexer.indexToPosition( line, lineDimensions, pos );
+						final long lineIndex = IntervalIndexer.positionToIndex( pos, dimensions );
+
+						setPosition( in, pos, sourceMin );
+						for ( int i = 0; i < length; ++i )
+						{
+							f[ i ] = cost.get( in.get() );
+							in.fwd( d );
+						}
+						if ( idx != null )
+						{
+							if ( first )
+							{
+								for ( int i = 0; i < length; ++i )
+									fIdx[ i ] = lineIndex + i * lineStride;
+							}
+							else
+							{
+								setPosition( idx, pos, nearestMin );
+								for ( int i = 0; i < length; ++i )
+								{
+									fIdx[ i ] = idx.get().get();
+									idx.fwd( d );
+								}
+							}
+						}
+
+						lowerEnvelope( f, fIdx, g, gIdx, v, z, w, length );
+
+						if ( out != null )
+						{
+							setPosition( out, pos, targetMin );
+							for ( int i = 0; i < length; ++i )
+							{
+								out.get().setReal( squared ? g[ i ] : Math.sqrt( g[ i ] ) );
+								out.fwd( d );
+							}
+						}
+						if ( idx != null )
+						{
+							setPosition( idx, pos, nearestMin );
+							for ( int i = 0; i < length; ++i )
+							{
+								idx.get().set( gIdx[ i ] );
+								idx.fwd( d );
+							}
+						}
+					}
+					return null;
+				}
+			};
+			futures.add( service.submit( r ) );
+		}
+		FutureUtils.getAllFutures( futures );
+	}
+
+	private static void setPosition( final RandomAccess< ? > access, final long[] relative, final long[] min )
+	{
+		for ( int i = 0; i < relative.length; ++i )
+			access.setPosition( relative[ i ] + min[ i ], i );
+	}
+
+	/**
+	 * Compute {@code g[q] = min_p ( w (q - p)^2 + f[p] )} by the lower
+	 * envelope of the parabolas rooted at the finite samples of {@code f}.
+	 *
+	 * @param f
+	 *            sampled function.
+	 * @param fIdx
+	 *            payload of the samples of {@code f} (nearest feature index).
+	 * @param g
+	 *            receives the transform.
+	 * @param gIdx
+	 *            receives the payload of the minimizing sample.
+	 * @param v
+	 *            scratch space for the roots of the envelope parabolas.
+	 * @param z
+	 *            scratch space for the boundaries between envelope parabolas.
+	 * @param w
+	 *            squared pixel spacing.
+	 * @param length
+	 *            length of the line.
+	 */
+	static void lowerEnvelope( final double[] f, final long[] fIdx, final double[] g, final long[] gIdx, final int[] v, final double[] z, final double w, final int length )
+	{
+		int k = -1;
+		for ( int q = 0; q < length; ++q )
+		{
+			final double fq = f[ q ];
+			if ( fq == Double.POSITIVE_INFINITY )
+				continue;
+			if ( k < 0 )
+			{
+				k = 0;
+				v[ 0 ] = q;
+				z[ 0 ] = Double.NEGATIVE_INFINITY;
+				z[ 1 ] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			double s = intersection( f, v[ k ], q, w );
+			while ( s <= z[ k ] )
+			{
+				--k;
+				s = intersection( f, v[ k ], q, w );
+			}
+			++k;
+			v[ k ] = q;
+			z[ k ] = s;
+			z[ k + 1 ] = Double.POSITIVE_INFINITY;
+		}
+
+		if ( k < 0 )
+		{
+			for ( int q = 0; q < length; ++q )
+			{
+				g[ q ] = Double.POSITIVE_INFINITY;
+				gIdx[ q ] = -1;
+			}
+			return;
+		}
+
+		k = 0;
+		for ( int q = 0; q < length; ++q )
+		{
+			while ( z[ k + 1 ] < q )
+				++k;
+			final int p = v[ k ];
+			final double diff = q - p;
+			g[ q ] = w * diff * diff + f[ p ];
+			gIdx[ q ] = fIdx[ p ];
+		}
+	}
+
+	/**
+	 * Position where the parabolas rooted at {@code p < q} intersect.
+	 */
+	private static double intersection( final double[] f, final int p, final int q, final double w )
+	{
+		return ( ( f[ q ] + w * q * q ) - ( f[ p ] + w * p * p ) ) / ( 2 * w * ( q - p ) );
+	}
+
+	/**
+	 * Maps source samples to the initial cost of the transform.
+	 */
+	private static interface Cost< S >
+	{
+		public double get( S s );
+	}
+
+	private static final class BinaryCost< B extends BooleanType< B > > implements Cost< B >
+	{
+		@Override
+		public double get( final B b )
+		{
+			return b.get() ? 0 : Double.POSITIVE_INFINITY;
+		}
+	}
+
+	private static final class InvertedBinaryCost< B extends BooleanType< B > > implements Cost< B >
+	{
+		@Override
+		public double get( final B b )
+		{
+			return b.get() ? Double.POSITIVE_INFINITY : 0;
+		}
+	}
+
+	private static final class RealCost< S extends RealType< S > > implements Cost< S >
+	{
+		@Override
+		public double get( final S s )
+		{
+			return s.getRealDouble();
+		}
+	}
+
+	private DistanceTransform()
+	{}
+}
@@ -33,14 +33,23 @@
  */
 package net.imglib2.algorithm.morphology.table2d;
 
+import java.util.BitSet;
+
 import net.imglib2.Cursor;
+import net.imglib2.FlatIterationOrder;
+import net.imglib2.Interval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.InteriorBorderSplit;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
 import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
 import net.imglib2.type.BooleanType;
+import net.imglib2.type.logic.BitType;
 import net.imglib2.view.ExtendedRandomAccessibleInterval;
 import net.imglib2.view.Views;
 
@@ -83,6 +92,14 @@ public abstract class Abstract3x3TableOperation
 	protected < T extends BooleanType< T > > Img< T > calculate( final Img< T > source )
 	{
 		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
+		final long[] sourceBits = getBits( source );
+		final long[] targetBits = getBits( target );
+		if ( sourceBits != null && targetBits != null )
+		{
+			final int height = ( int ) source.dimension( 1 );
+			calculate( sourceBits, targetBits, ( int ) source.dimension( 0 ), height, 0, height, null, null );
+			return target;
+		}
 		final T extendedVal = source.firstElement().createVariable();
 		extendedVal.set( getExtendedValue() );
 		final ExtendedRandomAccessibleInterval< T, Img< T > > extended = Views.extendValue( source, extendedVal );
@@ -91,6 +108,274 @@ public abstract class Abstract3x3TableOperation
 	}
 
 	protected < T extends BooleanType< T > > void calculate( final RandomAccessible< T > source, final IterableInterval< T > target )
+	{
+		if ( target.numDimensions() == 2 && target.iterationOrder() instanceof FlatIterationOrder )
+			calculateRows( source, target );
+		else
+			calculateNeighborhoods( source, target );
+	}
+
+	/**
+	 * Slides a 3x3 window along the rows of target. When the window moves one
+	 * pixel to the right, the table index is shifted by one bit, dropping the
+	 * left column, and the new right column is read from the source.
+	 */
+	private < T extends BooleanType< T > > void calculateRows( final RandomAccessible< T > source, final IterableInterval< T > target )
+	{
+		final long minX = target.min( 0 );
+		final long minY = target.min( 1 );
+		final long height = target.dimension( 1 );
+		final RowReader< T > reader = new RowReader< T >( source, target );
+		final int[] indices = new int[ ( int ) target.dimension( 0 ) ];
+		final Cursor< T > cursorTarget = target.cursor();
+		final boolean[] table = getTable();
+		for ( long y = minY; y < minY + height; ++y )
+		{
+			reader.read( minX, y, indices );
+			for ( int x = 0; x < indices.length; ++x )
+				cursorTarget.next().set( table[ indices[ x ] ] );
+		}
+	}
+
+	/**
+	 * Computes the rows {@code fromRow} (inclusive) to {@code toRow}
+	 * (exclusive) of target, relative to its min, with the sliding window
+	 * reading from the (extended) source. Rows not contained in {@code active}
+	 * are skipped, if {@code active != null}.
+	 * 
+	 * @param rowChanges
+	 *            if not {@code null}, receives for every computed row the
+	 *            number of pixels whose value differs from the source.
+	 * @return the number of pixels whose value differs from the source.
+	 */
+	< T extends BooleanType< T > > long calculate( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final int fromRow, final int toRow, final BitSet active, final long[] rowChanges )
+	{
+		final long minX = target.min( 0 );
+		final long minY = target.min( 1 );
+		final RowReader< T > reader = new RowReader< T >( source, target );
+		final int[] indices = new int[ ( int ) target.dimension( 0 ) ];
+		final RandomAccess< T > out = target.randomAccess();
+		final boolean[] table = getTable();
+		long changes = 0;
+		for ( int row = fromRow; row < toRow; ++row )
+		{
+			if ( active != null && !active.get( row ) )
+				continue;
+			final long y = minY + row;
+			reader.read( minX, y, indices );
+			out.setPosition( minX, 0 );
+			out.setPosition( y, 1 );
+			long rowChange = 0;
+			for ( int x = 0; x < indices.length; ++x )
+			{
+				final int idx = indices[ x ];
+				final boolean value = table[ idx ];
+				if ( value != isCenterSet( idx ) )
+					++rowChange;
+				out.get().set( value );
+				out.fwd( 0 );
+			}
+			if ( rowChanges != null )
+				rowChanges[ row ] = rowChange;
+			changes += rowChange;
+		}
+		return changes;
+	}
+
+	/**
+	 * Reads the table indices of the 3x3 windows along rows of a source. If
+	 * the source is an extended image, rows whose windows stay within the image
+	 * are read from the raw image underneath, without out-of-bounds checks
+	 * (see {@link InteriorBorderSplit}). Only the columns outside of the image
+	 * are read from the extended source.
+	 */
+	private static final class RowReader< T extends BooleanType< T > >
+	{
+		private final RandomAccess< T > top;
+
+		private final RandomAccess< T > middle;
+
+		private final RandomAccess< T > bottom;
+
+		private final Interval domain;
+
+		private final Interval interior;
+
+		private final RandomAccess< T > rawTop;
+
+		private final RandomAccess< T > rawMiddle;
+
+		private final RandomAccess< T > rawBottom;
+
+		public RowReader( final RandomAccessible< T > source, final Interval target )
+		{
+			top = source.randomAccess();
+			middle = source.randomAccess();
+			bottom = source.randomAccess();
+			final RandomAccessibleInterval< T > raw = InteriorBorderSplit.getDomain( source );
+			interior = raw == null ? null : InteriorBorderSplit.create( target, raw, shape ).getInterior();
+			domain = raw;
+			rawTop = interior == null ? null : raw.randomAccess();
+			rawMiddle = interior == null ? null : raw.randomAccess();
+			rawBottom = interior == null ? null : raw.randomAccess();
+		}
+
+		/**
+		 * Writes the table indices of the windows centered at
+		 * {@code (minX + i, y)} to {@code indices[ i ]}.
+		 */
+		public void read( final long minX, final long y, final int[] indices )
+		{
+			final long maxX = minX + indices.length - 1;
+
+			// Columns fromX to toX are read from the raw image.
+			long fromX = maxX + 2;
+			long toX = maxX + 1;
+			if ( interior != null && y >= interior.min( 1 ) && y <= interior.max( 1 ) )
+			{
+				fromX = Math.max( minX - 1, domain.min( 0 ) );
+				toX = Math.min( maxX + 1, domain.max( 0 ) );
+				rawTop.setPosition( fromX, 0 );
+				rawTop.setPosition( y - 1, 1 );
+				rawMiddle.setPosition( fromX, 0 );
+				rawMiddle.setPosition( y, 1 );
+				rawBottom.setPosition( fromX, 0 );
+				rawBottom.setPosition( y + 1, 1 );
+			}
+			top.setPosition( y - 1, 1 );
+			middle.setPosition( y, 1 );
+			bottom.setPosition( y + 1, 1 );
+
+			int idx = 0;
+			for ( long x = minX - 1; x <= maxX + 1; ++x )
+			{
+				final int column;
+				if ( x >= fromX && x <= toX )
+				{
+					column = column( rawTop, rawMiddle, rawBottom );
+					rawTop.fwd( 0 );
+					rawMiddle.fwd( 0 );
+					rawBottom.fwd( 0 );
+				}
+				else
+				{
+					top.setPosition( x, 0 );
+					middle.setPosition( x, 0 );
+					bottom.setPosition( x, 0 );
+					column = column( top, middle, bottom );
+				}
+				idx = roll( idx, column );
+				if ( x > minX )
+					indices[ ( int ) ( x - minX - 1 ) ] = idx;
+			}
+		}
+	}
+
+	/**
+	 * Sliding window on bit-packed {@link BitType} {@link ArrayImg ArrayImgs}.
+	 * Pixels are read and written directly in the underlying {@code long[]}
+	 * storage. Computes the rows {@code fromRow} (inclusive) to {@code toRow}
+	 * (exclusive) that are contained in {@code active}, or all of them if
+	 * {@code active == null}.
+	 * 
+	 * @param rowChanges
+	 *            if not {@code null}, receives for every computed row the
+	 *            number of pixels whose value differs from the source.
+	 * @return the number of pixels whose value differs from the source.
+	 */
+	long calculate( final long[] source, final long[] target, final int width, final int height, final int fromRow, final int toRow, final BitSet active, final long[] rowChanges )
+	{
+		final boolean[] table = getTable();
+		final int extended = getExtendedValue() ? 1 : 0;
+		final int extendedColumn = packColumn( extended, extended, extended );
+		long changes = 0;
+		for ( int y = fromRow; y < toRow; ++y )
+		{
+			if ( active != null && !active.get( y ) )
+				continue;
+			final long middle = ( long ) y * width;
+			final long top = y > 0 ? middle - width : -1;
+			final long bottom = y < height - 1 ? middle + width : -1;
+			int idx = roll( extendedColumn, column( source, top, middle, bottom, 0, extended ) );
+			long rowChange = 0;
+			for ( int x = 0; x < width; ++x )
+			{
+				final int next = x + 1 < width ? column( source, top, middle, bottom, x + 1, extended ) : extendedColumn;
+				idx = roll( idx, next );
+				final long i = middle + x;
+				final boolean value = table[ idx ];
+				if ( value != isCenterSet( idx ) )
+					++rowChange;
+				if ( value )
+					target[ ( int ) ( i >>> 6 ) ] |= 1l << ( i & 63 );
+				else
+					target[ ( int ) ( i >>> 6 ) ] &= ~( 1l << ( i & 63 ) );
+			}
+			if ( rowChanges != null )
+				rowChanges[ y ] = rowChange;
+			changes += rowChange;
+		}
+		return changes;
+	}
+
+	/**
+	 * Whether the center pixel (pixel 4) is set in the table index.
+	 */
+	private static boolean isCenterSet( final int idx )
+	{
+		return ( idx & 0x10 ) != 0;
+	}
+
+	/**
+	 * Shifts the window one pixel to the right: the center and right columns
+	 * become left and center column, and {@code column} is the new right
+	 * column.
+	 */
+	private static int roll( final int idx, final int column )
+	{
+		return ( ( idx << 1 ) & 0x1b6 ) | column;
+	}
+
+	/**
+	 * Table index bits of a right column (pixels 2, 5, 8) with the given
+	 * values.
+	 */
+	private static int packColumn( final int top, final int middle, final int bottom )
+	{
+		return ( top << 6 ) | ( middle << 3 ) | bottom;
+	}
+
+	private static < T extends BooleanType< T > > int column( final RandomAccess< T > top, final RandomAccess< T > middle, final RandomAccess< T > bottom )
+	{
+		return packColumn( top.get().get() ? 1 : 0, middle.get().get() ? 1 : 0, bottom.get().get() ? 1 : 0 );
+	}
+
+	private static int column( final long[] data, final long top, final long middle, final long bottom, final int x, final int extended )
+	{
+		return packColumn(
+				top < 0 ? extended : bit( data, top + x ),
+				bit( data, middle + x ),
+				bottom < 0 ? extended : bit( data, bottom + x ) );
+	}
+
+	private static int bit( final long[] data, final long i )
+	{
+		return ( int ) ( data[ ( int ) ( i >>> 6 ) ] >>> ( i & 63 ) ) & 1;
+	}
+
+	/**
+	 * Returns the bit-packed storage of a 2D {@link BitType} {@link ArrayImg},
+	 * or {@code null} if img is not one.
+	 */
+	static long[] getBits( final Img< ? > img )
+	{
+		if ( img.numDimensions() != 2 || !( img instanceof ArrayImg ) || !( img.firstElement() instanceof BitType ) )
+			return null;
+		final Object access = ( ( ArrayImg< ?, ? > ) img ).update( null );
+		return access instanceof LongArray ? ( ( LongArray ) access ).getCurrentStorageArray() : null;
+	}
+
+	private < T extends BooleanType< T > > void calculateNeighborhoods( final RandomAccessible< T > source, final IterableInterval< T > target )
 	{
 		final RandomAccessible< Neighborhood< T > > accessible = shape.neighborhoodsRandomAccessible( source );
 		final RandomAccess< Neighborhood< T > > randomAccess = accessible.randomAccess( target );
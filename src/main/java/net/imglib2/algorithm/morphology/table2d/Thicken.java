@@ -33,6 +33,8 @@
  */
 package net.imglib2.algorithm.morphology.table2d;
 
+import java.util.concurrent.ExecutorService;
+
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.img.Img;
@@ -77,6 +79,24 @@ public class Thicken extends Abstract3x3TableOperation
 		return new Thicken().calculate( source );
 	}
 
+	/**
+	 * Apply thickening repeatedly until the image does not change anymore, using
+	 * multiple threads.
+	 * 
+	 * @param source
+	 *            the 2D image. It is not modified.
+	 * @param maxIterations
+	 *            the maximum number of iterations.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return the result after convergence or {@code maxIterations}
+	 *         iterations.
+	 */
+	public static < T extends BooleanType< T > > Img< T > thicken( final Img< T > source, final int maxIterations, final ExecutorService service )
+	{
+		return Table2dExecutor.iterate( source, maxIterations, service, new Thicken() );
+	}
+
 	public static < T extends BooleanType< T > > void thicken( final RandomAccessible< T > source, final IterableInterval< T > target )
 	{
 		new Thicken().calculate( source, target );
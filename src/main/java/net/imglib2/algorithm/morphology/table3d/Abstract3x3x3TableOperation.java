@@ -0,0 +1,403 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology.table3d;
+
+import java.util.BitSet;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.BooleanType;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.view.ExtendedRandomAccessibleInterval;
+import net.imglib2.view.Views;
+
+/**
+ * Performs a binary operation on a 3x3x3 3-D neighborhood. This is the 3D
+ * counterpart of
+ * {@link net.imglib2.algorithm.morphology.table2d.Abstract3x3TableOperation}.
+ * With 2^27 possible neighborhoods, the truth values are given by a predicate
+ * on the neighborhood bits instead of a table. The predicate may use a
+ * compiled lookup table (see {@link #createTable()}) if it is expensive to
+ * evaluate.
+ * <p>
+ * Optionally, an operation may be restricted to one of eight subfields, the
+ * pixels with a given parity of their coordinates. Pixels outside the
+ * subfield keep their value. No two pixels of a subfield are neighbors, so
+ * decisions within a subfield do not interfere with each other. This is what
+ * makes parallel topology preserving operations such as {@link Thin}
+ * possible.
+ */
+public abstract class Abstract3x3x3TableOperation
+{
+	private static final RectangleShape shape = new RectangleShape( 1, false );
+
+	/**
+	 * Bit of the center pixel in the neighborhood index.
+	 */
+	public static final int CENTER = 1 << 13;
+
+	/**
+	 * Bits of the neighborhood index that are kept when the window moves one
+	 * pixel along X (the left and center column).
+	 */
+	private static final int ROLL_MASK;
+
+	/**
+	 * Bits of the neighborhood index of the right column.
+	 */
+	private static final int RIGHT_COLUMN;
+
+	static
+	{
+		int mask = 0;
+		int column = 0;
+		for ( int k = 0; k < 9; ++k )
+		{
+			mask |= ( 1 << ( 26 - 3 * k ) ) | ( 1 << ( 25 - 3 * k ) );
+			column |= 1 << ( 24 - 3 * k );
+		}
+		ROLL_MASK = mask;
+		RIGHT_COLUMN = column;
+	}
+
+	/**
+	 * Computes the value of the center pixel from its neighborhood. The index
+	 * is built by examining each pixel and accumulating 2^(26 - pixel number).
+	 * The pixels are numbered in flat iteration order, plane by plane:
+	 *
+	 * <pre>
+	 * z = -1     z = 0      z = +1
+	 * 0  1  2    9 10 11   18 19 20
+	 * 3  4  5   12 13 14   21 22 23
+	 * 6  7  8   15 16 17   24 25 26
+	 * </pre>
+	 *
+	 * That is, pixel 0 is the most significant bit, and the center pixel is
+	 * {@link #CENTER}. Use {@link #bit(int, int, int)} to get the bit of a
+	 * pixel by its offset.
+	 *
+	 * @param neighborhood
+	 *            the 27-bit neighborhood index.
+	 * @return the value of the center pixel in the result.
+	 */
+	protected abstract boolean evaluate( int neighborhood );
+
+	/**
+	 * Gets default value for neighborhood pixels outside of the image.
+	 *
+	 * @return the extended value for this operation
+	 */
+	protected abstract boolean getExtendedValue();
+
+	/**
+	 * Gets the subfield that this operation is restricted to. The subfield
+	 * {@code (x & 1) | (y & 1) << 1 | (z & 1) << 2} of each pixel is compared
+	 * to this value, and pixels of other subfields keep their value.
+	 *
+	 * @return the subfield in {@code 0..7}, or -1 to operate on all pixels.
+	 */
+	protected int getSubfield()
+	{
+		return -1;
+	}
+
+	/**
+	 * Returns the neighborhood index bit of the pixel at the given offset from
+	 * the center.
+	 */
+	public static int bit( final int dx, final int dy, final int dz )
+	{
+		return 1 << ( 26 - ( ( dz + 1 ) * 9 + ( dy + 1 ) * 3 + ( dx + 1 ) ) );
+	}
+
+	/**
+	 * Evaluates the predicate for all 2^27 neighborhoods and stores the truth
+	 * values in a bitset of 2^21 {@code long}s (16 MB). Use
+	 * {@link #lookup(long[], int)} to query the table.
+	 */
+	protected long[] createTable()
+	{
+		final long[] table = new long[ 1 << 21 ];
+		for ( int i = 0; i < 1 << 27; ++i )
+			if ( evaluate( i ) )
+				table[ i >>> 6 ] |= 1l << ( i & 63 );
+		return table;
+	}
+
+	protected static boolean lookup( final long[] table, final int neighborhood )
+	{
+		return ( table[ neighborhood >>> 6 ] & ( 1l << ( neighborhood & 63 ) ) ) != 0;
+	}
+
+	protected < T extends BooleanType< T > > Img< T > calculate( final Img< T > source )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
+		final long[] sourceBits = getBits( source );
+		final long[] targetBits = getBits( target );
+		if ( sourceBits != null && targetBits != null )
+		{
+			final int depth = ( int ) source.dimension( 2 );
+			calculate( sourceBits, targetBits, ( int ) source.dimension( 0 ), ( int ) source.dimension( 1 ), depth, 0, depth, null, null );
+			return target;
+		}
+		final T extendedVal = source.firstElement().createVariable();
+		extendedVal.set( getExtendedValue() );
+		final ExtendedRandomAccessibleInterval< T, Img< T > > extended = Views.extendValue( source, extendedVal );
+		calculate( extended, target );
+		return target;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	protected < T extends BooleanType< T > > void calculate( final RandomAccessible< T > source, final IterableInterval< T > target )
+	{
+		if ( target instanceof RandomAccessibleInterval )
+		{
+			final int depth = ( int ) target.dimension( 2 );
+			calculate( source, ( RandomAccessibleInterval< T > ) target, 0, depth, null, null );
+		}
+		else
+			calculateNeighborhoods( source, target );
+	}
+
+	/**
+	 * Computes the planes {@code fromPlane} (inclusive) to {@code toPlane}
+	 * (exclusive) of target, relative to its min, with a window sliding along
+	 * X and reading from the (extended) source. Planes not contained in
+	 * {@code active} are skipped, if {@code active != null}.
+	 *
+	 * @param planeChanges
+	 *            if not {@code null}, receives for every computed plane the
+	 *            number of pixels whose value differs from the source.
+	 * @return the number of pixels whose value differs from the source.
+	 */
+	< T extends BooleanType< T > > long calculate( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final int fromPlane, final int toPlane, final BitSet active, final long[] planeChanges )
+	{
+		final long minX = target.min( 0 );
+		final long minY = target.min( 1 );
+		final long minZ = target.min( 2 );
+		final long width = target.dimension( 0 );
+		final long height = target.dimension( 1 );
+		final int subfield = getSubfield();
+
+		// One access per row of the window, k = ( dz + 1 ) * 3 + ( dy + 1 ).
+		@SuppressWarnings( "unchecked" )
+		final RandomAccess< T >[] rows = new RandomAccess[ 9 ];
+		for ( int k = 0; k < 9; ++k )
+			rows[ k ] = source.randomAccess();
+		final RandomAccess< T > out = target.randomAccess();
+
+		long changes = 0;
+		for ( int plane = fromPlane; plane < toPlane; ++plane )
+		{
+			if ( active != null && !active.get( plane ) )
+				continue;
+			final long z = minZ + plane;
+			long planeChange = 0;
+			for ( long y = minY; y < minY + height; ++y )
+			{
+				for ( int k = 0; k < 9; ++k )
+				{
+					rows[ k ].setPosition( minX - 1, 0 );
+					rows[ k ].setPosition( y + k % 3 - 1, 1 );
+					rows[ k ].setPosition( z + k / 3 - 1, 2 );
+				}
+				out.setPosition( minX, 0 );
+				out.setPosition( y, 1 );
+				out.setPosition( z, 2 );
+				final int parityYZ = ( int ) ( ( y & 1 ) << 1 | ( z & 1 ) << 2 );
+				int idx = column( rows );
+				fwd( rows );
+				idx = roll( idx, column( rows ) );
+				for ( long x = minX; x < minX + width; ++x )
+				{
+					fwd( rows );
+					idx = roll( idx, column( rows ) );
+					final boolean center = ( idx & CENTER ) != 0;
+					final boolean value = ( subfield < 0 || ( ( x & 1 ) | parityYZ ) == subfield ) ? evaluate( idx ) : center;
+					if ( value != center )
+						++planeChange;
+					out.get().set( value );
+					out.fwd( 0 );
+				}
+			}
+			if ( planeChanges != null )
+				planeChanges[ plane ] = planeChange;
+			changes += planeChange;
+		}
+		return changes;
+	}
+
+	/**
+	 * Sliding window on bit-packed {@link BitType} {@link ArrayImg ArrayImgs}.
+	 * Pixels are read and written directly in the underlying {@code long[]}
+	 * storage. Computes the planes {@code fromPlane} (inclusive) to
+	 * {@code toPlane} (exclusive) that are contained in {@code active}, or all
+	 * of them if {@code active == null}.
+	 *
+	 * @param planeChanges
+	 *            if not {@code null}, receives for every computed plane the
+	 *            number of pixels whose value differs from the source.
+	 * @return the number of pixels whose value differs from the source.
+	 */
+	long calculate( final long[] source, final long[] target, final int width, final int height, final int depth, final int fromPlane, final int toPlane, final BitSet active, final long[] planeChanges )
+	{
+		final int extended = getExtendedValue() ? 1 : 0;
+		final int extendedColumn = extended == 0 ? 0 : RIGHT_COLUMN;
+		final int subfield = getSubfield();
+		final long[] bases = new long[ 9 ];
+		long changes = 0;
+		for ( int z = fromPlane; z < toPlane; ++z )
+		{
+			if ( active != null && !active.get( z ) )
+				continue;
+			long planeChange = 0;
+			for ( int y = 0; y < height; ++y )
+			{
+				for ( int k = 0; k < 9; ++k )
+				{
+					final int yy = y + k % 3 - 1;
+					final int zz = z + k / 3 - 1;
+					bases[ k ] = ( yy < 0 || yy >= height || zz < 0 || zz >= depth ) ? -1 : ( ( long ) zz * height + yy ) * width;
+				}
+				final long middle = bases[ 4 ];
+				final int parityYZ = ( y & 1 ) << 1 | ( z & 1 ) << 2;
+				int idx = roll( extendedColumn, column( bases, source, 0, extended ) );
+				for ( int x = 0; x < width; ++x )
+				{
+					final int next = x + 1 < width ? column( bases, source, x + 1, extended ) : extendedColumn;
+					idx = roll( idx, next );
+					final boolean center = ( idx & CENTER ) != 0;
+					final boolean value = ( subfield < 0 || ( ( x & 1 ) | parityYZ ) == subfield ) ? evaluate( idx ) : center;
+					if ( value != center )
+						++planeChange;
+					final long i = middle + x;
+					if ( value )
+						target[ ( int ) ( i >>> 6 ) ] |= 1l << ( i & 63 );
+					else
+						target[ ( int ) ( i >>> 6 ) ] &= ~( 1l << ( i & 63 ) );
+				}
+			}
+			if ( planeChanges != null )
+				planeChanges[ z ] = planeChange;
+			changes += planeChange;
+		}
+		return changes;
+	}
+
+	/**
+	 * Shifts the window one pixel along X: the center and right columns
+	 * become left and center column, and {@code column} is the new right
+	 * column.
+	 */
+	private static int roll( final int idx, final int column )
+	{
+		return ( ( idx << 1 ) & ROLL_MASK ) | column;
+	}
+
+	private static < T extends BooleanType< T > > int column( final RandomAccess< T >[] rows )
+	{
+		int column = 0;
+		for ( int k = 0; k < 9; ++k )
+			if ( rows[ k ].get().get() )
+				column |= 1 << ( 24 - 3 * k );
+		return column;
+	}
+
+	private static < T > void fwd( final RandomAccess< T >[] rows )
+	{
+		for ( int k = 0; k < 9; ++k )
+			rows[ k ].fwd( 0 );
+	}
+
+	/**
+	 * Right column bits of the window at {@code x}, reading the rows starting
+	 * at {@code bases} ({@code -1} for rows outside the image).
+	 */
+	private static int column( final long[] bases, final long[] data, final int x, final int extended )
+	{
+		int column = 0;
+		for ( int k = 0; k < 9; ++k )
+		{
+			final long base = bases[ k ];
+			final int value = base < 0 ? extended : ( int ) ( data[ ( int ) ( ( base + x ) >>> 6 ) ] >>> ( ( base + x ) & 63 ) ) & 1;
+			column |= value << ( 24 - 3 * k );
+		}
+		return column;
+	}
+
+	/**
+	 * Returns the bit-packed storage of a 3D {@link BitType} {@link ArrayImg},
+	 * or {@code null} if img is not one.
+	 */
+	static long[] getBits( final Img< ? > img )
+	{
+		if ( img.numDimensions() != 3 || !( img instanceof ArrayImg ) || !( img.firstElement() instanceof BitType ) )
+			return null;
+		final Object access = ( ( ArrayImg< ?, ? > ) img ).update( null );
+		return access instanceof LongArray ? ( ( LongArray ) access ).getCurrentStorageArray() : null;
+	}
+
+	private < T extends BooleanType< T > > void calculateNeighborhoods( final RandomAccessible< T > source, final IterableInterval< T > target )
+	{
+		final RandomAccessible< Neighborhood< T > > accessible = shape.neighborhoodsRandomAccessible( source );
+		final RandomAccess< Neighborhood< T > > randomAccess = accessible.randomAccess( target );
+		final Cursor< T > cursorTarget = target.cursor();
+		final int subfield = getSubfield();
+		while ( cursorTarget.hasNext() )
+		{
+			final T targetVal = cursorTarget.next();
+			randomAccess.setPosition( cursorTarget );
+			final Neighborhood< T > neighborhood = randomAccess.get();
+			final Cursor< T > nc = neighborhood.cursor();
+			int idx = 0;
+			// Assume that the neighborhood obtained is of FlatIterationOrder,
+			// and assemble the index using bitwise operations.
+			while ( nc.hasNext() )
+			{
+				idx <<= 1;
+				idx |= nc.next().get() ? 1 : 0;
+			}
+			final int parity = ( int ) ( ( cursorTarget.getLongPosition( 0 ) & 1 ) | ( cursorTarget.getLongPosition( 1 ) & 1 ) << 1 | ( cursorTarget.getLongPosition( 2 ) & 1 ) << 2 );
+			targetVal.set( ( subfield < 0 || parity == subfield ) ? evaluate( idx ) : ( idx & CENTER ) != 0 );
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology.table3d;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.morphology.TableExecutor;
+import net.imglib2.img.Img;
+import net.imglib2.type.BooleanType;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.view.Views;
+
+/**
+ * Multi-threaded execution of {@link Abstract3x3x3TableOperation 3D table
+ * operations}.
+ * <p>
+ * The image is split into stripes of XY planes that are computed in parallel.
+ * Each stripe reads a one-plane halo from the shared source and writes only
+ * its own planes of the target. As in the 2D
+ * {@link net.imglib2.algorithm.morphology.table2d.Table2dExecutor}, stripes of
+ * {@link BitType} images never share a {@code long} of the bit-packed storage,
+ * and iterations to convergence only recompute planes next to a plane that
+ * changed during the last round.
+ */
+public class Table3dExecutor
+{
+	/**
+	 * Apply a table operation to a 3D image in parallel.
+	 *
+	 * @param operation
+	 *            the operation to apply.
+	 * @param source
+	 *            the 3D image.
+	 * @param target
+	 *            receives the result. Must have the same dimensions as
+	 *            {@code source}.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return the number of pixels that differ between source and target.
+	 */
+	public static < T extends BooleanType< T > > long calculate( final Abstract3x3x3TableOperation operation, final Img< T > source, final Img< T > target, final ExecutorService service )
+	{
+		return calculate( operation, source, target, null, null, service );
+	}
+
+	/**
+	 * Apply a sequence of table operations to a 3D image repeatedly, until the
+	 * image does not change anymore or a maximum number of iterations is
+	 * reached. One iteration applies every operation once, in order.
+	 *
+	 * @param source
+	 *            the 3D image. It is not modified.
+	 * @param maxIterations
+	 *            the maximum number of iterations.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @param operations
+	 *            the operations to apply in every iteration.
+	 * @return the result of the last iteration.
+	 */
+	public static < T extends BooleanType< T > > Img< T > iterate( final Img< T > source, final int maxIterations, final ExecutorService service, final Abstract3x3x3TableOperation... operations )
+	{
+		return TableExecutor.iterate( source, operations.length, 2, maxIterations, new TableExecutor.Step< T >()
+		{
+			@Override
+			public long calculate( final int operationIndex, final Img< T > in, final Img< T > out, final BitSet active, final long[] sliceChanges )
+			{
+				return Table3dExecutor.calculate( operations[ operationIndex ], in, out, active, sliceChanges, service );
+			}
+		} );
+	}
+
+	private static < T extends BooleanType< T > > long calculate( final Abstract3x3x3TableOperation operation, final Img< T > source, final Img< T > target, final BitSet active, final long[] planeChanges, final ExecutorService service )
+	{
+		final int width = ( int ) source.dimension( 0 );
+		final int height = ( int ) source.dimension( 1 );
+		final int depth = ( int ) source.dimension( 2 );
+		final long[] sourceBits = Abstract3x3x3TableOperation.getBits( source );
+		final long[] targetBits = Abstract3x3x3TableOperation.getBits( target );
+		final boolean packed = sourceBits != null && targetBits != null;
+		final T extendedVal = source.firstElement().createVariable();
+		extendedVal.set( operation.getExtendedValue() );
+		final RandomAccessible< T > extended = Views.extendValue( source, extendedVal );
+
+		// Stripes of BitType images must start at a multiple of 64 pixels.
+		// BitType images that are not ArrayImgs are computed in a single
+		// stripe.
+		final int granularity;
+		if ( packed )
+			granularity = TableExecutor.getPackedGranularity( ( long ) width * height );
+		else if ( target.firstElement() instanceof BitType )
+			granularity = depth;
+		else
+			granularity = 1;
+
+		final TableExecutor.Stripe stripe = new TableExecutor.Stripe()
+		{
+			@Override
+			public long calculate( final int fromPlane, final int toPlane )
+			{
+				if ( packed )
+					return operation.calculate( sourceBits, targetBits, width, height, depth, fromPlane, toPlane, active, planeChanges );
+				return operation.calculate( extended, target, fromPlane, toPlane, active, planeChanges );
+			}
+		};
+		return TableExecutor.calculate( stripe, depth, granularity, active, service );
+	}
+
+	private Table3dExecutor()
+	{}
+}
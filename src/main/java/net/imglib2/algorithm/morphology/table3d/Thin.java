@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology.table3d;
+
+import java.util.concurrent.ExecutorService;
+
+import net.imglib2.img.Img;
+import net.imglib2.type.BooleanType;
+
+/**
+ * Thin 3D binary images to curve skeletons preserving topology.
+ * <p>
+ * Every iteration consists of 48 subiterations: for each of the six border
+ * directions (north, south, east, west, up, down), and for each of the eight
+ * subfields, foreground pixels that are border pixels in that direction, are
+ * not end points, and are simple points (26-connectivity for the foreground,
+ * 6-connectivity for the background) are removed. Because no two pixels of a
+ * subfield are neighbors, all pixels of a subiteration can be decided in
+ * parallel without changing the topology.
+ */
+public class Thin
+{
+	/**
+	 * Performs one iteration of thinning.
+	 * 
+	 * @param source
+	 *            the 3D image.
+	 * @return the thinned image.
+	 */
+	public static < T extends BooleanType< T > > Img< T > thin( final Img< T > source )
+	{
+		Img< T > img = source;
+		for ( final ThinSubiteration subiteration : subiterations() )
+			img = subiteration.calculate( img );
+		return img;
+	}
+
+	/**
+	 * Apply thinning repeatedly until the image does not change anymore,
+	 * resulting in a skeleton, using multiple threads.
+	 * 
+	 * @param source
+	 *            the 3D image. It is not modified.
+	 * @param maxIterations
+	 *            the maximum number of iterations.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return the result after convergence or {@code maxIterations}
+	 *         iterations.
+	 */
+	public static < T extends BooleanType< T > > Img< T > thin( final Img< T > source, final int maxIterations, final ExecutorService service )
+	{
+		return Table3dExecutor.iterate( source, maxIterations, service, subiterations() );
+	}
+
+	private static ThinSubiteration[] subiterations()
+	{
+		final ThinSubiteration[] subiterations = new ThinSubiteration[ ThinSubiteration.NUM_DIRECTIONS * 8 ];
+		int i = 0;
+		for ( int direction = 0; direction < ThinSubiteration.NUM_DIRECTIONS; ++direction )
+			for ( int subfield = 0; subfield < 8; ++subfield )
+				subiterations[ i++ ] = new ThinSubiteration( direction, subfield );
+		return subiterations;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology.table3d;
+
+/**
+ * One subiteration of {@link Thin}: removes simple, non-end foreground pixels
+ * of one subfield that are on the border in one direction.
+ */
+class ThinSubiteration extends Abstract3x3x3TableOperation
+{
+	/**
+	 * The 6-neighbor that must be background for a pixel to be a border
+	 * pixel, for each of the six directions.
+	 */
+	private static final int[] DIRECTIONS = {
+			bit( 0, -1, 0 ), bit( 0, 1, 0 ),
+			bit( 1, 0, 0 ), bit( -1, 0, 0 ),
+			bit( 0, 0, -1 ), bit( 0, 0, 1 ) };
+
+	static final int NUM_DIRECTIONS = DIRECTIONS.length;
+
+	private final int border;
+
+	private final int subfield;
+
+	/**
+	 * @param direction
+	 *            the border direction in {@code 0..5}.
+	 * @param subfield
+	 *            the subfield in {@code 0..7}.
+	 */
+	ThinSubiteration( final int direction, final int subfield )
+	{
+		this.border = DIRECTIONS[ direction ];
+		this.subfield = subfield;
+	}
+
+	@Override
+	protected boolean evaluate( final int neighborhood )
+	{
+		if ( ( neighborhood & CENTER ) == 0 )
+			return false;
+		if ( ( neighborhood & border ) != 0 || Topology.countNeighbors( neighborhood ) == 1 )
+			return true;
+		return !Topology.isSimple( neighborhood );
+	}
+
+	@Override
+	protected boolean getExtendedValue()
+	{
+		return false;
+	}
+
+	@Override
+	protected int getSubfield()
+	{
+		return subfield;
+	}
+}
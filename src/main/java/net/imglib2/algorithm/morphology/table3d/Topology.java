@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology.table3d;
+
+import static net.imglib2.algorithm.morphology.table3d.Abstract3x3x3TableOperation.CENTER;
+import static net.imglib2.algorithm.morphology.table3d.Abstract3x3x3TableOperation.bit;
+
+/**
+ * Topological properties of 3x3x3 neighborhoods, with 26-connectivity for
+ * the foreground and 6-connectivity for the background.
+ */
+class Topology
+{
+	/**
+	 * The 26 neighbors of the center.
+	 */
+	static final int N26 = ( 1 << 27 ) - 1 & ~CENTER;
+
+	/**
+	 * The 18 neighbors of the center that share a face or an edge with it.
+	 */
+	static final int N18;
+
+	/**
+	 * The 6 neighbors of the center that share a face with it.
+	 */
+	static final int N6;
+
+	/**
+	 * For every bit, the 26-adjacent bits within the 3x3x3 neighborhood.
+	 */
+	private static final int[] ADJACENT26 = new int[ 27 ];
+
+	/**
+	 * For every bit, the 6-adjacent bits within the 3x3x3 neighborhood.
+	 */
+	private static final int[] ADJACENT6 = new int[ 27 ];
+
+	static
+	{
+		int n18 = 0;
+		int n6 = 0;
+		for ( int dz = -1; dz <= 1; ++dz )
+			for ( int dy = -1; dy <= 1; ++dy )
+				for ( int dx = -1; dx <= 1; ++dx )
+				{
+					final int l1 = Math.abs( dx ) + Math.abs( dy ) + Math.abs( dz );
+					if ( l1 == 1 )
+						n6 |= bit( dx, dy, dz );
+					if ( l1 == 1 || l1 == 2 )
+						n18 |= bit( dx, dy, dz );
+					final int b = Integer.numberOfTrailingZeros( bit( dx, dy, dz ) );
+					for ( int ez = -1; ez <= 1; ++ez )
+						for ( int ey = -1; ey <= 1; ++ey )
+							for ( int ex = -1; ex <= 1; ++ex )
+							{
+								final int x = dx + ex;
+								final int y = dy + ey;
+								final int z = dz + ez;
+								if ( ( ex == 0 && ey == 0 && ez == 0 ) || Math.abs( x ) > 1 || Math.abs( y ) > 1 || Math.abs( z ) > 1 )
+									continue;
+								ADJACENT26[ b ] |= bit( x, y, z );
+								if ( Math.abs( ex ) + Math.abs( ey ) + Math.abs( ez ) == 1 )
+									ADJACENT6[ b ] |= bit( x, y, z );
+							}
+				}
+		N18 = n18;
+		N6 = n6;
+	}
+
+	/**
+	 * Number of foreground neighbors of the center.
+	 */
+	static int countNeighbors( final int neighborhood )
+	{
+		return Integer.bitCount( neighborhood & N26 );
+	}
+
+	/**
+	 * Whether the center is a simple point, i.e., whether removing it from
+	 * the foreground does not change the topology. This is the case if the
+	 * foreground neighbors of the center form exactly one 26-connected
+	 * component, and the background pixels among the 18 neighbors that are
+	 * 6-connected to the center form exactly one 6-connected component.
+	 */
+	static boolean isSimple( final int neighborhood )
+	{
+		final int foreground = neighborhood & N26;
+		if ( foreground == 0 )
+			return false;
+		if ( component( foreground, Integer.lowestOneBit( foreground ), ADJACENT26 ) != foreground )
+			return false;
+
+		final int background = ~neighborhood & N18;
+		final int touching = background & N6;
+		if ( touching == 0 )
+			return false;
+		final int component = component( background, Integer.lowestOneBit( touching ), ADJACENT6 );
+		return ( touching & ~component ) == 0;
+	}
+
+	/**
+	 * The connected component of {@code set} containing {@code seed}.
+	 */
+	private static int component( final int set, final int seed, final int[] adjacent )
+	{
+		int component = seed;
+		int frontier = seed;
+		while ( frontier != 0 )
+		{
+			int grown = 0;
+			for ( int f = frontier; f != 0; f &= f - 1 )
+				grown |= adjacent[ Integer.numberOfTrailingZeros( f ) ];
+			frontier = grown & set & ~component;
+			component |= frontier;
+		}
+		return component;
+	}
+
+	private Topology()
+	{}
+}
@@ -44,7 +44,7 @@ public class DiamondNeighborhoodUnsafe< T > extends DiamondNeighborhood< T >
 			@Override
 			public Neighborhood< T > create( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 			{
-				return new DiamondNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess );
+				return LinearOffsetNeighborhood.wrap( new DiamondNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess ), sourceRandomAccess );
 			}
 		};
 	}
@@ -44,6 +44,7 @@ import net.imglib2.Interval;
 import net.imglib2.Positionable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RealPositionable;
+import net.imglib2.algorithm.region.hypersphere.HyperSphereSpans;
 
 /**
  * TODO
@@ -70,7 +71,7 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 
 	private final long radius;
 
-	private final int maxDim;
+	private final HyperSphereSpans spans;
 
 	private final long size;
 
@@ -81,7 +82,7 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		super( position );
 		this.sourceRandomAccess = sourceRandomAccess;
 		this.radius = radius;
-		maxDim = n - 1;
+		spans = HyperSphereSpans.get( n, radius );
 		size = computeSize();
 
 		final long[] min = new long[ n ];
@@ -101,39 +102,23 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 	 */
 	protected long computeSize()
 	{
-		final LocalCursor cursor = new LocalCursor( sourceRandomAccess );
-
-		// "compute number of pixels"
-		long size = 0;
-		while ( cursor.hasNext() )
-		{
-			cursor.fwd();
-			++size;
-		}
-
-		return size;
+		return spans.size();
 	}
 
 	public final class LocalCursor extends AbstractEuclideanSpace implements Cursor< T >
 	{
 		private final RandomAccess< T > source;
 
-		// the current radius in each dimension we are at
-		private final double[] r;
-
-		// the current radius in each dimension truncated to long
-		private final long[] ri;
+		// the index of the current span
+		private int span;
 
-		// the remaining number of steps in each dimension we still have to go
-		private final long[] s;
+		// the remaining number of steps in the current span
+		private long remaining;
 
 		public LocalCursor( final RandomAccess< T > source )
 		{
 			super( source.numDimensions() );
 			this.source = source;
-			r = new double[ n ];
-			ri = new long[ n ];
-			s = new long[ n ];
 			reset();
 		}
 
@@ -141,9 +126,8 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		{
 			super( c.numDimensions() );
 			source = c.source.copyRandomAccess();
-			r = c.r.clone();
-			ri = c.ri.clone();
-			s = c.s.clone();
+			span = c.span;
+			remaining = c.remaining;
 		}
 
 		@Override
@@ -155,43 +139,39 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		@Override
 		public void fwd()
 		{
-
-			if ( --s[ 0 ] >= 0 )
+			if ( --remaining >= 0 )
 				source.fwd( 0 );
 			else
-			{
-				int d = 1;
-				for ( ; d < n; ++d )
-				{
-					if ( --s[ d ] >= 0 )
-					{
-						source.fwd( d );
-						break;
-					}
-				}
-
-				for ( ; d > 0; --d )
-				{
-					final int e = d - 1;
-					final double rd = r[ d ];
-					final long pd = s[ d ] - ri[ d ];
-
-					final double rad = Math.sqrt( rd * rd - pd * pd );
-					final long radi = ( long ) rad;
-					r[ e ] = rad;
-					ri[ e ] = radi;
-					s[ e ] = 2 * radi;
-
-					source.setPosition( position[ e ] - radi, e );
-				}
-			}
+				startSpan( ++span, 0 );
+		}
+
+		/**
+		 * Moves to pixel {@code k} of span {@code span}.
+		 */
+		private void startSpan( final int span, final long k )
+		{
+			for ( int d = 0; d < n; ++d )
+				source.setPosition( position[ d ] + spans.getOffset( span, d ), d );
+			source.move( k, 0 );
+			remaining = spans.getLength( span ) - 1 - k;
 		}
 
 		@Override
 		public void jumpFwd( final long steps )
 		{
-			for ( long i = 0; i < steps; ++i )
-				fwd();
+			if ( steps <= remaining )
+			{
+				source.move( steps, 0 );
+				remaining -= steps;
+			}
+			else
+			{
+				long k = steps - remaining - 1;
+				++span;
+				while ( k >= spans.getLength( span ) )
+					k -= spans.getLength( span++ );
+				startSpan( span, k );
+			}
 		}
 
 		@Override
@@ -210,23 +190,14 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		@Override
 		public void reset()
 		{
-			for ( int d = 0; d < maxDim; ++d )
-			{
-				r[ d ] = ri[ d ] = s[ d ] = 0;
-				source.setPosition( position[ d ], d );
-			}
-
-			source.setPosition( position[ maxDim ] - radius - 1, maxDim );
-
-			r[ maxDim ] = radius;
-			ri[ maxDim ] = radius;
-			s[ maxDim ] = 1 + 2 * radius;
+			span = -1;
+			remaining = 0;
 		}
 
 		@Override
 		public boolean hasNext()
 		{
-			return s[ maxDim ] > 0;
+			return remaining > 0 || span < spans.numSpans() - 1;
 		}
 
 		@Override
@@ -45,7 +45,7 @@ public final class HyperSphereNeighborhoodUnsafe< T > extends HyperSphereNeighbo
 			@Override
 			public Neighborhood< T > create( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 			{
-				return new HyperSphereNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess );
+				return LinearOffsetNeighborhood.wrap( new HyperSphereNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess ), sourceRandomAccess );
 			}
 		};
 	}
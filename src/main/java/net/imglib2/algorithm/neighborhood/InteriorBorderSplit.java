@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.view.ExtendedRandomAccessibleInterval;
+
+/**
+ * Splits a target interval into an <em>interior</em>, where the neighborhood
+ * of every pixel lies completely within the domain of a source image, and
+ * thin <em>border</em> slabs, where it does not.
+ * <p>
+ * Neighborhood operations on an extended source pay for the out-of-bounds
+ * handling on every access, although only the pixels close to the boundary
+ * ever need it. With the split, the interior can be processed on the raw
+ * source, and only the border slabs on the extended one. See
+ * {@link #process(RandomAccessible, Interval, Shape, RegionVisitor)}.
+ * <p>
+ * The interior and the border slabs are pairwise disjoint, and together
+ * cover the target exactly. The slabs are peeled off the highest dimension
+ * first, so each slab is contiguous in flat iteration order as far as
+ * possible.
+ */
+public final class InteriorBorderSplit
+{
+	/**
+	 * Processes one region of a split.
+	 *
+	 * @param <T>
+	 *            source pixel type.
+	 */
+	public interface RegionVisitor< T >
+	{
+		/**
+		 * @param source
+		 *            the source to use for the region: the raw source for the
+		 *            interior, the extended source for the border.
+		 * @param region
+		 *            the part of the target to process.
+		 * @param interior
+		 *            whether {@code region} is the interior, i.e., whether
+		 *            all neighborhoods of pixels in {@code region} lie within
+		 *            the raw source.
+		 */
+		public void visit( RandomAccessible< T > source, Interval region, boolean interior );
+	}
+
+	private final Interval interior;
+
+	private final List< Interval > border;
+
+	private InteriorBorderSplit( final Interval interior, final List< Interval > border )
+	{
+		this.interior = interior;
+		this.border = Collections.unmodifiableList( border );
+	}
+
+	/**
+	 * Splits {@code target} with respect to the neighborhoods of
+	 * {@code shape} on a source with the given {@code domain}.
+	 */
+	public static InteriorBorderSplit create( final Interval target, final Interval domain, final Shape shape )
+	{
+		return create( target, domain, NeighborhoodOffsets.create( shape, target.numDimensions() ) );
+	}
+
+	/**
+	 * Splits {@code target} with respect to the neighborhood described by
+	 * {@code offsets} on a source with the given {@code domain}.
+	 */
+	public static InteriorBorderSplit create( final Interval target, final Interval domain, final NeighborhoodOffsets offsets )
+	{
+		final int n = target.numDimensions();
+		final long[] lo = new long[ n ];
+		final long[] hi = new long[ n ];
+		boolean empty = offsets.size() == 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			lo[ d ] = Math.max( target.min( d ), domain.min( d ) - offsets.min( d ) );
+			hi[ d ] = Math.min( target.max( d ), domain.max( d ) - offsets.max( d ) );
+			if ( lo[ d ] > hi[ d ] )
+				empty = true;
+		}
+
+		final List< Interval > border = new ArrayList< Interval >( 2 * n );
+		if ( empty )
+		{
+			border.add( new FinalInterval( target ) );
+			return new InteriorBorderSplit( null, border );
+		}
+
+		// Peel slabs off the remaining box, highest dimension first.
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		target.min( min );
+		target.max( max );
+		for ( int d = n - 1; d >= 0; --d )
+		{
+			if ( min[ d ] < lo[ d ] )
+			{
+				final long[] smax = max.clone();
+				smax[ d ] = lo[ d ] - 1;
+				border.add( new FinalInterval( min.clone(), smax ) );
+			}
+			if ( max[ d ] > hi[ d ] )
+			{
+				final long[] smin = min.clone();
+				smin[ d ] = hi[ d ] + 1;
+				border.add( new FinalInterval( smin, max.clone() ) );
+			}
+			min[ d ] = lo[ d ];
+			max[ d ] = hi[ d ];
+		}
+		return new InteriorBorderSplit( new FinalInterval( min, max ), border );
+	}
+
+	/**
+	 * @return the interior, or {@code null} if no pixel of the target has its
+	 *         neighborhood completely within the domain.
+	 */
+	public Interval getInterior()
+	{
+		return interior;
+	}
+
+	/**
+	 * @return the border slabs, as an unmodifiable list. Empty if the
+	 *         interior covers the whole target.
+	 */
+	public List< Interval > getBorder()
+	{
+		return border;
+	}
+
+	/**
+	 * Returns the raw source underneath an extended source, or {@code null}
+	 * if {@code source} is not an {@link ExtendedRandomAccessibleInterval}.
+	 */
+	public static < T > RandomAccessibleInterval< T > getDomain( final RandomAccessible< T > source )
+	{
+		if ( source instanceof ExtendedRandomAccessibleInterval )
+			return ( ( ExtendedRandomAccessibleInterval< T, ? > ) source ).getSource();
+		return null;
+	}
+
+	/**
+	 * Drives a neighborhood operation over {@code target}. If {@code source}
+	 * is an {@link ExtendedRandomAccessibleInterval}, the interior is visited
+	 * with the raw source underneath, and each border slab with the extended
+	 * source. Otherwise, the whole target is visited once with
+	 * {@code source}.
+	 *
+	 * @param source
+	 *            the source, possibly extended.
+	 * @param target
+	 *            the interval to process.
+	 * @param shape
+	 *            the neighborhood shape of the operation.
+	 * @param visitor
+	 *            processes each region.
+	 */
+	public static < T > void process( final RandomAccessible< T > source, final Interval target, final Shape shape, final RegionVisitor< T > visitor )
+	{
+		final RandomAccessibleInterval< T > domain = getDomain( source );
+		if ( domain == null )
+		{
+			visitor.visit( source, target, false );
+			return;
+		}
+
+		final InteriorBorderSplit split = create( target, domain, shape );
+		if ( split.interior != null )
+			visitor.visit( domain, split.interior, true );
+		for ( final Interval slab : split.border )
+			visitor.visit( source, slab, false );
+	}
+}
@@ -0,0 +1,495 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Iterator;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.Positionable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RealPositionable;
+import net.imglib2.img.array.ArrayRandomAccess;
+import net.imglib2.type.NativeType;
+
+/**
+ * A {@link Neighborhood} on an {@link net.imglib2.img.array.ArrayImg
+ * ArrayImg}, iterated by linear index arithmetic.
+ * <p>
+ * The offsets of the pixels of the neighborhood relative to its center are
+ * computed once, from the cursor of the wrapped neighborhood, and converted
+ * to linear index offsets in the underlying array. The {@link #cursor()} then
+ * steps through the neighborhood by setting the index of the
+ * {@link NativeType} of a private {@link ArrayRandomAccess}, instead of
+ * moving a {@link RandomAccess} along the neighborhood.
+ * <p>
+ * As with the other <em>Unsafe</em> neighborhoods, {@link #cursor()} always
+ * returns the same, reset cursor. Like them, the neighborhood does not check
+ * bounds: it must lie within the image.
+ *
+ * @param <T>
+ *            pixel type.
+ */
+final class LinearOffsetNeighborhood< T > implements Neighborhood< T >
+{
+	/**
+	 * Wraps {@code neighborhood} for linear index iteration, if
+	 * {@code sourceRandomAccess} accesses an
+	 * {@link net.imglib2.img.array.ArrayImg ArrayImg}. Otherwise returns
+	 * {@code neighborhood} as is.
+	 *
+	 * @param neighborhood
+	 *            the neighborhood to wrap. Its position must be updated along
+	 *            with the position of the sampler it belongs to.
+	 * @param sourceRandomAccess
+	 *            the access that {@code neighborhood} reads from.
+	 */
+	static < T > Neighborhood< T > wrap( final Neighborhood< T > neighborhood, final RandomAccess< T > sourceRandomAccess )
+	{
+		if ( sourceRandomAccess instanceof ArrayRandomAccess )
+			return new LinearOffsetNeighborhood< T >( neighborhood, sourceRandomAccess );
+		return neighborhood;
+	}
+
+	private final Neighborhood< T > neighborhood;
+
+	private final RandomAccess< T > sourceRandomAccess;
+
+	private final int n;
+
+	/**
+	 * Offsets relative to the center, flattened: offset {@code i} in
+	 * dimension {@code d} is at {@code i * n + d}. Computed on first use.
+	 */
+	private long[] offsets;
+
+	/**
+	 * Linear index offsets relative to the center. Computed on first use.
+	 */
+	private int[] indexOffsets;
+
+	private LocalCursor theCursor;
+
+	private LocalCursor firstElementCursor;
+
+	private LinearOffsetNeighborhood( final Neighborhood< T > neighborhood, final RandomAccess< T > sourceRandomAccess )
+	{
+		this.neighborhood = neighborhood;
+		this.sourceRandomAccess = sourceRandomAccess;
+		this.n = neighborhood.numDimensions();
+	}
+
+	/**
+	 * Computes the offsets by walking the cursor of the wrapped neighborhood,
+	 * and the linear index step of each dimension by moving a copy of the
+	 * source access. Neither touches any pixel.
+	 */
+	private void createOffsets()
+	{
+		final int size = ( int ) neighborhood.size();
+		final long[] center = new long[ n ];
+		neighborhood.localize( center );
+		offsets = new long[ size * n ];
+		final Cursor< T > cursor = neighborhood.localizingCursor();
+		for ( int i = 0; i < size; ++i )
+		{
+			cursor.fwd();
+			for ( int d = 0; d < n; ++d )
+				offsets[ i * n + d ] = cursor.getLongPosition( d ) - center[ d ];
+		}
+
+		final RandomAccess< T > access = sourceRandomAccess.copyRandomAccess();
+		final NativeType< ? > type = ( NativeType< ? > ) access.get();
+		final long[] steps = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			final int index = type.getIndex();
+			access.fwd( d );
+			steps[ d ] = type.getIndex() - index;
+			access.bck( d );
+		}
+
+		indexOffsets = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+		{
+			long index = 0;
+			for ( int d = 0; d < n; ++d )
+				index += offsets[ i * n + d ] * steps[ d ];
+			indexOffsets[ i ] = ( int ) index;
+		}
+	}
+
+	@Override
+	public LocalCursor cursor()
+	{
+		if ( theCursor == null )
+			theCursor = new LocalCursor();
+		theCursor.reset();
+		return theCursor;
+	}
+
+	@Override
+	public LocalCursor localizingCursor()
+	{
+		return cursor();
+	}
+
+	@Override
+	public T firstElement()
+	{
+		if ( firstElementCursor == null )
+			firstElementCursor = new LocalCursor();
+		firstElementCursor.reset();
+		return firstElementCursor.next();
+	}
+
+	@Override
+	public Iterator< T > iterator()
+	{
+		return cursor();
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return neighborhood.iterationOrder();
+	}
+
+	@Override
+	public long size()
+	{
+		return neighborhood.size();
+	}
+
+	@Override
+	public Interval getStructuringElementBoundingBox()
+	{
+		return neighborhood.getStructuringElementBoundingBox();
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public void localize( final int[] position )
+	{
+		neighborhood.localize( position );
+	}
+
+	@Override
+	public void localize( final long[] position )
+	{
+		neighborhood.localize( position );
+	}
+
+	@Override
+	public int getIntPosition( final int d )
+	{
+		return neighborhood.getIntPosition( d );
+	}
+
+	@Override
+	public long getLongPosition( final int d )
+	{
+		return neighborhood.getLongPosition( d );
+	}
+
+	@Override
+	public void localize( final float[] position )
+	{
+		neighborhood.localize( position );
+	}
+
+	@Override
+	public void localize( final double[] position )
+	{
+		neighborhood.localize( position );
+	}
+
+	@Override
+	public float getFloatPosition( final int d )
+	{
+		return neighborhood.getFloatPosition( d );
+	}
+
+	@Override
+	public double getDoublePosition( final int d )
+	{
+		return neighborhood.getDoublePosition( d );
+	}
+
+	@Override
+	public long min( final int d )
+	{
+		return neighborhood.min( d );
+	}
+
+	@Override
+	public void min( final long[] min )
+	{
+		neighborhood.min( min );
+	}
+
+	@Override
+	public void min( final Positionable min )
+	{
+		neighborhood.min( min );
+	}
+
+	@Override
+	public long max( final int d )
+	{
+		return neighborhood.max( d );
+	}
+
+	@Override
+	public void max( final long[] max )
+	{
+		neighborhood.max( max );
+	}
+
+	@Override
+	public void max( final Positionable max )
+	{
+		neighborhood.max( max );
+	}
+
+	@Override
+	public double realMin( final int d )
+	{
+		return neighborhood.realMin( d );
+	}
+
+	@Override
+	public void realMin( final double[] min )
+	{
+		neighborhood.realMin( min );
+	}
+
+	@Override
+	public void realMin( final RealPositionable min )
+	{
+		neighborhood.realMin( min );
+	}
+
+	@Override
+	public double realMax( final int d )
+	{
+		return neighborhood.realMax( d );
+	}
+
+	@Override
+	public void realMax( final double[] max )
+	{
+		neighborhood.realMax( max );
+	}
+
+	@Override
+	public void realMax( final RealPositionable max )
+	{
+		neighborhood.realMax( max );
+	}
+
+	@Override
+	public void dimensions( final long[] dimensions )
+	{
+		neighborhood.dimensions( dimensions );
+	}
+
+	@Override
+	public long dimension( final int d )
+	{
+		return neighborhood.dimension( d );
+	}
+
+	/**
+	 * Iterates the neighborhood by setting the index of the
+	 * {@link NativeType} of a private {@link ArrayRandomAccess}. The access
+	 * itself stays at the center of the neighborhood. Before it is moved
+	 * again, the index of the type is restored to the center.
+	 */
+	public final class LocalCursor implements Cursor< T >
+	{
+		private final RandomAccess< T > access;
+
+		private final T value;
+
+		private final NativeType< ? > type;
+
+		private int centerIndex;
+
+		private int i;
+
+		private LocalCursor()
+		{
+			if ( indexOffsets == null )
+				createOffsets();
+			access = sourceRandomAccess.copyRandomAccess();
+			value = access.get();
+			type = ( NativeType< ? > ) value;
+			centerIndex = type.getIndex();
+			i = -1;
+		}
+
+		private LocalCursor( final LocalCursor c )
+		{
+			access = c.access.copyRandomAccess();
+			value = access.get();
+			type = ( NativeType< ? > ) value;
+			centerIndex = c.centerIndex;
+			i = c.i;
+			type.updateIndex( c.type.getIndex() );
+		}
+
+		@Override
+		public void reset()
+		{
+			type.updateIndex( centerIndex );
+			access.setPosition( neighborhood );
+			centerIndex = type.getIndex();
+			i = -1;
+		}
+
+		@Override
+		public T get()
+		{
+			return value;
+		}
+
+		@Override
+		public void fwd()
+		{
+			type.updateIndex( centerIndex + indexOffsets[ ++i ] );
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			i += ( int ) steps;
+			type.updateIndex( centerIndex + indexOffsets[ i ] );
+		}
+
+		@Override
+		public T next()
+		{
+			fwd();
+			return value;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return i < indexOffsets.length - 1;
+		}
+
+		@Override
+		public void remove()
+		{
+			// NB: no action.
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		@Override
+		public long getLongPosition( final int d )
+		{
+			return neighborhood.getLongPosition( d ) + offsets[ i * n + d ];
+		}
+
+		@Override
+		public int getIntPosition( final int d )
+		{
+			return ( int ) getLongPosition( d );
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return getLongPosition( d );
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final long[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final int[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = ( int ) getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final float[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final double[] position )
+		{
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = getLongPosition( d );
+		}
+
+		@Override
+		public LocalCursor copy()
+		{
+			return new LocalCursor( this );
+		}
+
+		@Override
+		public LocalCursor copyCursor()
+		{
+			return copy();
+		}
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.Dimensions;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+
+/**
+ * An immutable, precompiled table of the offsets of a {@link Shape}'s
+ * neighborhood relative to its center, in the iteration order of the
+ * neighborhood cursor.
+ * <p>
+ * Neighborhood cursors compute their iteration pattern as they walk. Hot
+ * loops that visit the neighborhood of every pixel can instead compile the
+ * offsets once, and, for images with a flat memory layout such as
+ * {@link net.imglib2.img.array.ArrayImg ArrayImgs}, iterate an {@code int[]}
+ * of linear index offsets (see {@link #getIndexOffsets(Dimensions)}) without
+ * any object allocation.
+ */
+public final class NeighborhoodOffsets
+{
+	private final int numDimensions;
+
+	private final int size;
+
+	/**
+	 * The offsets, flattened: offset {@code i} in dimension {@code d} is at
+	 * {@code i * numDimensions + d}.
+	 */
+	private final long[] offsets;
+
+	private final long[] min;
+
+	private final long[] max;
+
+	private NeighborhoodOffsets( final int numDimensions, final long[] offsets )
+	{
+		this.numDimensions = numDimensions;
+		this.size = numDimensions == 0 ? 0 : offsets.length / numDimensions;
+		this.offsets = offsets;
+		min = new long[ numDimensions ];
+		max = new long[ numDimensions ];
+		for ( int i = 0; i < size; ++i )
+			for ( int d = 0; d < numDimensions; ++d )
+			{
+				final long o = offsets[ i * numDimensions + d ];
+				if ( i == 0 || o < min[ d ] )
+					min[ d ] = o;
+				if ( i == 0 || o > max[ d ] )
+					max[ d ] = o;
+			}
+	}
+
+	/**
+	 * Compiles the offsets of the neighborhood of a {@link Shape} in the given
+	 * number of dimensions.
+	 */
+	public static NeighborhoodOffsets create( final Shape shape, final int numDimensions )
+	{
+		final long[] dimensions = new long[ numDimensions ];
+		Arrays.fill( dimensions, 1 );
+		final RandomAccess< Neighborhood< BitType > > access = shape.neighborhoodsRandomAccessible( ArrayImgs.bits( dimensions ) ).randomAccess();
+		access.setPosition( new long[ numDimensions ] );
+		final Neighborhood< BitType > neighborhood = access.get();
+		final long[] offsets = new long[ ( int ) neighborhood.size() * numDimensions ];
+		final Cursor< BitType > cursor = neighborhood.localizingCursor();
+		int i = 0;
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			for ( int d = 0; d < numDimensions; ++d )
+				offsets[ i++ ] = cursor.getLongPosition( d );
+		}
+		return new NeighborhoodOffsets( numDimensions, offsets );
+	}
+
+	/**
+	 * Returns a table with the same offsets, except for the center.
+	 */
+	public NeighborhoodOffsets withoutCenter()
+	{
+		final long[] filtered = new long[ offsets.length ];
+		int j = 0;
+		for ( int i = 0; i < size; ++i )
+		{
+			if ( isCenter( i ) )
+				continue;
+			System.arraycopy( offsets, i * numDimensions, filtered, j, numDimensions );
+			j += numDimensions;
+		}
+		return new NeighborhoodOffsets( numDimensions, Arrays.copyOf( filtered, j ) );
+	}
+
+	public int numDimensions()
+	{
+		return numDimensions;
+	}
+
+	/**
+	 * @return the number of pixels in the neighborhood.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the offset of pixel {@code i} in dimension {@code d}.
+	 */
+	public long getOffset( final int i, final int d )
+	{
+		return offsets[ i * numDimensions + d ];
+	}
+
+	/**
+	 * Writes the offset of pixel {@code i} to {@code offset}.
+	 */
+	public void localize( final int i, final long[] offset )
+	{
+		System.arraycopy( offsets, i * numDimensions, offset, 0, numDimensions );
+	}
+
+	/**
+	 * @return whether pixel {@code i} is the center of the neighborhood.
+	 */
+	public boolean isCenter( final int i )
+	{
+		for ( int d = 0; d < numDimensions; ++d )
+			if ( offsets[ i * numDimensions + d ] != 0 )
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return a new array containing all offsets, one {@code long[]} per
+	 *         pixel.
+	 */
+	public long[][] getOffsets()
+	{
+		final long[][] result = new long[ size ][ numDimensions ];
+		for ( int i = 0; i < size; ++i )
+			localize( i, result[ i ] );
+		return result;
+	}
+
+	/**
+	 * @return the smallest offset in dimension {@code d}.
+	 */
+	public long min( final int d )
+	{
+		return min[ d ];
+	}
+
+	/**
+	 * @return the largest offset in dimension {@code d}.
+	 */
+	public long max( final int d )
+	{
+		return max[ d ];
+	}
+
+	/**
+	 * Returns the linear index offsets of the neighborhood in an image with
+	 * flat memory layout (dimension 0 varying fastest) of the given
+	 * dimensions. If the center pixel has index {@code i}, the neighbors have
+	 * indices {@code i + indexOffsets[ k ]}, as long as the neighborhood is
+	 * completely inside the image.
+	 *
+	 * @return a new array of {@link #size()} index offsets.
+	 * @throws IllegalArgumentException
+	 *             if an index offset does not fit into an {@code int}.
+	 */
+	public int[] getIndexOffsets( final Dimensions dimensions )
+	{
+		final long[] dims = new long[ numDimensions ];
+		dimensions.dimensions( dims );
+		return getIndexOffsets( dims );
+	}
+
+	/**
+	 * Returns the linear index offsets of the neighborhood in an image with
+	 * flat memory layout (dimension 0 varying fastest) of the given
+	 * dimensions.
+	 *
+	 * @see #getIndexOffsets(Dimensions)
+	 * @return a new array of {@link #size()} index offsets.
+	 * @throws IllegalArgumentException
+	 *             if an index offset does not fit into an {@code int}.
+	 */
+	public int[] getIndexOffsets( final long[] dimensions )
+	{
+		final long[] strides = new long[ numDimensions ];
+		long stride = 1;
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			strides[ d ] = stride;
+			stride *= dimensions[ d ];
+		}
+		final int[] indexOffsets = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+		{
+			long index = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				index += offsets[ i * numDimensions + d ] * strides[ d ];
+			if ( index < Integer.MIN_VALUE || index > Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "index offset " + index + " of neighbor " + i + " does not fit into an int" );
+			indexOffsets[ i ] = ( int ) index;
+		}
+		return indexOffsets;
+	}
+
+	/**
+	 * Returns the linear index offsets of the neighborhood in {@code source},
+	 * if {@code source} is an {@link ArrayImg} that contains the neighborhoods
+	 * of all pixels of {@code interval}. Hot loops can then visit the
+	 * neighbors of the pixel at index {@code i} at {@code i + indexOffsets[ k ]}
+	 * in the {@link ArrayImg}'s storage.
+	 *
+	 * @return a new array of {@link #size()} index offsets, or {@code null} if
+	 *         {@code source} is not an {@link ArrayImg} or neighborhoods reach
+	 *         out of it.
+	 */
+	public int[] getIndexOffsets( final RandomAccessible< ? > source, final Interval interval )
+	{
+		if ( !( source instanceof ArrayImg ) || interval.numDimensions() != numDimensions )
+			return null;
+		final ArrayImg< ?, ? > img = ( ArrayImg< ?, ? > ) source;
+		for ( int d = 0; d < numDimensions; ++d )
+			if ( interval.min( d ) + min[ d ] < img.min( d ) || interval.max( d ) + max[ d ] > img.max( d ) )
+				return null;
+		return getIndexOffsets( img );
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder str = new StringBuilder( "NeighborhoodOffsets, size = " + size + ":" );
+		for ( int i = 0; i < size; ++i )
+		{
+			str.append( i == 0 ? " (" : ", (" );
+			for ( int d = 0; d < numDimensions; ++d )
+				str.append( d == 0 ? "" : ", " ).append( getOffset( i, d ) );
+			str.append( ")" );
+		}
+		return str.toString();
+	}
+}
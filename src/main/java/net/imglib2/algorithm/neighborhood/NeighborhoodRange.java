@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.algorithm.util.FutureUtils;
+
+/**
+ * A range of the neighborhoods of a {@link Shape}, i.e., of an
+ * {@link IterableInterval} as returned by
+ * {@link Shape#neighborhoods(net.imglib2.RandomAccessibleInterval)}, that can
+ * be split for parallel processing.
+ * <p>
+ * A range covers the neighborhoods with iteration indices {@link #getFrom()}
+ * (inclusive) to {@link #getTo()} (exclusive). {@link #trySplit()} splits off
+ * the first half, so that a range can be divided recursively into balanced
+ * parts. Each part iterates its neighborhoods with a cursor that is moved to
+ * its start by {@link Cursor#jumpFwd(long)}, which the neighborhood cursors
+ * of the shapes implement in constant time.
+ * <p>
+ * {@link #forEach(IterableInterval, RangeProcessor, int, ExecutorService)}
+ * processes all neighborhoods in parallel without hand-written chunking.
+ *
+ * @param <T>
+ *            pixel type of the neighborhoods.
+ */
+public final class NeighborhoodRange< T >
+{
+	/**
+	 * Processes the neighborhoods of one range.
+	 *
+	 * @param <T>
+	 *            pixel type of the neighborhoods.
+	 */
+	public interface RangeProcessor< T >
+	{
+		/**
+		 * Called once per range, possibly concurrently for different ranges.
+		 * Typically iterates {@code range.size()} neighborhoods from
+		 * {@code range.cursor()}.
+		 */
+		public void process( NeighborhoodRange< T > range );
+	}
+
+	private final IterableInterval< Neighborhood< T > > neighborhoods;
+
+	private long from;
+
+	private final long to;
+
+	private NeighborhoodRange( final IterableInterval< Neighborhood< T > > neighborhoods, final long from, final long to )
+	{
+		this.neighborhoods = neighborhoods;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Creates a range covering all of {@code neighborhoods}.
+	 */
+	public static < T > NeighborhoodRange< T > create( final IterableInterval< Neighborhood< T > > neighborhoods )
+	{
+		return new NeighborhoodRange< T >( neighborhoods, 0, neighborhoods.size() );
+	}
+
+	/**
+	 * Splits off the first half of this range. Afterwards, this range covers
+	 * only the second half.
+	 *
+	 * @return the first half, or {@code null} if this range has fewer than 2
+	 *         neighborhoods.
+	 */
+	public NeighborhoodRange< T > trySplit()
+	{
+		if ( to - from < 2 )
+			return null;
+		final long mid = from + ( to - from ) / 2;
+		final NeighborhoodRange< T > prefix = new NeighborhoodRange< T >( neighborhoods, from, mid );
+		from = mid;
+		return prefix;
+	}
+
+	/**
+	 * @return the number of neighborhoods in this range.
+	 */
+	public long size()
+	{
+		return to - from;
+	}
+
+	/**
+	 * @return the iteration index of the first neighborhood in this range.
+	 */
+	public long getFrom()
+	{
+		return from;
+	}
+
+	/**
+	 * @return the iteration index after the last neighborhood in this range.
+	 */
+	public long getTo()
+	{
+		return to;
+	}
+
+	/**
+	 * @return the neighborhoods this range is a part of.
+	 */
+	public IterableInterval< Neighborhood< T > > getNeighborhoods()
+	{
+		return neighborhoods;
+	}
+
+	/**
+	 * Returns a new cursor placed before the first neighborhood of this range.
+	 * Calling {@link Cursor#fwd()} {@link #size()} times visits exactly the
+	 * neighborhoods of the range. ({@link Cursor#hasNext()} refers to all
+	 * neighborhoods, not only to the range.)
+	 */
+	public Cursor< Neighborhood< T > > cursor()
+	{
+		final Cursor< Neighborhood< T > > cursor = neighborhoods.cursor();
+		if ( from > 0 )
+			cursor.jumpFwd( from );
+		return cursor;
+	}
+
+	/**
+	 * Splits this range into at most {@code numRanges} ranges of about equal
+	 * size, by recursive halving. This range is consumed in the process.
+	 */
+	public List< NeighborhoodRange< T > > split( final int numRanges )
+	{
+		final ArrayList< NeighborhoodRange< T > > ranges = new ArrayList< NeighborhoodRange< T > >();
+		ranges.add( this );
+		boolean splitAny = true;
+		while ( ranges.size() < numRanges && splitAny )
+		{
+			splitAny = false;
+			for ( int i = ranges.size() - 1; i >= 0 && ranges.size() < numRanges; --i )
+			{
+				final NeighborhoodRange< T > prefix = ranges.get( i ).trySplit();
+				if ( prefix != null )
+				{
+					ranges.add( i, prefix );
+					splitAny = true;
+				}
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * Processes all {@code neighborhoods} in parallel. The neighborhoods are
+	 * split into {@code numTasks} ranges of about equal size, each of which
+	 * is processed by a separate task submitted to {@code service}. For good
+	 * load balancing, {@code numTasks} should be a few times the number of
+	 * threads of {@code service}.
+	 */
+	public static < T > void forEach( final IterableInterval< Neighborhood< T > > neighborhoods, final RangeProcessor< T > processor, final int numTasks, final ExecutorService service )
+	{
+		final List< NeighborhoodRange< T > > ranges = create( neighborhoods ).split( Math.max( 1, numTasks ) );
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+		for ( final NeighborhoodRange< T > range : ranges )
+		{
+			futures.add( service.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					processor.process( range );
+					return null;
+				}
+			} ) );
+		}
+		FutureUtils.getAllFutures( futures );
+	}
+}
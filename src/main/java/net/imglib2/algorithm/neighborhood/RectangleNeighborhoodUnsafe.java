@@ -46,7 +46,7 @@ public final class RectangleNeighborhoodUnsafe< T > extends RectangleNeighborhoo
 			@Override
 			public Neighborhood< T > create( final long[] position, final long[] currentMin, final long[] currentMax, final Interval span, final RandomAccess< T > sourceRandomAccess )
 			{
-				return new RectangleNeighborhoodUnsafe< T >( position, currentMin, currentMax, span, sourceRandomAccess );
+				return LinearOffsetNeighborhood.wrap( new RectangleNeighborhoodUnsafe< T >( position, currentMin, currentMax, span, sourceRandomAccess ), sourceRandomAccess );
 			}
 		};
 	}
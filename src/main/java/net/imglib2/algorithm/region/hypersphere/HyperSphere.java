@@ -91,17 +91,7 @@ public class HyperSphere< T > implements IterableInterval< T >
 	 */
 	protected long computeSize()
 	{
-		final HyperSphereCursor< T > cursor = new HyperSphereCursor< T >( source, this.center, radius );
-
-		// "compute number of pixels"
-		long size = 0;
-		while ( cursor.hasNext() )
-		{
-			cursor.fwd();
-			++size;
-		}
-
-		return size;
+		return HyperSphereSpans.get( numDimensions, radius ).size();
 	}
 
 	public void update( final Localizable center, final long radius )
@@ -62,14 +62,14 @@ public class HyperSphereCursor< T > implements Cursor< T >
 
 	final int numDimensions, maxDim;
 
-	// the current radius in each dimension we are at
-	final double[] r;
+	// the spans of the sphere, shared with all spheres of the same radius
+	final HyperSphereSpans spans;
 
-	// the current radius in each dimension truncated to long
-	final long[] ri;
+	// the index of the current span
+	int span;
 
-	// the remaining number of steps in each dimension we still have to go
-	final long[] s;
+	// the remaining number of steps in the current span
+	long remaining;
 
 	public HyperSphereCursor( final RandomAccessible< T > source, final long[] center, final long radius )
 	{
@@ -78,9 +78,7 @@ public class HyperSphereCursor< T > implements Cursor< T >
 		this.radius = radius;
 		this.numDimensions = source.numDimensions();
 		this.maxDim = numDimensions - 1;
-		this.r = new double[ numDimensions ];
-		this.ri = new long[ numDimensions ];
-		this.s = new long[ numDimensions ];
+		this.spans = HyperSphereSpans.get( numDimensions, radius );
 		this.randomAccess = source.randomAccess();
 
 		reset();
@@ -93,10 +91,10 @@ public class HyperSphereCursor< T > implements Cursor< T >
 		this.radius = cursor.radius;
 		this.numDimensions = cursor.numDimensions();
 		this.maxDim = cursor.maxDim;
+		this.spans = cursor.spans;
 
-		this.r = cursor.r.clone();
-		this.ri = cursor.ri.clone();
-		this.s = cursor.s.clone();
+		this.span = cursor.span;
+		this.remaining = cursor.remaining;
 
 		this.randomAccess = source.randomAccess();
 		this.randomAccess.setPosition( cursor.randomAccess );
@@ -121,63 +119,53 @@ public class HyperSphereCursor< T > implements Cursor< T >
 	@Override
 	public boolean hasNext()
 	{
-		return s[ maxDim ] > 0;
+		return remaining > 0 || span < spans.numSpans() - 1;
 	}
 
 	@Override
 	public void fwd()
 	{
-		if ( --s[ 0 ] >= 0 )
+		if ( --remaining >= 0 )
 			randomAccess.fwd( 0 );
 		else
-		{
-			int d = 1;
-			for ( ; d < numDimensions; ++d )
-			{
-				if ( --s[ d ] >= 0 )
-				{
-					randomAccess.fwd( d );
-					break;
-				}
-			}
-
-			for ( ; d > 0; --d )
-			{
-				final int e = d - 1;
-				final double rd = r[ d ];
-				final long pd = s[ d ] - ri[ d ];
-
-				final double rad = Math.sqrt( rd * rd - pd * pd );
-				r[ e ] = rad;
-				ri[ e ] = ( long ) rad;
-				s[ e ] = 2 * ( long ) rad;
-
-				randomAccess.setPosition( center[ e ] - ri[ e ], e );
-			}
-		}
+			startSpan( ++span, 0 );
+	}
+
+	/**
+	 * Moves to pixel {@code k} of span {@code span}.
+	 */
+	private void startSpan( final int span, final long k )
+	{
+		for ( int d = 0; d < numDimensions; ++d )
+			randomAccess.setPosition( center[ d ] + spans.getOffset( span, d ), d );
+		randomAccess.move( k, 0 );
+		remaining = spans.getLength( span ) - 1 - k;
 	}
 
 	@Override
 	public void reset()
 	{
-		for ( int d = 0; d < maxDim; ++d )
-		{
-			r[ d ] = ri[ d ] = s[ d ] = 0;
-			randomAccess.setPosition( center[ d ], d );
-		}
-
-		randomAccess.setPosition( center[ maxDim ] - radius - 1, maxDim );
-
-		r[ maxDim ] = radius;
-		ri[ maxDim ] = radius;
-		s[ maxDim ] = 1 + 2 * radius;
+		randomAccess.setPosition( center );
+		span = -1;
+		remaining = 0;
 	}
 
 	@Override
 	public void jumpFwd( final long steps )
 	{
-		for ( long j = 0; j < steps; ++j )
-			fwd();
+		if ( steps <= remaining )
+		{
+			randomAccess.move( steps, 0 );
+			remaining -= steps;
+		}
+		else
+		{
+			long k = steps - remaining - 1;
+			++span;
+			while ( k >= spans.getLength( span ) )
+				k -= spans.getLength( span++ );
+			startSpan( span, k );
+		}
 	}
 
 	@Override
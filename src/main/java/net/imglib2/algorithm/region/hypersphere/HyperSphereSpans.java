@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.region.hypersphere;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The pixels of an n-dimensional sphere of a given radius, as a table of
+ * spans: runs of consecutive pixels along dimension 0.
+ * <p>
+ * The spans are listed in the iteration order of {@link HyperSphereCursor},
+ * and contain exactly the pixels it visits. Instead of computing the extent of
+ * each line with a square root while iterating, cursors can look the spans up
+ * in the table. Tables are immutable and shared: {@link #get(int, long)}
+ * returns the same instance for the same dimensionality and radius, as long as
+ * it is in use. Tables are cached through soft references, so the cache does
+ * not keep tables of radii that are no longer used when memory is needed.
+ */
+public final class HyperSphereSpans
+{
+	private static final ConcurrentHashMap< Key, CachedSpans > cache = new ConcurrentHashMap< Key, CachedSpans >();
+
+	private static final ReferenceQueue< HyperSphereSpans > clearedSpans = new ReferenceQueue< HyperSphereSpans >();
+
+	private final int numDimensions;
+
+	private final long radius;
+
+	/**
+	 * Offset of the first pixel of each span relative to the center,
+	 * flattened: span {@code i} in dimension {@code d} is at
+	 * {@code i * numDimensions + d}.
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Number of pixels of each span.
+	 */
+	private final long[] lengths;
+
+	private final long size;
+
+	/**
+	 * Returns the (shared) span table for a sphere of the given radius.
+	 */
+	public static HyperSphereSpans get( final int numDimensions, final long radius )
+	{
+		removeClearedSpans();
+		final Key key = new Key( numDimensions, radius );
+		while ( true )
+		{
+			final CachedSpans cached = cache.get( key );
+			HyperSphereSpans spans = cached == null ? null : cached.get();
+			if ( spans != null )
+				return spans;
+			spans = new HyperSphereSpans( numDimensions, radius );
+			final CachedSpans replacement = new CachedSpans( key, spans );
+			if ( cached == null ? cache.putIfAbsent( key, replacement ) == null : cache.replace( key, cached, replacement ) )
+				return spans;
+		}
+	}
+
+	/**
+	 * Removes the cache entries of tables that were garbage collected.
+	 */
+	private static void removeClearedSpans()
+	{
+		CachedSpans cleared;
+		while ( ( cleared = ( CachedSpans ) clearedSpans.poll() ) != null )
+			cache.remove( cleared.key, cleared );
+	}
+
+	private HyperSphereSpans( final int numDimensions, final long radius )
+	{
+		this.numDimensions = numDimensions;
+		this.radius = radius;
+		final int numSpans = radius < 0 ? 0 : countSpans( numDimensions - 1, radius );
+		offsets = new long[ numSpans * numDimensions ];
+		lengths = new long[ numSpans ];
+		if ( numSpans > 0 )
+			addSpans( numDimensions - 1, radius, new long[ numDimensions ], 0 );
+		long s = 0;
+		for ( final long length : lengths )
+			s += length;
+		size = s;
+	}
+
+	/**
+	 * Counts the spans of the (d+1)-dimensional cross section with radius rd.
+	 */
+	private static int countSpans( final int d, final double rd )
+	{
+		final long ri = ( long ) rd;
+		if ( d == 0 )
+			return 1;
+		int count = 0;
+		for ( long p = -ri; p <= ri; ++p )
+			count += countSpans( d - 1, Math.sqrt( rd * rd - p * p ) );
+		return count;
+	}
+
+	/**
+	 * Adds the spans of the (d+1)-dimensional cross section with radius rd,
+	 * with the offsets in dimensions greater than d given in {@code offset},
+	 * starting at span index {@code span}.
+	 *
+	 * @return the index after the last added span.
+	 */
+	private int addSpans( final int d, final double rd, final long[] offset, final int span )
+	{
+		// Same arithmetic as the cursor, so that the same pixels are visited.
+		final long ri = ( long ) rd;
+		if ( d == 0 )
+		{
+			offset[ 0 ] = -ri;
+			System.arraycopy( offset, 0, offsets, span * numDimensions, numDimensions );
+			lengths[ span ] = 2 * ri + 1;
+			return span + 1;
+		}
+		int next = span;
+		for ( long p = -ri; p <= ri; ++p )
+		{
+			offset[ d ] = p;
+			next = addSpans( d - 1, Math.sqrt( rd * rd - p * p ), offset, next );
+		}
+		return next;
+	}
+
+	public int numDimensions()
+	{
+		return numDimensions;
+	}
+
+	public long getRadius()
+	{
+		return radius;
+	}
+
+	/**
+	 * @return the number of spans.
+	 */
+	public int numSpans()
+	{
+		return lengths.length;
+	}
+
+	/**
+	 * @return the number of pixels in the sphere.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the offset of the first pixel of span {@code span} relative to
+	 *         the center, in dimension {@code d}.
+	 */
+	public long getOffset( final int span, final int d )
+	{
+		return offsets[ span * numDimensions + d ];
+	}
+
+	/**
+	 * @return the number of pixels of span {@code span}.
+	 */
+	public long getLength( final int span )
+	{
+		return lengths[ span ];
+	}
+
+	private static final class CachedSpans extends SoftReference< HyperSphereSpans >
+	{
+		private final Key key;
+
+		CachedSpans( final Key key, final HyperSphereSpans spans )
+		{
+			super( spans, clearedSpans );
+			this.key = key;
+		}
+	}
+
+	private static final class Key
+	{
+		private final int numDimensions;
+
+		private final long radius;
+
+		Key( final int numDimensions, final long radius )
+		{
+			this.numDimensions = numDimensions;
+			this.radius = radius;
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof Key ) )
+				return false;
+			final Key k = ( Key ) o;
+			return k.numDimensions == numDimensions && k.radius == radius;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * numDimensions + ( int ) ( radius ^ ( radius >>> 32 ) );
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.region.hypersphere;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.util.FutureUtils;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Sums and means of the pixel values in spheres of equal radius around many
+ * centers, e.g., for measuring the intensities of detected spots.
+ * <p>
+ * The spheres are evaluated in parallel, with one {@link RandomAccess} per
+ * task walking the shared {@link HyperSphereSpans} of the radius. No cursor
+ * or other object is allocated per sphere.
+ * <p>
+ * It is the caller's responsibility to ensure that the source is defined on
+ * all spheres, e.g., by extending it.
+ */
+public class HyperSphereSums
+{
+	/**
+	 * Computes the sum of the pixel values in the sphere of the given radius
+	 * around each center.
+	 *
+	 * @return the sums, in the order of {@code centers}.
+	 */
+	public static < T extends RealType< T > > double[] sums( final RandomAccessible< T > source, final List< ? extends Localizable > centers, final long radius, final ExecutorService service )
+	{
+		final double[] sums = new double[ centers.size() ];
+		final HyperSphereSpans spans = HyperSphereSpans.get( source.numDimensions(), radius );
+
+		final int numTasks = Math.max( 1, Math.min( centers.size(), Runtime.getRuntime().availableProcessors() * 4 ) );
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+		for ( int t = 0; t < numTasks; ++t )
+		{
+			final int from = ( int ) ( ( long ) t * centers.size() / numTasks );
+			final int to = ( int ) ( ( long ) ( t + 1 ) * centers.size() / numTasks );
+			futures.add( service.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final RandomAccess< T > access = source.randomAccess();
+					for ( int i = from; i < to; ++i )
+						sums[ i ] = sum( access, centers.get( i ), spans );
+					return null;
+				}
+			} ) );
+		}
+		FutureUtils.getAllFutures( futures );
+		return sums;
+	}
+
+	/**
+	 * Computes the mean of the pixel values in the sphere of the given radius
+	 * around each center.
+	 *
+	 * @return the means, in the order of {@code centers}.
+	 */
+	public static < T extends RealType< T > > double[] means( final RandomAccessible< T > source, final List< ? extends Localizable > centers, final long radius, final ExecutorService service )
+	{
+		final double[] means = sums( source, centers, radius, service );
+		final long size = HyperSphereSpans.get( source.numDimensions(), radius ).size();
+		for ( int i = 0; i < means.length; ++i )
+			means[ i ] /= size;
+		return means;
+	}
+
+	/**
+	 * Sums the pixel values in the sphere given by {@code spans} around
+	 * {@code center}.
+	 */
+	public static < T extends RealType< T > > double sum( final RandomAccess< T > access, final Localizable center, final HyperSphereSpans spans )
+	{
+		final int n = spans.numDimensions();
+		double sum = 0;
+		for ( int span = 0; span < spans.numSpans(); ++span )
+		{
+			for ( int d = 0; d < n; ++d )
+				access.setPosition( center.getLongPosition( d ) + spans.getOffset( span, d ), d );
+			for ( long k = spans.getLength( span ); k > 0; --k )
+			{
+				sum += access.get().getRealDouble();
+				access.fwd( 0 );
+			}
+		}
+		return sum;
+	}
+
+	private HyperSphereSums()
+	{}
+}
@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for waiting on tasks submitted to an
+ * {@link java.util.concurrent.ExecutorService}.
+ */
+public final class FutureUtils
+{
+	/**
+	 * Wait for all {@code futures} to complete, and clear the list, so that it
+	 * can be reused for the next batch of tasks.
+	 * <p>
+	 * If a task failed, the remaining tasks are cancelled and its exception is
+	 * rethrown, wrapped in a {@link RuntimeException} if it is checked. If the
+	 * calling thread is interrupted, the remaining tasks are cancelled and a
+	 * {@link RuntimeException} is thrown. So if this method returns, all tasks
+	 * completed successfully.
+	 *
+	 * @param futures
+	 *            the futures of the submitted tasks.
+	 * @return the results of the tasks, in the order of {@code futures}.
+	 */
+	public static < V > List< V > getAllFutures( final List< ? extends Future< ? extends V > > futures )
+	{
+		final ArrayList< V > results = new ArrayList< V >( futures.size() );
+		try
+		{
+			for ( final Future< ? extends V > future : futures )
+				results.add( future.get() );
+		}
+		catch ( final InterruptedException e )
+		{
+			cancelAll( futures );
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			cancelAll( futures );
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
+		futures.clear();
+		return results;
+	}
+
+	private static void cancelAll( final List< ? extends Future< ? > > futures )
+	{
+		for ( final Future< ? > future : futures )
+			future.cancel( true );
+		futures.clear();
+	}
+
+	private FutureUtils()
+	{}
+}
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.componenttree;
+
+import static net.imglib2.algorithm.componenttree.UnionFindComponentTreeTest.fill;
+import static net.imglib2.algorithm.componenttree.UnionFindComponentTreeTest.nodes;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.algorithm.componenttree.mser.MserTree;
+import net.imglib2.algorithm.componenttree.pixellist.PixelListComponentTree;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+public class ParallelComponentTreeTest
+{
+	private static final int[] NUM_TILES = new int[] { 1, 2, 3, 5, 8, 100 };
+
+	@Test
+	public void testPixelListTree()
+	{
+		final Random random = new Random( 42 );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			assertPixelListTreesEqual( fill( ArrayImgs.ints( 23, 17 ), random, 5, 1 ), new IntType(), service );
+			assertPixelListTreesEqual( fill( ArrayImgs.ints( 11, 9, 13 ), random, 4, 1 ), new IntType(), service );
+			assertPixelListTreesEqual( fill( ArrayImgs.doubles( 23, 17 ), random, 0, 1 ), new DoubleType(), service );
+			assertPixelListTreesEqual( fill( ArrayImgs.doubles( 11, 9, 13 ), random, 0, 1 ), new DoubleType(), service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testMserTree()
+	{
+		final Random random = new Random( 43 );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			assertMserTreesEqual( fill( ArrayImgs.ints( 23, 17 ), random, 8, 1 ), new IntType( 1 ), service );
+			assertMserTreesEqual( fill( ArrayImgs.ints( 11, 9, 13 ), random, 4, 1 ), new IntType( 1 ), service );
+			assertMserTreesEqual( fill( ArrayImgs.doubles( 23, 17 ), random, 0, 1 ), new DoubleType( 0.1 ), service );
+			assertMserTreesEqual( fill( ArrayImgs.doubles( 11, 9, 13 ), random, 0, 1 ), new DoubleType( 0.1 ), service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidNumTiles()
+	{
+		final ExecutorService service = Executors.newSingleThreadExecutor();
+		try
+		{
+			PixelListComponentTree.buildComponentTreeUnionFind( ArrayImgs.ints( 3, 3 ), new IntType(), true, 0, service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	private static < T extends RealType< T > > void assertPixelListTreesEqual( final Img< T > img, final T type, final ExecutorService service )
+	{
+		for ( final boolean darkToBright : new boolean[] { true, false } )
+		{
+			final List< String > expected = nodes( PixelListComponentTree.buildComponentTree( img, type, darkToBright ) );
+			for ( final int numTiles : NUM_TILES )
+				assertEquals( "numTiles = " + numTiles, expected, nodes( PixelListComponentTree.buildComponentTreeUnionFind( img, type, darkToBright, numTiles, service ) ) );
+		}
+	}
+
+	private static < T extends RealType< T > > void assertMserTreesEqual( final Img< T > img, final T delta, final ExecutorService service )
+	{
+		for ( final boolean darkToBright : new boolean[] { true, false } )
+		{
+			final List< String > expected = nodes( MserTree.buildMserTree( img, delta, 1, Long.MAX_VALUE, 100, 0, darkToBright ) );
+			for ( final int numTiles : NUM_TILES )
+				assertEquals( "numTiles = " + numTiles, expected, nodes( MserTree.buildMserTreeUnionFind( img, delta, 1, Long.MAX_VALUE, 100, 0, darkToBright, numTiles, service ) ) );
+		}
+	}
+}
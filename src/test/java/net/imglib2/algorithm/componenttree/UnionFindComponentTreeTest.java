@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.componenttree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import net.imglib2.Localizable;
+import net.imglib2.algorithm.componenttree.mser.MserTree;
+import net.imglib2.algorithm.componenttree.pixellist.PixelListComponentTree;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+public class UnionFindComponentTreeTest
+{
+	@Test
+	public void testPixelListIntegerTypes()
+	{
+		final Random random = new Random( 42 );
+		// few distinct values give plateaus, the wide range needs more than
+		// one radix sort pass
+		assertPixelListTreesEqual( fill( ArrayImgs.unsignedBytes( 23, 17 ), random, 5, 1 ), new UnsignedByteType() );
+		assertPixelListTreesEqual( fill( ArrayImgs.unsignedBytes( 23, 17 ), random, 256, 1 ), new UnsignedByteType() );
+		assertPixelListTreesEqual( fill( ArrayImgs.ints( 11, 9, 7 ), random, 4, 1 ), new IntType() );
+		assertPixelListTreesEqual( fill( ArrayImgs.ints( 31, 19 ), random, 8, 100003 ), new IntType() );
+		assertPixelListTreesEqual( fill( ArrayImgs.ints( 1, 1 ), random, 1, 1 ), new IntType() );
+	}
+
+	@Test
+	public void testPixelListDoubleTypes()
+	{
+		final Random random = new Random( 43 );
+		assertPixelListTreesEqual( fill( ArrayImgs.doubles( 23, 17 ), random, 0, 1 ), new DoubleType() );
+		assertPixelListTreesEqual( fill( ArrayImgs.doubles( 11, 9, 7 ), random, 0, 1 ), new DoubleType() );
+		assertPixelListTreesEqual( fill( ArrayImgs.doubles( 23, 17 ), random, 6, -0.25 ), new DoubleType() );
+	}
+
+	@Test
+	public void testMserIntegerTypes()
+	{
+		final Random random = new Random( 44 );
+		assertMserTreesEqual( fill( ArrayImgs.unsignedBytes( 23, 17 ), random, 5, 1 ), new UnsignedByteType( 1 ) );
+		assertMserTreesEqual( fill( ArrayImgs.unsignedBytes( 23, 17 ), random, 256, 1 ), new UnsignedByteType( 10 ) );
+		assertMserTreesEqual( fill( ArrayImgs.ints( 11, 9, 7 ), random, 4, 1 ), new IntType( 1 ) );
+	}
+
+	@Test
+	public void testMserDoubleTypes()
+	{
+		final Random random = new Random( 45 );
+		assertMserTreesEqual( fill( ArrayImgs.doubles( 23, 17 ), random, 0, 1 ), new DoubleType( 0.1 ) );
+		assertMserTreesEqual( fill( ArrayImgs.doubles( 23, 17 ), random, 6, -0.25 ), new DoubleType( 0.25 ) );
+	}
+
+	@Test
+	public void testComparatorFallback()
+	{
+		// comparators other than DarkToBright and BrightToDark are sorted by
+		// merge sort instead of radix sort
+		final Comparator< IntType > distanceToFour = new Comparator< IntType >()
+		{
+			@Override
+			public int compare( final IntType a, final IntType b )
+			{
+				final int da = Math.abs( a.get() - 4 );
+				final int db = Math.abs( b.get() - 4 );
+				if ( da != db )
+					return da < db ? -1 : 1;
+				return a.compareTo( b );
+			}
+		};
+		final Random random = new Random( 46 );
+		final Img< IntType > ints = fill( ArrayImgs.ints( 23, 17 ), random, 9, 1 );
+		final IntType intMax = new IntType( Integer.MAX_VALUE );
+		assertEquals( nodes( PixelListComponentTree.buildComponentTree( ints, intMax, distanceToFour ) ), nodes( PixelListComponentTree.buildComponentTreeUnionFind( ints, intMax, distanceToFour ) ) );
+
+		final Comparator< DoubleType > reverse = new Comparator< DoubleType >()
+		{
+			@Override
+			public int compare( final DoubleType a, final DoubleType b )
+			{
+				return b.compareTo( a );
+			}
+		};
+		final Img< DoubleType > doubles = fill( ArrayImgs.doubles( 11, 9, 7 ), random, 5, 0.5 );
+		final DoubleType doubleMax = new DoubleType( -Double.MAX_VALUE );
+		assertEquals( nodes( PixelListComponentTree.buildComponentTree( doubles, doubleMax, reverse ) ), nodes( PixelListComponentTree.buildComponentTreeUnionFind( doubles, doubleMax, reverse ) ) );
+	}
+
+	private static < T extends RealType< T > > void assertPixelListTreesEqual( final Img< T > img, final T type )
+	{
+		for ( final boolean darkToBright : new boolean[] { true, false } )
+			assertEquals( nodes( PixelListComponentTree.buildComponentTree( img, type, darkToBright ) ), nodes( PixelListComponentTree.buildComponentTreeUnionFind( img, type, darkToBright ) ) );
+	}
+
+	private static < T extends RealType< T > > void assertMserTreesEqual( final Img< T > img, final T delta )
+	{
+		for ( final boolean darkToBright : new boolean[] { true, false } )
+			assertEquals( nodes( MserTree.buildMserTree( img, delta, 1, Long.MAX_VALUE, 100, 0, darkToBright ) ), nodes( MserTree.buildMserTreeUnionFind( img, delta, 1, Long.MAX_VALUE, 100, 0, darkToBright ) ) );
+	}
+
+	/**
+	 * Fill an image with random values. If {@code numValues > 0}, the values
+	 * are {@code step * random.nextInt( numValues )}, otherwise
+	 * {@code step * random.nextDouble()}.
+	 */
+	static < T extends RealType< T > > Img< T > fill( final Img< T > img, final Random random, final int numValues, final double step )
+	{
+		for ( final T t : img )
+			t.setReal( step * ( numValues > 0 ? random.nextInt( numValues ) : random.nextDouble() ) );
+		return img;
+	}
+
+	/**
+	 * Describe the nodes of a component tree or forest independently of their
+	 * order: Each node is described by its value, size, pixels, parent, and
+	 * children.
+	 */
+	static < C extends Component< ?, C > > List< String > nodes( final Iterable< C > tree )
+	{
+		final ArrayList< String > nodes = new ArrayList< String >();
+		for ( final C node : tree )
+		{
+			final ArrayList< String > children = new ArrayList< String >();
+			for ( final C child : node.getChildren() )
+				children.add( describe( child ) );
+			Collections.sort( children );
+			final C parent = node.getParent();
+			nodes.add( describe( node ) + " parent " + ( parent == null ? "none" : describe( parent ) ) + " children " + children );
+		}
+		Collections.sort( nodes );
+		return nodes;
+	}
+
+	private static String describe( final Component< ?, ? > node )
+	{
+		final TreeSet< String > pixels = new TreeSet< String >();
+		for ( final Localizable l : node )
+		{
+			final long[] position = new long[ l.numDimensions() ];
+			l.localize( position );
+			pixels.add( Arrays.toString( position ) );
+		}
+		return node.value() + " " + node.size() + " " + pixels;
+	}
+}
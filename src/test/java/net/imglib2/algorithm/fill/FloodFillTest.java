@@ -34,12 +34,25 @@
 
 package net.imglib2.algorithm.fill;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
 import net.imglib2.Point;
+import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.util.Pair;
@@ -140,4 +153,233 @@ public class FloodFillTest {
         }
     }
 
+
+    @Test
+    public void testScanlineFill()
+    {
+        // scanline fill must equal the neighborhood fill, restricted to the image
+        final Random random = new Random( 1 );
+        // the last two shapes use the fallback, which must not leave the image either
+        final Shape[] shapes = { new DiamondShape( 1 ), new RectangleShape( 1, false ), new DiamondShape( 2 ), new RectangleShape( 2, true ) };
+        final Filter< Pair< LongType, LongType >, Pair< LongType, LongType > > filter = new Filter< Pair< LongType, LongType >, Pair< LongType, LongType > >() {
+            @Override
+            public boolean accept( Pair< LongType, LongType > p1, Pair< LongType, LongType > p2 ) {
+                return ( p1.getB().get() != p2.getB().get() ) && ( p1.getA().get() == p2.getA().get() );
+            }
+        };
+        for ( int nDim : N_DIMS )
+        {
+            long[] dim = new long[ nDim ];
+            long[] seed = new long[ nDim ];
+            for ( int d = 0; d < nDim; ++d )
+            {
+                dim[ d ] = nDim < 4 ? 17 : 7;
+                seed[ d ] = dim[ d ] / 2;
+            }
+            Img< LongType > img = ArrayImgs.longs( dim );
+            for ( LongType t : img )
+                t.set( random.nextInt( 3 ) == 0 ? 1 : 0 );
+            RandomAccess< LongType > access = img.randomAccess();
+            access.setPosition( seed );
+            LongType seedLabel = access.get().copy();
+
+            for ( Shape shape : shapes )
+            {
+                Img< LongType > expected = ArrayImgs.longs( dim );
+                Img< LongType > actual = ArrayImgs.longs( dim );
+                LongType fillLabel = new LongType( FILL_LABEL );
+                FloodFill.fill( Views.extendValue( img, new LongType( -1 ) ), Views.extendValue( expected, fillLabel ), new Point( seed ), seedLabel, fillLabel, shape, filter, new TypeWriter< LongType >() );
+                FloodFill.scanlineFill( img, actual, new Point( seed ), seedLabel, fillLabel, shape, filter, new TypeWriter< LongType >() );
+                for ( Cursor< LongType > e = expected.cursor(), a = actual.cursor(); e.hasNext(); )
+                    Assert.assertEquals( e.next().get(), a.next().get() );
+            }
+        }
+    }
+
+
+    @Test
+    public void testMultiSeedFill()
+    {
+        // every filled pixel must be in the component of the seed whose label it got,
+        // and the union of all seed components must be filled
+        final Random random = new Random( 1 );
+        final long[] dim = { 40, 30 };
+        final Img< LongType > img = ArrayImgs.longs( dim );
+        for ( LongType t : img )
+            t.set( random.nextInt( 3 ) == 0 ? 1 : 0 );
+        final Filter< Pair< LongType, LongType >, Pair< LongType, LongType > > filter = new Filter< Pair< LongType, LongType >, Pair< LongType, LongType > >() {
+            @Override
+            public boolean accept( Pair< LongType, LongType > p1, Pair< LongType, LongType > p2 ) {
+                return ( p1.getB().get() != p2.getB().get() ) && ( p1.getA().get() == p2.getA().get() );
+            }
+        };
+
+        final int numSeeds = 50;
+        final List< Point > seeds = new ArrayList< Point >();
+        final List< LongType > fillLabels = new ArrayList< LongType >();
+        final List< Img< LongType > > components = new ArrayList< Img< LongType > >();
+        for ( int s = 0; s < numSeeds; ++s )
+        {
+            final Point seed = new Point( random.nextInt( ( int ) dim[ 0 ] ), random.nextInt( ( int ) dim[ 1 ] ) );
+            final LongType fillLabel = new LongType( s + 1 );
+            seeds.add( seed );
+            fillLabels.add( fillLabel );
+            final Img< LongType > component = ArrayImgs.longs( dim );
+            FloodFill.fill( Views.extendValue( img, new LongType( -1 ) ), Views.extendValue( component, fillLabel ), seed, fillLabel, new DiamondShape( 1 ), filter );
+            components.add( component );
+        }
+
+        final Img< LongType > target = ArrayImgs.longs( dim );
+        final ExecutorService service = Executors.newFixedThreadPool( 4 );
+        final long[] counts = MultiSeedFloodFill.fill( img, target, seeds, fillLabels, new DiamondShape( 1 ), filter, service );
+        service.shutdown();
+
+        final long[] expectedCounts = new long[ numSeeds ];
+        final Cursor< LongType > c = target.cursor();
+        final List< Cursor< LongType > > cursors = new ArrayList< Cursor< LongType > >();
+        for ( final Img< LongType > component : components )
+            cursors.add( component.cursor() );
+        while ( c.hasNext() )
+        {
+            final long label = c.next().get();
+            boolean inAny = false;
+            for ( int s = 0; s < numSeeds; ++s )
+            {
+                final boolean in = cursors.get( s ).next().get() != 0;
+                inAny |= in;
+                if ( label == s + 1 )
+                    Assert.assertTrue( in );
+            }
+            Assert.assertEquals( inAny, label != 0 );
+            if ( label != 0 )
+                ++expectedCounts[ ( int ) label - 1 ];
+        }
+        Assert.assertArrayEquals( expectedCounts, counts );
+    }
+
+
+    @Test
+    public void testMultiSeedFillTies()
+    {
+        // each column is a component with a seed at the bottom and one at the
+        // top. The middle pixel is reached from both in the same level and
+        // must go to the bottom seed, which comes first in the seed list,
+        // regardless of the threads.
+        final int width = 3000;
+        final Img< LongType > img = ArrayImgs.longs( width, 11 );
+        final Cursor< LongType > ic = img.localizingCursor();
+        while ( ic.hasNext() )
+            ic.next().set( ic.getLongPosition( 0 ) );
+        final List< Point > seeds = new ArrayList< Point >();
+        final List< LongType > fillLabels = new ArrayList< LongType >();
+        for ( final long y : new long[] { 10, 0 } )
+        {
+            for ( long x = 0; x < width; ++x )
+            {
+                seeds.add( new Point( x, y ) );
+                fillLabels.add( new LongType( y == 10 ? 1 : 2 ) );
+            }
+        }
+        final Filter< Pair< LongType, LongType >, Pair< LongType, LongType > > filter = new Filter< Pair< LongType, LongType >, Pair< LongType, LongType > >() {
+            @Override
+            public boolean accept( Pair< LongType, LongType > p1, Pair< LongType, LongType > p2 ) {
+                return p1.getA().get() == p2.getA().get();
+            }
+        };
+
+        final long[] expectedCounts = new long[ 2 * width ];
+        for ( int s = 0; s < width; ++s )
+        {
+            expectedCounts[ s ] = 6;
+            expectedCounts[ width + s ] = 5;
+        }
+        for ( final int numThreads : new int[] { 1, 2, 4 } )
+        {
+            final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+            final Img< LongType > target = ArrayImgs.longs( width, 11 );
+            final long[] counts = MultiSeedFloodFill.fill( img, target, seeds, fillLabels, new DiamondShape( 1 ), filter, service );
+            service.shutdown();
+            Assert.assertArrayEquals( expectedCounts, counts );
+            final Cursor< LongType > tc = target.localizingCursor();
+            while ( tc.hasNext() )
+            {
+                final long label = tc.next().get();
+                Assert.assertEquals( tc.getLongPosition( 1 ) >= 5 ? 1 : 2, label );
+            }
+        }
+    }
+
+
+    @Test
+    public void testBoundedFill()
+    {
+        final long[] dim = { 20, 15 };
+        final Img< LongType > img = ArrayImgs.longs( dim );
+        for ( LongType t : img )
+            t.set( START_LABEL );
+        final Point seed = new Point( 10l, 7l );
+        final LongType seedLabel = new LongType( START_LABEL );
+        final LongType fillLabel = new LongType( FILL_LABEL );
+        // ignores the target, visited pixels are tracked by the fill
+        final Filter< Pair< LongType, LongType >, Pair< LongType, LongType > > filter = new Filter< Pair< LongType, LongType >, Pair< LongType, LongType > >() {
+            @Override
+            public boolean accept( Pair< LongType, LongType > p1, Pair< LongType, LongType > p2 ) {
+                return p1.getA().get() == p2.getA().get();
+            }
+        };
+
+        BoundedFloodFill.Result result = BoundedFloodFill.fill( img, ArrayImgs.longs( dim ), seed, seedLabel, fillLabel, new DiamondShape( 1 ), filter, new TypeWriter< LongType >(), 100, null );
+        Assert.assertEquals( BoundedFloodFill.Termination.MAX_COUNT, result.getTermination() );
+        Assert.assertEquals( 100, result.getCount() );
+
+        final Img< LongType > target = ArrayImgs.longs( dim );
+        result = BoundedFloodFill.fill( img, target, seed, seedLabel, fillLabel, new RectangleShape( 1, true ), filter, new TypeWriter< LongType >(), 300, null );
+        Assert.assertTrue( result.isComplete() );
+        Assert.assertEquals( 300, result.getCount() );
+        final Interval box = result.getBoundingBox();
+        for ( int d = 0; d < dim.length; ++d )
+        {
+            Assert.assertEquals( 0, box.min( d ) );
+            Assert.assertEquals( dim[ d ] - 1, box.max( d ) );
+        }
+        for ( LongType t : target )
+            Assert.assertEquals( FILL_LABEL, t.get() );
+
+        final StopCondition< Pair< LongType, LongType > > atBorder = new StopCondition< Pair< LongType, LongType > >() {
+            @Override
+            public boolean stop( Localizable position, Pair< LongType, LongType > t ) {
+                return position.getLongPosition( 0 ) == 0;
+            }
+        };
+        result = BoundedFloodFill.fill( img, ArrayImgs.longs( dim ), seed, seedLabel, fillLabel, new DiamondShape( 1 ), filter, new TypeWriter< LongType >(), Long.MAX_VALUE, atBorder );
+        Assert.assertEquals( BoundedFloodFill.Termination.STOP_CONDITION, result.getTermination() );
+        Assert.assertEquals( 0, result.getBoundingBox().min( 0 ) );
+        Assert.assertTrue( result.getCount() < 300 );
+    }
+
+    @Test
+    public void testBoundedFillInHugeInterval()
+    {
+        // a 3x3x3 cube in an 8192^3 interval, whose visited bits would take
+        // 64 GB if they were allocated for the whole interval
+        final Img< LongType > cube = ArrayImgs.longs( 3, 3, 3 );
+        for ( LongType t : cube )
+            t.set( START_LABEL );
+        final FinalInterval huge = new FinalInterval( 8192, 8192, 8192 );
+        final Point seed = new Point( 1l, 1l, 1l );
+        final Filter< Pair< LongType, LongType >, Pair< LongType, LongType > > filter = new Filter< Pair< LongType, LongType >, Pair< LongType, LongType > >() {
+            @Override
+            public boolean accept( Pair< LongType, LongType > p1, Pair< LongType, LongType > p2 ) {
+                return p1.getA().get() == p2.getA().get();
+            }
+        };
+
+        final Img< LongType > target = ArrayImgs.longs( 3, 3, 3 );
+        final BoundedFloodFill.Result result = BoundedFloodFill.fill( Views.interval( Views.extendZero( cube ), huge ), Views.extendZero( target ), seed, new LongType( START_LABEL ), new LongType( FILL_LABEL ), new DiamondShape( 1 ), filter, new TypeWriter< LongType >(), Long.MAX_VALUE, null );
+        Assert.assertTrue( result.isComplete() );
+        Assert.assertEquals( 27, result.getCount() );
+        for ( LongType t : target )
+            Assert.assertEquals( FILL_LABEL, t.get() );
+    }
+
 }
@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.labeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+public class PixelQueueTest
+{
+	private static final class Entry implements Comparable< Entry >
+	{
+		final double intensity;
+
+		final long age;
+
+		final long index;
+
+		final int label;
+
+		Entry( final double intensity, final long age, final long index, final int label )
+		{
+			this.intensity = intensity;
+			this.age = age;
+			this.index = index;
+			this.label = label;
+		}
+
+		@Override
+		public int compareTo( final Entry o )
+		{
+			final int c = Double.compare( intensity, o.intensity );
+			return c != 0 ? c : ( age < o.age ? -1 : ( age == o.age ? 0 : 1 ) );
+		}
+	}
+
+	private static void testQueue( final PixelQueue queue, final boolean integerIntensities )
+	{
+		final PriorityQueue< Entry > reference = new PriorityQueue< Entry >();
+		final Random random = new Random( 1l );
+		long age = 0;
+		for ( int i = 0; i < 10000; ++i )
+		{
+			if ( reference.isEmpty() || random.nextInt( 3 ) != 0 )
+			{
+				final double intensity = integerIntensities ? random.nextInt( 20 ) : random.nextInt( 20 ) * 0.5;
+				final long index = random.nextInt( 1000000 );
+				final int label = random.nextInt( 10 );
+				reference.add( new Entry( intensity, age++, index, label ) );
+				queue.add( intensity, index, label );
+			}
+			else
+			{
+				final Entry expected = reference.remove();
+				assertEquals( expected.index, queue.remove() );
+				assertEquals( expected.label, queue.getLabel() );
+			}
+		}
+		while ( !reference.isEmpty() )
+		{
+			final Entry expected = reference.remove();
+			assertEquals( expected.index, queue.remove() );
+			assertEquals( expected.label, queue.getLabel() );
+		}
+		assertTrue( queue.isEmpty() );
+	}
+
+	@Test
+	public void testBuckets()
+	{
+		final PixelQueue queue = PixelQueue.create( new UnsignedByteType() );
+		assertTrue( queue instanceof PixelQueue.Buckets );
+		testQueue( queue, true );
+	}
+
+	@Test
+	public void testHeap()
+	{
+		final PixelQueue queue = PixelQueue.create( new DoubleType() );
+		assertTrue( queue instanceof PixelQueue.Heap );
+		testQueue( queue, false );
+	}
+}
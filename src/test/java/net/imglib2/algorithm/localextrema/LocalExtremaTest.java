@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.localextrema;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.algorithm.localextrema.LocalExtrema.MaximumCheck;
+import net.imglib2.algorithm.localextrema.LocalExtrema.MinimumCheck;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class LocalExtremaTest
+{
+	@Test
+	public void testArrayImgMatchesCellImg()
+	{
+		// ArrayImg sources are read at precompiled index offsets, other images
+		// through neighborhood cursors.
+		final long[] dims = new long[] { 37, 29, 11 };
+		final Img< IntType > array = ArrayImgs.ints( dims );
+		final Random random = new Random( 42 );
+		for ( final IntType t : array )
+			t.set( random.nextInt( 16 ) );
+		final Img< IntType > cells = new CellImgFactory< IntType >( 6 ).create( dims, new IntType() );
+		final Cursor< IntType > in = Views.flatIterable( array ).cursor();
+		for ( final IntType t : Views.flatIterable( cells ) )
+			t.set( in.next() );
+
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		final MaximumCheck< IntType > maxCheck = new MaximumCheck< IntType >( new IntType( 3 ) );
+		final MinimumCheck< IntType > minCheck = new MinimumCheck< IntType >( new IntType( 12 ) );
+
+		assertEquals( toSet( LocalExtrema.findLocalExtrema( cells, maxCheck, service ) ), toSet( LocalExtrema.findLocalExtrema( array, maxCheck, service ) ) );
+		assertEquals( toSet( LocalExtrema.findLocalExtrema( cells, minCheck, service ) ), toSet( LocalExtrema.findLocalExtrema( array, minCheck, service ) ) );
+
+		final RectangleShape large = new RectangleShape( 2, true );
+		assertEquals(
+				toSet( LocalExtrema.findLocalExtrema( Views.extendMirrorSingle( cells ), cells, maxCheck, large, service ) ),
+				toSet( LocalExtrema.findLocalExtrema( Views.extendMirrorSingle( array ), array, maxCheck, large, service ) ) );
+		final RectangleShape rectangle = new RectangleShape( 1, true );
+		assertEquals(
+				toSet( LocalExtrema.findLocalExtrema( Views.extendBorder( cells ), cells, minCheck, rectangle, service ) ),
+				toSet( LocalExtrema.findLocalExtrema( Views.extendBorder( array ), array, minCheck, rectangle, service ) ) );
+
+		service.shutdown();
+	}
+
+	private static Set< String > toSet( final ArrayList< Point > points )
+	{
+		final Set< String > set = new HashSet< String >();
+		for ( final Point p : points )
+			set.add( p.toString() );
+		assertEquals( points.size(), set.size() );
+		return set;
+	}
+}
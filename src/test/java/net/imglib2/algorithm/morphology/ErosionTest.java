@@ -43,10 +43,13 @@ import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.util.Util;
@@ -240,4 +243,30 @@ public class ErosionTest
 		}
 	}
 
+	@Test
+	public void testErodeArrayImgMatchesCellImg()
+	{
+		// ArrayImg sources are read at precompiled index offsets, other images
+		// through neighborhood cursors.
+		final Img< UnsignedByteType > cells = new CellImgFactory< UnsignedByteType >( 7 ).create( ranImg, new UnsignedByteType() );
+		final Cursor< UnsignedByteType > in = Views.flatIterable( ranImg ).cursor();
+		for ( final UnsignedByteType t : Views.flatIterable( cells ) )
+			t.set( in.next() );
+
+		final long[] min = new long[ interval.numDimensions() ];
+		interval.min( min );
+		for ( final Shape shape : new Shape[] { diamondShape, new RectangleShape( 3, false ), new HyperSphereShape( 5 ) } )
+		{
+			final Img< UnsignedByteType > result1 = ranImg.factory().create( interval, ranImg.firstElement().copy() );
+			Erosion.erode( ranImg, Views.translate( result1, min ), shape, 2 );
+			final Img< UnsignedByteType > result2 = ranImg.factory().create( interval, ranImg.firstElement().copy() );
+			Erosion.erode( cells, Views.translate( result2, min ), shape, 2 );
+
+			final Cursor< UnsignedByteType > cursor1 = result1.cursor();
+			final Cursor< UnsignedByteType > cursor2 = result2.cursor();
+			while ( cursor1.hasNext() )
+				assertEquals( "Mismatch between ArrayImg and CellImg erosion.", cursor2.next().get(), cursor1.next().get() );
+		}
+	}
+
 }
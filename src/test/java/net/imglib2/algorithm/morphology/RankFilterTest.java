@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class RankFilterTest
+{
+	private static final Shape[] SHAPES = new Shape[] { new HyperSphereShape( 4 ), new DiamondShape( 2 ), new RectangleShape( 2, true ) };
+
+	@Test
+	public void testDilateErode()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 39, 27 );
+		final Random random = new Random( 3l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+
+		for ( final Shape shape : SHAPES )
+		{
+			assertImgEquals( Dilation.dilate( img, shape, 1 ), RankFilter.dilate( img, shape, 3 ) );
+			assertImgEquals( Erosion.erode( img, shape, 1 ), RankFilter.erode( img, shape, 3 ) );
+		}
+	}
+
+	@Test
+	public void testMedianAndPercentile()
+	{
+		final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( 23, 11, 7 );
+		final Random random = new Random( 4l );
+		for ( final UnsignedShortType t : img )
+			t.set( random.nextInt( 65536 ) );
+
+		for ( final Shape shape : SHAPES )
+		{
+			assertImgEquals( bruteForce( img, shape, 50 ), RankFilter.median( img, shape, 2 ) );
+			assertImgEquals( bruteForce( img, shape, 10 ), RankFilter.percentile( img, shape, 10, 2 ) );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testEmptyStructuringElement()
+	{
+		RankFilter.dilate( ArrayImgs.unsignedBytes( 5, 5 ), new RectangleShape( 0, true ), 1 );
+	}
+
+	private static < T extends IntegerType< T > > Img< T > bruteForce( final Img< T > img, final Shape shape, final double percentile )
+	{
+		final Img< T > target = img.factory().create( img, img.firstElement().createVariable() );
+		final RandomAccessible< Neighborhood< T > > neighborhoods = shape.neighborhoodsRandomAccessible( Views.extendMirrorSingle( img ) );
+		final RandomAccess< Neighborhood< T > > ra = neighborhoods.randomAccess();
+		final Cursor< T > c = target.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			ra.setPosition( c );
+			final Neighborhood< T > neighborhood = ra.get();
+			final long[] values = new long[ ( int ) neighborhood.size() ];
+			int i = 0;
+			for ( final T t : neighborhood )
+				values[ i++ ] = t.getIntegerLong();
+			Arrays.sort( values );
+			c.get().setInteger( values[ ( int ) Math.round( percentile / 100 * ( values.length - 1 ) ) ] );
+		}
+		return target;
+	}
+
+	private static < T extends IntegerType< T > > void assertImgEquals( final Img< T > expected, final Img< T > actual )
+	{
+		final Cursor< T > c = expected.localizingCursor();
+		final RandomAccess< T > ra = actual.randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			ra.setPosition( c );
+			assertEquals( c.get().getIntegerLong(), ra.get().getIntegerLong() );
+		}
+	}
+}
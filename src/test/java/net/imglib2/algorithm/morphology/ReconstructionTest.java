@@ -0,0 +1,217 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReconstructionTest
+{
+
+	private Img< UnsignedByteType > mask;
+
+	private Img< UnsignedByteType > marker;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		mask = ArrayImgs.unsignedBytes( 47l, 31l );
+		marker = ArrayImgs.unsignedBytes( 47l, 31l );
+		final Random ran = new Random( 1l );
+		final Cursor< UnsignedByteType > c1 = mask.cursor();
+		final Cursor< UnsignedByteType > c2 = marker.cursor();
+		while ( c1.hasNext() )
+		{
+			final int val = ran.nextInt( 256 );
+			c1.next().set( val );
+			c2.next().set( Math.max( 0, val - ran.nextInt( 128 ) ) );
+		}
+	}
+
+	@Test
+	public void testReconstructByDilation()
+	{
+		final Shape[] shapes = new Shape[] { new DiamondShape( 1 ), new RectangleShape( 1, false ), new RectangleShape( 2, false ) };
+		for ( final Shape shape : shapes )
+		{
+			final Img< UnsignedByteType > expected = iterateGeodesic( marker, mask, shape, true );
+			final Img< UnsignedByteType > result = Reconstruction.reconstructByDilation( marker, mask, shape );
+			assertImgEquals( expected, result );
+		}
+	}
+
+	@Test
+	public void testReconstructByErosion()
+	{
+		// Use the mask as marker and the marker as mask, so that marker >= mask.
+		final Shape[] shapes = new Shape[] { new DiamondShape( 1 ), new RectangleShape( 1, false ) };
+		for ( final Shape shape : shapes )
+		{
+			final Img< UnsignedByteType > expected = iterateGeodesic( mask, marker, shape, false );
+			final Img< UnsignedByteType > result = Reconstruction.reconstructByErosion( mask, marker, shape );
+			assertImgEquals( expected, result );
+		}
+	}
+
+	@Test
+	public void testFillHoles()
+	{
+		// A ring with a hole, and an open ring touching the border.
+		final Img< BitType > img = ArrayImgs.bits( 9l, 7l );
+		final RandomAccess< BitType > ra = img.randomAccess();
+		for ( int x = 1; x <= 5; x++ )
+			for ( int y = 1; y <= 5; y++ )
+				if ( x == 1 || x == 5 || y == 1 || y == 5 )
+				{
+					ra.setPosition( new int[] { x, y } );
+					ra.get().set( true );
+				}
+		for ( int y = 0; y <= 6; y++ )
+		{
+			ra.setPosition( new int[] { 7, y } );
+			ra.get().set( true );
+		}
+
+		final Img< BitType > filled = Reconstruction.fillHoles( img, new DiamondShape( 1 ) );
+		final Cursor< BitType > cursor = filled.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			final int x = cursor.getIntPosition( 0 );
+			final int y = cursor.getIntPosition( 1 );
+			final boolean expected = ( x >= 1 && x <= 5 && y >= 1 && y <= 5 ) || x == 7;
+			assertEquals( "Unexpected value at " + x + ", " + y, expected, cursor.get().get() );
+		}
+	}
+
+	@Test
+	public void testRegionalMaxima()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( new byte[] {
+				1, 1, 1, 1, 1, 1,
+				1, 5, 5, 1, 3, 1,
+				1, 5, 5, 1, 4, 1,
+				1, 1, 1, 1, 2, 1,
+				1, 2, 2, 1, 1, 1,
+		}, 6l, 5l );
+		final boolean[] expected = new boolean[] {
+				false, false, false, false, false, false,
+				false, true, true, false, false, false,
+				false, true, true, false, true, false,
+				false, false, false, false, false, false,
+				false, true, true, false, false, false,
+		};
+
+		final Img< BitType > maxima = Reconstruction.regionalMaxima( img, new DiamondShape( 1 ) );
+		int i = 0;
+		for ( final BitType t : maxima )
+			assertEquals( expected[ i++ ], t.get() );
+	}
+
+	@Test
+	public void testHMaxima()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( new byte[] { 0, 10, 0, 3, 0, 20, 18, 20, 0 }, 9l );
+		final Img< UnsignedByteType > result = Reconstruction.hMaxima( img, 5, new DiamondShape( 1 ) );
+		final int[] expected = new int[] { 0, 5, 0, 0, 0, 15, 15, 15, 0 };
+		int i = 0;
+		for ( final UnsignedByteType t : result )
+			assertEquals( expected[ i++ ], t.get() );
+	}
+
+	/**
+	 * Reference implementation: iterates geodesic dilations (or erosions)
+	 * until stability.
+	 */
+	private static Img< UnsignedByteType > iterateGeodesic( final Img< UnsignedByteType > marker, final Img< UnsignedByteType > mask, final Shape shape, final boolean byDilation )
+	{
+		Img< UnsignedByteType > current = marker.copy();
+		clip( current, mask, byDilation );
+		boolean changed = true;
+		while ( changed )
+		{
+			final Img< UnsignedByteType > next = byDilation ? Dilation.dilate( current, shape, 1 ) : Erosion.erode( current, shape, 1 );
+			clip( next, mask, byDilation );
+			changed = false;
+			final Cursor< UnsignedByteType > c1 = current.cursor();
+			final Cursor< UnsignedByteType > c2 = next.cursor();
+			while ( c1.hasNext() )
+				if ( c1.next().get() != c2.next().get() )
+				{
+					changed = true;
+					break;
+				}
+			current = next;
+		}
+		return current;
+	}
+
+	private static void clip( final Img< UnsignedByteType > img, final Img< UnsignedByteType > mask, final boolean byDilation )
+	{
+		final Cursor< UnsignedByteType > c1 = img.cursor();
+		final Cursor< UnsignedByteType > c2 = mask.cursor();
+		while ( c1.hasNext() )
+		{
+			final UnsignedByteType t = c1.next();
+			final int m = c2.next().get();
+			t.set( byDilation ? Math.min( t.get(), m ) : Math.max( t.get(), m ) );
+		}
+	}
+
+	private static void assertImgEquals( final Img< UnsignedByteType > expected, final Img< UnsignedByteType > actual )
+	{
+		final Cursor< UnsignedByteType > c1 = expected.localizingCursor();
+		final RandomAccess< UnsignedByteType > ra = actual.randomAccess();
+		while ( c1.hasNext() )
+		{
+			c1.fwd();
+			ra.setPosition( c1 );
+			assertEquals( c1.get().get(), ra.get().get() );
+		}
+	}
+}
@@ -35,6 +35,12 @@ package net.imglib2.algorithm.morphology;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.morphology.table2d.Branchpoints;
 import net.imglib2.algorithm.morphology.table2d.Bridge;
 import net.imglib2.algorithm.morphology.table2d.Clean;
@@ -45,12 +51,15 @@ import net.imglib2.algorithm.morphology.table2d.Life;
 import net.imglib2.algorithm.morphology.table2d.Majority;
 import net.imglib2.algorithm.morphology.table2d.Remove;
 import net.imglib2.algorithm.morphology.table2d.Spur;
+import net.imglib2.algorithm.morphology.table2d.Table2dExecutor;
 import net.imglib2.algorithm.morphology.table2d.Thicken;
 import net.imglib2.algorithm.morphology.table2d.Thin;
 import net.imglib2.algorithm.morphology.table2d.Vbreak;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.type.logic.BitType;
+import net.imglib2.view.Views;
 
 import org.junit.Test;
 
@@ -502,6 +511,82 @@ public class Table2dTest
 		assertImgEquals( expected, out );
 	}
 
+	@Test
+	public void testIterationPaths()
+	{
+		// Bit-packed rows spanning several words, compared between the
+		// bit-packed, the sliding window, and the neighborhood code paths.
+		final long[] dims = new long[] { 141, 23 };
+		final Img< BitType > in = ArrayImgs.bits( dims );
+		final Random random = new Random( 42l );
+		for ( final BitType px : in )
+			px.set( random.nextBoolean() );
+
+		final Img< BitType > packed = Life.life( in );
+		final Img< BitType > rows = ArrayImgs.bits( dims );
+		Life.life( Views.extendValue( in, new BitType( false ) ), rows );
+		final Img< BitType > cells = new CellImgFactory< BitType >( 5 ).create( dims, new BitType() );
+		Life.life( Views.extendValue( in, new BitType( false ) ), cells );
+
+		final Cursor< BitType > c = packed.localizingCursor();
+		final RandomAccess< BitType > r = rows.randomAccess();
+		final RandomAccess< BitType > n = cells.randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			r.setPosition( c );
+			n.setPosition( c );
+			assertEquals( n.get().get(), c.get().get() );
+			assertEquals( n.get().get(), r.get().get() );
+		}
+	}
+
+	@Test
+	public void testIterateToConvergence()
+	{
+		final long[] dims = new long[] { 131, 37 };
+		final Img< BitType > in = ArrayImgs.bits( dims );
+		final Random random = new Random( 17l );
+		for ( final BitType px : in )
+			px.set( random.nextInt( 4 ) != 0 );
+
+		// Reference: thin single-threaded until nothing changes.
+		Img< BitType > expected = in;
+		int iterations = 0;
+		while ( true )
+		{
+			final Img< BitType > next = Thin.thin( expected );
+			++iterations;
+			if ( countDifferences( expected, next ) == 0 )
+				break;
+			expected = next;
+		}
+
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		final Img< BitType > converged = Thin.thin( in, iterations + 10, service );
+		assertEquals( 0, countDifferences( expected, converged ) );
+
+		final Img< BitType > once = Thin.thin( in, 1, service );
+		assertEquals( 0, countDifferences( Thin.thin( in ), once ) );
+
+		final Img< BitType > target = ArrayImgs.bits( dims );
+		final long changes = Table2dExecutor.calculate( new Majority(), in, target, service );
+		assertEquals( countDifferences( in, Majority.majority( in ) ), changes );
+		assertEquals( 0, countDifferences( Majority.majority( in ), target ) );
+		service.shutdown();
+	}
+
+	private long countDifferences( final Img< BitType > a, final Img< BitType > b )
+	{
+		long count = 0;
+		final Cursor< BitType > ca = a.cursor();
+		final Cursor< BitType > cb = b.cursor();
+		while ( ca.hasNext() )
+			if ( ca.next().get() != cb.next().get() )
+				++count;
+		return count;
+	}
+
 	private Img< BitType > initImg( final boolean[] data, final long... dim )
 	{
 		final Img< BitType > img = ArrayImgs.bits( dim );
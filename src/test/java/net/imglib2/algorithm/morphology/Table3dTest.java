@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.morphology.table3d.Branchpoints;
+import net.imglib2.algorithm.morphology.table3d.Endpoints;
+import net.imglib2.algorithm.morphology.table3d.Thin;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Tests 3d morphology operations on 3x3x3 neighborhoods.
+ */
+public class Table3dTest
+{
+	@Test
+	public void testEndpointsAndBranchpoints()
+	{
+		// A cross in the XY plane, and a line along Z through its center.
+		final Img< BitType > in = ArrayImgs.bits( 7, 7, 7 );
+		final RandomAccess< BitType > ra = in.randomAccess();
+		for ( int i = 1; i <= 5; ++i )
+		{
+			set( ra, i, 3, 3 );
+			set( ra, 3, i, 3 );
+			set( ra, 3, 3, i );
+		}
+
+		final Img< BitType > endpoints = Endpoints.endpoints( in );
+		final Img< BitType > branchpoints = Branchpoints.branchpoints( in );
+		final Cursor< BitType > c = in.localizingCursor();
+		final RandomAccess< BitType > e = endpoints.randomAccess();
+		final RandomAccess< BitType > b = branchpoints.randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			e.setPosition( c );
+			b.setPosition( c );
+			final int neighbors = countNeighbors( ra, c.getIntPosition( 0 ), c.getIntPosition( 1 ), c.getIntPosition( 2 ) );
+			assertEquals( c.get().get() && neighbors == 1, e.get().get() );
+			assertEquals( c.get().get() && neighbors > 2, b.get().get() );
+		}
+	}
+
+	@Test
+	public void testThin()
+	{
+		final Img< BitType > in = ArrayImgs.bits( 11, 7, 7 );
+		final Cursor< BitType > c = in.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			final int x = c.getIntPosition( 0 );
+			final int y = c.getIntPosition( 1 );
+			final int z = c.getIntPosition( 2 );
+			c.get().set( x >= 1 && x <= 9 && y >= 1 && y <= 5 && z >= 1 && z <= 5 );
+		}
+
+		Img< BitType > expected = in;
+		while ( true )
+		{
+			final Img< BitType > next = Thin.thin( expected );
+			if ( countDifferences( expected, next ) == 0 )
+				break;
+			expected = next;
+		}
+		final Cursor< BitType > e = expected.localizingCursor();
+		while ( e.hasNext() )
+		{
+			e.fwd();
+			final int x = e.getIntPosition( 0 );
+			final int y = e.getIntPosition( 1 );
+			final int z = e.getIntPosition( 2 );
+			assertEquals( x >= 2 && x <= 8 && y == 4 && z == 3, e.get().get() );
+		}
+
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		final Img< BitType > converged = Thin.thin( in, 100, service );
+		service.shutdown();
+		assertEquals( 0, countDifferences( expected, converged ) );
+	}
+
+	@Test
+	public void testIterationPaths()
+	{
+		final long[] dims = new long[] { 21, 9, 13 };
+		final Img< BitType > in = ArrayImgs.bits( dims );
+		final Random random = new Random( 7l );
+		for ( final BitType px : in )
+			px.set( random.nextBoolean() );
+
+		final Img< BitType > packed = Branchpoints.branchpoints( in );
+		final Img< BitType > cells = new CellImgFactory< BitType >( 4 ).create( dims, new BitType() );
+		Branchpoints.branchpoints( Views.extendValue( in, new BitType( false ) ), cells );
+		assertEquals( 0, countDifferences( packed, cells ) );
+	}
+
+	private static int countNeighbors( final RandomAccess< BitType > ra, final int x, final int y, final int z )
+	{
+		int count = 0;
+		for ( int dz = -1; dz <= 1; ++dz )
+			for ( int dy = -1; dy <= 1; ++dy )
+				for ( int dx = -1; dx <= 1; ++dx )
+				{
+					final int[] pos = new int[] { x + dx, y + dy, z + dz };
+					if ( ( dx != 0 || dy != 0 || dz != 0 ) && min( pos ) >= 0 && max( pos ) < 7 )
+					{
+						ra.setPosition( pos );
+						if ( ra.get().get() )
+							++count;
+					}
+				}
+		return count;
+	}
+
+	private static int min( final int[] values )
+	{
+		return Math.min( values[ 0 ], Math.min( values[ 1 ], values[ 2 ] ) );
+	}
+
+	private static int max( final int[] values )
+	{
+		return Math.max( values[ 0 ], Math.max( values[ 1 ], values[ 2 ] ) );
+	}
+
+	private static void set( final RandomAccess< BitType > ra, final int x, final int y, final int z )
+	{
+		ra.setPosition( new int[] { x, y, z } );
+		ra.get().set( true );
+	}
+
+	private static long countDifferences( final Img< BitType > a, final Img< BitType > b )
+	{
+		long count = 0;
+		final Cursor< BitType > ca = a.localizingCursor();
+		final RandomAccess< BitType > rb = b.randomAccess();
+		while ( ca.hasNext() )
+		{
+			ca.fwd();
+			rb.setPosition( ca );
+			if ( ca.get().get() != rb.get().get() )
+				++count;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.morphology.distance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DistanceTransformTest
+{
+	private ExecutorService service;
+
+	@Before
+	public void setUp()
+	{
+		service = Executors.newFixedThreadPool( 4 );
+	}
+
+	@After
+	public void tearDown()
+	{
+		service.shutdown();
+	}
+
+	@Test
+	public void testBinaryTransform2D()
+	{
+		final Img< BitType > source = randomBits( new long[] { 37, 23 }, 0.02, 1l );
+		final double[] weights = new double[] { 1, 1 };
+		final Img< DoubleType > target = ArrayImgs.doubles( 37, 23 );
+		final Img< LongType > nearest = ArrayImgs.longs( 37, 23 );
+		DistanceTransform.binaryTransform( source, target, nearest, weights, false, service );
+		assertTransform( source, target, nearest, weights, false );
+	}
+
+	@Test
+	public void testAnisotropicTransform3D()
+	{
+		final Img< BitType > source = randomBits( new long[] { 13, 11, 7 }, 0.01, 2l );
+		final double[] weights = new double[] { 0.5, 1.0, 3.0 };
+		final Img< FloatType > target = ArrayImgs.floats( 13, 11, 7 );
+		final Img< LongType > nearest = ArrayImgs.longs( 13, 11, 7 );
+		DistanceTransform.binaryTransform( source, target, nearest, weights, true, service );
+		assertTransform( source, target, nearest, weights, true );
+	}
+
+	@Test
+	public void testNoFeatures()
+	{
+		final Img< BitType > source = ArrayImgs.bits( 5, 4 );
+		final Img< DoubleType > target = ArrayImgs.doubles( 5, 4 );
+		DistanceTransform.binaryTransform( source, target );
+		for ( final DoubleType t : target )
+			assertEquals( Double.POSITIVE_INFINITY, t.get(), 0 );
+	}
+
+	@Test
+	public void testDilateErode()
+	{
+		final long[] dims = new long[] { 31, 29 };
+		final Img< BitType > source = randomBits( dims, 0.05, 3l );
+		final double[] weights = new double[] { 1, 1 };
+		final double radius = 3.5;
+
+		final Img< BitType > dilated = ArrayImgs.bits( dims );
+		DistanceTransform.dilate( source, dilated, radius, weights, service );
+		final Img< BitType > eroded = ArrayImgs.bits( dims );
+		DistanceTransform.erode( dilated, eroded, radius, weights, service );
+
+		final Cursor< BitType > c = dilated.localizingCursor();
+		final RandomAccess< BitType > e = eroded.randomAccess();
+		final long[] pos = new long[ 2 ];
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.localize( pos );
+			e.setPosition( pos );
+			assertEquals( bruteForce( source, pos, weights, true ) <= radius * radius, c.get().get() );
+			assertEquals( bruteForce( dilated, pos, weights, false ) > radius * radius, e.get().get() );
+		}
+	}
+
+	private static Img< BitType > randomBits( final long[] dims, final double density, final long seed )
+	{
+		final Img< BitType > img = ArrayImgs.bits( dims );
+		final Random random = new Random( seed );
+		for ( final BitType t : img )
+			t.set( random.nextDouble() < density );
+		return img;
+	}
+
+	/**
+	 * Squared distance from pos to the nearest pixel with the given value.
+	 */
+	private static double bruteForce( final Img< BitType > img, final long[] pos, final double[] weights, final boolean value )
+	{
+		double min = Double.POSITIVE_INFINITY;
+		final Cursor< BitType > c = img.localizingCursor();
+		while ( c.hasNext() )
+			if ( c.next().get() == value )
+				min = Math.min( min, squaredDistance( c, pos, weights ) );
+		return min;
+	}
+
+	private static double squaredDistance( final Cursor< ? > c, final long[] pos, final double[] weights )
+	{
+		double sum = 0;
+		for ( int d = 0; d < pos.length; ++d )
+		{
+			final double diff = ( c.getLongPosition( d ) - pos[ d ] ) * weights[ d ];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	private static < T extends RealType< T > > void assertTransform( final Img< BitType > source, final Img< T > target, final Img< LongType > nearest, final double[] weights, final boolean squared )
+	{
+		final int n = source.numDimensions();
+		final long[] dims = new long[ n ];
+		source.dimensions( dims );
+		final long[] pos = new long[ n ];
+		final long[] featurePos = new long[ n ];
+		final RandomAccess< BitType > s = source.randomAccess();
+		final RandomAccess< LongType > idx = nearest.randomAccess();
+		final Cursor< T > c = target.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.localize( pos );
+			final double expected = bruteForce( source, pos, weights, true );
+			assertEquals( squared ? expected : Math.sqrt( expected ), c.get().getRealDouble(), 1e-4 );
+
+			idx.setPosition( pos );
+			IntervalIndexer.indexToPosition( idx.get().get(), dims, featurePos );
+			s.setPosition( featurePos );
+			assertTrue( s.get().get() );
+			double d2 = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				final double diff = ( featurePos[ d ] - pos[ d ] ) * weights[ d ];
+				d2 += diff * diff;
+			}
+			assertEquals( expected, d2, 1e-4 );
+		}
+	}
+}
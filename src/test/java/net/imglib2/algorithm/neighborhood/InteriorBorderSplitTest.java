@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.localextrema.LocalExtrema;
+import net.imglib2.algorithm.morphology.Dilation;
+import net.imglib2.algorithm.neighborhood.InteriorBorderSplit.RegionVisitor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class InteriorBorderSplitTest
+{
+	@Test
+	public void testSplitCoversTarget()
+	{
+		final Interval domain = new FinalInterval( new long[] { 0, 0, 0 }, new long[] { 9, 7, 5 } );
+		final Interval[] targets = new Interval[] {
+				domain,
+				new FinalInterval( new long[] { -2, 1, 0 }, new long[] { 11, 3, 5 } ),
+				new FinalInterval( new long[] { 3, 3, 2 }, new long[] { 5, 4, 3 } ),
+				new FinalInterval( new long[] { 0, 0, 0 }, new long[] { 1, 7, 5 } ) };
+		final Shape[] shapes = new Shape[] { new RectangleShape( 1, true ), new DiamondShape( 2 ), new HyperSphereShape( 3 ) };
+		for ( final Shape shape : shapes )
+		{
+			final NeighborhoodOffsets offsets = NeighborhoodOffsets.create( shape, 3 );
+			for ( final Interval target : targets )
+			{
+				final InteriorBorderSplit split = InteriorBorderSplit.create( target, domain, shape );
+				final long[] min = new long[ 3 ];
+				final long[] dims = new long[ 3 ];
+				target.min( min );
+				target.dimensions( dims );
+				final Img< IntType > count = ArrayImgs.ints( dims );
+				final RandomAccessible< IntType > counts = Views.translate( count, min );
+				if ( split.getInterior() != null )
+					mark( counts, split.getInterior(), offsets, domain, true );
+				for ( final Interval slab : split.getBorder() )
+					mark( counts, slab, offsets, domain, false );
+				for ( final IntType c : count )
+					assertEquals( 1, c.get() );
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyInterior()
+	{
+		final Interval domain = new FinalInterval( 4, 4 );
+		final InteriorBorderSplit split = InteriorBorderSplit.create( domain, domain, new RectangleShape( 2, false ) );
+		assertNull( split.getInterior() );
+		assertEquals( 1, split.getBorder().size() );
+		assertIntervalEquals( domain, split.getBorder().get( 0 ) );
+	}
+
+	@Test
+	public void testProcess()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 15, 12 );
+		final RandomAccessible< UnsignedByteType > extended = Views.extendBorder( img );
+		final List< Interval > interiors = new ArrayList< Interval >();
+		final List< Interval > borders = new ArrayList< Interval >();
+		InteriorBorderSplit.process( extended, img, new RectangleShape( 1, false ), new RegionVisitor< UnsignedByteType >()
+		{
+			@Override
+			public void visit( final RandomAccessible< UnsignedByteType > source, final Interval region, final boolean interior )
+			{
+				if ( interior )
+				{
+					assertSame( img, source );
+					interiors.add( region );
+				}
+				else
+				{
+					assertSame( extended, source );
+					borders.add( region );
+				}
+			}
+		} );
+		assertEquals( 1, interiors.size() );
+		assertIntervalEquals( Intervals.expand( img, -1 ), interiors.get( 0 ) );
+		assertEquals( 4, borders.size() );
+
+		// Without an extended source, the target is visited as a whole.
+		interiors.clear();
+		borders.clear();
+		InteriorBorderSplit.process( img, img, new RectangleShape( 1, false ), new RegionVisitor< UnsignedByteType >()
+		{
+			@Override
+			public void visit( final RandomAccessible< UnsignedByteType > source, final Interval region, final boolean interior )
+			{
+				assertFalse( interior );
+				borders.add( region );
+			}
+		} );
+		assertEquals( 1, borders.size() );
+		assertIntervalEquals( img, borders.get( 0 ) );
+	}
+
+	@Test
+	public void testDilationMatchesUnsplit()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 23, 17 );
+		final Random random = new Random( 1l );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+		final Shape shape = new DiamondShape( 2 );
+
+		// Dilation.dilate( Img, ... ) splits the extended source.
+		final Img< UnsignedByteType > split = Dilation.dilate( img, shape, 2 );
+
+		final UnsignedByteType minVal = new UnsignedByteType( 0 );
+		final Img< UnsignedByteType > unsplit = img.factory().create( img, minVal );
+		final RandomAccessible< UnsignedByteType > extended = Views.interval( Views.extendValue( img, minVal ), Intervals.expand( img, 2 ) );
+		Dilation.dilate( extended, unsplit, shape, minVal, 2 );
+
+		final Cursor< UnsignedByteType > c1 = split.cursor();
+		final Cursor< UnsignedByteType > c2 = unsplit.cursor();
+		while ( c1.hasNext() )
+			assertEquals( c2.next().get(), c1.next().get() );
+	}
+
+	@Test
+	public void testLocalExtremaOnBorder()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( new byte[] {
+				9, 1, 1, 1, 1,
+				1, 1, 1, 1, 1,
+				1, 1, 7, 1, 1,
+				1, 1, 1, 1, 8 }, 5, 4 );
+		final ExecutorService service = Executors.newFixedThreadPool( 2 );
+		final List< Point > maxima = LocalExtrema.findLocalExtrema( Views.extendBorder( img ), img, new LocalExtrema.MaximumCheck< UnsignedByteType >( new UnsignedByteType( 2 ) ), new RectangleShape( 1, true ), service );
+		service.shutdown();
+		assertEquals( 3, maxima.size() );
+		final List< String > positions = new ArrayList< String >();
+		for ( final Point p : maxima )
+			positions.add( p.getLongPosition( 0 ) + "," + p.getLongPosition( 1 ) );
+		assertTrue( positions.contains( "0,0" ) );
+		assertTrue( positions.contains( "2,2" ) );
+		assertTrue( positions.contains( "4,3" ) );
+	}
+
+	/**
+	 * Increments the count of every pixel of {@code region}, after checking
+	 * that its neighborhood lies within {@code domain} if and only if
+	 * {@code interior}.
+	 */
+	private static void mark( final RandomAccessible< IntType > counts, final Interval region, final NeighborhoodOffsets offsets, final Interval domain, final boolean interior )
+	{
+		final int n = region.numDimensions();
+		final Cursor< IntType > c = Views.interval( counts, region ).localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			boolean inside = true;
+			for ( int d = 0; d < n; ++d )
+			{
+				final long x = c.getLongPosition( d );
+				inside &= x + offsets.min( d ) >= domain.min( d ) && x + offsets.max( d ) <= domain.max( d );
+			}
+			assertEquals( interior, inside );
+			c.get().inc();
+		}
+	}
+
+	private static void assertIntervalEquals( final Interval expected, final Interval actual )
+	{
+		assertEquals( expected.numDimensions(), actual.numDimensions() );
+		for ( int d = 0; d < expected.numDimensions(); ++d )
+		{
+			assertEquals( expected.min( d ), actual.min( d ) );
+			assertEquals( expected.max( d ), actual.max( d ) );
+		}
+	}
+}
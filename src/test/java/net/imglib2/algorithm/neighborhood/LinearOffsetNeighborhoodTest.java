@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class LinearOffsetNeighborhoodTest
+{
+	private static final Shape[] SHAPES = new Shape[] {
+			new RectangleShape( 2, false ),
+			new RectangleShape( 1, true ),
+			new HyperSphereShape( 2 ),
+			new DiamondShape( 2 ) };
+
+	private static final long[] DIMS = new long[] { 13, 11, 9 };
+
+	@Test
+	public void testWrapsArrayImgsOnly()
+	{
+		final Img< IntType > array = ArrayImgs.ints( DIMS );
+		final Img< IntType > cell = new CellImgFactory< IntType >( 5 ).create( DIMS, new IntType() );
+		for ( final Shape shape : SHAPES )
+		{
+			assertTrue( shape.neighborhoodsRandomAccessible( array ).randomAccess().get() instanceof LinearOffsetNeighborhood );
+			assertFalse( shape.neighborhoodsRandomAccessible( cell ).randomAccess().get() instanceof LinearOffsetNeighborhood );
+			assertFalse( shape.neighborhoodsRandomAccessibleSafe( array ).randomAccess().get() instanceof LinearOffsetNeighborhood );
+		}
+	}
+
+	@Test
+	public void testRandomAccessMatchesSafeNeighborhoods()
+	{
+		final Img< IntType > img = createImg();
+		final long[] pos = new long[ 3 ];
+		for ( final Shape shape : SHAPES )
+		{
+			final RandomAccess< Neighborhood< IntType > > unsafe = shape.neighborhoodsRandomAccessible( img ).randomAccess();
+			final RandomAccess< Neighborhood< IntType > > safe = shape.neighborhoodsRandomAccessibleSafe( img ).randomAccess();
+			for ( pos[ 2 ] = 2; pos[ 2 ] < DIMS[ 2 ] - 2; ++pos[ 2 ] )
+				for ( pos[ 1 ] = 2; pos[ 1 ] < DIMS[ 1 ] - 2; ++pos[ 1 ] )
+					for ( pos[ 0 ] = 2; pos[ 0 ] < DIMS[ 0 ] - 2; ++pos[ 0 ] )
+					{
+						unsafe.setPosition( pos );
+						safe.setPosition( pos );
+						assertNeighborhoodEquals( safe.get(), unsafe.get() );
+					}
+
+			// Moving the sampler relatively must move the neighborhood as well.
+			unsafe.setPosition( new long[] { 2, 2, 2 } );
+			safe.setPosition( new long[] { 2, 2, 2 } );
+			unsafe.fwd( 0 );
+			safe.fwd( 0 );
+			unsafe.move( 3, 1 );
+			safe.move( 3, 1 );
+			assertNeighborhoodEquals( safe.get(), unsafe.get() );
+		}
+	}
+
+	@Test
+	public void testCursorMatchesSafeNeighborhoods()
+	{
+		final Img< IntType > img = createImg();
+		final FinalInterval interior = new FinalInterval( new long[] { 2, 2, 2 }, new long[] { DIMS[ 0 ] - 3, DIMS[ 1 ] - 3, DIMS[ 2 ] - 3 } );
+		for ( final Shape shape : SHAPES )
+		{
+			final Cursor< Neighborhood< IntType > > unsafe = shape.neighborhoods( Views.interval( img, interior ) ).cursor();
+			final Cursor< Neighborhood< IntType > > safe = shape.neighborhoodsSafe( Views.interval( img, interior ) ).cursor();
+			while ( safe.hasNext() )
+				assertNeighborhoodEquals( safe.next(), unsafe.next() );
+			assertFalse( unsafe.hasNext() );
+		}
+	}
+
+	@Test
+	public void testCursorCopyAndFirstElement()
+	{
+		final Img< IntType > img = createImg();
+		final RandomAccess< Neighborhood< IntType > > ra = new RectangleShape( 1, false ).neighborhoodsRandomAccessible( img ).randomAccess();
+		ra.setPosition( new long[] { 5, 4, 3 } );
+		final Neighborhood< IntType > neighborhood = ra.get();
+		assertEquals( index( 4, 3, 2 ), neighborhood.firstElement().get() );
+
+		final Cursor< IntType > c = neighborhood.cursor();
+		// the center is the 14th of 27 elements
+		c.jumpFwd( 14 );
+		assertEquals( index( 5, 4, 3 ), c.get().get() );
+		final Cursor< IntType > copy = c.copyCursor();
+		assertEquals( index( 5, 4, 3 ), copy.get().get() );
+		copy.fwd();
+		assertEquals( index( 6, 4, 3 ), copy.get().get() );
+		assertEquals( index( 5, 4, 3 ), c.get().get() );
+	}
+
+	private static Img< IntType > createImg()
+	{
+		final Img< IntType > img = ArrayImgs.ints( DIMS );
+		int i = 0;
+		for ( final IntType t : img )
+			t.set( i++ );
+		return img;
+	}
+
+	private static int index( final long x, final long y, final long z )
+	{
+		return ( int ) ( x + DIMS[ 0 ] * ( y + DIMS[ 1 ] * z ) );
+	}
+
+	private static void assertNeighborhoodEquals( final Neighborhood< IntType > expected, final Neighborhood< IntType > actual )
+	{
+		assertEquals( expected.size(), actual.size() );
+		for ( int d = 0; d < 3; ++d )
+		{
+			assertEquals( expected.getLongPosition( d ), actual.getLongPosition( d ) );
+			assertEquals( expected.min( d ), actual.min( d ) );
+			assertEquals( expected.max( d ), actual.max( d ) );
+		}
+		// Iterate twice, to check that the reused cursor is reset.
+		for ( int k = 0; k < 2; ++k )
+		{
+			final Cursor< IntType > e = expected.localizingCursor();
+			final Cursor< IntType > a = actual.localizingCursor();
+			while ( e.hasNext() )
+			{
+				assertTrue( a.hasNext() );
+				assertEquals( e.next().get(), a.next().get() );
+				for ( int d = 0; d < 3; ++d )
+					assertEquals( e.getLongPosition( d ), a.getLongPosition( d ) );
+			}
+			assertFalse( a.hasNext() );
+		}
+	}
+}
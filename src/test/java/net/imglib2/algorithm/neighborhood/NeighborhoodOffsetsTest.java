@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class NeighborhoodOffsetsTest
+{
+	private static final Shape[] SHAPES = new Shape[] {
+			new RectangleShape( 2, false ),
+			new RectangleShape( 1, true ),
+			new HyperSphereShape( 3 ),
+			new DiamondShape( 2 ),
+			new PeriodicLineShape( 2, new int[] { -2, 1, 0 } ) };
+
+	@Test
+	public void testOffsetsMatchNeighborhoodCursor()
+	{
+		final long[] dims = new long[] { 21, 19, 17 };
+		final long[] center = new long[] { 10, 9, 8 };
+		final ArrayImg< IntType, IntArray > img = ArrayImgs.ints( dims );
+		int value = 0;
+		for ( final IntType t : img )
+			t.set( value++ );
+		final int[] data = img.update( null ).getCurrentStorageArray();
+		final int centerIndex = ( int ) ( center[ 0 ] + dims[ 0 ] * ( center[ 1 ] + dims[ 1 ] * center[ 2 ] ) );
+
+		for ( final Shape shape : SHAPES )
+		{
+			final NeighborhoodOffsets offsets = NeighborhoodOffsets.create( shape, 3 );
+			final RandomAccess< Neighborhood< IntType > > ra = shape.neighborhoodsRandomAccessible( img ).randomAccess();
+			ra.setPosition( center );
+			final Neighborhood< IntType > neighborhood = ra.get();
+			assertEquals( neighborhood.size(), offsets.size() );
+
+			final int[] indexOffsets = offsets.getIndexOffsets( img );
+			final Cursor< IntType > c = neighborhood.localizingCursor();
+			int i = 0;
+			while ( c.hasNext() )
+			{
+				c.fwd();
+				for ( int d = 0; d < 3; ++d )
+					assertEquals( c.getLongPosition( d ) - center[ d ], offsets.getOffset( i, d ) );
+				assertEquals( c.get().get(), data[ centerIndex + indexOffsets[ i ] ] );
+				++i;
+			}
+
+			final NeighborhoodOffsets withoutCenter = offsets.withoutCenter();
+			for ( int j = 0; j < withoutCenter.size(); ++j )
+				assertFalse( withoutCenter.isCenter( j ) );
+		}
+	}
+
+	@Test
+	public void testExtent()
+	{
+		final NeighborhoodOffsets offsets = NeighborhoodOffsets.create( new HyperSphereShape( 3 ), 2 );
+		for ( int d = 0; d < 2; ++d )
+		{
+			assertEquals( -3, offsets.min( d ) );
+			assertEquals( 3, offsets.max( d ) );
+		}
+		assertEquals( 28, offsets.withoutCenter().size() );
+	}
+
+	@Test
+	public void testIndexOffsetsInArrayImg()
+	{
+		final ArrayImg< IntType, IntArray > img = ArrayImgs.ints( 20, 20 );
+		final NeighborhoodOffsets offsets = NeighborhoodOffsets.create( new RectangleShape( 2, false ), 2 );
+		assertArrayEquals( offsets.getIndexOffsets( img ), offsets.getIndexOffsets( img, Intervals.createMinMax( 2, 2, 17, 17 ) ) );
+		assertNull( offsets.getIndexOffsets( img, Intervals.createMinMax( 1, 2, 17, 17 ) ) );
+		assertNull( offsets.getIndexOffsets( img, Intervals.createMinMax( 2, 2, 17, 18 ) ) );
+		assertNull( offsets.getIndexOffsets( Views.extendBorder( img ), Intervals.createMinMax( 2, 2, 17, 17 ) ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testIndexOffsetOverflow()
+	{
+		final NeighborhoodOffsets offsets = NeighborhoodOffsets.create( new RectangleShape( 1, false ), 3 );
+		offsets.getIndexOffsets( new long[] { 100000, 100000, 10 } );
+	}
+}
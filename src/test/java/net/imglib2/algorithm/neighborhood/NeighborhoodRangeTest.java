@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.neighborhood.NeighborhoodRange.RangeProcessor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class NeighborhoodRangeTest
+{
+	private static final Shape[] SHAPES = new Shape[] {
+			new RectangleShape( 1, false ),
+			new HyperSphereShape( 2 ),
+			new DiamondShape( 1 ) };
+
+	@Test
+	public void testSplitCoversAllNeighborhoods()
+	{
+		final Img< IntType > img = ArrayImgs.ints( 17, 13, 5 );
+		final Img< IntType > visits = ArrayImgs.ints( 17, 13, 5 );
+		for ( final Shape shape : SHAPES )
+		{
+			for ( final IntType t : visits )
+				t.setZero();
+			final IterableInterval< Neighborhood< IntType > > neighborhoods = shape.neighborhoods( Views.interval( Views.extendZero( img ), img ) );
+			final List< NeighborhoodRange< IntType > > ranges = NeighborhoodRange.create( neighborhoods ).split( 7 );
+			assertEquals( 7, ranges.size() );
+
+			long expectedFrom = 0;
+			final RandomAccess< IntType > ra = visits.randomAccess();
+			for ( final NeighborhoodRange< IntType > range : ranges )
+			{
+				assertEquals( expectedFrom, range.getFrom() );
+				expectedFrom = range.getTo();
+
+				// The range must start where a sequential cursor would be.
+				final Cursor< Neighborhood< IntType > > sequential = neighborhoods.cursor();
+				sequential.jumpFwd( range.getFrom() );
+				final Cursor< Neighborhood< IntType > > c = range.cursor();
+				for ( long i = 0; i < range.size(); ++i )
+				{
+					sequential.fwd();
+					final Neighborhood< IntType > neighborhood = c.next();
+					for ( int d = 0; d < 3; ++d )
+						assertEquals( sequential.getLongPosition( d ), neighborhood.getLongPosition( d ) );
+					ra.setPosition( neighborhood );
+					ra.get().inc();
+				}
+			}
+			assertEquals( neighborhoods.size(), expectedFrom );
+			for ( final IntType t : visits )
+				assertEquals( 1, t.get() );
+		}
+	}
+
+	@Test
+	public void testTrySplit()
+	{
+		final Img< IntType > img = ArrayImgs.ints( 3 );
+		final NeighborhoodRange< IntType > range = NeighborhoodRange.create( new RectangleShape( 1, false ).neighborhoods( img ) );
+		final NeighborhoodRange< IntType > prefix = range.trySplit();
+		assertEquals( 0, prefix.getFrom() );
+		assertEquals( 1, prefix.getTo() );
+		assertEquals( 1, range.getFrom() );
+		assertEquals( 3, range.getTo() );
+		assertNull( prefix.trySplit() );
+		assertEquals( 1, range.trySplit().size() );
+		assertEquals( 1, range.size() );
+		assertNull( range.trySplit() );
+	}
+
+	@Test
+	public void testForEach()
+	{
+		final Img< IntType > img = ArrayImgs.ints( 31, 29 );
+		int i = 0;
+		for ( final IntType t : img )
+			t.set( i++ % 7 );
+
+		final Shape shape = new RectangleShape( 2, false );
+		final IterableInterval< Neighborhood< IntType > > neighborhoods = shape.neighborhoods( Views.interval( Views.extendMirrorSingle( img ), img ) );
+		long expected = 0;
+		for ( final Neighborhood< IntType > neighborhood : neighborhoods )
+			for ( final IntType t : neighborhood )
+				expected += t.get();
+
+		final AtomicLong sum = new AtomicLong();
+		final ExecutorService service = Executors.newFixedThreadPool( 3 );
+		NeighborhoodRange.forEach( neighborhoods, new RangeProcessor< IntType >()
+		{
+			@Override
+			public void process( final NeighborhoodRange< IntType > range )
+			{
+				final Cursor< Neighborhood< IntType > > c = range.cursor();
+				long s = 0;
+				for ( long k = 0; k < range.size(); ++k )
+					for ( final IntType t : c.next() )
+						s += t.get();
+				sum.addAndGet( s );
+			}
+		}, 12, service );
+		service.shutdown();
+		assertEquals( expected, sum.get() );
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.algorithm.region.hypersphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class HyperSphereSpansTest
+{
+	@Test
+	public void testSharedInstances()
+	{
+		assertSame( HyperSphereSpans.get( 3, 5 ), HyperSphereSpans.get( 3, 5 ) );
+		assertFalse( HyperSphereSpans.get( 3, 5 ) == HyperSphereSpans.get( 2, 5 ) );
+		assertEquals( 0, HyperSphereSpans.get( 2, -1 ).size() );
+	}
+
+	@Test
+	public void testCursorMatchesReference()
+	{
+		for ( int n = 1; n <= 3; ++n )
+		{
+			final long[] dims = new long[ n ];
+			final long[] center = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				dims[ d ] = 21;
+				center[ d ] = 10 - d;
+			}
+			final Img< FloatType > img = ArrayImgs.floats( dims );
+			for ( long radius = 0; radius <= 8; ++radius )
+			{
+				final List< long[] > expected = reference( center, radius );
+				final HyperSphereCursor< FloatType > cursor = new HyperSphereCursor< FloatType >( img, center, radius );
+				final long[] pos = new long[ n ];
+				for ( final long[] e : expected )
+				{
+					assertTrue( cursor.hasNext() );
+					cursor.fwd();
+					cursor.localize( pos );
+					for ( int d = 0; d < n; ++d )
+						assertEquals( e[ d ], pos[ d ] );
+				}
+				assertFalse( cursor.hasNext() );
+				assertEquals( expected.size(), new HyperSphere< FloatType >( img, new Point( center ), radius ).size() );
+			}
+		}
+	}
+
+	@Test
+	public void testJumpFwd()
+	{
+		final Img< FloatType > img = ArrayImgs.floats( 31, 31 );
+		final long[] center = new long[] { 15, 15 };
+		final long size = HyperSphereSpans.get( 2, 9 ).size();
+		for ( long steps = 0; steps < size; steps += 7 )
+		{
+			final HyperSphereCursor< FloatType > sequential = new HyperSphereCursor< FloatType >( img, center, 9 );
+			for ( long i = 0; i < steps; ++i )
+				sequential.fwd();
+			final HyperSphereCursor< FloatType > jumped = new HyperSphereCursor< FloatType >( img, center, 9 );
+			jumped.jumpFwd( steps );
+			while ( sequential.hasNext() )
+			{
+				assertTrue( jumped.hasNext() );
+				sequential.fwd();
+				jumped.fwd();
+				assertEquals( sequential.getLongPosition( 0 ), jumped.getLongPosition( 0 ) );
+				assertEquals( sequential.getLongPosition( 1 ), jumped.getLongPosition( 1 ) );
+			}
+			assertFalse( jumped.hasNext() );
+		}
+	}
+
+	@Test
+	public void testNeighborhoodMatchesCursor()
+	{
+		final Img< FloatType > img = ArrayImgs.floats( 23, 21, 19 );
+		final long[] center = new long[] { 11, 10, 9 };
+		for ( long radius = 0; radius <= 6; ++radius )
+		{
+			final RandomAccess< Neighborhood< FloatType > > ra = new HyperSphereShape( radius ).neighborhoodsRandomAccessibleSafe( img ).randomAccess();
+			ra.setPosition( center );
+			final Neighborhood< FloatType > neighborhood = ra.get();
+			final Cursor< FloatType > nc = neighborhood.localizingCursor();
+			final HyperSphereCursor< FloatType > cursor = new HyperSphereCursor< FloatType >( img, center, radius );
+			assertEquals( HyperSphereSpans.get( 3, radius ).size(), neighborhood.size() );
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				nc.fwd();
+				for ( int d = 0; d < 3; ++d )
+					assertEquals( cursor.getLongPosition( d ), nc.getLongPosition( d ) );
+			}
+			assertFalse( nc.hasNext() );
+		}
+	}
+
+	@Test
+	public void testSumsAndMeans()
+	{
+		final Img< FloatType > img = ArrayImgs.floats( 64, 48 );
+		final Random random = new Random( 1l );
+		for ( final FloatType t : img )
+			t.set( random.nextInt( 100 ) );
+		final List< Point > centers = new ArrayList< Point >();
+		for ( int i = 0; i < 200; ++i )
+			centers.add( new Point( random.nextInt( 64 ), random.nextInt( 48 ) ) );
+
+		final long radius = 4;
+		final ExecutorService service = Executors.newFixedThreadPool( 3 );
+		final double[] sums = HyperSphereSums.sums( Views.extendZero( img ), centers, radius, service );
+		final double[] means = HyperSphereSums.means( Views.extendZero( img ), centers, radius, service );
+		service.shutdown();
+
+		final long size = HyperSphereSpans.get( 2, radius ).size();
+		for ( int i = 0; i < centers.size(); ++i )
+		{
+			double expected = 0;
+			for ( final FloatType t : new HyperSphere< FloatType >( Views.extendZero( img ), centers.get( i ), radius ) )
+				expected += t.get();
+			assertEquals( expected, sums[ i ], 0 );
+			assertEquals( expected / size, means[ i ], 1e-9 );
+		}
+	}
+
+	/**
+	 * The pixels of a sphere, enumerated as {@link HyperSphereCursor} did
+	 * before it used span tables: along dimension 0, with the extent of each
+	 * line computed from the extents of the enclosing cross sections.
+	 */
+	private static List< long[] > reference( final long[] center, final long radius )
+	{
+		final List< long[] > positions = new ArrayList< long[] >();
+		reference( center.length - 1, radius, center, center.clone(), positions );
+		return positions;
+	}
+
+	private static void reference( final int d, final double rd, final long[] center, final long[] pos, final List< long[] > positions )
+	{
+		final long ri = ( long ) rd;
+		for ( long p = -ri; p <= ri; ++p )
+		{
+			pos[ d ] = center[ d ] + p;
+			if ( d == 0 )
+				positions.add( pos.clone() );
+			else
+				reference( d - 1, Math.sqrt( rd * rd - p * p ), center, pos, positions );
+		}
+	}
+}
@@ -40,11 +40,17 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.imglib2.Cursor;
 import net.imglib2.algorithm.labeling.AllConnectedComponents;
+import net.imglib2.algorithm.labeling.ConnectedComponents;
+import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.labeling.LabelingType;
 import net.imglib2.labeling.NativeImgLabeling;
 import net.imglib2.type.logic.BitType;
@@ -204,4 +210,51 @@ public class AllConnectedComponentsTest
 		test2D( input, expected, strel, 1, 0 );
 
 	}
+
+	@Test
+	public void testRandom()
+	{
+		// components must match ConnectedComponents, and names must be
+		// dispensed in flat iteration order
+		final long[] dimensions = new long[] { 37, 29, 17 };
+		final Random random = new Random( 1l );
+		final Img< BitType > image = ArrayImgs.bits( dimensions );
+		for ( final BitType t : image )
+			t.set( random.nextInt( 3 ) == 0 );
+		final NativeImgLabeling< Integer, IntType > labeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		AllConnectedComponents.labelAllConnectedComponents( labeling, image, AllConnectedComponents.getIntegerNames( 1 ), AllConnectedComponents.getStructuringElement( 3 ), service );
+		service.shutdown();
+
+		final Img< IntType > expected = ArrayImgs.ints( dimensions );
+		final Img< IntType > input = ArrayImgs.ints( dimensions );
+		final Cursor< BitType > ic = image.cursor();
+		for ( final IntType t : input )
+			t.set( ic.next().get() ? 1 : 0 );
+		final int numComponents = ConnectedComponents.labelAllConnectedComponents( input, expected, ConnectedComponents.StructuringElement.EIGHT_CONNECTED );
+
+		final HashMap< Integer, Integer > map = new HashMap< Integer, Integer >();
+		final Cursor< IntType > ec = expected.cursor();
+		final Cursor< LabelingType< Integer > > lc = labeling.cursor();
+		int next = 1;
+		while ( ec.hasNext() )
+		{
+			final int e = ec.next().get();
+			final List< Integer > labels = lc.next().getLabeling();
+			if ( e == 0 )
+			{
+				assertEquals( 0, labels.size() );
+				continue;
+			}
+			assertEquals( 1, labels.size() );
+			final Integer value = labels.get( 0 );
+			if ( !map.containsKey( value ) )
+			{
+				assertEquals( next++, value.intValue() );
+				map.put( value, e );
+			}
+			assertEquals( map.get( value ).intValue(), e );
+		}
+		assertEquals( numComponents, map.size() );
+	}
 }
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.algorithm.labeling.ConcurrentUnionFind;
+
+import org.junit.Test;
+
+public class ConcurrentUnionFindTest
+{
+	@Test
+	public void testFlattenOrder()
+	{
+		final ConcurrentUnionFind uf = new ConcurrentUnionFind( 8 );
+		uf.union( 5, 2 );
+		uf.union( 7, 3 );
+		uf.union( 3, 5 );
+		uf.union( 6, 4 );
+		assertEquals( 2, uf.find( 7 ) );
+		assertEquals( 4, uf.find( 6 ) );
+
+		final ExecutorService service = Executors.newFixedThreadPool( 3 );
+		final int[] ids = new int[ 8 ];
+		final int numSets = uf.flatten( ids, service, 3 );
+		service.shutdown();
+
+		assertEquals( 4, numSets );
+		final int[] expected = new int[] { 0, 1, 2, 2, 3, 2, 3, 2 };
+		for ( int i = 0; i < 8; ++i )
+			assertEquals( expected[ i ], ids[ i ] );
+	}
+
+	@Test
+	public void testConcurrentUnions() throws Exception
+	{
+		final int size = 10000;
+		final int numThreads = 4;
+		final int[][] pairs = new int[ numThreads ][];
+		final Random random = new Random( 1l );
+		final int[] reference = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			reference[ i ] = i;
+		for ( int t = 0; t < numThreads; ++t )
+		{
+			pairs[ t ] = new int[ 2 * 2000 ];
+			for ( int i = 0; i < pairs[ t ].length; i += 2 )
+			{
+				final int a = random.nextInt( size );
+				final int b = random.nextInt( size );
+				pairs[ t ][ i ] = a;
+				pairs[ t ][ i + 1 ] = b;
+				// naive reference: relabel the larger set id to the smaller
+				final int ra = reference[ a ];
+				final int rb = reference[ b ];
+				if ( ra != rb )
+				{
+					final int from = Math.max( ra, rb );
+					final int to = Math.min( ra, rb );
+					for ( int j = 0; j < size; ++j )
+						if ( reference[ j ] == from )
+							reference[ j ] = to;
+				}
+			}
+		}
+
+		final ConcurrentUnionFind uf = new ConcurrentUnionFind( size );
+		final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+		for ( int t = 0; t < numThreads; ++t )
+		{
+			final int[] p = pairs[ t ];
+			futures.add( service.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					for ( int i = 0; i < p.length; i += 2 )
+						uf.union( p[ i ], p[ i + 1 ] );
+					return null;
+				}
+			} ) );
+		}
+		for ( final Future< Void > future : futures )
+			future.get();
+		service.shutdown();
+
+		for ( int i = 0; i < size; ++i )
+			assertEquals( reference[ i ], uf.find( i ) );
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests.labeling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.algorithm.labeling.ConnectedComponents;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
+
+/**
+ * Compares the run times of {@link StructuringElement#EIGHT_CONNECTED} and
+ * {@link StructuringElement#EIGHT_CONNECTED_BLOCKS} labeling on random 2D and
+ * 3D binary images. Run as a Java application, it is not a unit test.
+ * <p>
+ * Images are generated with a fixed seed, so runs on the same machine are
+ * repeatable. Before timing, the labelings of both structuring elements are
+ * checked to describe the same components. For every image and structuring
+ * element, the minimum and median of {@code runs} timed runs (default 10,
+ * after as many warm-up runs) are printed as one tab-separated line.
+ * <p>
+ * Usage: {@code ConnectedComponentsBenchmark [runs [numThreads]]}
+ */
+public class ConnectedComponentsBenchmark
+{
+	private static final long[][] DIMENSIONS = new long[][] { { 2048, 2048 }, { 256, 256, 256 } };
+
+	private static final double[] DENSITIES = new double[] { 0.1, 0.5, 0.9 };
+
+	private static final StructuringElement[] STRUCTURING_ELEMENTS = new StructuringElement[] { StructuringElement.EIGHT_CONNECTED, StructuringElement.EIGHT_CONNECTED_BLOCKS };
+
+	public static void main( final String[] args )
+	{
+		final int runs = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 10;
+		final int numThreads = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : Runtime.getRuntime().availableProcessors();
+		final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+		System.out.println( "image\tdensity\tstructuring element\tthreads\tmin [ms]\tmedian [ms]" );
+		for ( final long[] dimensions : DIMENSIONS )
+		{
+			for ( final double density : DENSITIES )
+			{
+				final Img< BitType > image = ArrayImgs.bits( dimensions );
+				final Random random = new Random( 1l );
+				for ( final BitType t : image )
+					t.set( random.nextDouble() < density );
+
+				final List< Img< IntType > > results = new ArrayList< Img< IntType > >();
+				for ( final StructuringElement se : STRUCTURING_ELEMENTS )
+				{
+					final Img< IntType > labels = ArrayImgs.ints( dimensions );
+					run( image, labels, se, service );
+					results.add( labels );
+				}
+				for ( int i = 1; i < results.size(); ++i )
+					if ( !isSamePartition( results.get( 0 ), results.get( i ) ) )
+						throw new IllegalStateException( STRUCTURING_ELEMENTS[ i ] + " labeling differs from " + STRUCTURING_ELEMENTS[ 0 ] );
+
+				for ( int s = 0; s < STRUCTURING_ELEMENTS.length; ++s )
+				{
+					final StructuringElement se = STRUCTURING_ELEMENTS[ s ];
+					final Img< IntType > labels = results.get( s );
+					for ( int i = 0; i < runs; ++i )
+						run( image, labels, se, service );
+					final long[] times = new long[ runs ];
+					for ( int i = 0; i < runs; ++i )
+						times[ i ] = run( image, labels, se, service );
+					Arrays.sort( times );
+					System.out.println( String.format( Locale.ROOT, "%s\t%.1f\t%s\t%d\t%.1f\t%.1f",
+							dimensionsString( dimensions ), density, se, numThreads, times[ 0 ] / 1e6, times[ runs / 2 ] / 1e6 ) );
+				}
+			}
+		}
+		service.shutdown();
+	}
+
+	private static long run( final Img< BitType > image, final Img< IntType > labels, final StructuringElement se, final ExecutorService service )
+	{
+		for ( final IntType t : labels )
+			t.setZero();
+		final long start = System.nanoTime();
+		ConnectedComponents.labelAllConnectedComponents( image, labels, se, service );
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Whether two labelings describe the same components, possibly with
+	 * different label values.
+	 */
+	private static boolean isSamePartition( final Img< IntType > a, final Img< IntType > b )
+	{
+		final Map< Integer, Integer > aToB = new HashMap< Integer, Integer >();
+		final Map< Integer, Integer > bToA = new HashMap< Integer, Integer >();
+		final Cursor< IntType > ca = a.cursor();
+		final Cursor< IntType > cb = b.cursor();
+		while ( ca.hasNext() )
+		{
+			final Integer la = ca.next().get();
+			final Integer lb = cb.next().get();
+			final Integer mb = aToB.put( la, lb );
+			final Integer ma = bToA.put( lb, la );
+			if ( ( mb != null && !mb.equals( lb ) ) || ( ma != null && !ma.equals( la ) ) )
+				return false;
+		}
+		return true;
+	}
+
+	private static String dimensionsString( final long[] dimensions )
+	{
+		final StringBuilder sb = new StringBuilder();
+		for ( int d = 0; d < dimensions.length; ++d )
+			sb.append( d == 0 ? "" : "x" ).append( dimensions[ d ] );
+		return sb.toString();
+	}
+}
@@ -35,22 +35,27 @@
 package tests.labeling;
 
 import static net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement.EIGHT_CONNECTED;
+import static net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement.EIGHT_CONNECTED_BLOCKS;
 import static net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement.FOUR_CONNECTED;
 import static org.junit.Assert.assertEquals;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Random;
 
 import net.imglib2.Cursor;
 import net.imglib2.algorithm.labeling.ConnectedComponents;
 import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.algorithm.labeling.RegionStatistics;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.roi.labeling.ImgLabeling;
 import net.imglib2.roi.labeling.LabelingType;
 import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
 
 import org.junit.Test;
 
@@ -173,6 +178,7 @@ public class ConnectedComponentsTest
 		final int[][] expected = new int[][] { { 0, 0, 0, 0, 0 }, { 0, 1, 1, 1, 0 }, { 0, 1, 1, 1, 0 }, { 0, 1, 1, 1, 0 }, { 0, 0, 0, 0, 0 } };
 		test2D( input, expected, FOUR_CONNECTED, 1, 0 );
 		test2D( input, expected, EIGHT_CONNECTED, 1, 0 );
+		test2D( input, expected, EIGHT_CONNECTED_BLOCKS, 1, 0 );
 	}
 
 	@Test
@@ -182,6 +188,7 @@ public class ConnectedComponentsTest
 		final int[][] expected = new int[][] { { 0, 0, 0, 0, 0 }, { 0, 1, 1, 1, 0 }, { 0, 0, 0, 0, 0 }, { 0, 2, 2, 2, 0 }, { 0, 0, 0, 0, 0 } };
 		test2D( input, expected, FOUR_CONNECTED, 1, 0 );
 		test2D( input, expected, EIGHT_CONNECTED, 1, 0 );
+		test2D( input, expected, EIGHT_CONNECTED_BLOCKS, 1, 0 );
 	}
 
 	@Test
@@ -196,6 +203,7 @@ public class ConnectedComponentsTest
 		}
 		test2D( input, expected, FOUR_CONNECTED, 1, 0 );
 		test2D( input, expected, EIGHT_CONNECTED, 1, 0 );
+		test2D( input, expected, EIGHT_CONNECTED_BLOCKS, 1, 0 );
 	}
 
 	@Test
@@ -227,5 +235,122 @@ public class ConnectedComponentsTest
 		final boolean[][] input = new boolean[][] { { false, false, false, false, false }, { false, true, true, true, false }, { true, false, false, false, false }, { false, true, true, true, false }, { false, false, false, false, true } };
 		final int[][] expected8 = new int[][] { { 0, 0, 0, 0, 0 }, { 0, 1, 1, 1, 0 }, { 1, 0, 0, 0, 0 }, { 0, 1, 1, 1, 0 }, { 0, 0, 0, 0, 1 } };
 		test2D( input, expected8, EIGHT_CONNECTED, 1, 0 );
+		test2D( input, expected8, EIGHT_CONNECTED_BLOCKS, 1, 0 );
+	}
+
+	@Test
+	public void testEightConnectedBlocks()
+	{
+		final Random random = new Random( 1l );
+		final long[][] dimensions = new long[][] { { 37, 41 }, { 1, 9 }, { 8, 1 }, { 131, 9 }, { 13, 11, 9 }, { 6, 7, 20 }, { 67, 5, 6 } };
+		for ( final long[] dims : dimensions )
+		{
+			for ( final double density : new double[] { 0.2, 0.4, 0.6 } )
+			{
+				final Img< BitType > image = ArrayImgs.bits( dims );
+				for ( final BitType t : image )
+					t.set( random.nextDouble() < density );
+				final Img< IntType > expected = ArrayImgs.ints( dims );
+				final Img< IntType > actual = ArrayImgs.ints( dims );
+				final int expectedCount = ConnectedComponents.labelAllConnectedComponents( image, expected, EIGHT_CONNECTED );
+				final int actualCount = ConnectedComponents.labelAllConnectedComponents( image, actual, EIGHT_CONNECTED_BLOCKS );
+				assertEquals( expectedCount, actualCount );
+
+				// the bit-packed and the generic input path must agree
+				final Img< IntType > generic = ArrayImgs.ints( dims );
+				assertEquals( actualCount, ConnectedComponents.labelAllConnectedComponents( Views.interval( image, image ), generic, EIGHT_CONNECTED_BLOCKS ) );
+				final Cursor< IntType > cg = generic.cursor();
+				for ( final IntType t : actual )
+					assertEquals( t.get(), cg.next().get() );
+
+				// the labels must be a one-to-one mapping of the expected labels
+				final int[] map = new int[ expectedCount + 1 ];
+				final int[] inverse = new int[ expectedCount + 1 ];
+				final Cursor< IntType > ce = expected.cursor();
+				final Cursor< IntType > ca = actual.cursor();
+				while ( ce.hasNext() )
+				{
+					final int e = ce.next().get();
+					final int a = ca.next().get();
+					assertEquals( e == 0, a == 0 );
+					if ( map[ e ] == 0 && inverse[ a ] == 0 )
+					{
+						map[ e ] = a;
+						inverse[ a ] = e;
+					}
+					assertEquals( a, map[ e ] );
+					assertEquals( e, inverse[ a ] );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testStatistics()
+	{
+		final Random random = new Random( 2l );
+		final long[][] dimensions = new long[][] { { 37, 41 }, { 13, 11, 9 } };
+		for ( final long[] dims : dimensions )
+		{
+			final Img< BitType > image = ArrayImgs.bits( dims );
+			final Img< IntType > intensity = ArrayImgs.ints( dims );
+			final Cursor< IntType > ic = intensity.cursor();
+			for ( final BitType t : image )
+			{
+				t.set( random.nextDouble() < 0.4 );
+				ic.next().set( random.nextInt( 100 ) );
+			}
+			for ( final StructuringElement se : StructuringElement.values() )
+			{
+				final Img< IntType > labels = ArrayImgs.ints( dims );
+				final RegionStatistics stats = ConnectedComponents.labelAllConnectedComponentsWithStatistics( image, labels, intensity, se );
+
+				// compute the expected statistics in a second pass
+				final int n = dims.length;
+				final int size = stats.size();
+				final long[] area = new long[ size + 1 ];
+				final long[][] min = new long[ size + 1 ][ n ];
+				final long[][] max = new long[ size + 1 ][ n ];
+				final double[][] sum = new double[ size + 1 ][ n ];
+				final double[] intensitySum = new double[ size + 1 ];
+				for ( int l = 1; l <= size; ++l )
+				{
+					Arrays.fill( min[ l ], Long.MAX_VALUE );
+					Arrays.fill( max[ l ], Long.MIN_VALUE );
+				}
+				final Cursor< IntType > lc = labels.localizingCursor();
+				final Cursor< IntType > vc = intensity.cursor();
+				int maxLabel = 0;
+				while ( lc.hasNext() )
+				{
+					final int l = lc.next().get();
+					final int v = vc.next().get();
+					maxLabel = Math.max( maxLabel, l );
+					if ( l == 0 )
+						continue;
+					++area[ l ];
+					intensitySum[ l ] += v;
+					for ( int d = 0; d < n; ++d )
+					{
+						final long p = lc.getLongPosition( d );
+						min[ l ][ d ] = Math.min( min[ l ][ d ], p );
+						max[ l ][ d ] = Math.max( max[ l ][ d ], p );
+						sum[ l ][ d ] += p;
+					}
+				}
+				assertEquals( maxLabel, size );
+				for ( int l = 1; l <= size; ++l )
+				{
+					assertEquals( area[ l ], stats.getArea( l ) );
+					assertEquals( intensitySum[ l ], stats.getIntensitySum( l ), 0 );
+					for ( int d = 0; d < n; ++d )
+					{
+						assertEquals( min[ l ][ d ], stats.getMin( l, d ) );
+						assertEquals( max[ l ][ d ], stats.getMax( l, d ) );
+						assertEquals( sum[ l ][ d ] / area[ l ], stats.getCentroid( l, d ), 1e-10 );
+					}
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2016 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.labeling.ConnectedComponents;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.algorithm.labeling.StreamingConnectedComponents;
+import net.imglib2.algorithm.labeling.StreamingConnectedComponents.SliceListener;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class StreamingConnectedComponentsTest
+{
+	private static Img< BitType > randomImage( final long[] dimensions, final double density, final long seed )
+	{
+		final Img< BitType > image = ArrayImgs.bits( dimensions );
+		final Random random = new Random( seed );
+		for ( final BitType t : image )
+			t.set( random.nextDouble() < density );
+		return image;
+	}
+
+	@Test
+	public void testCellImg()
+	{
+		final long[] dimensions = new long[] { 17, 13, 23 };
+		for ( final StructuringElement se : new StructuringElement[] { StructuringElement.FOUR_CONNECTED, StructuringElement.EIGHT_CONNECTED } )
+		{
+			final Img< BitType > image = randomImage( dimensions, 0.3, 1l );
+			final Img< IntType > expected = ArrayImgs.ints( dimensions );
+			ConnectedComponents.labelAllConnectedComponents( image, expected, se );
+			final Img< LongType > actual = StreamingConnectedComponents.labelToCellImg( image, se, 8 );
+
+			final Cursor< IntType > ce = expected.localizingCursor();
+			final RandomAccess< LongType > ra = actual.randomAccess();
+			while ( ce.hasNext() )
+			{
+				ce.fwd();
+				ra.setPosition( ce );
+				assertEquals( ce.get().get(), ra.get().get() );
+			}
+		}
+	}
+
+	@Test
+	public void testSlicesAreEmittedEarly()
+	{
+		// two separate blobs along the last dimension, with empty slices in
+		// between
+		final long[] dimensions = new long[] { 5, 5, 8 };
+		final Img< BitType > image = ArrayImgs.bits( dimensions );
+		final RandomAccess< BitType > ra = image.randomAccess();
+		for ( final int z : new int[] { 0, 1, 5, 6 } )
+		{
+			ra.setPosition( new int[] { 2, 2, z } );
+			ra.get().set( true );
+		}
+
+		final ArrayList< Long > emitted = new ArrayList< Long >();
+		final ArrayList< Integer > pushedBefore = new ArrayList< Integer >();
+		final int[] pushed = new int[ 1 ];
+		final StreamingConnectedComponents< BitType > ccl = new StreamingConnectedComponents< BitType >( new long[] { 5, 5 }, StructuringElement.FOUR_CONNECTED, new SliceListener()
+		{
+			@Override
+			public void sliceFinished( final long slice, final Img< LongType > labels )
+			{
+				emitted.add( slice );
+				pushedBefore.add( pushed[ 0 ] );
+			}
+		} );
+		for ( int z = 0; z < dimensions[ 2 ]; ++z )
+		{
+			final RandomAccessibleInterval< BitType > slice = Views.hyperSlice( image, 2, z );
+			ccl.push( slice );
+			++pushed[ 0 ];
+		}
+		ccl.finish();
+
+		assertEquals( 8, emitted.size() );
+		for ( int z = 0; z < 8; ++z )
+			assertEquals( z, emitted.get( z ).longValue() );
+		// slices 0 and 1 are finished when the empty slice 2 is pushed
+		assertEquals( 2, pushedBefore.get( 0 ).intValue() );
+		assertEquals( 2, pushedBefore.get( 1 ).intValue() );
+		assertEquals( 2, ccl.getNumComponents() );
+	}
+}
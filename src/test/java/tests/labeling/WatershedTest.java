@@ -38,16 +38,24 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.labeling.AllConnectedComponents;
 import net.imglib2.algorithm.labeling.Watershed;
+import net.imglib2.algorithm.labeling.Watersheds;
+import net.imglib2.img.Img;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.basictypeaccess.IntAccess;
 import net.imglib2.labeling.LabelingType;
 import net.imglib2.labeling.NativeImgLabeling;
 import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.util.Fraction;
 
 import org.junit.Test;
@@ -125,6 +133,28 @@ public class WatershedTest
 				assertEquals( l.get( 0 ).intValue(), expectedLabel );
 			}
 		}
+
+		/*
+		 * Run the label id watershed and check against expected
+		 */
+		final Img< IntType > ids = ArrayImgs.ints( seedDimensions );
+		final Cursor< IntType > idc = ids.localizingCursor();
+		while ( idc.hasNext() )
+		{
+			final IntType t = idc.next();
+			idc.localize( position );
+			final int seedLabel = seeds[ position[ 0 ] ][ position[ 1 ] ];
+			t.set( seedLabel == background ? 0 : seedLabel );
+		}
+		Watersheds.seededWatershed( imageImage, ids, structuringElement );
+		idc.reset();
+		while ( idc.hasNext() )
+		{
+			final IntType t = idc.next();
+			idc.localize( position );
+			final int expectedLabel = expected[ position[ 0 ] ][ position[ 1 ] ];
+			assertEquals( expectedLabel == background ? 0 : expectedLabel, t.get() );
+		}
 	}
 
 	@Test
@@ -170,4 +200,130 @@ public class WatershedTest
 		}
 		testSeededCase2D( image, seeds, expected, null, 0 );
 	}
+
+	@Test
+	public final void testParallel()
+	{
+		// with distinct intensities, the parallel watershed must equal the
+		// sequential one
+		final long[] dimensions = new long[] { 23, 19, 31 };
+		final Random random = new Random( 1l );
+		final Img< DoubleType > image = ArrayImgs.doubles( dimensions );
+		for ( final DoubleType t : image )
+			t.set( random.nextDouble() );
+		final Img< IntType > expected = ArrayImgs.ints( dimensions );
+		final Img< IntType > actual = ArrayImgs.ints( dimensions );
+		final RandomAccess< IntType > ea = expected.randomAccess();
+		final RandomAccess< IntType > aa = actual.randomAccess();
+		for ( int label = 1; label <= 20; ++label )
+		{
+			final long[] position = new long[ 3 ];
+			for ( int d = 0; d < 3; ++d )
+				position[ d ] = random.nextInt( ( int ) dimensions[ d ] );
+			ea.setPosition( position );
+			ea.get().set( label );
+			aa.setPosition( position );
+			aa.get().set( label );
+		}
+		final long[][] structuringElement = AllConnectedComponents.getStructuringElement( 3 );
+		Watersheds.seededWatershed( image, expected, structuringElement );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		Watersheds.parallelSeededWatershed( image, actual, structuringElement, service );
+		service.shutdown();
+
+		final Cursor< IntType > ec = expected.cursor();
+		final Cursor< IntType > ac = actual.cursor();
+		while ( ec.hasNext() )
+			assertEquals( ec.next().get(), ac.next().get() );
+	}
+
+	@Test
+	public final void testParallelOnPlateaus()
+	{
+		// with few distinct intensities, there are many plateaus. The
+		// parallel watershed must equal the sequential one with the same
+		// tie-breaking for any number of blocks.
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		final Random random = new Random( 2l );
+		for ( final long[] dimensions : new long[][] { { 40, 37 }, { 13, 11, 17 } } )
+		{
+			final int n = dimensions.length;
+			final Img< DoubleType > image = ArrayImgs.doubles( dimensions );
+			for ( final DoubleType t : image )
+				t.set( random.nextInt( 4 ) );
+			final Img< IntType > seeds = ArrayImgs.ints( dimensions );
+			final RandomAccess< IntType > sa = seeds.randomAccess();
+			for ( int label = 1; label <= 12; ++label )
+			{
+				for ( int d = 0; d < n; ++d )
+					sa.setPosition( random.nextInt( ( int ) dimensions[ d ] ), d );
+				sa.get().set( label );
+			}
+
+			for ( final long[][] structuringElement : new long[][][] { AllConnectedComponents.getStructuringElement( n ), getFaceNeighbors( n ) } )
+			{
+				final Img< IntType > expected = seeds.copy();
+				Watersheds.orderedSeededWatershed( image, expected, structuringElement );
+				for ( final int numBlocks : new int[] { 1, 2, 3, 5, 8, 100 } )
+				{
+					final Img< IntType > actual = seeds.copy();
+					Watersheds.parallelSeededWatershed( image, actual, structuringElement, numBlocks, service );
+					final Cursor< IntType > ec = expected.cursor();
+					final Cursor< IntType > ac = actual.cursor();
+					while ( ec.hasNext() )
+						assertEquals( "numBlocks = " + numBlocks, ec.next().get(), ac.next().get() );
+				}
+			}
+		}
+		service.shutdown();
+	}
+
+	/**
+	 * @return the offsets of the 2n neighbors sharing a face.
+	 */
+	private static long[][] getFaceNeighbors( final int n )
+	{
+		final long[][] offsets = new long[ 2 * n ][ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			offsets[ 2 * d ][ d ] = -1;
+			offsets[ 2 * d + 1 ][ d ] = 1;
+		}
+		return offsets;
+	}
+
+	@Test
+	public final void testWithoutSeeds()
+	{
+		// two valleys separated by a ridge at x = 4
+		final double[] row = new double[] { 3, 1, 0, 2, 5, 2, 1, 1, 4 };
+		final long[] dimensions = new long[] { row.length, 5 };
+		final Img< DoubleType > image = ArrayImgs.doubles( dimensions );
+		final Cursor< DoubleType > c = image.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( row[ c.getIntPosition( 0 ) ] );
+		}
+		final long[][] structuringElement = AllConnectedComponents.getStructuringElement( 2 );
+
+		final Img< IntType > dams = ArrayImgs.ints( dimensions );
+		assertEquals( 2, Watersheds.watershed( image, dams, structuringElement, true ) );
+		final Img< IntType > noDams = ArrayImgs.ints( dimensions );
+		assertEquals( 2, Watersheds.watershed( image, noDams, structuringElement, false ) );
+
+		final Cursor< IntType > dc = dams.localizingCursor();
+		final Cursor< IntType > nc = noDams.cursor();
+		while ( dc.hasNext() )
+		{
+			dc.fwd();
+			final int x = dc.getIntPosition( 0 );
+			final int dam = dc.get().get();
+			final int noDam = nc.next().get();
+			assertEquals( x < 4 ? 1 : x > 4 ? 2 : 0, dam );
+			assertTrue( noDam > 0 );
+			if ( x != 4 )
+				assertEquals( dam, noDam );
+		}
+	}
 }